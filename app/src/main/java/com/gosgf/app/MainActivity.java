@@ -6,22 +6,40 @@ import android.widget.TextView;
 import android.widget.Toast;
 import android.content.Intent;
 import android.net.Uri;
+import android.content.ClipData;
+import android.util.Pair;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import com.gosgf.app.view.BoardView;
 import com.gosgf.app.model.GoBoard;
 import com.gosgf.app.R;
+import com.gosgf.app.data.CommentMatch;
+import com.gosgf.app.data.DatabaseHelper;
+import com.gosgf.app.data.GameRecord;
+import com.gosgf.app.data.LibraryImportTask;
+import com.gosgf.app.data.PositionMatch;
+import com.gosgf.app.util.BulkImporter;
+import com.gosgf.app.util.EditJournal;
+import com.gosgf.app.util.PositionHash;
+import com.gosgf.app.util.SGFConverter;
+import com.gosgf.app.util.SGFDecoder;
 import com.gosgf.app.util.SGFParser;
+import com.gosgf.app.util.SGFWriter;
+import kotlin.Unit;
 import android.view.View;
 import android.view.MotionEvent;
 import androidx.appcompat.app.AlertDialog;
@@ -33,10 +51,15 @@ public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_CODE_LOAD = 1;
     private static final int REQUEST_CODE_SAVE = 2;
     private static final int BOARD_SIZE = 19;
+    private static final String TAG = "MainActivity";
+    // 自动保存的快照和编辑日志所在目录
+    private static final String AUTOSAVE_DIRECTORY = "autosave";
+    // 棋谱库搜索最多列出的条数
+    private static final int LIBRARY_SEARCH_LIMIT = 200;
     
     // UI组件
     private View toolbar;
-    private Button btnNew, btnLoad, btnSave;
+    private Button btnNew, btnLoad, btnLibrary, btnSave;
     private Button btnToStart, btnPrev, btnNext, btnPass;
     private Button btnComment, btnMark;
     private TextView tvGameInfo, tvCommentDisplay;
@@ -46,6 +69,18 @@ public class MainActivity extends AppCompatActivity {
     private float startX, startY;
     private ActivityResultLauncher<Intent> openDocumentLauncher;
     private ActivityResultLauncher<Intent> createDocumentLauncher;
+    private ActivityResultLauncher<Intent> importDocumentsLauncher;
+    // 自动保存，打开失败时为null，此时只能手动保存
+    private EditJournal journal;
+    // 在后台写出自动保存的快照
+    private final ExecutorService autosaveExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "autosave"));
+    // 棋谱库，查询都在 libraryExecutor 上进行，不在主线程读数据库
+    private DatabaseHelper library;
+    private final ExecutorService libraryExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "library"));
+    // 局面每次改变时加一，丢弃过期的定式查询结果
+    private int exploreRequest;
+    // 正在进行的导入，没有时为null
+    private LibraryImportTask importTask;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -54,6 +89,7 @@ public class MainActivity extends AppCompatActivity {
         
         // 初始化UI组件
         initUI();
+        library = new DatabaseHelper(this);
         
         // 初始化文件选择器
         initFileLaunchers();
@@ -61,15 +97,121 @@ public class MainActivity extends AppCompatActivity {
         // 设置事件监听器
         setupListeners();
         
+        // 恢复上次未保存的棋局
+        openJournal();
+        
         // 初始化游戏信息
         updateGameInfo();
     }
     
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (journal != null) {
+            try {
+                // 进入后台后进程随时可能被杀，把尚未同步的记录写到磁盘
+                journal.sync();
+            } catch (IOException e) {
+                Log.w(TAG, "自动保存失败", e);
+            }
+        }
+    }
+    
+    @Override
+    protected void onDestroy() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                Log.w(TAG, "自动保存失败", e);
+            }
+            journal = null;
+        }
+        // 关闭日志后尚未完成的压缩会作废，原来的快照和日志仍然有效
+        autosaveExecutor.shutdown();
+        if (importTask != null) {
+            importTask.cancel();
+        }
+        // 排在已提交的查询之后关闭数据库
+        DatabaseHelper helper = library;
+        libraryExecutor.execute(helper::close);
+        libraryExecutor.shutdown();
+        super.onDestroy();
+    }
+    
+    private void openJournal() {
+        journal = new EditJournal(new File(getFilesDir(), AUTOSAVE_DIRECTORY));
+        try {
+            if (journal.open(boardView.getBoard())) {
+                boardView.invalidateBoard();
+                updateCommentDisplay();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "无法恢复自动保存的棋局", e);
+            boardView.getBoard().resetGame();
+            try {
+                // 丢弃无法读取的快照，从空棋盘重新开始
+                journal.compact(boardView.getBoard());
+            } catch (IOException e2) {
+                Log.w(TAG, "无法打开自动保存", e2);
+                journal = null;
+            }
+        }
+    }
+    
+    /**
+     * 写入编辑日志的一条记录
+     */
+    private interface JournalEntry {
+        void write(EditJournal journal) throws IOException;
+    }
+    
+    /**
+     * 修改棋盘后记录到编辑日志，日志过大时写出新的快照
+     */
+    private void logEdit(JournalEntry entry) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            entry.write(journal);
+            if (journal.needsCompaction()) {
+                compactJournal();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "自动保存失败", e);
+        }
+    }
+    
+    /**
+     * 整盘棋被替换后（新建、加载），以当前棋盘作为新的快照
+     */
+    private void resetJournal() {
+        if (journal != null) {
+            compactJournal();
+        }
+    }
+    
+    /**
+     * 在后台写出新的快照，主线程只序列化棋盘
+     */
+    private void compactJournal() {
+        try {
+            journal.compactAsync(boardView.getBoard(), autosaveExecutor).exceptionally(e -> {
+                Log.w(TAG, "自动保存失败", e);
+                return null;
+            });
+        } catch (IOException e) {
+            Log.w(TAG, "自动保存失败", e);
+        }
+    }
+    
     private void initUI() {
         // 工具栏按钮
         toolbar = findViewById(R.id.toolbar);
         btnNew = findViewById(R.id.btnNew);
         btnLoad = findViewById(R.id.btnLoad);
+        btnLibrary = findViewById(R.id.btnLibrary);
         btnSave = findViewById(R.id.btnSave);
         
         // 导航按钮
@@ -115,12 +257,34 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
         );
+        
+        importDocumentsLauncher = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                if (result.getResultCode() == RESULT_OK && result.getData() != null) {
+                    // 选择多个文件时在 ClipData 中，只选一个时在 getData() 中
+                    List<Uri> uris = new ArrayList<>();
+                    ClipData clip = result.getData().getClipData();
+                    if (clip != null) {
+                        for (int i = 0; i < clip.getItemCount(); i++) {
+                            uris.add(clip.getItemAt(i).getUri());
+                        }
+                    } else if (result.getData().getData() != null) {
+                        uris.add(result.getData().getData());
+                    }
+                    if (!uris.isEmpty()) {
+                        importToLibrary(uris);
+                    }
+                }
+            }
+        );
     }
     
     private void setupListeners() {
         // 工具栏按钮
         btnNew.setOnClickListener(v -> newGame());
         btnLoad.setOnClickListener(v -> openFile(REQUEST_CODE_LOAD));
+        btnLibrary.setOnClickListener(v -> showLibraryDialog());
         btnSave.setOnClickListener(v -> openFile(REQUEST_CODE_SAVE));
         
         // 导航按钮
@@ -139,6 +303,7 @@ public class MainActivity extends AppCompatActivity {
     
     private void newGame() {
         boardView.getBoard().resetGame();
+        resetJournal();
         boardView.invalidateBoard();
         updateGameInfo();
         updateCommentDisplay();
@@ -159,39 +324,17 @@ public class MainActivity extends AppCompatActivity {
     
     private void doLoadSGF(Uri uri) {
         try (InputStream is = getContentResolver().openInputStream(uri)) {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
+            // 按 CA[] 属性的字符集一次性解码
+            String sgf = SGFDecoder.read(is);
             
             try {
-                // 调用 resetGame() 清空旧棋局状态
-                boardView.getBoard().resetGame();
-                // 解析 SGF
-                SGFParser.parseSGF(sb.toString(), boardView.getBoard());
-                boardView.invalidateBoard();
-                updateGameInfo();
-                updateCommentDisplay();
-                
-                // 检查是否包含虚手
-                GoBoard board = boardView.getBoard();
-                if (board != null) {
-                    for (GoBoard.Move move : board.getMoveHistory()) {
-                        if (move.x == -1) {
-                            String player = move.color == 1 ? "黑方" : "白方";
-                            Toast.makeText(this, "加载棋局包含" + player + "虚手", Toast.LENGTH_SHORT).show();
-                            break;
-                        }
-                    }
+                if (SGFParser.countGameTrees(sgf) <= 1) {
+                    // 单局文件直接加载到棋盘，不构建中间的SGF树
+                    loadGame(sgf);
+                } else {
+                    // 切分 SGF 合集，列表只读各局的根节点，选中的对局才解析，分支在首次进入时才解析
+                    showGameChooserDialog(SGFParser.parseCollection(sgf, true, null));
                 }
-                
-                Toast.makeText(this, "棋局已加载", Toast.LENGTH_SHORT).show();
-            } catch (ArrayIndexOutOfBoundsException e) {
-                Toast.makeText(this, "SGF文件包含无效坐标", Toast.LENGTH_SHORT).show();
-                boardView.getBoard().resetGame();
-                boardView.invalidateBoard();
             } catch (SGFParser.SGFParseException e) {
                 Toast.makeText(this, "无效的SGF格式: " + e.getMessage(), Toast.LENGTH_SHORT).show();
             }
@@ -200,15 +343,95 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    private void showGameChooserDialog(SGFParser.SGFCollection collection) {
+        String[] titles = new String[collection.size()];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = "第" + (i + 1) + "局";
+            try {
+                SGFParser.Node root = collection.getRootNode(i);
+                String pb = root.getFirstPropertyValue("PB");
+                String pw = root.getFirstPropertyValue("PW");
+                if (pb != null || pw != null) {
+                    titles[i] += " " + (pb != null ? pb : "") + " vs " + (pw != null ? pw : "");
+                }
+            } catch (SGFParser.SGFParseException e) {
+                titles[i] += "（无效）";
+            }
+        }
+        
+        new AlertDialog.Builder(this)
+            .setTitle("选择对局（共" + titles.length + "局）")
+            .setItems(titles, (dialog, which) -> {
+                try {
+                    loadGame(collection.get(which));
+                } catch (SGFParser.SGFParseException e) {
+                    Toast.makeText(this, "无效的SGF格式: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                }
+            })
+            .setNegativeButton("取消", null)
+            .show();
+    }
+    
+    private void loadGame(SGFParser.SGFTree sgfTree) {
+        try {
+            // 调用 resetGame() 清空旧棋局状态
+            boardView.getBoard().resetGame();
+            SGFConverter.sgfTreeToBoard(sgfTree, boardView.getBoard());
+            onGameLoaded();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            onInvalidCoordinates();
+        }
+    }
+    
+    private void loadGame(String sgf) throws SGFParser.SGFParseException {
+        try {
+            // 调用 resetGame() 清空旧棋局状态
+            boardView.getBoard().resetGame();
+            SGFParser.parseSGF(sgf, boardView.getBoard(), true);
+            onGameLoaded();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            onInvalidCoordinates();
+        }
+    }
+    
+    private void onGameLoaded() {
+        resetJournal();
+        boardView.invalidateBoard();
+        updateGameInfo();
+        updateCommentDisplay();
+        
+        // 检查是否包含虚手
+        GoBoard board = boardView.getBoard();
+        if (board != null) {
+            for (GoBoard.Move move : board.getMoveHistory()) {
+                if (move.x == -1) {
+                    String player = move.color == 1 ? "黑方" : "白方";
+                    Toast.makeText(this, "加载棋局包含" + player + "虚手", Toast.LENGTH_SHORT).show();
+                    break;
+                }
+            }
+        }
+        
+        Toast.makeText(this, "棋局已加载", Toast.LENGTH_SHORT).show();
+    }
+    
+    private void onInvalidCoordinates() {
+        Toast.makeText(this, "SGF文件包含无效坐标", Toast.LENGTH_SHORT).show();
+        boardView.getBoard().resetGame();
+        resetJournal();
+        boardView.invalidateBoard();
+    }
+    
     private void saveSGF(Uri uri) {
         doSaveSGF(uri);
     }
     
     private void doSaveSGF(Uri uri) {
         try (OutputStream os = getContentResolver().openOutputStream(uri, "w")) { // 添加"w"参数确保覆盖现有文件
-            GoBoard board = boardView.getBoard();
-            String sgf = SGFParser.saveToString(board, board.getBlackPlayer(), board.getWhitePlayer(), board.getResult());
-            os.write(sgf.getBytes(StandardCharsets.UTF_8));
+            // 流式写入，不在内存中拼接完整的SGF文本
+            SGFWriter writer = new SGFWriter(os);
+            writer.writeBoard(boardView.getBoard());
+            writer.flush();
             Toast.makeText(this, "棋局已保存", Toast.LENGTH_SHORT).show();
         } catch (IOException e) {
             Toast.makeText(this, "保存失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
@@ -250,6 +473,7 @@ public class MainActivity extends AppCompatActivity {
     private void goToStart() {
         GoBoard board = boardView.getBoard();
         board.setCurrentMoveNumber(-1);
+        logEdit(j -> j.logGoTo(-1));
         boardView.invalidateBoard();
         updateGameInfo();
         updateCommentDisplay();
@@ -263,6 +487,7 @@ public class MainActivity extends AppCompatActivity {
         } else {
             board.previousMove();
         }
+        logEdit(j -> j.logGoTo(board.getCurrentMoveNumber()));
         boardView.invalidateBoard();
         updateGameInfo();
         updateCommentDisplay();
@@ -276,14 +501,17 @@ public class MainActivity extends AppCompatActivity {
                 // 如果已经有moveHistory，直接前进到第一步
                 // 这样可以保持当前的分支，而不是默认选择第一个分支
                 board.setCurrentMoveNumber(0);
+                logEdit(j -> j.logGoTo(0));
                 boardView.invalidateBoard();
                 updateGameInfo();
                 updateCommentDisplay();
             } else if (board.hasStartVariations()) {
                 // 如果没有moveHistory，但是有startVariations，选择第一个分支
                 board.selectVariation(0);
+                logEdit(j -> j.logSelectVariation(0));
                 // 选择分支后，手动前进到第一步
                 board.setCurrentMoveNumber(0);
+                logEdit(j -> j.logGoTo(0));
                 boardView.invalidateBoard();
                 updateGameInfo();
                 updateCommentDisplay();
@@ -291,6 +519,7 @@ public class MainActivity extends AppCompatActivity {
         } else {
             // 直接执行下一步移动
             board.nextMove();
+            logEdit(j -> j.logNextMove());
             boardView.invalidateBoard();
             updateGameInfo();
             updateCommentDisplay();
@@ -299,7 +528,9 @@ public class MainActivity extends AppCompatActivity {
     
     private void passMove() {
         GoBoard board = boardView.getBoard();
+        int color = board.getCurrentPlayer();
         if (board.placeStone(-1, -1)) {
+            logEdit(j -> j.logMove(-1, -1, color));
             boardView.invalidateBoard();
             updateGameInfo();
             updateCommentDisplay();
@@ -323,7 +554,9 @@ public class MainActivity extends AppCompatActivity {
             .setTitle("添加注释")
             .setView(editText)
             .setPositiveButton("确定", (dialog, which) -> {
-                board.setComment(editText.getText().toString());
+                String comment = editText.getText().toString();
+                board.setComment(comment);
+                logEdit(j -> j.logComment(comment));
                 updateCommentDisplay();
             })
             .setNegativeButton("取消", null)
@@ -343,6 +576,7 @@ public class MainActivity extends AppCompatActivity {
             .setTitle("添加标记")
             .setItems(markOptions, (dialog, which) -> {
                 board.setMark(which);
+                logEdit(j -> j.logMark(which));
                 boardView.invalidateBoard();
             })
             .show();
@@ -384,6 +618,7 @@ public class MainActivity extends AppCompatActivity {
                 }
                 
                 if (success) {
+                    logEdit(j -> j.logRemoveVariation(index, isStartVariation));
                     boardView.invalidateBoard();
                     updateGameInfo();
                     updateCommentDisplay();
@@ -402,7 +637,9 @@ public class MainActivity extends AppCompatActivity {
     public void handleBoardClick(int x, int y) {
         GoBoard board = boardView.getBoard();
         if (board != null) {
+            int color = board.getCurrentPlayer();
             if (board.placeStone(x, y)) {
+                logEdit(j -> j.logMove(x, y, color));
                 boardView.invalidateBoard();
                 updateGameInfo();
                 updateCommentDisplay();
@@ -417,6 +654,14 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    /**
+     * BoardView 中点击分支提示选择分支后调用
+     * @param index 分支序号
+     */
+    public void onVariationSelected(int index) {
+        logEdit(j -> j.logSelectVariation(index));
+    }
+    
     public void updateGameInfo() {
         GoBoard board = boardView.getBoard();
         int moveNumber = board.getCurrentMoveNumber();
@@ -437,6 +682,10 @@ public class MainActivity extends AppCompatActivity {
         if (!variationNames.isEmpty()) {
             info.append("\n分支: ").append(variationNames.size()).append("个");
         }
+        // 延迟加载的分支格式错误时无法进入，在这里说明原因
+        for (String error : board.getVariationErrors()) {
+            info.append("\n无效分支 ").append(error);
+        }
         
         // 添加玩家信息
         String blackPlayer = board.getBlackPlayer();
@@ -454,6 +703,249 @@ public class MainActivity extends AppCompatActivity {
         tvGameInfo.setText(info.toString());
         // 添加点击事件，显示更多游戏信息
         tvGameInfo.setOnClickListener(v -> showGameInfoDialog());
+        
+        // 每次局面改变都会调用这里，同时更新棋盘上的定式提示
+        updateContinuations();
+    }
+    
+    /**
+     * 在棋谱库线程上查询，结果回到主线程，界面已销毁时丢弃
+     * @param reportErrors 查询失败时是否提示，定式提示随局面自动刷新，失败时只记录日志
+     */
+    private <T> void queryLibrary(Callable<T> query, Consumer<T> onResult, boolean reportErrors) {
+        libraryExecutor.execute(() -> {
+            try {
+                T result = query.call();
+                runOnUiThread(() -> {
+                    if (!isDestroyed()) {
+                        onResult.accept(result);
+                    }
+                });
+            } catch (Exception e) {
+                Log.w(TAG, "棋谱库查询失败", e);
+                if (reportErrors) {
+                    runOnUiThread(() -> Toast.makeText(this, "棋谱库查询失败: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+                }
+            }
+        });
+    }
+    
+    /**
+     * 在棋谱库中查询从当前局面走出的下一手，标在棋盘上
+     * 局面哈希在主线程上计算，后台线程不读取棋盘
+     */
+    private void updateContinuations() {
+        int request = ++exploreRequest;
+        PositionHash.Position position = PositionHash.of(boardView.getBoard());
+        queryLibrary(() -> library.explore(position), continuations -> {
+            if (request == exploreRequest) {
+                boardView.setContinuations(continuations);
+            }
+        }, false);
+    }
+    
+    private void showLibraryDialog() {
+        String[] items = {"导入棋谱", "搜索当前局面", "搜索注释"};
+        new AlertDialog.Builder(this)
+            .setTitle("棋谱库")
+            .setItems(items, (dialog, which) -> {
+                switch (which) {
+                    case 0:
+                        chooseLibraryFiles();
+                        break;
+                    case 1:
+                        searchCurrentPosition();
+                        break;
+                    case 2:
+                        showCommentSearchDialog();
+                        break;
+                }
+            })
+            .setNegativeButton("取消", null)
+            .show();
+    }
+    
+    private void chooseLibraryFiles() {
+        if (importTask != null) {
+            Toast.makeText(this, "正在导入棋谱", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        String[] mimeTypes = {"application/sgf", "text/plain", "*/*"};
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, mimeTypes);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        importDocumentsLauncher.launch(intent);
+    }
+    
+    /**
+     * 在后台把选中的文件导入棋谱库，对话框显示进度，可以取消
+     */
+    private void importToLibrary(List<Uri> uris) {
+        List<BulkImporter.Source> sources = new ArrayList<>();
+        for (Uri uri : uris) {
+            sources.add(new LibraryImportTask.UriSource(getContentResolver(), uri));
+        }
+        AlertDialog progressDialog = new AlertDialog.Builder(this)
+            .setTitle("导入棋谱")
+            .setMessage("正在导入 " + uris.size() + " 个文件")
+            .setCancelable(false)
+            .setNegativeButton("取消", (dialog, which) -> {
+                if (importTask != null) {
+                    importTask.cancel();
+                }
+            })
+            .show();
+        importTask = new LibraryImportTask(library, sources, progress -> {
+            progressDialog.setMessage("已处理 " + progress.getFiles() + " / " + progress.getTotalFiles()
+                    + " 个文件，" + progress.getGames() + " 局");
+            return Unit.INSTANCE;
+        }, (progress, error) -> {
+            importTask = null;
+            if (isDestroyed()) {
+                return Unit.INSTANCE;
+            }
+            progressDialog.dismiss();
+            if (error != null) {
+                Log.w(TAG, "导入棋谱失败", error);
+                Toast.makeText(this, "导入失败: " + error.getMessage(), Toast.LENGTH_SHORT).show();
+            } else if (progress != null) {
+                String message = "已导入 " + progress.getGames() + " 局";
+                if (progress.getFailedFiles() > 0) {
+                    message += "，" + progress.getFailedFiles() + " 个文件无法读取";
+                }
+                Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+            }
+            updateContinuations();
+            return Unit.INSTANCE;
+        });
+        importTask.start();
+    }
+    
+    /**
+     * 查找出现过当前局面的对局，选中后打开并跳到该局面
+     */
+    private void searchCurrentPosition() {
+        PositionHash.Position position = PositionHash.of(boardView.getBoard());
+        queryLibrary(() -> library.findGamesByPosition(position, LIBRARY_SEARCH_LIMIT), matches -> {
+            if (matches.isEmpty()) {
+                Toast.makeText(this, "棋谱库中没有这个局面", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            String[] titles = new String[matches.size()];
+            for (int i = 0; i < titles.length; i++) {
+                PositionMatch match = matches.get(i);
+                titles[i] = describeGame(match.getGame()) + " 第" + match.getMoveNumber() + "手";
+            }
+            new AlertDialog.Builder(this)
+                .setTitle("相同局面（" + titles.length + "局）")
+                .setItems(titles, (dialog, which) ->
+                    openLibraryGame(matches.get(which).getGame(), matches.get(which).getMoveNumber()))
+                .setNegativeButton("取消", null)
+                .show();
+        }, true);
+    }
+    
+    private void showCommentSearchDialog() {
+        EditText editText = new EditText(this);
+        editText.setInputType(InputType.TYPE_CLASS_TEXT);
+        editText.setHint("关键词，空格分隔");
+        
+        new AlertDialog.Builder(this)
+            .setTitle("搜索注释")
+            .setView(editText)
+            .setPositiveButton("搜索", (dialog, which) -> searchComments(editText.getText().toString()))
+            .setNegativeButton("取消", null)
+            .show();
+    }
+    
+    /**
+     * 在棋谱库的注释中搜索，选中后打开对局并跳到注释所在的手数
+     */
+    private void searchComments(String query) {
+        queryLibrary(() -> library.searchComments(query, LIBRARY_SEARCH_LIMIT), matches -> {
+            if (matches.isEmpty()) {
+                Toast.makeText(this, "没有找到相关注释", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            String[] titles = new String[matches.size()];
+            for (int i = 0; i < titles.length; i++) {
+                CommentMatch match = matches.get(i);
+                String text = match.getText();
+                if (text.length() > 40) {
+                    text = text.substring(0, 40) + "…";
+                }
+                titles[i] = describeGame(match.getGame()) + "\n" + text;
+            }
+            new AlertDialog.Builder(this)
+                .setTitle("注释（" + titles.length + "条）")
+                .setItems(titles, (dialog, which) -> {
+                    CommentMatch match = matches.get(which);
+                    String path = match.getPath();
+                    int dot = path.indexOf('.');
+                    if (dot < 0) {
+                        openLibraryGame(match.getGame(), match.getMoveNumber());
+                    } else {
+                        // 棋谱库只保存主线，分支中的注释跳到分出分支的那一手
+                        int branchPoint = Integer.parseInt(path.substring(0, dot));
+                        openLibraryGame(match.getGame(), Math.min(branchPoint, match.getMoveNumber()));
+                        Toast.makeText(this, "注释在分支中，已跳到分支开始处", Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .setNegativeButton("取消", null)
+                .show();
+        }, true);
+    }
+    
+    /**
+     * 从棋谱库打开对局的主线
+     * @param moveNumber 跳到的手数，从 1 开始，0 为第一手之前
+     */
+    private void openLibraryGame(GameRecord game, int moveNumber) {
+        queryLibrary(() -> Pair.create(library.getSetup(game.getId()), library.getMoves(game.getId())), stored -> {
+            GoBoard board = boardView.getBoard();
+            board.resetGame();
+            for (GoBoard.Move stone : stored.first) {
+                board.setupStone(stone.x, stone.y, stone.color);
+            }
+            board.snapshotInitialSetup();
+            board.setMoveHistory(stored.second);
+            board.setBlackPlayer(game.getPlayerBlack() != null ? game.getPlayerBlack() : "");
+            board.setWhitePlayer(game.getPlayerWhite() != null ? game.getPlayerWhite() : "");
+            board.setResult(game.getGameResult() != null ? game.getGameResult() : "");
+            if (game.getDate() > 0) {
+                board.setDate(formatDate(game.getDate()));
+            }
+            board.setCurrentMoveNumber(moveNumber - 1);
+            onGameLoaded();
+        }, true);
+    }
+    
+    private static String describeGame(GameRecord game) {
+        StringBuilder title = new StringBuilder();
+        title.append(game.getPlayerBlack() != null ? game.getPlayerBlack() : "")
+            .append(" vs ")
+            .append(game.getPlayerWhite() != null ? game.getPlayerWhite() : "");
+        if (game.getDate() > 0) {
+            title.append(" ").append(formatDate(game.getDate()));
+        }
+        return title.toString();
+    }
+    
+    /**
+     * @param date YYYYMMDD 整数，缺少的月、日为 0，见 GameSummary.parseDate
+     */
+    private static String formatDate(int date) {
+        int month = date / 100 % 100;
+        int day = date % 100;
+        if (month == 0) {
+            return String.valueOf(date / 10000);
+        }
+        if (day == 0) {
+            return String.format(Locale.ROOT, "%04d-%02d", date / 10000, month);
+        }
+        return String.format(Locale.ROOT, "%04d-%02d-%02d", date / 10000, month, day);
     }
     
     private void showGameInfoDialog() {
@@ -1,73 +1,1034 @@
 package com.gosgf.app.data
 
-import android.content.ContentValues
 import android.content.Context
+import android.database.Cursor
 import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteDoneException
 import android.database.sqlite.SQLiteOpenHelper
+import android.database.sqlite.SQLiteStatement
+import com.gosgf.app.model.GoBoard
+import com.gosgf.app.util.BulkImporter
+import com.gosgf.app.util.CommentIndex
+import com.gosgf.app.util.GameFingerprint
+import com.gosgf.app.util.GameSummary
+import com.gosgf.app.util.OpeningStats
+import com.gosgf.app.util.PackedPosition
+import com.gosgf.app.util.PatternSearch
+import com.gosgf.app.util.PositionHash
+import com.gosgf.app.util.SGFParser
+import com.gosgf.app.util.SGFPointSet
+import java.io.Closeable
+import java.util.concurrent.ForkJoinPool
 
+/**
+ * 棋谱库：对局、棋手以及局面、定式统计、注释和重复对局的索引
+ * 查询会读数据库，需在后台线程调用；局面查询可以传入在界面线程上算好的 PositionHash.Position，
+ * 后台线程不再读取界面正在修改的棋盘
+ */
 class DatabaseHelper(context: Context) : SQLiteOpenHelper(context, DATABASE_NAME, null, DATABASE_VERSION) {
 
     companion object {
         private const val DATABASE_NAME = "go_records.db"
-        private const val DATABASE_VERSION = 1
+        private const val DATABASE_VERSION = 8
+
+        // 列表查询只读取这些列，着手数据按需用 getMoves 读取
+        private const val GAME_COLUMNS = "g.id, pb.name AS player_black, pw.name AS player_white, g.board_size, g.komi," +
+                " g.handicap, g.winner, g.margin, g.result, g.date, g.move_count"
+        private const val PLAYER_JOINS = " LEFT JOIN players pb ON pb.id = g.black_id" +
+                " LEFT JOIN players pw ON pw.id = g.white_id"
+        private const val GAME_TABLES = "games g$PLAYER_JOINS"
+        // 分页条件：排在 (date, id) 之后的对局。先写出 date 的上界，SQLite 才能在 date 索引上按范围定位，
+        // 只写 "date < ? OR (date = ? AND id < ?)" 会退化为从头扫描索引，越往后翻越慢
+        internal const val PAGE_AFTER = "g.date <= ? AND (g.date < ? OR g.id < ?)"
+        private const val INSERT_GAME = "INSERT INTO games (black_id, white_id, board_size, komi, handicap, winner," +
+                " margin, result, date, move_count, moves, setup, stones, fingerprint, prefix_fingerprint, duplicate_of)" +
+                " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+        // 同一局中重复出现的局面只保留第一次
+        private const val INSERT_POSITION = "INSERT OR IGNORE INTO positions (hash, game_id, move) VALUES (?, ?, ?)"
+        // minSdk 24 的 SQLite 不支持 ON CONFLICT DO UPDATE，先更新，没有更新到再插入
+        private const val UPDATE_CONTINUATION = "UPDATE continuations SET games = games + ?, black_wins = black_wins + ?," +
+                " white_wins = white_wins + ? WHERE hash = ? AND move = ?"
+        private const val INSERT_CONTINUATION = "INSERT INTO continuations (games, black_wins, white_wins, hash, move)" +
+                " VALUES (?, ?, ?, ?, ?)"
+        // 统计表中没有的局面从局面索引现算，最多读取的对局数
+        private const val EXPLORE_FALLBACK_LIMIT = 500
+        // 前缀指纹相同时最多逐一确认的对局数
+        private const val NEAR_DUPLICATE_CANDIDATES = 16
+        // 重建索引时每读取这么多局写一次统计
+        private const val REBUILD_BATCH_SIZE = 2000
+        // 截断棋谱的查找键，见 GameSummary.getPrefixKeys
+        private const val INSERT_PREFIX = "INSERT OR IGNORE INTO prefixes (length, fingerprint, game_id) VALUES (?, ?, ?)"
+        private const val INSERT_COMMENT = "INSERT INTO comments (game_id, path, move, text) VALUES (?, ?, ?, ?)"
+        private const val INSERT_COMMENT_TOKENS = "INSERT INTO comments_fts (docid, tokens) VALUES (?, ?)"
+        // 棋形搜索每次读取并核对的候选对局数
+        private const val PATTERN_BATCH_SIZE = 500
+
+        /**
+         * 从查询结果中读取连续的棋盘大小、着手、摆子三列，用于重建索引和核对
+         */
+        private fun storedGame(cursor: Cursor, first: Int): GameSummary {
+            val summary = GameSummary()
+            summary.boardSize = cursor.getInt(first)
+            if (!cursor.isNull(first + 1)) summary.setMoves(GameSummary.decodeMoves(cursor.getBlob(first + 1)))
+            if (!cursor.isNull(first + 2)) summary.setSetupStones(GameSummary.decodeMoves(cursor.getBlob(first + 2)))
+            return summary
+        }
+
+        private fun insertPositions(statement: SQLiteStatement, gameId: Long, summary: GameSummary) {
+            val line = summary.positions ?: return
+            for (i in 1..line.moveCount) {
+                statement.bindLong(1, line.getHash(i))
+                statement.bindLong(2, gameId)
+                statement.bindLong(3, i.toLong())
+                statement.executeInsert()
+            }
+        }
+
+        private fun insertComments(insertComment: SQLiteStatement, insertTokens: SQLiteStatement, gameId: Long, summary: GameSummary) {
+            for (comment in summary.comments) {
+                insertComment.bindLong(1, gameId)
+                insertComment.bindString(2, comment.path)
+                insertComment.bindLong(3, comment.moveNumber.toLong())
+                insertComment.bindString(4, comment.text)
+                insertTokens.bindLong(1, insertComment.executeInsert())
+                insertTokens.bindString(2, CommentIndex.tokenize(comment.text))
+                insertTokens.executeInsert()
+            }
+        }
+    }
+
+    override fun onConfigure(db: SQLiteDatabase) {
+        db.setForeignKeyConstraintsEnabled(true)
+        // 批量导入的长事务不阻塞界面上的查询
+        db.enableWriteAheadLogging()
     }
 
     override fun onCreate(db: SQLiteDatabase) {
+        createSchema(db)
+    }
+
+    override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+        if (oldVersion < 2) {
+            // 版本1只有一张文本表，逐行转换到新表，保留已有棋谱
+            db.execSQL("ALTER TABLE games RENAME TO games_v1")
+            createSchema(db)
+            migrateFromV1(db)
+            db.execSQL("DROP TABLE games_v1")
+            return
+        }
+        if (oldVersion < 3) {
+            // 版本2没有保存摆子，已有对局按无摆子建立局面索引
+            db.execSQL("ALTER TABLE games ADD COLUMN setup BLOB")
+            createPositionIndex(db)
+        }
+        if (oldVersion < 4) {
+            // 版本4之前没有定式统计
+            createOpeningStats(db)
+            rebuildIndexes(db, oldVersion < 3)
+        }
+        if (oldVersion < 5) {
+            db.execSQL("ALTER TABLE games ADD COLUMN stones BLOB")
+            rebuildStoneBitmaps(db)
+        }
+        if (oldVersion < 6) {
+            // 之前的版本没有保存注释，已有对局重新导入后才能搜索注释
+            createCommentIndex(db)
+        }
+        if (oldVersion < 7) {
+            db.execSQL("ALTER TABLE games ADD COLUMN fingerprint INTEGER")
+            db.execSQL("ALTER TABLE games ADD COLUMN prefix_fingerprint INTEGER")
+            db.execSQL("ALTER TABLE games ADD COLUMN duplicate_of INTEGER REFERENCES games(id)")
+            createDuplicateIndex(db)
+        }
+        if (oldVersion < 8) {
+            // 版本8之前截断的棋谱只按 60 手的前缀查找，不足 60 手的截断棋谱找不到原局，重新计算
+            createPrefixIndex(db)
+            rebuildFingerprints(db)
+        }
+    }
+
+    /**
+     * 棋手单独成表，对局按棋手、日期和结果建索引
+     * 日期为 YYYYMMDD 整数，胜方见 GameSummary.WINNER_*，目差为空表示中盘胜或未知
+     */
+    private fun createSchema(db: SQLiteDatabase) {
+        db.execSQL("""
+            CREATE TABLE players (
+                id INTEGER PRIMARY KEY,
+                name TEXT NOT NULL UNIQUE
+            )
+        """.trimIndent())
         db.execSQL("""
             CREATE TABLE games (
                 id INTEGER PRIMARY KEY AUTOINCREMENT,
-                player_black TEXT,
-                player_white TEXT,
-                date TEXT,
-                moves TEXT,
-                result TEXT
+                black_id INTEGER REFERENCES players(id),
+                white_id INTEGER REFERENCES players(id),
+                board_size INTEGER NOT NULL DEFAULT 19,
+                komi REAL NOT NULL DEFAULT 0,
+                handicap INTEGER NOT NULL DEFAULT 0,
+                winner INTEGER NOT NULL DEFAULT 0,
+                margin REAL,
+                result TEXT,
+                date INTEGER NOT NULL DEFAULT 0,
+                move_count INTEGER NOT NULL DEFAULT 0,
+                moves BLOB,
+                setup BLOB,
+                stones BLOB,
+                fingerprint INTEGER,
+                prefix_fingerprint INTEGER,
+                duplicate_of INTEGER REFERENCES games(id)
             )
         """.trimIndent())
+        db.execSQL("CREATE INDEX games_black_date ON games(black_id, date)")
+        db.execSQL("CREATE INDEX games_white_date ON games(white_id, date)")
+        db.execSQL("CREATE INDEX games_date ON games(date)")
+        db.execSQL("CREATE INDEX games_result ON games(winner, date)")
+        createPositionIndex(db)
+        createOpeningStats(db)
+        createCommentIndex(db)
+        createDuplicateIndex(db)
+        createPrefixIndex(db)
     }
 
-    override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
-        db.execSQL("DROP TABLE IF EXISTS games")
-        onCreate(db)
+    /**
+     * 重复对局：指纹见 GameFingerprint，duplicate_of 指向库中最早的相同对局或前缀相同的对局
+     * 完全相同的对局按 (前缀指纹, 指纹) 一次索引查找，截断的棋谱在 prefixes 中查找后确认
+     */
+    private fun createDuplicateIndex(db: SQLiteDatabase) {
+        db.execSQL("CREATE INDEX games_fingerprint ON games(prefix_fingerprint, fingerprint)")
+        db.execSQL("CREATE INDEX games_duplicate ON games(duplicate_of)")
+    }
+
+    /**
+     * 截断棋谱的查找键：每局在 GameFingerprint.CHECKPOINTS 中不超过其手数的每个检查点各一行
+     * 两局中较短的一局到达的检查点上两局的指纹相同，截断在 60 手之前的棋谱也能找到原局
+     */
+    private fun createPrefixIndex(db: SQLiteDatabase) {
+        db.execSQL("""
+            CREATE TABLE prefixes (
+                length INTEGER NOT NULL,
+                fingerprint INTEGER NOT NULL,
+                game_id INTEGER NOT NULL REFERENCES games(id),
+                PRIMARY KEY (length, fingerprint, game_id)
+            ) WITHOUT ROWID
+        """.trimIndent())
+    }
+
+    /**
+     * 局面索引：归一化的局面哈希 -> 对局和手数，见 PositionHash
+     * 以 (hash, game_id) 为主键的无 rowid 表，按局面查询只是一次索引范围查找
+     */
+    private fun createPositionIndex(db: SQLiteDatabase) {
+        db.execSQL("""
+            CREATE TABLE positions (
+                hash INTEGER NOT NULL,
+                game_id INTEGER NOT NULL REFERENCES games(id),
+                move INTEGER NOT NULL,
+                PRIMARY KEY (hash, game_id)
+            ) WITHOUT ROWID
+        """.trimIndent())
+    }
+
+    /**
+     * 定式统计：局面哈希 + 归一化的下一手 -> 对局数和黑白胜局数，见 OpeningStats
+     * 只统计每局前 OpeningStats.DEFAULT_DEPTH 手，浏览时一次范围查找得到全部下一手
+     */
+    private fun createOpeningStats(db: SQLiteDatabase) {
+        db.execSQL("""
+            CREATE TABLE continuations (
+                hash INTEGER NOT NULL,
+                move INTEGER NOT NULL,
+                games INTEGER NOT NULL,
+                black_wins INTEGER NOT NULL,
+                white_wins INTEGER NOT NULL,
+                PRIMARY KEY (hash, move)
+            ) WITHOUT ROWID
+        """.trimIndent())
     }
 
+    /**
+     * 注释全文索引：comments 保存原文和节点位置，comments_fts 以相同的 docid 保存切好的词
+     * Android 7 的 SQLite 不保证有 FTS5，也没有中文分词器，切词在 CommentIndex 中完成，FTS4 用 simple 分词器按空格切分
+     */
+    private fun createCommentIndex(db: SQLiteDatabase) {
+        db.execSQL("""
+            CREATE TABLE comments (
+                id INTEGER PRIMARY KEY,
+                game_id INTEGER NOT NULL REFERENCES games(id),
+                path TEXT NOT NULL,
+                move INTEGER NOT NULL,
+                text TEXT NOT NULL
+            )
+        """.trimIndent())
+        db.execSQL("CREATE INDEX comments_game ON comments(game_id)")
+        db.execSQL("CREATE VIRTUAL TABLE comments_fts USING fts4(tokens, tokenize=simple)")
+    }
+
+    /**
+     * 从已有对局重建定式统计，positions 为true时同时重建局面索引
+     */
+    private fun rebuildIndexes(db: SQLiteDatabase, positions: Boolean) {
+        val stats = OpeningStats()
+        var count = 0
+        db.compileStatement(INSERT_POSITION).use { insertPosition ->
+            ContinuationWriter(db).use { writer ->
+                db.rawQuery("SELECT id, board_size, moves, setup, winner FROM games", null).use {
+                    while (it.moveToNext()) {
+                        val summary = storedGame(it, 1)
+                        summary.setWinner(it.getInt(4))
+                        if (positions) {
+                            insertPositions(insertPosition, it.getLong(0), summary)
+                        }
+                        stats.add(summary)
+                        if (++count % REBUILD_BATCH_SIZE == 0) {
+                            writer.write(stats)
+                        }
+                    }
+                }
+                writer.write(stats)
+            }
+        }
+    }
+
+    /**
+     * 为已有对局补上棋子位图，见 GameSummary.getStoneBitmap
+     */
+    private fun rebuildStoneBitmaps(db: SQLiteDatabase) {
+        db.compileStatement("UPDATE games SET stones = ? WHERE id = ?").use { update ->
+            db.rawQuery("SELECT id, board_size, moves, setup FROM games", null).use {
+                while (it.moveToNext()) {
+                    val summary = storedGame(it, 1)
+                    val bitmap = summary.stoneBitmap
+                    if (bitmap == null) update.bindNull(1) else update.bindBlob(1, bitmap)
+                    update.bindLong(2, it.getLong(0))
+                    update.executeUpdateDelete()
+                }
+            }
+        }
+    }
+
+    /**
+     * 按导入顺序为已有对局计算指纹，每局只和之前的对局比较
+     */
+    private fun rebuildFingerprints(db: SQLiteDatabase) {
+        // 先清空旧的指纹，避免对局查到之后的对局或自身
+        db.execSQL("UPDATE games SET fingerprint = NULL, prefix_fingerprint = NULL, duplicate_of = NULL")
+        db.execSQL("DELETE FROM prefixes")
+        db.compileStatement(
+            "UPDATE games SET fingerprint = ?, prefix_fingerprint = ?, duplicate_of = ? WHERE id = ?"
+        ).use { update ->
+            DuplicateFinder(db).use { duplicates ->
+                db.rawQuery("SELECT id, board_size, moves, setup FROM games ORDER BY id", null).use {
+                    while (it.moveToNext()) {
+                        val summary = storedGame(it, 1)
+                        val duplicateOf = duplicates.find(summary)
+                        update.clearBindings()
+                        summary.fingerprint?.let { value -> update.bindLong(1, value) }
+                        summary.prefixFingerprint?.let { value -> update.bindLong(2, value) }
+                        duplicateOf?.let { value -> update.bindLong(3, value) }
+                        update.bindLong(4, it.getLong(0))
+                        update.executeUpdateDelete()
+                        duplicates.insertKeys(it.getLong(0), summary)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun migrateFromV1(db: SQLiteDatabase) {
+        // 在 onUpgrade 的事务中，所有行共用一组预编译语句
+        GameWriter(db).use { writer ->
+            db.rawQuery("SELECT player_black, player_white, date, moves, result FROM games_v1 ORDER BY id", null).use {
+                while (it.moveToNext()) {
+                    writer.add(summaryOf(it.getString(0), it.getString(1), it.getString(2), it.getString(3), it.getString(4)))
+                }
+            }
+            writer.flush()
+        }
+    }
+
+    /**
+     * 旧接口：moves 为SGF文本时提取主线，否则只保存对局信息
+     */
     fun addGameRecord(playerBlack: String, playerWhite: String, date: String, moves: String, result: String): Long {
+        return addGame(summaryOf(playerBlack, playerWhite, date, moves, result))
+    }
+
+    fun addGame(summary: GameSummary): Long {
         val db = writableDatabase
-        val values = ContentValues().apply {
-            put("player_black", playerBlack)
-            put("player_white", playerWhite)
-            put("date", date)
-            put("moves", moves)
-            put("result", result)
+        GameWriter(db).use { writer ->
+            db.beginTransaction()
+            try {
+                val id = writer.add(summary)
+                writer.flush()
+                db.setTransactionSuccessful()
+                return id
+            } finally {
+                db.endTransaction()
+            }
         }
-        return db.insert("games", null, values)
     }
 
-    fun getAllGames(): List<GameRecord> {
-        val db = readableDatabase
-        val cursor = db.rawQuery("SELECT * FROM games", null)
+    /**
+     * 创建批量导入器，解析在 pool 中并行进行，调用 run 的线程写入数据库，每批一个事务
+     * run 耗时很长，不能在主线程调用，见 LibraryImportTask；run 结束时释放预编译语句
+     */
+    fun createBulkImporter(pool: ForkJoinPool = ForkJoinPool.commonPool()): BulkImporter {
+        return BulkImporter(pool, GameWriter(writableDatabase))
+    }
+
+    /**
+     * 用预编译语句写入对局，棋手编号缓存在内存中，每批只查一次新棋手
+     * 语句在创建时编译一次，用完后调用 close 释放
+     */
+    private class GameWriter(private val db: SQLiteDatabase) : BulkImporter.Sink {
+        private val continuations = ContinuationWriter(db)
+        private val stats = OpeningStats()
+        private val insertGame: SQLiteStatement = db.compileStatement(INSERT_GAME)
+        private val findPlayer: SQLiteStatement = db.compileStatement("SELECT id FROM players WHERE name = ?")
+        private val insertPlayer: SQLiteStatement = db.compileStatement("INSERT INTO players (name) VALUES (?)")
+        private val insertPosition: SQLiteStatement = db.compileStatement(INSERT_POSITION)
+        private val insertComment: SQLiteStatement = db.compileStatement(INSERT_COMMENT)
+        private val insertTokens: SQLiteStatement = db.compileStatement(INSERT_COMMENT_TOKENS)
+        private val duplicates = DuplicateFinder(db)
+        private val players = HashMap<String, Long>()
+
+        override fun write(games: List<GameSummary>) {
+            db.beginTransaction()
+            try {
+                for (game in games) {
+                    add(game)
+                }
+                // 同一批中相同的开局先在内存中合并，每个统计项只写一次
+                flush()
+                db.setTransactionSuccessful()
+            } finally {
+                stats.clear()
+                db.endTransaction()
+            }
+        }
+
+        /**
+         * 写入一局，定式统计留在内存中直到 flush，需在事务中调用
+         * @return 对局编号
+         */
+        fun add(game: GameSummary): Long {
+            val id = insert(game)
+            stats.add(game)
+            return id
+        }
+
+        /**
+         * 把 add 累积的定式统计写入数据库，需在事务中调用
+         */
+        fun flush() {
+            continuations.write(stats)
+        }
+
+        override fun close() {
+            insertGame.close()
+            findPlayer.close()
+            insertPlayer.close()
+            insertPosition.close()
+            insertComment.close()
+            insertTokens.close()
+            duplicates.close()
+            continuations.close()
+        }
+
+        private fun insert(game: GameSummary): Long {
+            insertGame.clearBindings()
+            bindPlayer(1, game.blackPlayer)
+            bindPlayer(2, game.whitePlayer)
+            insertGame.bindLong(3, game.boardSize.toLong())
+            insertGame.bindDouble(4, game.komi)
+            insertGame.bindLong(5, game.handicap.toLong())
+            insertGame.bindLong(6, game.winner.toLong())
+            if (game.margin.isNaN()) insertGame.bindNull(7) else insertGame.bindDouble(7, game.margin)
+            if (game.result == null) insertGame.bindNull(8) else insertGame.bindString(8, game.result)
+            insertGame.bindLong(9, game.date.toLong())
+            insertGame.bindLong(10, game.moveCount.toLong())
+            insertGame.bindBlob(11, game.moveData)
+            insertGame.bindBlob(12, game.setupData)
+            val stones = game.stoneBitmap
+            if (stones == null) insertGame.bindNull(13) else insertGame.bindBlob(13, stones)
+            game.fingerprint?.let { insertGame.bindLong(14, it) }
+            game.prefixFingerprint?.let { insertGame.bindLong(15, it) }
+            // 同一批中之前写入的对局在同一事务中，也能查到
+            duplicates.find(game)?.let { insertGame.bindLong(16, it) }
+            val id = insertGame.executeInsert()
+            duplicates.insertKeys(id, game)
+            insertPositions(insertPosition, id, game)
+            insertComments(insertComment, insertTokens, id, game)
+            return id
+        }
+
+        private fun bindPlayer(index: Int, name: String?) {
+            val trimmed = name?.trim()
+            if (trimmed.isNullOrEmpty()) {
+                insertGame.bindNull(index)
+                return
+            }
+            val id = players.getOrPut(trimmed) {
+                findPlayer.bindString(1, trimmed)
+                try {
+                    findPlayer.simpleQueryForLong()
+                } catch (e: SQLiteDoneException) {
+                    insertPlayer.bindString(1, trimmed)
+                    insertPlayer.executeInsert()
+                }
+            }
+            insertGame.bindLong(index, id)
+        }
+    }
+
+    /**
+     * 查找与对局重复的已有对局：先找完全相同的，没有时再找在某个检查点上前缀相同并且一局是另一局开头部分的
+     * 绝大多数对局在 prefixes 中查不到任何行，每个检查点只需一次索引查找
+     * 不足 20 手的对局没有查找键，截断在 20 手之前的棋谱只能找到完全相同的
+     */
+    private class DuplicateFinder(private val db: SQLiteDatabase) : Closeable {
+        private val findExact: SQLiteStatement = db.compileStatement(
+            "SELECT id FROM games WHERE prefix_fingerprint = ? AND fingerprint = ? AND move_count = ? ORDER BY id LIMIT 1"
+        )
+        private val findPrefix: SQLiteStatement = db.compileStatement(
+            "SELECT game_id FROM prefixes WHERE length = ? AND fingerprint = ? LIMIT 1"
+        )
+        private val insertPrefix: SQLiteStatement = db.compileStatement(INSERT_PREFIX)
+
+        /**
+         * @return 重复对局中编号最小的一局，没有时为null
+         */
+        fun find(game: GameSummary): Long? {
+            val prefix = game.prefixFingerprint ?: return null
+            findExact.bindLong(1, prefix)
+            findExact.bindLong(2, game.fingerprint)
+            findExact.bindLong(3, game.moveCount.toLong())
+            try {
+                return findExact.simpleQueryForLong()
+            } catch (e: SQLiteDoneException) {
+                // 没有完全相同的对局
+            }
+            // 从最长的检查点开始，两局中较短的一局到达的每个检查点上指纹都相同
+            val keys = game.prefixKeys ?: return null
+            for (i in keys.indices.reversed()) {
+                findNearDuplicate(game, GameFingerprint.CHECKPOINTS[i], keys[i])?.let { return it }
+            }
+            return null
+        }
+
+        private fun findNearDuplicate(game: GameSummary, length: Int, key: Long): Long? {
+            findPrefix.bindLong(1, length.toLong())
+            findPrefix.bindLong(2, key)
+            try {
+                findPrefix.simpleQueryForLong()
+            } catch (e: SQLiteDoneException) {
+                return null
+            }
+            db.rawQuery(
+                "SELECT g.id, g.board_size, g.moves, g.setup FROM prefixes p JOIN games g ON g.id = p.game_id" +
+                        " WHERE p.length = ? AND p.fingerprint = ? ORDER BY g.id LIMIT $NEAR_DUPLICATE_CANDIDATES",
+                arrayOf(length.toString(), key.toString())
+            ).use {
+                while (it.moveToNext()) {
+                    val candidate = storedGame(it, 1)
+                    if (game.isPrefixOf(candidate) || candidate.isPrefixOf(game)) {
+                        return it.getLong(0)
+                    }
+                }
+            }
+            return null
+        }
+
+        /**
+         * 写入对局的查找键，对局写入后调用
+         */
+        fun insertKeys(gameId: Long, game: GameSummary) {
+            val keys = game.prefixKeys ?: return
+            for (i in keys.indices) {
+                insertPrefix.bindLong(1, GameFingerprint.CHECKPOINTS[i].toLong())
+                insertPrefix.bindLong(2, keys[i])
+                insertPrefix.bindLong(3, gameId)
+                insertPrefix.executeInsert()
+            }
+        }
+
+        override fun close() {
+            findExact.close()
+            findPrefix.close()
+            insertPrefix.close()
+        }
+    }
+
+    /**
+     * 把内存中的统计累加到 continuations 表，写完后清空 stats，需在事务中调用
+     */
+    private class ContinuationWriter(db: SQLiteDatabase) : Closeable {
+        private val update: SQLiteStatement = db.compileStatement(UPDATE_CONTINUATION)
+        private val insert: SQLiteStatement = db.compileStatement(INSERT_CONTINUATION)
+
+        fun write(stats: OpeningStats) {
+            for (continuation in stats.all) {
+                bind(update, continuation)
+                if (update.executeUpdateDelete() == 0) {
+                    bind(insert, continuation)
+                    insert.executeInsert()
+                }
+            }
+            stats.clear()
+        }
+
+        // 两条语句的参数顺序相同
+        private fun bind(statement: SQLiteStatement, continuation: OpeningStats.Continuation) {
+            statement.bindLong(1, continuation.games.toLong())
+            statement.bindLong(2, continuation.blackWins.toLong())
+            statement.bindLong(3, continuation.whiteWins.toLong())
+            statement.bindLong(4, continuation.hash)
+            statement.bindLong(5, continuation.move.toLong())
+        }
+
+        override fun close() {
+            update.close()
+            insert.close()
+        }
+    }
+
+    private fun findPlayerId(db: SQLiteDatabase, name: String): Long? {
+        return db.rawQuery("SELECT id FROM players WHERE name = ?", arrayOf(name.trim())).use {
+            if (it.moveToFirst()) it.getLong(0) else null
+        }
+    }
+
+    /**
+     * 一次读取全部对局，棋谱库很大时改用 findGamesPage 分页浏览
+     */
+    fun getAllGames(): List<GameRecord> = findGames()
+
+    /**
+     * 按条件查询对局，按日期从新到旧排序，每个条件都走索引
+     * @param player 执黑或执白的棋手，为null不限
+     * @param fromDate 最早日期 YYYYMMDD，包含
+     * @param toDate 最晚日期 YYYYMMDD，包含
+     * @param winner 胜方，见 GameSummary.WINNER_*，为null不限
+     * @param limit 最多返回的条数，0 为不限
+     */
+    fun findGames(
+        player: String? = null,
+        fromDate: Int = 0,
+        toDate: Int = Int.MAX_VALUE,
+        winner: Int? = null,
+        limit: Int = 0
+    ): List<GameRecord> {
+        val filter = GameFilter(player, fromDate, toDate, winner)
+        return queryGames(readableDatabase, filter, null, limit)
+    }
+
+    /**
+     * 分页查询对局，条件同 findGames
+     * 按 (日期, 编号) 定位下一页，不用 OFFSET，翻到第几页都只读取一页的行，浏览时内存占用固定
+     * 翻页期间新导入的对局不会造成重复或遗漏（比当前页新的对局需要回到第一页才能看到）
+     * @param after 上一页返回的 next，第一页为null
+     * @param pageSize 每页条数
+     * @return 本页对局和下一页的位置，最后一页的 next 为null
+     */
+    fun findGamesPage(
+        after: PageKey? = null,
+        pageSize: Int = 50,
+        player: String? = null,
+        fromDate: Int = 0,
+        toDate: Int = Int.MAX_VALUE,
+        winner: Int? = null
+    ): GamePage {
+        require(pageSize > 0) { "Page size must be positive: $pageSize" }
+        val filter = GameFilter(player, fromDate, toDate, winner)
+        // 多读一条判断是否还有下一页
+        val games = queryGames(readableDatabase, filter, after, pageSize + 1)
+        if (games.size <= pageSize) {
+            return GamePage(games, null)
+        }
+        val page = games.subList(0, pageSize).toList()
+        val last = page.last()
+        return GamePage(page, PageKey(last.date, last.id))
+    }
+
+    private class GameFilter(
+        val player: String?,
+        val fromDate: Int,
+        val toDate: Int,
+        val winner: Int?
+    )
+
+    private fun queryGames(db: SQLiteDatabase, filter: GameFilter, after: PageKey?, limit: Int): List<GameRecord> {
+        val where = mutableListOf<String>()
+        val args = mutableListOf<String>()
+        if (filter.player != null) {
+            val id = findPlayerId(db, filter.player) ?: return emptyList()
+            where += "(g.black_id = ? OR g.white_id = ?)"
+            args += id.toString()
+            args += id.toString()
+        }
+        if (filter.fromDate > 0) {
+            where += "g.date >= ?"
+            args += filter.fromDate.toString()
+        }
+        if (filter.toDate < Int.MAX_VALUE) {
+            where += "g.date <= ?"
+            args += filter.toDate.toString()
+        }
+        if (filter.winner != null) {
+            where += "g.winner = ?"
+            args += filter.winner.toString()
+        }
+        if (after != null) {
+            // 与排序一致的 (date, id) 比较，date 索引中带有 rowid，从上次的位置继续读取
+            where += PAGE_AFTER
+            args += after.date.toString()
+            args += after.date.toString()
+            args += after.id.toString()
+        }
+
+        val sql = StringBuilder("SELECT $GAME_COLUMNS FROM $GAME_TABLES")
+        if (where.isNotEmpty()) {
+            sql.append(" WHERE ").append(where.joinToString(" AND "))
+        }
+        sql.append(" ORDER BY g.date DESC, g.id DESC")
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit)
+        }
+
         val games = mutableListOf<GameRecord>()
+        db.rawQuery(sql.toString(), args.toTypedArray()).use {
+            while (it.moveToNext()) {
+                games.add(readGame(it))
+            }
+        }
+        return games
+    }
 
-        cursor.use {
+    /**
+     * 查找主线中出现过棋盘当前局面的对局，旋转和镜像后相同的局面也算
+     * @param board 棋盘，使用当前手数的局面
+     * @param limit 最多返回的条数，0 为不限
+     * @return 对局和第一次出现该局面的手数（从 1 开始），按日期从新到旧排序
+     */
+    fun findGamesByPosition(board: GoBoard, limit: Int = 0): List<PositionMatch> =
+        findGamesByPosition(PositionHash.of(board), limit)
+
+    /**
+     * 同 findGamesByPosition(GoBoard, Int)
+     * @param position 归一化的局面
+     */
+    fun findGamesByPosition(position: PositionHash.Position, limit: Int = 0): List<PositionMatch> {
+        val sql = StringBuilder("SELECT $GAME_COLUMNS, p.move FROM positions p JOIN games g ON g.id = p.game_id$PLAYER_JOINS")
+            .append(" WHERE p.hash = ? ORDER BY g.date DESC, g.id DESC")
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit)
+        }
+        val matches = mutableListOf<PositionMatch>()
+        readableDatabase.rawQuery(sql.toString(), arrayOf(position.hash.toString())).use {
+            val move = it.getColumnIndexOrThrow("move")
+            while (it.moveToNext()) {
+                matches.add(PositionMatch(readGame(it), it.getInt(move)))
+            }
+        }
+        return matches
+    }
+
+    /**
+     * 定式浏览：棋库中从棋盘当前局面走出的所有下一手，旋转和镜像后相同的局面合并
+     * 开局部分直接读取预先汇总的统计，更深的局面从局面索引现算，最多读取 EXPLORE_FALLBACK_LIMIT 局
+     * @param board 棋盘，使用当前手数的局面
+     * @return 下一手，坐标已转换到这个棋盘的朝向，按对局数从多到少排序
+     */
+    fun explore(board: GoBoard): List<Continuation> = explore(PositionHash.of(board))
+
+    /**
+     * 同 explore(GoBoard)
+     * @param position 归一化的局面
+     */
+    fun explore(position: PositionHash.Position): List<Continuation> {
+        val db = readableDatabase
+        val continuations = mutableListOf<Continuation>()
+        db.rawQuery(
+            "SELECT move, games, black_wins, white_wins FROM continuations WHERE hash = ? ORDER BY games DESC, move",
+            arrayOf(position.hash.toString())
+        ).use {
+            while (it.moveToNext()) {
+                continuations.add(Continuation.of(position.toBoard(it.getInt(0)), it.getInt(1), it.getInt(2), it.getInt(3)))
+            }
+        }
+        if (continuations.isNotEmpty()) {
+            return continuations
+        }
+
+        val stats = OpeningStats()
+        db.rawQuery(
+            "SELECT g.board_size, g.moves, g.setup, g.winner, p.move FROM positions p JOIN games g ON g.id = p.game_id" +
+                    " WHERE p.hash = ? LIMIT $EXPLORE_FALLBACK_LIMIT",
+            arrayOf(position.hash.toString())
+        ).use {
+            while (it.moveToNext()) {
+                val summary = storedGame(it, 0)
+                val line = summary.positions ?: continue
+                val move = it.getInt(4)
+                if (move < line.moveCount) {
+                    stats.add(position.hash, line.getNextMove(move), it.getInt(3), 1)
+                }
+            }
+        }
+        for (continuation in stats.get(position.hash)) {
+            continuations.add(Continuation.of(position.toBoard(continuation.move), continuation.games,
+                continuation.blackWins, continuation.whiteWins))
+        }
+        return continuations
+    }
+
+    /**
+     * 棋形搜索：查找主线上出现过该棋形的对局，旋转和镜像都算
+     * 先只读取棋子位图排除不可能的对局，再分批读取候选对局的着手，在 pool 中并行重放核对
+     * 耗时与棋谱库大小成正比，不能在主线程调用
+     * @param pattern 棋形
+     * @param pool 执行核对的线程池
+     * @param limit 最多返回的条数，0 为不限
+     * @return 对局和棋形第一次出现的手数（0 为摆子中已有），按日期从新到旧排序
+     */
+    fun findGamesByPattern(
+        pattern: PatternSearch.Pattern,
+        pool: ForkJoinPool = ForkJoinPool.commonPool(),
+        limit: Int = 0
+    ): List<PositionMatch> {
+        val db = readableDatabase
+        val search = PatternSearch(pattern)
+        val candidates = mutableListOf<Long>()
+        db.rawQuery("SELECT id, board_size, stones FROM games ORDER BY date DESC, id DESC", null).use {
             while (it.moveToNext()) {
-                games.add(GameRecord(
-                    id = it.getLong(it.getColumnIndexOrThrow("id")),
-                    playerBlack = it.getString(it.getColumnIndexOrThrow("player_black")),
-                    playerWhite = it.getString(it.getColumnIndexOrThrow("player_white")),
-                    date = it.getString(it.getColumnIndexOrThrow("date")),
-                    moves = it.getString(it.getColumnIndexOrThrow("moves")),
-                    gameResult = it.getString(it.getColumnIndexOrThrow("result"))
-                ))
+                if (!it.isNull(2) && search.mayMatch(it.getInt(1), it.getBlob(2))) {
+                    candidates.add(it.getLong(0))
+                }
+            }
+        }
+
+        val found = mutableListOf<Pair<Long, Int>>()
+        for (chunk in candidates.chunked(PATTERN_BATCH_SIZE)) {
+            val games = HashMap<Long, GameSummary>()
+            val placeholders = chunk.joinToString(",") { "?" }
+            db.rawQuery(
+                "SELECT id, board_size, moves, setup FROM games WHERE id IN ($placeholders)",
+                chunk.map { it.toString() }.toTypedArray()
+            ).use {
+                while (it.moveToNext()) {
+                    val summary = storedGame(it, 1)
+                    games[it.getLong(0)] = summary
+                }
+            }
+            // 保持候选的日期顺序
+            val ids = chunk.filter { games.containsKey(it) }
+            val moves = search.findAll(ids.map { games.getValue(it) }, pool)
+            for (i in ids.indices) {
+                if (moves[i] >= 0) {
+                    found.add(ids[i] to moves[i])
+                }
+            }
+            if (limit > 0 && found.size >= limit) {
+                break
+            }
+        }
+
+        val matches = mutableListOf<PositionMatch>()
+        for ((id, move) in if (limit > 0) found.take(limit) else found) {
+            db.rawQuery("SELECT $GAME_COLUMNS FROM $GAME_TABLES WHERE g.id = ?", arrayOf(id.toString())).use {
+                if (it.moveToFirst()) {
+                    matches.add(PositionMatch(readGame(it), move))
+                }
+            }
+        }
+        return matches
+    }
+
+    /**
+     * 在注释中搜索，中文按相邻两字匹配，外文单词按前缀匹配，见 CommentIndex.toMatchQuery
+     * @param query 用户输入，空格分隔的各部分都要出现
+     * @param limit 最多返回的条数，0 为不限
+     * @return 命中的注释和所在节点，按对局日期从新到旧、节点先后排序
+     */
+    fun searchComments(query: String, limit: Int = 200): List<CommentMatch> {
+        val match = CommentIndex.toMatchQuery(query) ?: return emptyList()
+        val sql = StringBuilder("SELECT $GAME_COLUMNS, c.path, c.move AS node_move, c.text FROM comments_fts")
+            .append(" JOIN comments c ON c.id = comments_fts.docid JOIN games g ON g.id = c.game_id$PLAYER_JOINS")
+            .append(" WHERE comments_fts MATCH ? ORDER BY g.date DESC, g.id DESC, c.id")
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit)
+        }
+        val matches = mutableListOf<CommentMatch>()
+        readableDatabase.rawQuery(sql.toString(), arrayOf(match)).use {
+            val path = it.getColumnIndexOrThrow("path")
+            val move = it.getColumnIndexOrThrow("node_move")
+            val text = it.getColumnIndexOrThrow("text")
+            while (it.moveToNext()) {
+                matches.add(CommentMatch(readGame(it), it.getString(path), it.getInt(move), it.getString(text)))
+            }
+        }
+        return matches
+    }
+
+    /**
+     * 查找与对局重复的其他对局：它所指向的原局，以及指向它或同一原局的对局
+     * @return 重复的对局，按编号排序，不包括自身
+     */
+    fun findDuplicates(gameId: Long): List<GameRecord> {
+        val db = readableDatabase
+        val original = db.rawQuery("SELECT duplicate_of FROM games WHERE id = ?", arrayOf(gameId.toString())).use {
+            if (it.moveToFirst() && !it.isNull(0)) it.getLong(0) else gameId
+        }
+        val games = mutableListOf<GameRecord>()
+        db.rawQuery(
+            "SELECT $GAME_COLUMNS FROM $GAME_TABLES WHERE (g.id = ? OR g.duplicate_of = ?) AND g.id != ? ORDER BY g.id",
+            arrayOf(original.toString(), original.toString(), gameId.toString())
+        ).use {
+            while (it.moveToNext()) {
+                games.add(readGame(it))
             }
         }
         return games
     }
+
+    /**
+     * 读取对局的主线着手
+     * @return 着手列表，虚手为 (-1,-1)
+     */
+    fun getMoves(gameId: Long): List<GoBoard.Move> {
+        readableDatabase.rawQuery("SELECT moves FROM games WHERE id = ?", arrayOf(gameId.toString())).use {
+            if (it.moveToFirst() && !it.isNull(0)) {
+                return GameSummary.decodeMoves(it.getBlob(0))
+            }
+        }
+        return emptyList()
+    }
+
+    /**
+     * 读取对局的摆子（让子等）
+     * @return 摆子列表，颜色为 GoBoard.BLACK 或 GoBoard.WHITE
+     */
+    fun getSetup(gameId: Long): List<GoBoard.Move> {
+        readableDatabase.rawQuery("SELECT setup FROM games WHERE id = ?", arrayOf(gameId.toString())).use {
+            if (it.moveToFirst() && !it.isNull(0)) {
+                return GameSummary.decodeMoves(it.getBlob(0))
+            }
+        }
+        return emptyList()
+    }
+
+    /**
+     * 重放对局得到某一手的局面，用于缩略图
+     * @param moveNumber 手数，0 为第一手之前，负数为终局
+     * @return 局面，对局不存在或棋盘大小无效时为null
+     */
+    fun getPosition(gameId: Long, moveNumber: Int = -1): PackedPosition? {
+        readableDatabase.rawQuery("SELECT board_size, moves, setup FROM games WHERE id = ?", arrayOf(gameId.toString())).use {
+            if (it.moveToFirst()) {
+                return PackedPosition.of(storedGame(it, 0), moveNumber)
+            }
+        }
+        return null
+    }
+
+    private fun readGame(cursor: Cursor): GameRecord {
+        val margin = cursor.getColumnIndexOrThrow("margin")
+        return GameRecord(
+            id = cursor.getLong(cursor.getColumnIndexOrThrow("id")),
+            playerBlack = cursor.getString(cursor.getColumnIndexOrThrow("player_black")),
+            playerWhite = cursor.getString(cursor.getColumnIndexOrThrow("player_white")),
+            boardSize = cursor.getInt(cursor.getColumnIndexOrThrow("board_size")),
+            komi = cursor.getDouble(cursor.getColumnIndexOrThrow("komi")),
+            handicap = cursor.getInt(cursor.getColumnIndexOrThrow("handicap")),
+            winner = cursor.getInt(cursor.getColumnIndexOrThrow("winner")),
+            margin = if (cursor.isNull(margin)) null else cursor.getDouble(margin),
+            gameResult = cursor.getString(cursor.getColumnIndexOrThrow("result")),
+            date = cursor.getInt(cursor.getColumnIndexOrThrow("date")),
+            moveCount = cursor.getInt(cursor.getColumnIndexOrThrow("move_count"))
+        )
+    }
+
+    private fun summaryOf(playerBlack: String?, playerWhite: String?, date: String?, moves: String?, result: String?): GameSummary {
+        val summary = try {
+            if (moves != null && moves.trimStart().startsWith("(")) GameSummary.of(SGFParser.parse(moves)) else GameSummary()
+        } catch (e: SGFParser.SGFParseException) {
+            GameSummary()
+        }
+        summary.blackPlayer = playerBlack
+        summary.whitePlayer = playerWhite
+        summary.date = GameSummary.parseDate(date)
+        summary.setResult(result)
+        return summary
+    }
 }
 
 data class GameRecord(
     val id: Long,
-    val playerBlack: String,
-    val playerWhite: String,
-    val date: String,
-    val moves: String,
-    val gameResult: String
-)
\ No newline at end of file
+    val playerBlack: String?,
+    val playerWhite: String?,
+    val boardSize: Int,
+    val komi: Double,
+    val handicap: Int,
+    val winner: Int,
+    val margin: Double?,
+    val gameResult: String?,
+    val date: Int,
+    val moveCount: Int
+)
+
+data class PositionMatch(
+    val game: GameRecord,
+    val moveNumber: Int
+)
+
+/**
+ * 分页位置：上一页最后一条对局的日期和编号
+ */
+data class PageKey(
+    val date: Int,
+    val id: Long
+)
+
+data class GamePage(
+    val games: List<GameRecord>,
+    val next: PageKey?
+)
+
+/**
+ * 注释搜索的结果
+ * @property path 节点路径，见 CommentIndex.Entry.getPath
+ * @property moveNumber 从开局到该节点的手数，主线节点可直接跳转
+ */
+data class CommentMatch(
+    val game: GameRecord,
+    val path: String,
+    val moveNumber: Int,
+    val text: String
+)
+
+/**
+ * 定式浏览中的一种下一手
+ * @property x 棋盘坐标，虚手为 -1
+ * @property y 棋盘坐标，虚手为 -1
+ */
+data class Continuation(
+    val x: Int,
+    val y: Int,
+    val games: Int,
+    val blackWins: Int,
+    val whiteWins: Int
+) {
+    val blackWinRate: Double get() = if (games > 0) blackWins.toDouble() / games else 0.0
+    val whiteWinRate: Double get() = if (games > 0) whiteWins.toDouble() / games else 0.0
+
+    companion object {
+        fun of(point: Int, games: Int, blackWins: Int, whiteWins: Int): Continuation {
+            return if (point == PositionHash.PASS) {
+                Continuation(-1, -1, games, blackWins, whiteWins)
+            } else {
+                Continuation(point % SGFPointSet.MAX_SIZE, point / SGFPointSet.MAX_SIZE, games, blackWins, whiteWins)
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.gosgf.app.data
+
+import android.content.ContentResolver
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import com.gosgf.app.util.BulkImporter
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * 在后台线程把一批SGF导入棋谱库，进度和结果回到主线程
+ * 后台线程只负责写数据库，解析在独立的线程池中并行进行，界面线程不参与
+ */
+class LibraryImportTask(
+    private val helper: DatabaseHelper,
+    private val sources: List<BulkImporter.Source>,
+    private val onProgress: (BulkImporter.Progress) -> Unit,
+    private val onFinished: (BulkImporter.Progress?, Exception?) -> Unit
+) {
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+    // 留一个核给界面和写线程
+    private val pool = ForkJoinPool(maxOf(1, Runtime.getRuntime().availableProcessors() - 1))
+    // 在导入线程上创建，创建之前的取消由 cancelled 记录
+    @Volatile private var importer: BulkImporter? = null
+    @Volatile private var cancelled = false
+
+    fun start() {
+        Thread({
+            var progress: BulkImporter.Progress? = null
+            var error: Exception? = null
+            try {
+                // 打开数据库可能触发升级时的全库重建，和写入一样不能在主线程进行
+                val importer = helper.createBulkImporter(pool)
+                importer.setProgressListener { progress -> mainHandler.post { onProgress(progress) } }
+                this.importer = importer
+                if (cancelled) {
+                    importer.cancel()
+                }
+                progress = importer.run(sources)
+            } catch (e: Exception) {
+                error = e
+            } finally {
+                pool.shutdown()
+            }
+            mainHandler.post { onFinished(progress, error) }
+        }, "library-import").start()
+    }
+
+    fun cancel() {
+        cancelled = true
+        importer?.cancel()
+    }
+
+    /**
+     * 通过 ContentResolver 读取的文件，用于 ACTION_OPEN_DOCUMENT 选择的多个文件
+     */
+    class UriSource(private val resolver: ContentResolver, private val uri: Uri) : BulkImporter.Source {
+        override fun getName(): String = uri.toString()
+
+        override fun open(): InputStream {
+            return resolver.openInputStream(uri) ?: throw IOException("Cannot open $uri")
+        }
+    }
+}
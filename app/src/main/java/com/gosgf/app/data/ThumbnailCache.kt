@@ -0,0 +1,209 @@
+package com.gosgf.app.data
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.os.Handler
+import android.os.Looper
+import android.util.LruCache
+import com.gosgf.app.util.PackedPosition
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * 棋谱库列表的局面缩略图，按对局编号和手数缓存
+ * 查找顺序为内存 LRU、磁盘缓存、从数据库重放并渲染；后两步在后台线程进行，结果回到主线程
+ * 磁盘缓存有总大小上限，超出时删除最久未用的文件
+ */
+class ThumbnailCache(
+    context: Context,
+    private val helper: DatabaseHelper,
+    private val sizePx: Int,
+    private val maxDiskBytes: Long = DEFAULT_DISK_BYTES
+) {
+
+    companion object {
+        // 终局的手数
+        const val FINAL_POSITION = -1
+        private const val DEFAULT_DISK_BYTES = 16L * 1024 * 1024
+        private const val DIRECTORY = "thumbnails"
+        // 超出上限时删到上限的这个比例，避免每次写入都要清理
+        private const val TRIM_RATIO = 0.9
+        // 棋盘格小于这个像素数时不画线，只画棋子
+        private const val MIN_GRID_CELL_PX = 4f
+    }
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+    // 单线程：磁盘占用的统计只在这个线程上修改
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor { Thread(it, "thumbnails") }
+    private val memory = object : LruCache<String, Bitmap>((Runtime.getRuntime().maxMemory() / 32).toInt()) {
+        override fun sizeOf(key: String, value: Bitmap): Int = value.byteCount
+    }
+    private val directory = File(context.cacheDir, DIRECTORY)
+    // 正在生成的缩略图和等待它的回调，只在主线程访问
+    private val pending = HashMap<String, MutableList<(Bitmap?) -> Unit>>()
+    private var diskBytes = -1L
+
+    private val linePaint = Paint().apply { color = Color.rgb(150, 100, 50) }
+    private val stonePaint = Paint(Paint.ANTI_ALIAS_FLAG)
+    private val outlinePaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+        style = Paint.Style.STROKE
+        color = Color.DKGRAY
+    }
+
+    /**
+     * 取缩略图，需在主线程调用
+     * @param moveNumber 手数，FINAL_POSITION 为终局
+     * @param callback 内存中没有时，生成后在主线程回调，失败为null
+     * @return 内存中已有的缩略图，此时不会回调
+     */
+    fun get(gameId: Long, moveNumber: Int = FINAL_POSITION, callback: (Bitmap?) -> Unit): Bitmap? {
+        val key = keyOf(gameId, moveNumber)
+        memory.get(key)?.let { return it }
+        val waiting = pending[key]
+        if (waiting != null) {
+            waiting.add(callback)
+            return null
+        }
+        pending[key] = mutableListOf(callback)
+        executor.execute {
+            val bitmap = try {
+                loadOrRender(key, gameId, moveNumber)
+            } catch (e: Exception) {
+                null
+            }
+            mainHandler.post {
+                if (bitmap != null) {
+                    memory.put(key, bitmap)
+                }
+                pending.remove(key)?.forEach { it(bitmap) }
+            }
+        }
+        return null
+    }
+
+    /**
+     * 对局被修改或删除后调用，去掉它在内存中的缩略图，磁盘文件在后台删除
+     */
+    fun invalidate(gameId: Long) {
+        val prefix = "${gameId}_"
+        for (key in memory.snapshot().keys) {
+            if (key.startsWith(prefix)) {
+                memory.remove(key)
+            }
+        }
+        executor.execute {
+            directory.listFiles { file -> file.name.startsWith(prefix) }?.forEach { deleteFile(it) }
+        }
+    }
+
+    /**
+     * 停止后台线程，未完成的请求不再回调
+     */
+    fun close() {
+        executor.shutdownNow()
+        pending.clear()
+    }
+
+    private fun keyOf(gameId: Long, moveNumber: Int) = "${gameId}_${moveNumber}_$sizePx"
+
+    private fun loadOrRender(key: String, gameId: Long, moveNumber: Int): Bitmap? {
+        val file = File(directory, "$key.png")
+        if (file.isFile) {
+            BitmapFactory.decodeFile(file.path)?.let {
+                // 修改时间作为最近使用时间，清理时按它排序
+                file.setLastModified(System.currentTimeMillis())
+                return it
+            }
+        }
+        val position = helper.getPosition(gameId, moveNumber) ?: return null
+        val bitmap = render(position)
+        store(file, bitmap)
+        return bitmap
+    }
+
+    /**
+     * 渲染缩略图：木色底、棋盘线（格子太小时省略）、棋子
+     */
+    fun render(position: PackedPosition): Bitmap {
+        val bitmap = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(bitmap)
+        canvas.drawColor(Color.rgb(238, 198, 145))
+        val size = position.size
+        val cell = sizePx.toFloat() / size
+        val offset = cell / 2
+        if (cell >= MIN_GRID_CELL_PX) {
+            val end = offset + cell * (size - 1)
+            for (i in 0 until size) {
+                val p = offset + cell * i
+                canvas.drawLine(offset, p, end, p, linePaint)
+                canvas.drawLine(p, offset, p, end, linePaint)
+            }
+        }
+        val radius = cell * 0.48f
+        for (y in 0 until size) {
+            for (x in 0 until size) {
+                val stone = position.get(x, y)
+                if (stone == 0) continue
+                val cx = offset + cell * x
+                val cy = offset + cell * y
+                stonePaint.color = if (stone == 1) Color.BLACK else Color.WHITE
+                canvas.drawCircle(cx, cy, radius, stonePaint)
+                if (stone == 2 && cell >= MIN_GRID_CELL_PX) {
+                    canvas.drawCircle(cx, cy, radius, outlinePaint)
+                }
+            }
+        }
+        return bitmap
+    }
+
+    /**
+     * 先写临时文件再改名，进程中途退出也不会留下半个文件
+     */
+    private fun store(file: File, bitmap: Bitmap) {
+        if (!directory.isDirectory && !directory.mkdirs()) {
+            return
+        }
+        val temp = File(directory, file.name + ".tmp")
+        try {
+            FileOutputStream(temp).use { bitmap.compress(Bitmap.CompressFormat.PNG, 100, it) }
+            if (!temp.renameTo(file)) {
+                throw IOException("Cannot rename $temp")
+            }
+        } catch (e: IOException) {
+            temp.delete()
+            return
+        }
+        if (diskBytes < 0) {
+            diskBytes = directory.listFiles()?.sumOf { it.length() } ?: 0L
+        } else {
+            diskBytes += file.length()
+        }
+        if (diskBytes > maxDiskBytes) {
+            trim()
+        }
+    }
+
+    private fun trim() {
+        val files = directory.listFiles() ?: return
+        files.sortBy { it.lastModified() }
+        val target = (maxDiskBytes * TRIM_RATIO).toLong()
+        for (file in files) {
+            if (diskBytes <= target) break
+            deleteFile(file)
+        }
+    }
+
+    private fun deleteFile(file: File) {
+        val length = file.length()
+        if (file.delete() && diskBytes >= 0) {
+            diskBytes -= length
+        }
+    }
+}
@@ -13,7 +13,9 @@ import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.GestureDetector;
 import android.view.View;
+import com.gosgf.app.data.Continuation;
 import com.gosgf.app.model.GoBoard;
+import java.util.Collections;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
@@ -42,7 +44,11 @@ public class BoardView extends View {
     private Paint markPaint;
     private Paint labelPaint;
     private Paint coordPaint;
+    private Paint continuationPaint;
+    private Paint continuationLabelPaint;
     private GoBoard board;
+    // 棋谱库中从当前局面走出的下一手，见 DatabaseHelper.explore
+    private List<Continuation> continuations = Collections.emptyList();
     
     // 棋盘相关尺寸
     private float gridSize;
@@ -116,6 +122,14 @@ public class BoardView extends View {
         coordPaint.setTextAlign(Paint.Align.CENTER);
         coordPaint.setTextSize(10f);
         
+        continuationPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        continuationPaint.setColor(Color.argb(110, 255, 140, 0));
+        continuationPaint.setStyle(Paint.Style.FILL);
+        
+        continuationLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        continuationLabelPaint.setColor(Color.rgb(120, 50, 0));
+        continuationLabelPaint.setTextAlign(Paint.Align.CENTER);
+        
         board = new GoBoard();
         
         // 初始化缩放手势检测器
@@ -297,6 +311,23 @@ public class BoardView extends View {
             }
         }
         
+        // 棋谱库中的下一手，标出对局数
+        if (board != null) {
+            continuationLabelPaint.setTextSize(stoneRadius * 0.6f);
+            for (Continuation continuation : continuations) {
+                int x = continuation.getX();
+                int y = continuation.getY();
+                if (x < 0 || y < 0 || x >= BOARD_SIZE || y >= BOARD_SIZE || board.getStone(x, y) != 0) {
+                    continue;
+                }
+                float cx = startX + x * gridSize;
+                float cy = startY + y * gridSize;
+                canvas.drawCircle(cx, cy, stoneRadius * 0.7f, continuationPaint);
+                canvas.drawText(String.valueOf(continuation.getGames()), cx,
+                        cy + continuationLabelPaint.getTextSize() * 0.35f, continuationLabelPaint);
+            }
+        }
+        
         // Draw next move position if it exists
         if (board != null) {
             int currentMoveNumber = board.getCurrentMoveNumber();
@@ -415,6 +446,15 @@ public class BoardView extends View {
         return board;
     }
     
+    /**
+     * 设置棋谱库中从当前局面走出的下一手，局面改变后由 MainActivity 重新查询
+     * @param continuations 下一手，空列表表示不显示
+     */
+    public void setContinuations(List<Continuation> continuations) {
+        this.continuations = continuations;
+        invalidate();
+    }
+    
     public void invalidateBoard() {
         invalidate();
         requestLayout();  // 添加这行确保完全刷新
@@ -617,6 +657,7 @@ public class BoardView extends View {
                                                 // 通知MainActivity更新游戏信息和注释
                                                 if (getContext() instanceof MainActivity) {
                                                     MainActivity activity = (MainActivity) getContext();
+                                                    activity.onVariationSelected(i);
                                                     activity.updateGameInfo();
                                                     activity.updateCommentDisplay();
                                                 }
@@ -648,6 +689,7 @@ public class BoardView extends View {
                                                     // 通知MainActivity更新游戏信息和注释
                                                     if (getContext() instanceof MainActivity) {
                                                         MainActivity activity = (MainActivity) getContext();
+                                                        activity.onVariationSelected(i);
                                                         activity.updateGameInfo();
                                                         activity.updateCommentDisplay();
                                                     }
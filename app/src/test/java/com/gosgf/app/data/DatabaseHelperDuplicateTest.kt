@@ -0,0 +1,60 @@
+package com.gosgf.app.data
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class DatabaseHelperDuplicateTest {
+
+    private lateinit var helper: DatabaseHelper
+
+    @Before
+    fun setUp() {
+        helper = DatabaseHelper(ApplicationProvider.getApplicationContext())
+    }
+
+    @After
+    fun tearDown() {
+        helper.close()
+    }
+
+    @Test
+    fun findsTruncatedRecordShorterThanPrefix() {
+        // 测试截断在 60 手之前的棋谱能找到原局，先导入截断的或先导入完整的都一样
+        val truncated = helper.addGameRecord("甲", "乙", "2020-01-01", sgf(45), "")
+        val full = helper.addGameRecord("甲", "乙", "2020-01-01", sgf(150), "B+R")
+        val again = helper.addGameRecord("甲", "乙", "2020-01-02", sgf(25), "")
+        assertEquals(listOf(full, again), helper.findDuplicates(truncated).map { it.id })
+        assertEquals(listOf(truncated, full), helper.findDuplicates(again).map { it.id })
+    }
+
+    @Test
+    fun shortRecordsAreNotNearDuplicates() {
+        // 测试不足 20 手的棋谱没有查找键，只找完全相同的
+        val full = helper.addGameRecord("甲", "乙", "2020-01-01", sgf(150), "B+R")
+        val short = helper.addGameRecord("甲", "乙", "2020-01-01", sgf(15), "")
+        assertTrue(helper.findDuplicates(short).isEmpty())
+        val same = helper.addGameRecord("甲", "乙", "2020-01-02", sgf(15), "")
+        assertEquals(listOf(short), helper.findDuplicates(same).map { it.id })
+        assertTrue(helper.findDuplicates(full).isEmpty())
+    }
+
+    /**
+     * 生成不提子的对局：黑白在棋盘上逐行交替落子
+     */
+    private fun sgf(moves: Int): String {
+        val sgf = StringBuilder("(;SZ[19]")
+        for (i in 0 until moves) {
+            val x = 'a' + i % 19
+            val y = 'a' + (i / 19) * 2 + i % 2
+            sgf.append(';').append(if (i % 2 == 0) 'B' else 'W').append('[').append(x).append(y).append(']')
+        }
+        return sgf.append(')').toString()
+    }
+}
@@ -0,0 +1,67 @@
+package com.gosgf.app.data
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class DatabaseHelperPagingTest {
+
+    private lateinit var helper: DatabaseHelper
+
+    @Before
+    fun setUp() {
+        helper = DatabaseHelper(ApplicationProvider.getApplicationContext())
+        // 只有四种日期，同一天的多局按编号翻页
+        for (i in 0 until 40) {
+            helper.addGameRecord(if (i % 3 == 0) "甲" else "乙", "丙", "2020-01-0${i % 4 + 1}", "(;SZ[19];B[pd])", "B+R")
+        }
+    }
+
+    @After
+    fun tearDown() {
+        helper.close()
+    }
+
+    @Test
+    fun pagesCoverAllGamesInOrder() {
+        // 测试逐页读取的结果与一次查询全部相同，不重复、不遗漏
+        assertEquals(helper.findGames(), readAllPages(7, null))
+        assertEquals(helper.findGames(player = "甲"), readAllPages(3, "甲"))
+        // 恰好整页时最后一页之后没有下一页
+        assertNull(helper.findGamesPage(pageSize = 40).next)
+    }
+
+    @Test
+    fun pageAfterSeeksOnDateIndex() {
+        // 测试翻页条件在 date 索引上按范围定位，而不是从头扫描
+        val sql = "EXPLAIN QUERY PLAN SELECT g.id FROM games g WHERE ${DatabaseHelper.PAGE_AFTER}" +
+                " ORDER BY g.date DESC, g.id DESC LIMIT 50"
+        val plan = StringBuilder()
+        helper.readableDatabase.rawQuery(sql, arrayOf("20200102", "20200102", "10")).use {
+            val detail = it.getColumnIndexOrThrow("detail")
+            while (it.moveToNext()) {
+                plan.append(it.getString(detail)).append('\n')
+            }
+        }
+        assertTrue(plan.toString(), plan.contains("SEARCH") && plan.contains("games_date"))
+    }
+
+    private fun readAllPages(pageSize: Int, player: String?): List<GameRecord> {
+        val games = mutableListOf<GameRecord>()
+        var after: PageKey? = null
+        do {
+            val page = helper.findGamesPage(after, pageSize, player)
+            assertTrue(page.games.size <= pageSize)
+            games += page.games
+            after = page.next
+        } while (after != null)
+        return games
+    }
+}
@@ -0,0 +1,41 @@
+package com.gosgf.app.benchmark;
+
+import com.gosgf.app.model.GoBoard;
+import com.gosgf.app.util.SGFConverter;
+import com.gosgf.app.util.SGFParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已解析的树加载到新棋盘，不含文本解析
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConverterBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public CorpusSize size;
+
+    private SGFParser.SGFTree tree;
+
+    @Setup
+    public void setUp() throws Exception {
+        tree = SGFParser.parse(size.sgf());
+    }
+
+    @Benchmark
+    public GoBoard sgfTreeToBoard() {
+        GoBoard board = new GoBoard();
+        SGFConverter.sgfTreeToBoard(tree, board);
+        return board;
+    }
+}
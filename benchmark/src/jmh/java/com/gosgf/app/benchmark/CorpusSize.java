@@ -0,0 +1,71 @@
+package com.gosgf.app.benchmark;
+
+import com.gosgf.app.model.GoBoard;
+import com.gosgf.app.util.SGFCorpusGenerator;
+import com.gosgf.app.util.SGFParser;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 基准输入规模 - 用固定种子生成，每次运行的输入相同，结果可以跨版本比较
+ */
+public enum CorpusSize {
+    // 短对局，没有分支和注释
+    SMALL(60, 0, 1, 10, 20, 0),
+    // 完整对局，少量分支和短注释
+    MEDIUM(250, 2, 1, 20, 20, 40),
+    // 研究棋谱，两层分支和长注释，一万多个节点
+    HUGE(400, 3, 2, 30, 15, 200);
+
+    private static final long SEED = 20240101L;
+
+    private final int moves;
+    private final int branchFactor;
+    private final int variationDepth;
+    private final int variationLength;
+    private final int branchInterval;
+    private final int commentLength;
+
+    CorpusSize(int moves, int branchFactor, int variationDepth, int variationLength, int branchInterval, int commentLength) {
+        this.moves = moves;
+        this.branchFactor = branchFactor;
+        this.variationDepth = variationDepth;
+        this.variationLength = variationLength;
+        this.branchInterval = branchInterval;
+        this.commentLength = commentLength;
+    }
+
+    /**
+     * 生成该规模的对局
+     * @return SGF树
+     */
+    public SGFParser.SGFTree tree() {
+        // 非法着手的日志不计入基准
+        Logger.getLogger("GoBoard").setLevel(Level.OFF);
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(SEED);
+        generator.setMoves(moves);
+        generator.setBranchFactor(branchFactor);
+        generator.setVariationDepth(variationDepth);
+        generator.setVariationLength(variationLength);
+        generator.setBranchInterval(branchInterval);
+        generator.setCommentLength(commentLength);
+        return generator.generate(0);
+    }
+
+    /**
+     * @return 该规模对局的SGF文本
+     */
+    public String sgf() throws SGFParser.SGFParseException {
+        return SGFParser.save(tree());
+    }
+
+    /**
+     * @return 加载了该规模对局的棋盘
+     */
+    public GoBoard board() throws SGFParser.SGFParseException {
+        GoBoard board = new GoBoard();
+        SGFParser.parseSGF(sgf(), board);
+        return board;
+    }
+}
@@ -0,0 +1,72 @@
+package com.gosgf.app.benchmark;
+
+import com.gosgf.app.model.GoBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 棋盘操作：逐手落子、跳转手数和保存为SGF
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GoBoardBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public CorpusSize size;
+
+    // 主线着手，虚手为 (-1,-1)
+    private int[] xs;
+    private int[] ys;
+    private GoBoard board;
+
+    @Setup
+    public void setUp() throws Exception {
+        board = size.board();
+        List<GoBoard.Move> moves = board.getMoveHistory();
+        xs = new int[moves.size()];
+        ys = new int[moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            xs[i] = moves.get(i).x;
+            ys[i] = moves.get(i).y;
+        }
+    }
+
+    /**
+     * 在空棋盘上按主线逐手落子，包括提子和合法性检查
+     */
+    @Benchmark
+    public GoBoard placeStone() {
+        GoBoard board = new GoBoard();
+        for (int i = 0; i < xs.length; i++) {
+            board.placeStone(xs[i], ys[i]);
+        }
+        return board;
+    }
+
+    /**
+     * 跳到主线最后一手，棋盘从初始局面重新摆出
+     */
+    @Benchmark
+    public int setCurrentMoveNumber() {
+        board.setCurrentMoveNumber(xs.length - 1);
+        return board.getCurrentPlayer();
+    }
+
+    /**
+     * 保存整个棋谱，包括所有分支和注释
+     */
+    @Benchmark
+    public String toSGFString() {
+        return board.toSGFString();
+    }
+}
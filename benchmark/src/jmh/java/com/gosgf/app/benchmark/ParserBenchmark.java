@@ -0,0 +1,37 @@
+package com.gosgf.app.benchmark;
+
+import com.gosgf.app.util.SGFParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SGF文本解析为树
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParserBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public CorpusSize size;
+
+    private String sgf;
+
+    @Setup
+    public void setUp() throws Exception {
+        sgf = size.sgf();
+    }
+
+    @Benchmark
+    public SGFParser.SGFTree parse() throws SGFParser.SGFParseException {
+        return SGFParser.parse(sgf);
+    }
+}
@@ -5,25 +5,58 @@ import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Collections;
-import android.graphics.Point;
 import java.util.Arrays;
 
 // 添加导入
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
-// 添加Log导入
-import android.util.Log;
+// 使用 java.util.logging，不依赖 Android，可在普通JVM上运行
+import java.util.logging.Logger;
 // 添加SGFParser导入
 import com.gosgf.app.util.SGFParser;
 import com.gosgf.app.util.SGFConverter;
+import com.gosgf.app.util.SGFWriter;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.function.Supplier;
 
 public class GoBoard {
     
+    private static final Logger LOG = Logger.getLogger("GoBoard");
+    
+    // 棋盘坐标，用于棋块搜索和记录提子位置
+    private static final class Point {
+        final int x;
+        final int y;
+        
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Point)) {
+                return false;
+            }
+            Point other = (Point) o;
+            return x == other.x && y == other.y;
+        }
+        
+        @Override
+        public int hashCode() {
+            return x * 31 + y;
+        }
+    }
+    
     // Variation 类：封装分支信息
     public static class Variation {
         private List<Move> moves;
+        private Supplier<List<Move>> loader; // 延迟加载的分支，首次访问时才解析
+        private SGFParser.SourceRange source; // 未加载分支的源文本，保存时原样复制
+        private RuntimeException loadError; // 延迟加载失败的原因
         private String name;
         
         public Variation(List<Move> moves, String name) {
@@ -31,10 +64,47 @@ public class GoBoard {
             this.name = name;
         }
         
+        // 延迟加载的分支：首次调用 getMoves() 时才通过 loader 生成移动列表
+        public Variation(Supplier<List<Move>> loader, String name) {
+            this(loader, name, null);
+        }
+        
+        public Variation(Supplier<List<Move>> loader, String name, SGFParser.SourceRange source) {
+            this.loader = loader;
+            this.name = name;
+            this.source = source;
+        }
+        
         public List<Move> getMoves() {
+            if (moves == null) {
+                try {
+                    moves = loader.get();
+                    source = null;
+                } catch (RuntimeException e) {
+                    // 格式错误的分支按空分支处理，保留源文本，保存时原样写回
+                    loadError = e;
+                    moves = new ArrayList<>();
+                }
+                loader = null;
+            }
             return moves;
         }
         
+        // 获取未加载或加载失败的分支的源文本，已加载的分支可能被修改，返回null
+        public SGFParser.SourceRange getSource() {
+            return source;
+        }
+        
+        // 获取延迟加载失败的原因，未加载或加载成功时为null
+        public RuntimeException getLoadError() {
+            return loadError;
+        }
+        
+        // 检查分支是否已加载
+        public boolean isLoaded() {
+            return moves != null;
+        }
+        
         public String getName() {
             return name;
         }
@@ -44,12 +114,12 @@ public class GoBoard {
         }
         
         public int size() {
-            return moves.size();
+            return getMoves().size();
         }
         
         // 检查是否与另一个分支相同
         public boolean isSameAs(Variation other) {
-            if (other == null || other.moves.size() != this.moves.size()) {
+            if (other == null || other.getMoves().size() != this.getMoves().size()) {
                 return false;
             }
             for (int i = 0; i < moves.size(); i++) {
@@ -73,6 +143,7 @@ public class GoBoard {
     private int currentPlayer; // 1=黑, 2=白
     private Point lastCapture = null; // 记录最后一次提子的位置
     private boolean isBoardLocked = false; // 棋盘锁定标志，true表示棋盘已固定，不允许修改
+    private SGFParser.SourceRange rootSource; // 加载时根节点的源文本，保存时保留其中的其他属性
     
     // 添加常量定义
     public static final int BLACK = 1;
@@ -89,6 +160,10 @@ public class GoBoard {
         public int markType = 0;
         // 标签文本
         public String label = "";
+        // 加载时对应的SGF节点源文本，未修改时保存会原样复制
+        public SGFParser.SourceRange source;
+        // 加载后是否修改过注释、标记或标签
+        public boolean modified = false;
         
         public Move(int x, int y, int color) {
             this.x = x;
@@ -266,18 +341,18 @@ public class GoBoard {
         if (x == -1 && y == -1) {
             // 第一手不能是虚手
             if (moveHistory.isEmpty()) {
-                Log.e("GoBoard", "第一手不能是虚手");
+                LOG.warning("第一手不能是虚手");
                 return false;
             }
             skipTurn();
             return true;
         }
         
-        Log.d("GoBoard", "尝试落子: (" + x + "," + y + ")");
+        LOG.fine("尝试落子: (" + x + "," + y + ")");
         
         // 添加坐标有效性检查
         if (!isValidCoordinate(x, y)) {
-            Log.e("GoBoard", "无效坐标: (" + x + "," + y + ")");
+            LOG.warning("无效坐标: (" + x + "," + y + ")");
             return false;
         }
         
@@ -286,14 +361,14 @@ public class GoBoard {
         
         // 检查位置是否已有棋子
         if (board[x][y] != 0) {
-            Log.e("GoBoard", "位置已有棋子: (" + x + "," + y + ")");
+            LOG.warning("位置已有棋子: (" + x + "," + y + ")");
             return false;
         }
         
         // 打劫规则检测
         if (lastCapture != null && lastCapture.x == x && lastCapture.y == y && 
             isSingleStoneCapture(x, y)) {
-            Log.e("GoBoard", "打劫规则限制: (" + x + "," + y + ")");
+            LOG.warning("打劫规则限制: (" + x + "," + y + ")");
             return false;
         }
         
@@ -310,7 +385,7 @@ public class GoBoard {
         // 如果自己没气且没有提子，则是自杀步
         if (!hasSelfLiberty && !didCapture) {
             board[x][y] = 0; // 恢复棋盘状态
-            Log.e("GoBoard", "自杀落子: (" + x + "," + y + ")");
+            LOG.warning("自杀落子: (" + x + "," + y + ")");
             return false;
         }
         
@@ -458,7 +533,7 @@ public class GoBoard {
                     if (group.size() == 1) {
                         Point p = group.iterator().next();
                         lastCapture = new Point(p.x, p.y);
-                        Log.d("GoBoard", "记录打劫位置: (" + p.x + "," + p.y + ")");
+                        LOG.fine("记录打劫位置: (" + p.x + "," + p.y + ")");
                     } else {
                         lastCapture = null; // 不是单子提，清除打劫记录
                     }
@@ -565,6 +640,14 @@ public class GoBoard {
         initialBoard = copyBoard(board);
     }
     
+    // 获取初始局面（让子和摆子）中的棋子，无效坐标返回-1
+    public int getInitialStone(int x, int y) {
+        if (!isValidCoordinate(x, y)) {
+            return -1;
+        }
+        return initialBoard[x][y];
+    }
+    
     private int[][] copyBoard(int[][] src) {
         int[][] dst = new int[BOARD_SIZE][BOARD_SIZE];
         for (int i = 0; i < BOARD_SIZE; i++) {
@@ -602,7 +685,7 @@ public class GoBoard {
         
         // 添加虚手提示
         String passMessage = currentPlayer == 1 ? "白方虚手" : "黑方虚手";
-        Log.d("GoBoard", passMessage);
+        LOG.fine(passMessage);
     }
 
     public void resetBoardToCurrentMove() {
@@ -755,6 +838,7 @@ public class GoBoard {
         whitePlayer = "";
         result = "";
         currentMoveNumber = -1;  // 使用currentMoveNumber替换currentMoveNumber
+        rootSource = null;
     }
     public void setWhitePlayer(String name) { 
         this.whitePlayer = name; 
@@ -772,6 +856,14 @@ public class GoBoard {
         return date;
     }
     
+    public SGFParser.SourceRange getRootSource() {
+        return rootSource;
+    }
+    
+    public void setRootSource(SGFParser.SourceRange rootSource) {
+        this.rootSource = rootSource;
+    }
+    
     public Move getMoveAt(int x, int y) {
         for (Move move : moveHistory) {
             if (move.x == x && move.y == y) {
@@ -824,6 +916,10 @@ public class GoBoard {
         startVariations.add(new Variation(moves, name));
     }
     
+    public void addStartVariation(Variation variation) {
+        startVariations.add(variation);
+    }
+    
     public boolean removeStartVariation(int index) {
         if (startVariations.isEmpty()) return false;
         if (index < 0 || index >= startVariations.size()) return false;
@@ -836,6 +932,8 @@ public class GoBoard {
     
     private void recursivelyRemoveVariation(Variation variation) {
         if (variation == null) return;
+        // 未加载的分支没有子分支需要清理
+        if (!variation.isLoaded()) return;
         List<Move> moves = variation.getMoves();
         if (moves == null) return;
         
@@ -874,7 +972,7 @@ public class GoBoard {
                 Variation variation = startVariations.get(index);
                 List<Move> vMoves = variation.getMoves();
                 if (!validateBranchFirstStep(vMoves)) {
-                    Log.e("GoBoard", "分支第一步解析失败（起始态）");
+                    LOG.warning("分支第一步解析失败（起始态）");
                     return false;
                 }
                 
@@ -921,9 +1019,9 @@ public class GoBoard {
                 startVariations = new ArrayList<>(otherVariations);
                 
                 // 调试信息
-                Log.d("GoBoard", "选择起始分支后，startVariations数量: " + startVariations.size());
+                LOG.fine("选择起始分支后，startVariations数量: " + startVariations.size());
                 for (int i = 0; i < startVariations.size(); i++) {
-                    Log.d("GoBoard", "起始分支 " + i + ": " + startVariations.get(i).getMoves().size() + " 步");
+                    LOG.fine("起始分支 " + i + ": " + startVariations.get(i).getMoves().size() + " 步");
                 }
                 
             currentMoveNumber = Math.min(0, moveHistory.size() - 1);
@@ -939,7 +1037,7 @@ public class GoBoard {
                 Variation variation = current.variations.get(index);
                 List<Move> vMoves = variation.getMoves();
                 if (!validateBranchFirstStep(vMoves)) {
-                    Log.e("GoBoard", "分支第一步解析失败（当前手态）");
+                    LOG.warning("分支第一步解析失败（当前手态）");
                     return false;
                 }
                 
@@ -997,7 +1095,7 @@ public class GoBoard {
             return true;
         }
         if (!isValidCoordinate(firstStep.x, firstStep.y)) {
-            Log.e("GoBoard", "分支第一步坐标无效: (" + firstStep.x + "," + firstStep.y + ")");
+            LOG.warning("分支第一步坐标无效: (" + firstStep.x + "," + firstStep.y + ")");
             return false;
         }
         return true;
@@ -1029,6 +1127,7 @@ public class GoBoard {
                                    .replace("]", "\\]")
                                    .replace("[", "\\[")
                                    .replace("\n", "\\n");
+            currentMove.modified = true;
         }
     }
     
@@ -1037,6 +1136,7 @@ public class GoBoard {
         Move currentMove = getCurrentMove();
         if (currentMove != null) {
             currentMove.markType = markType;
+            currentMove.modified = true;
         }
     }
     
@@ -1054,6 +1154,7 @@ public class GoBoard {
         Move currentMove = getCurrentMove();
         if (currentMove != null) {
             currentMove.label = label;
+            currentMove.modified = true;
         }
     }
     
@@ -1095,6 +1196,26 @@ public class GoBoard {
         return names;
     }
     
+    // 获取当前位置格式错误的分支，每项为分支名和错误信息，起始态时检查起始分支
+    public List<String> getVariationErrors() {
+        List<Variation> variations;
+        if (currentMoveNumber < 0) {
+            variations = startVariations;
+        } else if (currentMoveNumber < moveHistory.size()) {
+            variations = moveHistory.get(currentMoveNumber).variations;
+        } else {
+            return Collections.emptyList();
+        }
+        List<String> errors = new ArrayList<>();
+        for (Variation variation : variations) {
+            variation.getMoves();
+            if (variation.getLoadError() != null) {
+                errors.add(variation.getName() + ": " + variation.getLoadError().getMessage());
+            }
+        }
+        return errors;
+    }
+    
     // 添加接受三个参数的 placeStone 方法，用于测试
     public boolean placeStone(int x, int y, int color) {
         // 保存当前玩家
@@ -1162,140 +1283,12 @@ public class GoBoard {
 
 
     public String toSGFString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("(");
-        
-        // 添加根节点
-        sb.append(";GM[1]FF[4]");
-        
-        // 添加头信息
-        if (blackPlayer != null && !blackPlayer.isEmpty()) {
-            sb.append("PB[").append(escapeSGFText(blackPlayer)).append("]");
-        }
-        if (whitePlayer != null && !whitePlayer.isEmpty()) {
-            sb.append("PW[").append(escapeSGFText(whitePlayer)).append("]");
-        }
-        if (result != null && !result.isEmpty()) {
-            sb.append("RE[").append(escapeSGFText(result)).append("]");
-        }
-        
-        // 调试信息
-        Log.d("GoBoard", "toSGFString: startVariations数量: " + startVariations.size());
-        for (int i = 0; i < startVariations.size(); i++) {
-            Log.d("GoBoard", "toSGFString: 起始分支 " + i + ": " + startVariations.get(i).getMoves().size() + " 步");
-        }
-        
-        // 处理主序列，将其作为第一个分支
-        if (!moveHistory.isEmpty()) {
-            sb.append("(");
-            // 只处理到currentMoveNumber的移动，后面的移动作为分支
-            for (int i = 0; i <= currentMoveNumber && i < moveHistory.size(); i++) {
-                Move move = moveHistory.get(i);
-                processMoveWithVariations(sb, move);
-            }
-            
-            // 如果currentMoveNumber后面还有移动，将其作为当前位置的分支
-            if (currentMoveNumber < moveHistory.size() - 1) {
-                List<Move> remainingMoves = new ArrayList<>(moveHistory.subList(currentMoveNumber + 1, moveHistory.size()));
-                if (!remainingMoves.isEmpty()) {
-                    sb.append("(");
-                    for (Move move : remainingMoves) {
-                        processMoveWithVariations(sb, move);
-                    }
-                    sb.append(")");
-                }
-            }
-            sb.append(")");
-        }
-        
-        // 处理起始分支（根节点下的其他分支）
-        if (!startVariations.isEmpty()) {
-            for (Variation startVar : startVariations) {
-                sb.append("(");
-                for (Move varMove : startVar.getMoves()) {
-                    processMoveWithVariations(sb, varMove);
-                }
-                sb.append(")");
-            }
-        }
-        
-        sb.append(")");
-        return sb.toString();
-    }
-    
-    /**
-     * 创建SGF节点字符串
-     * @param move 移动对象
-     * @return SGF节点字符串
-     */
-    private String createSGFNode(Move move) {
-        StringBuilder nodeSb = new StringBuilder();
-        
-        // 添加颜色和坐标
-        String color = move.color == 1 ? "B" : "W";
-        if (move.x == -1) { // 虚手
-            nodeSb.append(color).append("[]");
-        } else {
-            nodeSb.append(color)
-                  .append("[").append((char)('a' + move.x))
-                  .append((char)('a' + move.y)).append("]");
-        }
-        
-        // 添加注释
-        if (move.comment != null && !move.comment.isEmpty()) {
-            nodeSb.append("C[").append(escapeSGFText(move.comment)).append("]");
-        }
-        
-        // 添加标签
-        if (move.label != null && !move.label.isEmpty()) {
-            nodeSb.append("LB[").append(escapeSGFText(move.label)).append("]");
-        }
-        
-        // 添加标记
-        switch (move.markType) {
-            case 1:
-                nodeSb.append("TR[[").append((char)('a' + move.x)).append((char)('a' + move.y)).append("]]");
-                break;
-            case 2:
-                nodeSb.append("SQ[[").append((char)('a' + move.x)).append((char)('a' + move.y)).append("]]");
-                break;
-            case 3:
-                nodeSb.append("CR[[").append((char)('a' + move.x)).append((char)('a' + move.y)).append("]]");
-                break;
-            case 4:
-                nodeSb.append("BM[[").append((char)('a' + move.x)).append((char)('a' + move.y)).append("]]");
-                break;
-        }
-        
-        return nodeSb.toString();
-    }
-    
-    /**
-     * 处理移动及其分支
-     * @param sb StringBuilder对象
-     * @param move 移动对象
-     */
-    private void processMoveWithVariations(StringBuilder sb, Move move) {
-        // 添加当前移动
-        sb.append(";").append(createSGFNode(move));
-        
-        // 处理当前移动的分支
-        if (!move.variations.isEmpty()) {
-            for (Variation variation : move.variations) {
-                sb.append("(");
-                // 处理分支中的每一步
-                for (Move varMove : variation.getMoves()) {
-                    processMoveWithVariations(sb, varMove);
-                }
-                sb.append(")");
-            }
+        StringWriter out = new StringWriter();
+        try {
+            new SGFWriter(out).writeBoard(this);
+        } catch (IOException e) {
+            LOG.warning("toSGFString失败: " + e.getMessage());
         }
-    }
-    
-    private String escapeSGFText(String text) {
-        return text.replace("\\", "\\\\")
-                  .replace("]", "\\]")
-                  .replace("[", "\\[")
-                  .replace("\n", "\\n");
+        return out.toString();
     }
 } // 类结束的大括号
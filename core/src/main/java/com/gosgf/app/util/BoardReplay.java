@@ -0,0 +1,128 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.util.List;
+
+/**
+ * 重放棋谱用的轻量棋盘：只落子和提子，不检查打劫，支持任意棋盘大小
+ * 棋谱库的批处理（局面哈希、棋形搜索）每局都要完整重放，GoBoard 的历史和分支管理在这里是多余的开销
+ */
+final class BoardReplay {
+    final int size;
+    // 点的编号为 y * size + x
+    final int[] stones;
+    // 8 个对称局面的哈希，见 PositionHash.toggle；为null时不维护
+    final long[] hashes;
+    // 上一次 play 改变的点：落子点和被提的棋子
+    final int[] changed;
+    int changedCount;
+    // 搜索棋块用的栈和访问标记，标记值每次搜索递增，不必清空
+    private final int[] stack;
+    private final int[] visited;
+    private int mark;
+    private int top;
+
+    /**
+     * @param size 棋盘大小
+     * @param hashes 需要维护的对称哈希，为null不维护
+     */
+    BoardReplay(int size, long[] hashes) {
+        this.size = size;
+        this.hashes = hashes;
+        stones = new int[size * size];
+        changed = new int[size * size];
+        stack = new int[size * size];
+        visited = new int[size * size];
+    }
+
+    boolean isOnBoard(int x, int y) {
+        return x >= 0 && x < size && y >= 0 && y < size;
+    }
+
+    /**
+     * 摆放让子和摆子，坐标在棋盘外的忽略
+     */
+    void setup(List<GoBoard.Move> stones) {
+        for (GoBoard.Move stone : stones) {
+            if (isOnBoard(stone.x, stone.y)) {
+                set(stone.y * size + stone.x, stone.color);
+            }
+        }
+    }
+
+    /**
+     * 按记录落子并提子，棋谱允许自杀时己方棋块被提
+     * @param x 横坐标，需在棋盘内
+     * @param y 纵坐标，需在棋盘内
+     * @param color 颜色
+     */
+    void play(int x, int y, int color) {
+        int point = y * size + x;
+        changedCount = 0;
+        changed[changedCount++] = point;
+        set(point, color);
+        int opponent = 3 - color;
+        if (x > 0) captureIfDead(point - 1, opponent);
+        if (x < size - 1) captureIfDead(point + 1, opponent);
+        if (y > 0) captureIfDead(point - size, opponent);
+        if (y < size - 1) captureIfDead(point + size, opponent);
+        captureIfDead(point, color);
+    }
+
+    private void set(int point, int color) {
+        if (hashes != null && stones[point] != 0) {
+            PositionHash.toggle(hashes, size, point % size, point / size, stones[point]);
+        }
+        stones[point] = color;
+        if (hashes != null && color != 0) {
+            PositionHash.toggle(hashes, size, point % size, point / size, color);
+        }
+    }
+
+    /**
+     * 棋块没有气时提掉
+     */
+    private void captureIfDead(int point, int color) {
+        if (stones[point] != color) {
+            return;
+        }
+        mark++;
+        top = 0;
+        stack[top++] = point;
+        visited[point] = mark;
+        // 栈中已处理到 next 之前的棋子，之后的棋子等待检查邻点
+        for (int next = 0; next < top; next++) {
+            int current = stack[next];
+            int x = current % size;
+            int y = current / size;
+            if ((x > 0 && visit(current - 1, color))
+                    || (x < size - 1 && visit(current + 1, color))
+                    || (y > 0 && visit(current - size, color))
+                    || (y < size - 1 && visit(current + size, color))) {
+                return;
+            }
+        }
+        for (int i = 0; i < top; i++) {
+            set(stack[i], 0);
+            if (stack[i] != changed[0]) {
+                changed[changedCount++] = stack[i];
+            }
+        }
+    }
+
+    /**
+     * 访问相邻点：空点说明有气返回true，同色未访问的棋子入栈
+     */
+    private boolean visit(int point, int color) {
+        int stone = stones[point];
+        if (stone == 0) {
+            return true;
+        }
+        if (stone == color && visited[point] != mark) {
+            visited[point] = mark;
+            stack[top++] = point;
+        }
+        return false;
+    }
+}
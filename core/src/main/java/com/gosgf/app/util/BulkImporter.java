@@ -0,0 +1,334 @@
+package com.gosgf.app.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 批量导入流水线 - 多个线程并行读取和解析SGF文件，调用 run 的线程作为唯一的写线程，
+ * 按文件顺序把解析结果攒成大批次交给 Sink（例如每批一个数据库事务）
+ * 同时在解析中的文件数有上限，写入跟不上时解析自动等待，十万个文件也不会占满内存
+ */
+public class BulkImporter {
+
+    /**
+     * 待导入的文件
+     */
+    public interface Source {
+        /**
+         * @return 用于报告的名字
+         */
+        String getName();
+
+        /**
+         * @return 文件内容，调用方负责关闭
+         * @throws IOException 打开失败
+         */
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * 接收解析结果，只在写线程上调用
+     */
+    public interface Sink extends Closeable {
+        /**
+         * 写入一批对局，一批应当在一个事务中完成
+         * @param games 对局，调用返回后列表会被复用
+         * @throws IOException 写入失败，导入随之中止
+         */
+        void write(List<GameSummary> games) throws IOException;
+
+        /**
+         * 释放写入用的资源（例如预编译语句），run 结束时调用，不论成功与否
+         * @throws IOException 释放失败
+         */
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * 进度回调，在写线程上调用
+     */
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+
+        /**
+         * 文件无法读取或解析，导入继续
+         * @param name 文件名
+         * @param e 异常
+         */
+        default void onFailure(String name, Exception e) {
+        }
+    }
+
+    // 每批写入的对局数
+    private static final int DEFAULT_BATCH_SIZE = 2000;
+    // 每个解析线程最多领先写线程的文件数
+    private static final int FILES_AHEAD_PER_THREAD = 32;
+    // 两次进度回调的最小间隔
+    private static final long PROGRESS_INTERVAL_NANOS = 200_000_000L;
+
+    private final ForkJoinPool pool;
+    private final Sink sink;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private ProgressListener listener;
+    private volatile boolean cancelled;
+
+    /**
+     * @param pool 执行解析的线程池
+     * @param sink 写入目标
+     */
+    public BulkImporter(ForkJoinPool pool, Sink sink) {
+        this.pool = pool;
+        this.sink = sink;
+    }
+
+    /**
+     * 设置每批写入的对局数，默认 2000
+     * @param batchSize 对局数，至少为 1
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 请求停止导入，可以在任意线程调用
+     * 已经写入的批次保留，run 写入已解析的对局后返回
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 把文件转换为导入源
+     * @param files 文件
+     * @return 导入源
+     */
+    public static List<Source> fileSources(List<File> files) {
+        List<Source> sources = new ArrayList<>(files.size());
+        for (File file : files) {
+            sources.add(new Source() {
+                @Override
+                public String getName() {
+                    return file.getPath();
+                }
+
+                @Override
+                public InputStream open() throws IOException {
+                    return new FileInputStream(file);
+                }
+            });
+        }
+        return sources;
+    }
+
+    /**
+     * 导入全部文件，在调用线程上写入，直到完成或取消
+     * 结束时关闭 Sink，每个导入器只能运行一次
+     * @param sources 导入源
+     * @return 最终进度
+     * @throws IOException 写入失败
+     */
+    public Progress run(List<? extends Source> sources) throws IOException {
+        long start = System.nanoTime();
+        long lastReport = start;
+        int window = pool.getParallelism() * FILES_AHEAD_PER_THREAD;
+        Deque<ForkJoinTask<FileResult>> pending = new ArrayDeque<>();
+        List<GameSummary> batch = new ArrayList<>(batchSize);
+        int next = 0;
+        int files = 0;
+        int failedFiles = 0;
+        int games = 0;
+        long bytes = 0;
+
+        try {
+            while (!cancelled && (next < sources.size() || !pending.isEmpty())) {
+                while (next < sources.size() && pending.size() < window) {
+                    Source source = sources.get(next++);
+                    pending.add(pool.submit(() -> parse(source)));
+                }
+
+                // 按文件顺序取结果，导入顺序与线程数无关
+                FileResult result = pending.poll().join();
+                files++;
+                bytes += result.bytes;
+                if (result.error != null) {
+                    failedFiles++;
+                    if (listener != null) {
+                        listener.onFailure(result.name, result.error);
+                    }
+                } else {
+                    for (GameSummary game : result.games) {
+                        batch.add(game);
+                        if (batch.size() >= batchSize) {
+                            games += flush(batch);
+                        }
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (listener != null && now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                    lastReport = now;
+                    listener.onProgress(new Progress(sources.size(), files, failedFiles, games, bytes, now - start));
+                }
+            }
+            games += flush(batch);
+        } finally {
+            for (ForkJoinTask<FileResult> task : pending) {
+                task.cancel(false);
+            }
+            sink.close();
+        }
+
+        Progress progress = new Progress(sources.size(), files, failedFiles, games, bytes, System.nanoTime() - start);
+        if (listener != null) {
+            listener.onProgress(progress);
+        }
+        return progress;
+    }
+
+    private int flush(List<GameSummary> batch) throws IOException {
+        int count = batch.size();
+        if (count > 0) {
+            sink.write(batch);
+            batch.clear();
+        }
+        return count;
+    }
+
+    /**
+     * 读取并解析单个文件，在线程池中执行
+     * 分支延迟解析，只有主线和根节点会被完整解析
+     */
+    private FileResult parse(Source source) {
+        FileResult result = new FileResult(source.getName());
+        if (cancelled) {
+            return result;
+        }
+        try {
+            byte[] data;
+            try (InputStream in = source.open()) {
+                data = readAll(in);
+            }
+            result.bytes = data.length;
+            String sgf = SGFDecoder.decode(data);
+            if (SGFParser.countGameTrees(sgf) <= 1) {
+                result.games.add(GameSummary.of(SGFParser.parse(sgf, true)));
+            } else {
+                for (SGFParser.SGFTree tree : SGFParser.parseCollection(sgf, true, pool)) {
+                    result.games.add(GameSummary.of(tree));
+                }
+            }
+            // 局面哈希和指纹在解析线程中算好，写线程只负责插入
+            for (GameSummary game : result.games) {
+                game.getPositions();
+                game.getPrefixKeys();
+            }
+        } catch (IOException | SGFParser.SGFParseException | RuntimeException e) {
+            result.error = e;
+            result.games.clear();
+        }
+        return result;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 单个文件的解析结果
+     */
+    private static class FileResult {
+        final String name;
+        final List<GameSummary> games = new ArrayList<>(1);
+        long bytes;
+        Exception error;
+
+        FileResult(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * 导入进度快照
+     */
+    public static final class Progress {
+        private final int totalFiles;
+        private final int files;
+        private final int failedFiles;
+        private final int games;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        Progress(int totalFiles, int files, int failedFiles, int games, long bytes, long elapsedNanos) {
+            this.totalFiles = totalFiles;
+            this.files = files;
+            this.failedFiles = failedFiles;
+            this.games = games;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getTotalFiles() {
+            return totalFiles;
+        }
+
+        /**
+         * @return 已处理的文件数，包括失败的文件
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        public int getFailedFiles() {
+            return failedFiles;
+        }
+
+        /**
+         * @return 已写入的对局数
+         */
+        public int getGames() {
+            return games;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getFilesPerSecond() {
+            return elapsedNanos > 0 ? files * 1e9 / elapsedNanos : 0;
+        }
+
+        public double getGamesPerSecond() {
+            return elapsedNanos > 0 ? games * 1e9 / elapsedNanos : 0;
+        }
+    }
+}
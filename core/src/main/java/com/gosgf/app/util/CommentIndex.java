@@ -0,0 +1,273 @@
+package com.gosgf.app.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 注释全文索引 - 提取对局中所有节点的注释，并把文本切分为 SQLite FTS 的 simple 分词器可以直接使用的词
+ * 中日韩文字之间没有空格，按相邻两字切分（bigram），每段最后一个字再单独成词，单字查询也能命中
+ * 其他文字按字母和数字切词并转为小写
+ */
+public final class CommentIndex {
+
+    private CommentIndex() {
+    }
+
+    /**
+     * 提取主线和所有分支中的注释
+     * @param tree SGF树，延迟解析的分支只有源文本中可能有注释时才会在这里解析
+     * @return 注释，主线在前，各分支紧跟在分出它的节点之后
+     */
+    public static List<Entry> extract(SGFParser.SGFTree tree) {
+        List<Entry> entries = new ArrayList<>();
+        SGFParser.Node root = tree.getRootNode();
+        if (root != null && commentOf(root) != null) {
+            entries.add(new Entry("0", 0, commentOf(root)));
+        }
+        List<SGFParser.Node> mainLine = tree.getMainSequence();
+        List<List<SGFParser.Node>> rootVariations = tree.getRootVariations();
+        // 主序列为空时第一个根分支就是主线，与 GameSummary 一致
+        int firstRootVariation = 0;
+        if (mainLine.isEmpty() && !rootVariations.isEmpty()) {
+            mainLine = rootVariations.get(0);
+            firstRootVariation = 1;
+        }
+        // 显式栈代替递归，嵌套很深的分支也不会导致栈溢出；逆序压栈，保证先处理主线和靠前的分支
+        Deque<Frame> pending = new ArrayDeque<>();
+        for (int v = rootVariations.size() - 1; v >= firstRootVariation; v--) {
+            pushLine(pending, rootVariations.get(v), null, -1, v, 0);
+        }
+        pushLine(pending, mainLine, null, -1, -1, 0);
+        while (!pending.isEmpty()) {
+            Frame frame = pending.peek();
+            if (frame.index >= frame.line.size()) {
+                pending.pop();
+                continue;
+            }
+            int i = frame.index++;
+            SGFParser.Node node = frame.line.get(i);
+            if (node.hasProperty("B") || node.hasProperty("W")) {
+                frame.moveNumber++;
+            }
+            String comment = commentOf(node);
+            if (comment != null) {
+                entries.add(new Entry(path(frame, i), frame.moveNumber, comment));
+            }
+            // 分支在下一个节点之前处理，结果与先序遍历相同
+            List<List<SGFParser.Node>> variations = node.getVariations();
+            for (int v = variations.size() - 1; v >= 0; v--) {
+                pushLine(pending, variations.get(v), frame, i, v, frame.moveNumber);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 压入一条待遍历的线，源文本中没有注释的未解析分支直接跳过，保持延迟解析
+     * @param parent 分出这条线的线，主线和根分支为null
+     * @param parentIndex 分出这条线的节点在 parent 中的序号
+     * @param variation 分支序号，主线为-1
+     * @param moveNumber 这条线之前的手数
+     */
+    private static void pushLine(Deque<Frame> pending, List<SGFParser.Node> line, Frame parent,
+                                 int parentIndex, int variation, int moveNumber) {
+        SGFParser.SourceRange source = SGFParser.getDeferredSource(line);
+        if (source != null && !mayContainComment(source)) {
+            return;
+        }
+        pending.push(new Frame(line, parent, parentIndex, variation, moveNumber));
+    }
+
+    /**
+     * 只在节点有注释时生成路径：路径长度与嵌套层数成正比，逐层拼接前缀在很深的分支上是平方级的
+     * 主线节点从 1 开始编号，根节点为 0；分支中的节点从 0 开始
+     */
+    private static String path(Frame frame, int index) {
+        Deque<Integer> parts = new ArrayDeque<>();
+        while (frame.parent != null) {
+            parts.push(index);
+            parts.push(frame.variation);
+            index = frame.parentIndex;
+            frame = frame.parent;
+        }
+        StringBuilder path = new StringBuilder();
+        if (frame.variation < 0) {
+            path.append(index + 1);
+        } else {
+            path.append("0.").append(frame.variation).append('.').append(index);
+        }
+        for (int part : parts) {
+            path.append('.').append(part);
+        }
+        return path.toString();
+    }
+
+    /**
+     * 粗略检查源文本中是否有 C 属性：前面不是大写字母的 C，之后跳过小写字母（FF[3] 的长属性名）和空白后是 [
+     * 注释文本中出现同样的字符时会多解析一个分支，不会漏掉注释
+     */
+    static boolean mayContainComment(SGFParser.SourceRange source) {
+        String text = source.getText();
+        int end = source.getEnd();
+        for (int i = text.indexOf('C', source.getStart()); i >= 0 && i < end; i = text.indexOf('C', i + 1)) {
+            if (i > 0 && Character.isUpperCase(text.charAt(i - 1))) {
+                continue;
+            }
+            int j = i + 1;
+            while (j < end && (Character.isLowerCase(text.charAt(j)) || Character.isWhitespace(text.charAt(j)))) {
+                j++;
+            }
+            if (j < end && text.charAt(j) == '[') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 遍历中的一条线
+     */
+    private static final class Frame {
+        final List<SGFParser.Node> line;
+        final Frame parent;
+        final int parentIndex;
+        final int variation;
+        int index;
+        int moveNumber;
+
+        Frame(List<SGFParser.Node> line, Frame parent, int parentIndex, int variation, int moveNumber) {
+            this.line = line;
+            this.parent = parent;
+            this.parentIndex = parentIndex;
+            this.variation = variation;
+            this.moveNumber = moveNumber;
+        }
+    }
+
+    /**
+     * @return 节点的注释，没有或只有空白时为null
+     */
+    private static String commentOf(SGFParser.Node node) {
+        String comment = node.getFirstPropertyValue("C");
+        return comment != null && !comment.trim().isEmpty() ? comment : null;
+    }
+
+    /**
+     * 把注释文本切分为空格分隔的词，写入 FTS 表
+     * @param text 注释
+     * @return 词
+     */
+    public static String tokenize(String text) {
+        StringBuilder out = new StringBuilder(text.length() * 2);
+        for (String token : split(text, false)) {
+            if (out.length() > 0) {
+                out.append(' ');
+            }
+            out.append(token);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 把用户输入转换为 FTS 的 MATCH 表达式，各个词都要出现
+     * 外文单词和单个汉字按前缀匹配（"ladder" 也能找到 "ladders"），连续的多个汉字按相邻两字组成短语
+     * @param query 用户输入
+     * @return MATCH 表达式，没有可搜索的文字时为null
+     */
+    public static String toMatchQuery(String query) {
+        List<String> clauses = split(query, true);
+        return clauses.isEmpty() ? null : String.join(" ", clauses);
+    }
+
+    /**
+     * 切词
+     * @param query 为false时返回索引用的词；为true时每个词或每段汉字返回一个 MATCH 子句
+     */
+    private static List<String> split(String text, boolean query) {
+        List<String> tokens = new ArrayList<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int c = text.codePointAt(i);
+            if (isCjk(c)) {
+                List<String> bigrams = new ArrayList<>();
+                int previous = i;
+                i += Character.charCount(c);
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    int current = i;
+                    i += Character.charCount(text.codePointAt(i));
+                    bigrams.add(text.substring(previous, i));
+                    previous = current;
+                }
+                String last = text.substring(previous, i);
+                if (!query) {
+                    tokens.addAll(bigrams);
+                    tokens.add(last);
+                } else if (bigrams.isEmpty()) {
+                    tokens.add(last + "*");
+                } else if (bigrams.size() == 1) {
+                    tokens.add(bigrams.get(0));
+                } else {
+                    // 索引中同一段的相邻两字是连续的词，查询时不带段末单字
+                    tokens.add('"' + String.join(" ", bigrams) + '"');
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.codePointAt(i)) && !isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+                tokens.add(query ? word + "*" : word);
+            } else {
+                i += Character.charCount(c);
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isCjk(int c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 一个节点的注释
+     */
+    public static final class Entry {
+        private final String path;
+        private final int moveNumber;
+        private final String text;
+
+        Entry(String path, int moveNumber, String text) {
+            this.path = path;
+            this.moveNumber = moveNumber;
+            this.text = text;
+        }
+
+        /**
+         * 节点路径：主线节点为序号（根节点 0，主线第 n 个节点为 n），
+         * 分支中的节点为 "所在节点路径.分支序号.节点序号"，序号从 0 开始，可以多层嵌套
+         * @return 路径
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return 从开局到该节点的手数，主线节点可直接用于 GoBoard.setCurrentMoveNumber(moveNumber - 1)
+         */
+        public int getMoveNumber() {
+            return moveNumber;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+}
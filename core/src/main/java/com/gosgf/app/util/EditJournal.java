@@ -0,0 +1,585 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * 自动保存的编辑日志 - 每次修改只追加一条记录，不重写整个棋谱
+ * 目录中保存一份完整的SGF快照和快照之后的操作日志，启动时加载快照再重放日志即可恢复棋盘，
+ * 包括当前所在的分支和手数。日志超过阈值时写出新的快照并清空日志
+ * 每条记录整条写入文件，进程崩溃不会丢失；fsync 按条数和时间间隔批量进行，
+ * 断电时最多丢失最后一批，写了一半的记录在重放时按长度和 CRC 识别并截掉
+ * 快照和日志的文件名带有代号，新的一代写完后才删除旧的，压缩中途退出时仍使用旧的一代
+ * 界面上使用 compactAsync：棋盘在调用线程上序列化到内存，写文件和 fsync 在后台进行，
+ * 期间追加的记录在切换到新一代时复制到新日志
+ */
+public class EditJournal implements Closeable, Flushable {
+
+    private static final int MAGIC = 0x47534A31; // "GSJ1"
+    private static final int HEADER_LENGTH = 4;
+    // 超过这个长度的记录视为损坏，避免按错误的长度分配内存
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private static final byte MOVE = 1;
+    private static final byte COMMENT = 2;
+    private static final byte MARK = 3;
+    // 4 未使用
+    private static final byte GO_TO = 5;
+    private static final byte SELECT_VARIATION = 6;
+    private static final byte REMOVE_VARIATION = 7;
+    private static final byte REMOVE_START_VARIATION = 8;
+    private static final byte NEXT_MOVE = 9;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".sgf";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private int syncRecords = 32;
+    private long syncIntervalMillis = 2000;
+    private long compactBytes = 256 * 1024;
+
+    private long generation = -1;
+    private long reservedGeneration = -1; // 已分配给快照的最大代号
+    private Snapshot pending; // 最近一次开始的压缩，之前开始的压缩完成时作废
+    private FileOutputStream out;
+    private long length;
+    private int unsyncedRecords;
+    private long lastSync;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+    private final DataOutputStream record = new DataOutputStream(buffer);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * @param directory 保存快照和日志的目录，不存在时创建
+     */
+    public EditJournal(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 设置 fsync 的频率，两个条件满足其一即同步
+     * @param records 未同步的记录条数
+     * @param intervalMillis 距上次同步的毫秒数
+     */
+    public void setSyncPolicy(int records, long intervalMillis) {
+        this.syncRecords = records;
+        this.syncIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * @param bytes 日志超过这个大小时 needsCompaction() 为true
+     */
+    public void setCompactThreshold(long bytes) {
+        this.compactBytes = bytes;
+    }
+
+    /**
+     * 恢复上次的棋盘并打开日志
+     * 没有快照时以棋盘的当前状态作为第一份快照
+     * @param board 棋盘，有快照时会先清空
+     * @return 是否从快照和日志恢复了棋盘
+     * @throws IOException 读写异常或快照无法解析
+     */
+    public synchronized boolean open(GoBoard board) throws IOException {
+        closeJournal();
+        pending = null;
+        long latest = findLatestGeneration();
+        if (latest < 0) {
+            compact(board);
+            return false;
+        }
+        generation = latest;
+        File snapshot = snapshotFile(generation);
+        String sgf;
+        try (InputStream in = new FileInputStream(snapshot)) {
+            sgf = SGFDecoder.read(in);
+        }
+        board.resetGame();
+        try {
+            SGFParser.parseSGF(sgf, board, true);
+        } catch (SGFParser.SGFParseException e) {
+            throw new IOException("Corrupt snapshot " + snapshot + ": " + e.getMessage(), e);
+        }
+        File journal = journalFile(generation);
+        long valid = journal.isFile() ? replay(journal, board) : 0;
+        if (valid < HEADER_LENGTH) {
+            createJournal(journal);
+        } else {
+            openJournal(journal, valid);
+        }
+        deleteOtherGenerations();
+        return true;
+    }
+
+    /**
+     * 重放日志，遇到不完整或校验失败的记录时停止
+     * @return 有效部分的长度，文件头无效时为0
+     */
+    private static long replay(File journal, GoBoard board) throws IOException {
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            if (in.readInt() != MAGIC) {
+                return 0;
+            }
+            valid = HEADER_LENGTH;
+            while (true) {
+                int recordLength = in.readInt();
+                if (recordLength <= 0 || recordLength > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                byte[] data = new byte[recordLength];
+                in.readFully(data);
+                int checksum = in.readInt();
+                crc.reset();
+                crc.update(data, 0, data.length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(data)), board);
+                valid += 8 + recordLength;
+            }
+        } catch (EOFException e) {
+            // 最后一条记录没有写完
+        }
+        return valid;
+    }
+
+    private static void apply(DataInputStream in, GoBoard board) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case MOVE: {
+                int x = in.readByte();
+                int y = in.readByte();
+                int color = in.readByte();
+                // 起始态有摆子时 GoBoard 不能推出轮到谁，按记录的颜色落子
+                if (board.getCurrentPlayer() != color) {
+                    board.setCurrentPlayer(color);
+                }
+                board.placeStone(x, y);
+                break;
+            }
+            case COMMENT:
+                board.setComment(readString(in));
+                break;
+            case MARK:
+                board.setMark(in.readInt());
+                break;
+            case GO_TO:
+                board.setCurrentMoveNumber(in.readInt());
+                break;
+            case SELECT_VARIATION:
+                board.selectVariation(in.readInt());
+                break;
+            case REMOVE_VARIATION:
+                board.removeCurrentVariation(in.readInt());
+                break;
+            case REMOVE_START_VARIATION:
+                board.removeStartVariation(in.readInt());
+                break;
+            case NEXT_MOVE:
+                board.nextMove();
+                break;
+            default:
+                throw new IOException("Unknown journal record type: " + op);
+        }
+    }
+
+    /**
+     * 记录落子或虚手，在 GoBoard.placeStone() 成功后调用
+     * @param x 横坐标，虚手为-1
+     * @param y 纵坐标，虚手为-1
+     * @param color 落子的颜色
+     */
+    public synchronized void logMove(int x, int y, int color) throws IOException {
+        begin(MOVE);
+        record.writeByte(x);
+        record.writeByte(y);
+        record.writeByte(color);
+        append();
+    }
+
+    /**
+     * 记录 GoBoard.setComment()
+     * @param comment 未转义的注释
+     */
+    public synchronized void logComment(String comment) throws IOException {
+        begin(COMMENT);
+        writeString(comment);
+        append();
+    }
+
+    /**
+     * 记录 GoBoard.setMark()
+     */
+    public synchronized void logMark(int markType) throws IOException {
+        begin(MARK);
+        record.writeInt(markType);
+        append();
+    }
+
+    /**
+     * 记录跳转后的手数，前进、后退、回到开始都用这一条
+     * 后面的修改作用于当前手，重放时需要回到同一手
+     * @param moveNumber GoBoard.getCurrentMoveNumber()
+     */
+    public synchronized void logGoTo(int moveNumber) throws IOException {
+        begin(GO_TO);
+        record.writeInt(moveNumber);
+        append();
+    }
+
+    /**
+     * 记录 GoBoard.nextMove()，在一条线的末尾它会进入第一个分支，不能用手数代替
+     */
+    public synchronized void logNextMove() throws IOException {
+        begin(NEXT_MOVE);
+        append();
+    }
+
+    /**
+     * 记录 GoBoard.selectVariation()，选择分支会调整棋谱树的结构
+     */
+    public synchronized void logSelectVariation(int index) throws IOException {
+        begin(SELECT_VARIATION);
+        record.writeInt(index);
+        append();
+    }
+
+    /**
+     * 记录删除分支
+     * @param index 分支序号
+     * @param start 为true时是 removeStartVariation()，否则是 removeCurrentVariation()
+     */
+    public synchronized void logRemoveVariation(int index, boolean start) throws IOException {
+        begin(start ? REMOVE_START_VARIATION : REMOVE_VARIATION);
+        record.writeInt(index);
+        append();
+    }
+
+    private void begin(byte op) throws IOException {
+        if (out == null) {
+            throw new IllegalStateException("Journal is not open");
+        }
+        buffer.reset();
+        // 长度占位，append() 时回填
+        record.writeInt(0);
+        record.writeByte(op);
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        record.writeInt(bytes.length);
+        record.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 回填长度、追加校验和，整条记录一次写入
+     */
+    private void append() throws IOException {
+        byte[] data = buffer.toByteArray();
+        int recordLength = data.length - 4;
+        if (recordLength > MAX_RECORD_LENGTH) {
+            throw new IOException("Journal record too large: " + recordLength + " bytes");
+        }
+        crc.reset();
+        crc.update(data, 4, recordLength);
+        record.writeInt((int) crc.getValue());
+        data = buffer.toByteArray();
+        data[0] = (byte) (recordLength >>> 24);
+        data[1] = (byte) (recordLength >>> 16);
+        data[2] = (byte) (recordLength >>> 8);
+        data[3] = (byte) recordLength;
+        out.write(data);
+        length += data.length;
+        unsyncedRecords++;
+        long now = System.currentTimeMillis();
+        if (unsyncedRecords >= syncRecords || now - lastSync >= syncIntervalMillis) {
+            sync();
+        }
+    }
+
+    /**
+     * @return 日志是否已经大到应该调用 compact()
+     */
+    public synchronized boolean needsCompaction() {
+        return pending == null && length > compactBytes;
+    }
+
+    /**
+     * 把棋盘写为新一代的快照，日志从空开始，只记录当前所在的手数
+     * 在调用线程上写文件并 fsync，界面上改用 compactAsync
+     * @param board 棋盘
+     * @throws IOException 写入异常，此时仍使用原来的快照和日志
+     */
+    public synchronized void compact(GoBoard board) throws IOException {
+        Snapshot snapshot = capture(board);
+        writeSnapshot(snapshot);
+        finishCompaction(snapshot);
+    }
+
+    /**
+     * 在后台写出新一代的快照，新建、加载棋谱和日志过大时调用，日志不记录整盘棋的替换
+     * 棋盘在调用线程上序列化到内存，之后可以继续修改棋盘和追加记录；
+     * 再次调用或 close() 之后，尚未完成的压缩作废，原来的快照和日志仍然有效
+     * @param board 棋盘
+     * @param executor 写文件的线程
+     * @return 压缩完成或失败时结束，失败时仍使用原来的快照和日志
+     * @throws IOException 序列化棋盘失败
+     */
+    public CompletableFuture<Void> compactAsync(GoBoard board, Executor executor) throws IOException {
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = capture(board);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                writeSnapshot(snapshot);
+                synchronized (this) {
+                    finishCompaction(snapshot);
+                }
+            } catch (IOException e) {
+                snapshot.temp.delete();
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * 序列化棋盘并分配新的代号，记下此时日志的长度，之后的记录在切换时复制到新日志
+     */
+    private Snapshot capture(GoBoard board) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        SGFWriter writer = new SGFWriter(data);
+        writer.writeBoard(board);
+        writer.flush();
+        reservedGeneration = Math.max(Math.max(generation, reservedGeneration), findLatestGeneration()) + 1;
+        File temp = new File(directory, SNAPSHOT_PREFIX + reservedGeneration + SNAPSHOT_SUFFIX + TEMP_SUFFIX);
+        pending = new Snapshot(reservedGeneration, data.toByteArray(), board.getCurrentMoveNumber(), length, temp);
+        return pending;
+    }
+
+    private static void writeSnapshot(Snapshot snapshot) throws IOException {
+        try (FileOutputStream file = new FileOutputStream(snapshot.temp)) {
+            file.write(snapshot.data);
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * 切换到新一代：新日志先记录快照时的手数，再复制快照之后追加到原日志的记录
+     */
+    private void finishCompaction(Snapshot snapshot) throws IOException {
+        if (snapshot != pending) {
+            // 之后又开始了新的压缩，或者日志已经关闭或重新打开
+            snapshot.temp.delete();
+            return;
+        }
+        pending = null;
+        long previousLength = length;
+        File previous = out != null ? journalFile(generation) : null;
+        // 先写好新日志再让快照生效：只有快照改名成功，这一代才会被 open() 选中
+        closeJournal();
+        File journal = journalFile(snapshot.generation);
+        try {
+            createJournal(journal);
+            logGoTo(snapshot.moveNumber);
+            if (previous != null && previousLength > snapshot.journalLength) {
+                copyRecords(previous, snapshot.journalLength, previousLength);
+            }
+            sync();
+            if (!snapshot.temp.renameTo(snapshotFile(snapshot.generation))) {
+                throw new IOException("Cannot rename " + snapshot.temp);
+            }
+        } catch (IOException e) {
+            closeJournal();
+            journal.delete();
+            snapshot.temp.delete();
+            // 继续追加到原来的日志
+            if (previous != null) {
+                openJournal(previous, previousLength);
+            }
+            throw e;
+        }
+        generation = snapshot.generation;
+        deleteOtherGenerations();
+    }
+
+    /**
+     * 把原日志中 [from, to) 的完整记录原样追加到当前日志
+     */
+    private void copyRecords(File journal, long from, long to) throws IOException {
+        byte[] data = new byte[(int) (to - from)];
+        try (RandomAccessFile file = new RandomAccessFile(journal, "r")) {
+            file.seek(from);
+            file.readFully(data);
+        }
+        out.write(data);
+        length += data.length;
+    }
+
+    private void createJournal(File journal) throws IOException {
+        out = new FileOutputStream(journal);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        length = HEADER_LENGTH;
+        sync();
+    }
+
+    /**
+     * 截掉无效的尾部后打开，接着追加
+     */
+    private void openJournal(File journal, long valid) throws IOException {
+        if (journal.length() > valid) {
+            try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+                file.setLength(valid);
+                file.getFD().sync();
+            }
+        }
+        out = new FileOutputStream(journal, true);
+        length = valid;
+        unsyncedRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * 把已写入的记录同步到磁盘，进入后台时调用
+     */
+    public synchronized void sync() throws IOException {
+        if (out != null) {
+            out.getFD().sync();
+        }
+        unsyncedRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        sync();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        pending = null;
+        if (out != null) {
+            sync();
+        }
+        closeJournal();
+    }
+
+    private void closeJournal() throws IOException {
+        if (out != null) {
+            FileOutputStream file = out;
+            out = null;
+            file.close();
+        }
+    }
+
+    File snapshotFile(long generation) {
+        return new File(directory, SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX);
+    }
+
+    File journalFile(long generation) {
+        return new File(directory, JOURNAL_PREFIX + generation + JOURNAL_SUFFIX);
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return 已完成的快照中最新的一代，没有时为-1
+     */
+    private long findLatestGeneration() {
+        long latest = -1;
+        String[] names = directory.list();
+        if (names == null) {
+            return latest;
+        }
+        for (String name : names) {
+            long g = parseGeneration(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            latest = Math.max(latest, g);
+        }
+        return latest;
+    }
+
+    /**
+     * 删除其他代的快照、日志和未完成的临时文件
+     */
+    private void deleteOtherGenerations() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            long g = Math.max(parseGeneration(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX),
+                    parseGeneration(name, JOURNAL_PREFIX, JOURNAL_SUFFIX));
+            if ((g >= 0 && g != generation) || name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    private static long parseGeneration(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix) || name.length() <= prefix.length() + suffix.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 尚未生效的快照
+     */
+    private static final class Snapshot {
+        final long generation;
+        final byte[] data;
+        final int moveNumber;
+        final long journalLength; // 序列化时原日志的长度
+        final File temp;
+
+        Snapshot(long generation, byte[] data, int moveNumber, long journalLength, File temp) {
+            this.generation = generation;
+            this.data = data;
+            this.moveNumber = moveNumber;
+            this.journalLength = journalLength;
+            this.temp = temp;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.IOException;
+
+/**
+ * GIB棋谱导入器 - 韩国平台（Tygem 等）导出的格式
+ * 文件头为 \[KEY=VALUE\] 行，着手为 "STO 0 手数 颜色 x y"，虚手为 "SKI 0 手数"
+ */
+public class GIBImporter extends GameRecordImporter {
+
+    @Override
+    protected void read(RecordTokenizer tokens, GoBoard board) throws IOException {
+        int lastColor = 2;
+        while (tokens.nextLine()) {
+            if (tokens.startsWith("STO ")) {
+                // STO 0 手数 颜色 x y，颜色 1=黑 2=白，坐标从0开始
+                lastColor = tokens.intField(3, ' ', 1) == 2 ? 2 : 1;
+                addMove(board, tokens.intField(4, ' ', -1), tokens.intField(5, ' ', -1), lastColor);
+            } else if (tokens.startsWith("SKI ")) {
+                // 虚手不带颜色，由上一手推出
+                lastColor = 3 - lastColor;
+                addMove(board, -1, -1, lastColor);
+            } else if (tokens.startsWith("INI ")) {
+                // INI 0 1 让子数
+                placeHandicap(board, tokens.intField(3, ' ', 0));
+            } else if (tokens.startsWith("\\[GAMEBLACKNAME=")) {
+                board.setBlackPlayer(stripRank(headerValue(tokens, 16)));
+            } else if (tokens.startsWith("\\[GAMEWHITENAME=")) {
+                board.setWhitePlayer(stripRank(headerValue(tokens, 16)));
+            } else if (tokens.startsWith("\\[GAMEDATE=")) {
+                board.setDate(normalizeDate(headerValue(tokens, 11)));
+            } else if (tokens.startsWith("\\[GAMEINFOMAIN=")) {
+                String result = parseResult(headerValue(tokens, 15));
+                if (result != null) {
+                    board.setResult(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出 \[KEY=VALUE\] 行的值
+     */
+    private static String headerValue(RecordTokenizer tokens, int start) {
+        int end = tokens.length();
+        if (end >= start + 2 && tokens.charAt(end - 2) == '\\' && tokens.charAt(end - 1) == ']') {
+            end -= 2;
+        }
+        return tokens.substring(start, end);
+    }
+
+    /**
+     * 去掉名字后面的段位，如 "name (5D)"
+     */
+    private static String stripRank(String name) {
+        int index = name.indexOf(" (");
+        return index > 0 ? name.substring(0, index) : name;
+    }
+
+    /**
+     * 从 GAMEINFOMAIN 的 GRLT（结果类型）和 ZIPSU（目差×10）得到 SGF 的 RE 值
+     * @param info GAMEINFOMAIN 的值，如 "GBKIND:3,GRLT:0,ZIPSU:35,..."
+     * @return 对局结果，无法识别返回null
+     */
+    static String parseResult(String info) {
+        int type = infoValue(info, "GRLT:");
+        switch (type) {
+            case 0:
+            case 1: {
+                int points = infoValue(info, "ZIPSU:");
+                String winner = type == 0 ? "B+" : "W+";
+                return points > 0 ? winner + points / 10 + (points % 10 != 0 ? "." + points % 10 : "") : winner;
+            }
+            case 3:
+                return "B+R";
+            case 4:
+                return "W+R";
+            case 7:
+                return "B+T";
+            case 8:
+                return "W+T";
+            default:
+                return null;
+        }
+    }
+
+    private static int infoValue(String info, String key) {
+        int index = info.indexOf(key);
+        if (index < 0) {
+            return -1;
+        }
+        int value = 0;
+        boolean found = false;
+        for (int i = index + key.length(); i < info.length(); i++) {
+            char c = info.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            found = true;
+        }
+        return found ? value : -1;
+    }
+}
@@ -0,0 +1,100 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.util.List;
+
+/**
+ * 对局指纹 - 只由棋盘大小、摆子和着手顺序决定，与对局信息和注释无关
+ * 对 8 种旋转和镜像分别计算后取最小值，同一局棋从不同来源、以不同朝向记录得到相同的指纹
+ * 指纹会保存到棋谱库中，计算方法不能随意修改
+ */
+public final class GameFingerprint {
+
+    // 前缀指纹的手数，截断的棋谱和完整的棋谱共享这个前缀
+    public static final int PREFIX_LENGTH = 60;
+    // 截断的棋谱按这些手数的前缀指纹查找，短于第一个检查点的棋谱只能找到完全相同的对局
+    public static final List<Integer> CHECKPOINTS = List.of(20, 40, PREFIX_LENGTH);
+
+    private static final int SYMMETRIES = 8;
+    private static final long PASS_CODE = 0x5A5A5A5AL;
+
+    private GameFingerprint() {
+    }
+
+    /**
+     * 计算前 length 手的指纹
+     * @param size 棋盘大小
+     * @param setup 摆子，与顺序无关
+     * @param moves 着手
+     * @param length 手数，超过着手数时取全部
+     * @return 指纹
+     */
+    public static long of(int size, List<GoBoard.Move> setup, List<GoBoard.Move> moves, int length) {
+        return of(size, setup, moves, new int[] {length})[0];
+    }
+
+    /**
+     * 一次遍历计算多个长度的前缀指纹
+     * @param size 棋盘大小
+     * @param setup 摆子，与顺序无关
+     * @param moves 着手
+     * @param lengths 不递减的手数，超过着手数时取全部
+     * @return 与 lengths 一一对应的指纹
+     */
+    public static long[] of(int size, List<GoBoard.Move> setup, List<GoBoard.Move> moves, int[] lengths) {
+        if (size < 1 || size > SGFPointSet.MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid board size: " + size);
+        }
+        long[] hashes = new long[SYMMETRIES];
+        for (int s = 0; s < SYMMETRIES; s++) {
+            long stones = 0;
+            for (GoBoard.Move stone : setup) {
+                // 摆子按集合处理，异或与顺序无关
+                stones ^= mix(code(s, size, stone));
+            }
+            hashes[s] = mix(size * 0x9E3779B97F4A7C15L ^ stones);
+        }
+        long[] result = new long[lengths.length];
+        int next = 0;
+        for (int i = 0; next < lengths.length; i++) {
+            // 已经走了 i 手，记录所有到达的长度
+            while (next < lengths.length && (lengths[next] <= i || i == moves.size())) {
+                result[next++] = min(hashes);
+            }
+            if (i == moves.size()) {
+                break;
+            }
+            GoBoard.Move move = moves.get(i);
+            for (int s = 0; s < SYMMETRIES; s++) {
+                hashes[s] = mix(hashes[s] ^ code(s, size, move));
+            }
+        }
+        return result;
+    }
+
+    private static long min(long[] hashes) {
+        long min = hashes[0];
+        for (int s = 1; s < SYMMETRIES; s++) {
+            min = Math.min(min, hashes[s]);
+        }
+        return min;
+    }
+
+    /**
+     * 着手在对称变换后的编码，颜色在最低位，虚手和棋盘外的点只保留颜色
+     */
+    private static long code(int symmetry, int size, GoBoard.Move move) {
+        int color = move.color == GoBoard.WHITE ? 1 : 0;
+        if (move.x < 0 || move.x >= size || move.y < 0 || move.y >= size) {
+            return PASS_CODE << 1 | color;
+        }
+        return ((long) PositionHash.transform(symmetry, size, move.x, move.y) + 1) << 1 | color;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,121 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Locale;
+
+/**
+ * 棋谱导入器 - 把韩国和中国对弈平台导出的 GIB/NGF/UGF 棋谱加载到 GoBoard
+ * 逐行流式读取，不整体读入文件，也不构建中间的SGF树；
+ * 加载结果与 SGFConverter 相同：对局信息、让子初始局面和主线着手
+ */
+public abstract class GameRecordImporter {
+
+    /**
+     * 按文件扩展名选择导入器
+     * @param fileName 文件名
+     * @return 对应的导入器，不支持的格式返回null
+     */
+    public static GameRecordImporter forFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gib")) {
+            return new GIBImporter();
+        }
+        if (name.endsWith(".ngf")) {
+            return new NGFImporter();
+        }
+        if (name.endsWith(".ugf") || name.endsWith(".ugi")) {
+            return new UGFImporter();
+        }
+        return null;
+    }
+
+    /**
+     * 读取棋谱并加载到棋盘，调用前应先 resetGame()
+     * @param in 已解码的字符输入，字符集由调用方决定
+     * @param board GoBoard对象
+     * @throws IOException 读取异常
+     */
+    public void read(Reader in, GoBoard board) throws IOException {
+        read(new RecordTokenizer(in), board);
+    }
+
+    /**
+     * 读取棋谱字符串并加载到棋盘
+     * @param text 棋谱内容
+     * @param board GoBoard对象
+     * @throws IOException 读取异常
+     */
+    public void read(String text, GoBoard board) throws IOException {
+        read(new StringReader(text), board);
+    }
+
+    /**
+     * 逐行读取棋谱
+     * @param tokens 行分词器
+     * @param board GoBoard对象
+     * @throws IOException 读取异常
+     */
+    protected abstract void read(RecordTokenizer tokens, GoBoard board) throws IOException;
+
+    /**
+     * 追加一手到主线，坐标超出棋盘时记为虚手
+     * @param board GoBoard对象
+     * @param x 列
+     * @param y 行
+     * @param color 颜色（1=黑，2=白）
+     */
+    protected static void addMove(GoBoard board, int x, int y, int color) {
+        if (!board.isValidCoordinate(x, y)) {
+            x = -1;
+            y = -1;
+        }
+        board.addMoveToHistory(new GoBoard.Move(x, y, color));
+    }
+
+    /**
+     * 在星位放置让子并保存为初始局面
+     * @param board GoBoard对象
+     * @param handicap 让子数，小于2时不放置
+     */
+    protected static void placeHandicap(GoBoard board, int handicap) {
+        if (handicap >= 2 && handicap <= 9) {
+            SGFConverter.placeAutomaticHandicap(board, handicap);
+            board.snapshotInitialSetup();
+        }
+    }
+
+    /**
+     * 把 年/月/日 形式的日期规范为 SGF 的 YYYY-MM-DD，无法识别时原样返回
+     * @param date 日期文本，如 "2008- 9-15"、"2003/08/26" 或 "20040101"
+     * @return 规范后的日期
+     */
+    protected static String normalizeDate(String date) {
+        int[] parts = new int[3];
+        int count = 0;
+        int value = -1;
+        for (int i = 0; i <= date.length() && count < 3; i++) {
+            char c = i < date.length() ? date.charAt(i) : ' ';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+            } else if (value >= 0) {
+                parts[count++] = value;
+                value = -1;
+            }
+        }
+        if (count >= 1 && parts[0] >= 10000101 && parts[0] <= 99991231) {
+            // 紧凑格式 YYYYMMDD
+            parts[2] = parts[0] % 100;
+            parts[1] = parts[0] / 100 % 100;
+            parts[0] = parts[0] / 10000;
+            count = 3;
+        }
+        if (count < 3 || parts[0] < 1000) {
+            return date.trim();
+        }
+        return String.format(Locale.ROOT, "%04d-%02d-%02d", parts[0], parts[1], parts[2]);
+    }
+}
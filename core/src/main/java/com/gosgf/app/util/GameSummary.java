@@ -0,0 +1,466 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 棋谱库条目 - 从SGF树中提取可以建索引的对局信息和紧凑的主线着手
+ * 不依赖 Android，棋谱库和服务器端批处理共用同一套解析规则
+ */
+public class GameSummary {
+
+    public static final int WINNER_UNKNOWN = 0;
+    public static final int WINNER_BLACK = GoBoard.BLACK;
+    public static final int WINNER_WHITE = GoBoard.WHITE;
+    public static final int WINNER_DRAW = 3;
+
+    // 着手编码：每手2字节，最高位为白棋，低12位为 y * 52 + x
+    private static final int WHITE_BIT = 0x8000;
+    private static final int PASS = 0x0FFF;
+
+    private String blackPlayer;
+    private String whitePlayer;
+    private int boardSize = 19;
+    private double komi;
+    private int handicap;
+    private int winner = WINNER_UNKNOWN;
+    private double margin = Double.NaN;
+    private String result;
+    private int date;
+    private int moveCount;
+    private byte[] moves = new byte[0];
+    private byte[] setup = new byte[0];
+    private PositionHash.Line positions;
+    private Long fingerprint;
+    private Long prefixFingerprint;
+    private long[] prefixKeys;
+    private List<CommentIndex.Entry> comments = Collections.emptyList();
+
+    /**
+     * 从SGF树提取条目，主线为主序列，主序列为空时为第一个根分支
+     * @param tree SGF树
+     * @return 条目
+     */
+    public static GameSummary of(SGFParser.SGFTree tree) {
+        GameSummary summary = new GameSummary();
+        SGFParser.Node root = tree.getRootNode();
+        if (root != null) {
+            summary.blackPlayer = root.getFirstPropertyValue("PB");
+            summary.whitePlayer = root.getFirstPropertyValue("PW");
+            summary.boardSize = parseInt(root.getFirstPropertyValue("SZ"), 19);
+            summary.komi = parseDouble(root.getFirstPropertyValue("KM"), 0);
+            summary.handicap = parseInt(root.getFirstPropertyValue("HA"), 0);
+            summary.setResult(root.getFirstPropertyValue("RE"));
+            summary.date = parseDate(root.getFirstPropertyValue("DT"));
+
+            List<GoBoard.Move> stones = new ArrayList<>();
+            for (String point : root.getPropertyValues("AB")) {
+                stones.add(SGFConverter.createMoveFromCoord(point, GoBoard.BLACK));
+            }
+            for (String point : root.getPropertyValues("AW")) {
+                stones.add(SGFConverter.createMoveFromCoord(point, GoBoard.WHITE));
+            }
+            summary.setSetupStones(stones);
+        }
+
+        List<SGFParser.Node> mainLine = tree.getMainSequence();
+        if (mainLine.isEmpty() && !tree.getRootVariations().isEmpty()) {
+            mainLine = tree.getRootVariations().get(0);
+        }
+        List<GoBoard.Move> moves = new ArrayList<>(mainLine.size());
+        for (SGFParser.Node node : mainLine) {
+            String black = node.getFirstPropertyValue("B");
+            String white = node.getFirstPropertyValue("W");
+            if (black != null) {
+                moves.add(SGFConverter.createMoveFromCoord(black, GoBoard.BLACK));
+            } else if (white != null) {
+                moves.add(SGFConverter.createMoveFromCoord(white, GoBoard.WHITE));
+            }
+        }
+        summary.setMoves(moves);
+        summary.comments = CommentIndex.extract(tree);
+        return summary;
+    }
+
+    /**
+     * 把着手编码为每手2字节的数组
+     * @param moves 着手列表，虚手和棋盘外的点记为虚手
+     * @return 编码后的字节
+     */
+    public static byte[] encodeMoves(List<GoBoard.Move> moves) {
+        byte[] data = new byte[moves.size() * 2];
+        for (int i = 0; i < moves.size(); i++) {
+            GoBoard.Move move = moves.get(i);
+            boolean onBoard = move.x >= 0 && move.x < SGFPointSet.MAX_SIZE && move.y >= 0 && move.y < SGFPointSet.MAX_SIZE;
+            int value = onBoard ? move.y * SGFPointSet.MAX_SIZE + move.x : PASS;
+            if (move.color == GoBoard.WHITE) {
+                value |= WHITE_BIT;
+            }
+            data[i * 2] = (byte) (value >>> 8);
+            data[i * 2 + 1] = (byte) value;
+        }
+        return data;
+    }
+
+    /**
+     * 解码 encodeMoves 的结果
+     * @param data 编码后的字节
+     * @return 着手列表，虚手为 (-1,-1)
+     */
+    public static List<GoBoard.Move> decodeMoves(byte[] data) {
+        if (data.length % 2 != 0) {
+            throw new IllegalArgumentException("Move data length must be even: " + data.length);
+        }
+        List<GoBoard.Move> moves = new ArrayList<>(data.length / 2);
+        for (int i = 0; i < data.length; i += 2) {
+            int value = (data[i] & 0xFF) << 8 | (data[i + 1] & 0xFF);
+            int color = (value & WHITE_BIT) != 0 ? GoBoard.WHITE : GoBoard.BLACK;
+            int point = value & PASS;
+            if (point == PASS) {
+                moves.add(new GoBoard.Move(-1, -1, color));
+            } else {
+                moves.add(new GoBoard.Move(point % SGFPointSet.MAX_SIZE, point / SGFPointSet.MAX_SIZE, color));
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * 把 DT 转换为可排序的整数 YYYYMMDD，缺少的月、日为 0
+     * 支持 "2024-01-15"、"2024-01-15,16"、"2024-01"、"20240115"，取第一个日期
+     * @param date DT 的值，可以为null
+     * @return 日期整数，无法识别返回 0
+     */
+    public static int parseDate(String date) {
+        if (date == null) {
+            return 0;
+        }
+        int[] parts = new int[3];
+        int count = 0;
+        int digits = 0;
+        int value = 0;
+        for (int i = 0; i <= date.length() && count < 3; i++) {
+            char c = i < date.length() ? date.charAt(i) : ',';
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+                if (digits > 8) {
+                    return 0;
+                }
+            } else if (digits > 0) {
+                if (count == 0 && digits == 8) {
+                    // 紧凑格式 YYYYMMDD
+                    return isValidDate(value / 10000, value / 100 % 100, value % 100) ? value : 0;
+                }
+                parts[count++] = value;
+                digits = 0;
+                value = 0;
+                if (c == ',') {
+                    // 多个日期只取第一个
+                    break;
+                }
+            }
+        }
+        if (count == 0 || parts[0] < 1000 || parts[0] > 9999 || !isValidDate(parts[0], parts[1], parts[2])) {
+            return 0;
+        }
+        return parts[0] * 10000 + parts[1] * 100 + parts[2];
+    }
+
+    private static boolean isValidDate(int year, int month, int day) {
+        return year >= 1000 && month >= 0 && month <= 12 && day >= 0 && day <= 31 && (month > 0 || day == 0);
+    }
+
+    /**
+     * 设置 RE 并解析胜方和目差，如 "B+3.5"、"W+R"、"0"、"Draw"
+     * 中盘胜、超时胜等没有目差，目差为 NaN
+     * @param result RE 的值，可以为null
+     */
+    public void setResult(String result) {
+        this.result = result;
+        winner = WINNER_UNKNOWN;
+        margin = Double.NaN;
+        if (result == null) {
+            return;
+        }
+        String value = result.trim();
+        if (value.equals("0") || value.equalsIgnoreCase("Draw") || value.equals("Jigo")) {
+            winner = WINNER_DRAW;
+            margin = 0;
+            return;
+        }
+        if (value.length() < 2 || value.charAt(1) != '+') {
+            return;
+        }
+        char color = Character.toUpperCase(value.charAt(0));
+        if (color == 'B') {
+            winner = WINNER_BLACK;
+        } else if (color == 'W') {
+            winner = WINNER_WHITE;
+        } else {
+            return;
+        }
+        margin = parseDouble(value.substring(2), Double.NaN);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double parseDouble(String value, double defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public String getBlackPlayer() {
+        return blackPlayer;
+    }
+
+    public void setBlackPlayer(String blackPlayer) {
+        this.blackPlayer = blackPlayer;
+    }
+
+    public String getWhitePlayer() {
+        return whitePlayer;
+    }
+
+    public void setWhitePlayer(String whitePlayer) {
+        this.whitePlayer = whitePlayer;
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    public void setBoardSize(int boardSize) {
+        this.boardSize = boardSize;
+        positions = null;
+        fingerprint = null;
+        prefixFingerprint = null;
+        prefixKeys = null;
+    }
+
+    public double getKomi() {
+        return komi;
+    }
+
+    public int getHandicap() {
+        return handicap;
+    }
+
+    public int getWinner() {
+        return winner;
+    }
+
+    /**
+     * 直接设置胜方，用于从棋谱库读回的对局，不改变 RE 和目差
+     * @param winner 胜方，见 WINNER_*
+     */
+    public void setWinner(int winner) {
+        this.winner = winner;
+    }
+
+    /**
+     * @return 目差，中盘胜或未知时为 NaN
+     */
+    public double getMargin() {
+        return margin;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @return 日期整数 YYYYMMDD，未知为 0
+     */
+    public int getDate() {
+        return date;
+    }
+
+    public void setDate(int date) {
+        this.date = date;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return 主线着手，编码见 encodeMoves
+     */
+    public byte[] getMoveData() {
+        return moves;
+    }
+
+    /**
+     * 设置主线着手，同时更新手数
+     * @param moves 着手列表
+     */
+    public void setMoves(List<GoBoard.Move> moves) {
+        this.moves = encodeMoves(moves);
+        moveCount = moves.size();
+        positions = null;
+        fingerprint = null;
+        prefixFingerprint = null;
+        prefixKeys = null;
+    }
+
+    /**
+     * @return 让子和摆子，编码与着手相同
+     */
+    public byte[] getSetupData() {
+        return setup;
+    }
+
+    /**
+     * 设置让子和摆子
+     * @param stones 棋子，坐标和颜色与着手相同
+     */
+    public void setSetupStones(List<GoBoard.Move> stones) {
+        setup = encodeMoves(stones);
+        positions = null;
+        fingerprint = null;
+        prefixFingerprint = null;
+        prefixKeys = null;
+    }
+
+    /**
+     * 主线的指纹，见 GameFingerprint，首次调用时计算
+     * @return 指纹，棋盘大小无效时为null
+     */
+    public Long getFingerprint() {
+        computeFingerprints();
+        return fingerprint;
+    }
+
+    /**
+     * 前 GameFingerprint.PREFIX_LENGTH 手的指纹，手数不足时与 getFingerprint 相同
+     * @return 指纹，棋盘大小无效时为null
+     */
+    public Long getPrefixFingerprint() {
+        computeFingerprints();
+        return prefixFingerprint;
+    }
+
+    /**
+     * 查找截断棋谱用的前缀指纹，见 GameFingerprint.CHECKPOINTS
+     * 两局中较短的一局到达的每个检查点，两局的指纹都相同，查找时逐个检查点比较
+     * @return 第 i 个为前 CHECKPOINTS.get(i) 手的指纹，只包括不超过本局手数的检查点；棋盘大小无效时为null
+     */
+    public long[] getPrefixKeys() {
+        computeFingerprints();
+        return prefixKeys;
+    }
+
+    /**
+     * 一次遍历算出完整指纹、前缀指纹和各检查点的指纹
+     */
+    private void computeFingerprints() {
+        if (fingerprint != null || !isValidBoardSize()) {
+            return;
+        }
+        List<Integer> checkpoints = GameFingerprint.CHECKPOINTS;
+        int reached = 0;
+        while (reached < checkpoints.size() && checkpoints.get(reached) <= moveCount) {
+            reached++;
+        }
+        int[] lengths = new int[reached + 2];
+        for (int i = 0; i < reached; i++) {
+            lengths[i] = checkpoints.get(i);
+        }
+        // 检查点都不超过前缀长度，lengths 不递减
+        lengths[reached] = Math.min(moveCount, GameFingerprint.PREFIX_LENGTH);
+        lengths[reached + 1] = moveCount;
+        long[] values = GameFingerprint.of(boardSize, decodeMoves(setup), decodeMoves(moves), lengths);
+        prefixKeys = Arrays.copyOf(values, reached);
+        prefixFingerprint = values[reached];
+        fingerprint = values[reached + 1];
+    }
+
+    /**
+     * 本局的着手是否是另一局的开头部分（允许旋转和镜像），相同的对局也算
+     * @param other 另一局
+     * @return 是前缀
+     */
+    public boolean isPrefixOf(GameSummary other) {
+        Long own = getFingerprint();
+        return own != null && boardSize == other.boardSize && moveCount <= other.moveCount
+                && own == other.fingerprintOf(moveCount);
+    }
+
+    private long fingerprintOf(int length) {
+        return GameFingerprint.of(boardSize, decodeMoves(setup), decodeMoves(moves), length);
+    }
+
+    private boolean isValidBoardSize() {
+        return boardSize >= 1 && boardSize <= SGFPointSet.MAX_SIZE;
+    }
+
+    /**
+     * @return 主线和分支中的注释，见 CommentIndex.extract
+     */
+    public List<CommentIndex.Entry> getComments() {
+        return comments;
+    }
+
+    /**
+     * 曾经出现在棋盘上的棋子：摆子和主线着手的并集，不需要重放
+     * 前 (size * size + 7) / 8 字节为黑棋，之后同样长度为白棋，点 (x,y) 为第 y * size + x 位
+     * 用于棋形搜索的预筛选，见 PatternSearch
+     * @return 位图，棋盘大小无效时为null
+     */
+    public byte[] getStoneBitmap() {
+        if (!isValidBoardSize()) {
+            return null;
+        }
+        int bytes = (boardSize * boardSize + 7) / 8;
+        byte[] bitmap = new byte[bytes * 2];
+        markStones(bitmap, bytes, setup);
+        markStones(bitmap, bytes, moves);
+        return bitmap;
+    }
+
+    private void markStones(byte[] bitmap, int bytes, byte[] data) {
+        for (int i = 0; i < data.length; i += 2) {
+            int value = (data[i] & 0xFF) << 8 | (data[i + 1] & 0xFF);
+            int point = value & PASS;
+            int x = point % SGFPointSet.MAX_SIZE;
+            int y = point / SGFPointSet.MAX_SIZE;
+            if (point == PASS || x >= boardSize || y >= boardSize) {
+                continue;
+            }
+            int bit = y * boardSize + x;
+            int offset = (value & WHITE_BIT) != 0 ? bytes : 0;
+            bitmap[offset + bit / 8] |= (byte) (1 << (bit % 8));
+        }
+    }
+
+    /**
+     * 主线上的局面序列，见 PositionHash，首次调用时计算
+     * @return 局面序列，棋盘大小无效时为null
+     */
+    public PositionHash.Line getPositions() {
+        if (positions == null && isValidBoardSize()) {
+            positions = PositionHash.ofGame(boardSize, decodeMoves(setup), decodeMoves(moves));
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,80 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.IOException;
+
+/**
+ * NGF棋谱导入器 - 中国平台（弈城等）导出的格式
+ * 前12行为固定顺序的对局信息，之后每手一行，如 "PMABDQ"：
+ * 第5个字符为颜色，第6、7个字符为坐标，'B' 表示第一路
+ */
+public class NGFImporter extends GameRecordImporter {
+
+    // 文件头各行的序号（从0开始）
+    private static final int LINE_WHITE = 2;
+    private static final int LINE_BLACK = 3;
+    private static final int LINE_HANDICAP = 5;
+    private static final int LINE_DATE = 8;
+    private static final int LINE_RESULT = 10;
+
+    @Override
+    protected void read(RecordTokenizer tokens, GoBoard board) throws IOException {
+        int line = 0;
+        while (tokens.nextLine()) {
+            if (tokens.startsWith("PM")) {
+                int color = tokens.charAt(4) == 'W' ? 2 : 1;
+                addMove(board, tokens.charAt(5) - 'B', tokens.charAt(6) - 'B', color);
+            } else if (line == LINE_WHITE) {
+                board.setWhitePlayer(tokens.field(0, ' '));
+            } else if (line == LINE_BLACK) {
+                board.setBlackPlayer(tokens.field(0, ' '));
+            } else if (line == LINE_HANDICAP) {
+                placeHandicap(board, tokens.intField(0, ' ', 0));
+            } else if (line == LINE_DATE) {
+                String date = tokens.field(0, ' ');
+                if (date != null) {
+                    board.setDate(normalizeDate(date));
+                }
+            } else if (line == LINE_RESULT) {
+                String result = parseResult(tokens.line());
+                if (result != null) {
+                    board.setResult(result);
+                }
+            }
+            line++;
+        }
+    }
+
+    /**
+     * 把结果描述转为 SGF 的 RE 值，如 "White wins by resignation" 或 "黑胜3.5目"
+     * @param text 结果描述
+     * @return 对局结果，无法识别返回null
+     */
+    static String parseResult(String text) {
+        String winner;
+        if (text.contains("白") || text.startsWith("White") || text.startsWith("white")) {
+            winner = "W+";
+        } else if (text.contains("黑") || text.startsWith("Black") || text.startsWith("black")) {
+            winner = "B+";
+        } else {
+            return null;
+        }
+        if (text.contains("中盘") || text.contains("resign")) {
+            return winner + "R";
+        }
+        if (text.contains("超时") || text.contains("time")) {
+            return winner + "T";
+        }
+        // 取第一个数字作为目差
+        int start = 0;
+        while (start < text.length() && !Character.isDigit(text.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < text.length() && (Character.isDigit(text.charAt(end)) || text.charAt(end) == '.')) {
+            end++;
+        }
+        return end > start ? winner + text.substring(start, end) : winner;
+    }
+}
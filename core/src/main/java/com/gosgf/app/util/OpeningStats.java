@@ -0,0 +1,157 @@
+package com.gosgf.app.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 定式统计 - 按归一化局面汇总棋谱中走出的下一手，以及各手的对局数和黑白胜局数
+ * 类似 Kombilo 的开局浏览，结果预先写入棋谱库，浏览时按局面哈希直接读取
+ * 只统计每局前若干手，后面的局面几乎不会在两局中重复出现
+ */
+public class OpeningStats {
+
+    // 默认统计的手数
+    public static final int DEFAULT_DEPTH = 50;
+
+    private final int depth;
+    private final Map<Long, Map<Integer, Continuation>> positions = new HashMap<>();
+    private final Set<Long> seen = new HashSet<>();
+
+    public OpeningStats() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param depth 每局统计的手数
+     */
+    public OpeningStats(int depth) {
+        this.depth = depth;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * 加入一局棋的前 depth 手
+     * 同一局中重复出现的局面只统计第一次，与局面索引一致
+     * @param game 对局，棋盘大小无效时忽略
+     */
+    public void add(GameSummary game) {
+        PositionHash.Line line = game.getPositions();
+        if (line == null) {
+            return;
+        }
+        seen.clear();
+        int count = Math.min(depth, line.getMoveCount());
+        for (int i = 0; i < count; i++) {
+            long hash = line.getHash(i);
+            if (seen.add(hash)) {
+                add(hash, line.getNextMove(i), game.getWinner(), 1);
+            }
+        }
+    }
+
+    /**
+     * 累加一个局面的一手
+     * @param hash 归一化局面哈希
+     * @param move 归一化坐标，见 PositionHash.Line.getNextMove
+     * @param winner 胜方，见 GameSummary.WINNER_*
+     * @param games 对局数
+     */
+    public void add(long hash, int move, int winner, int games) {
+        Continuation continuation = positions
+                .computeIfAbsent(hash, key -> new HashMap<>(4))
+                .computeIfAbsent(move, key -> new Continuation(hash, move));
+        continuation.games += games;
+        if (winner == GameSummary.WINNER_BLACK) {
+            continuation.blackWins += games;
+        } else if (winner == GameSummary.WINNER_WHITE) {
+            continuation.whiteWins += games;
+        }
+    }
+
+    /**
+     * @param hash 归一化局面哈希
+     * @return 该局面的所有下一手，按对局数从多到少排序
+     */
+    public List<Continuation> get(long hash) {
+        Map<Integer, Continuation> moves = positions.get(hash);
+        if (moves == null) {
+            return Collections.emptyList();
+        }
+        List<Continuation> result = new ArrayList<>(moves.values());
+        result.sort((a, b) -> a.games != b.games ? Integer.compare(b.games, a.games) : Integer.compare(a.move, b.move));
+        return result;
+    }
+
+    /**
+     * @return 全部统计项，顺序不确定
+     */
+    public List<Continuation> getAll() {
+        List<Continuation> result = new ArrayList<>();
+        for (Map<Integer, Continuation> moves : positions.values()) {
+            result.addAll(moves.values());
+        }
+        return result;
+    }
+
+    /**
+     * @return 统计项个数
+     */
+    public int size() {
+        int size = 0;
+        for (Map<Integer, Continuation> moves : positions.values()) {
+            size += moves.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        positions.clear();
+    }
+
+    /**
+     * 一个局面的一种下一手
+     */
+    public static final class Continuation {
+        private final long hash;
+        private final int move;
+        private int games;
+        private int blackWins;
+        private int whiteWins;
+
+        Continuation(long hash, int move) {
+            this.hash = hash;
+            this.move = move;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * @return 归一化坐标 y * 52 + x，虚手为 PositionHash.PASS；用 PositionHash.Position.toBoard 转换到棋盘
+         */
+        public int getMove() {
+            return move;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        public int getBlackWins() {
+            return blackWins;
+        }
+
+        public int getWhiteWins() {
+            return whiteWins;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 紧凑的局面 - 每个点 2 位，19 路棋盘 91 字节，用于渲染缩略图
+ * 点 (x,y) 为第 y * size + x 个，值为 0 空、1 黑、2 白
+ */
+public final class PackedPosition {
+
+    private final int size;
+    private final byte[] data;
+
+    private PackedPosition(int size, byte[] data) {
+        this.size = size;
+        this.data = data;
+    }
+
+    /**
+     * 从已编码的数据恢复
+     * @param size 棋盘大小
+     * @param data toByteArray 的结果
+     * @return 局面
+     */
+    public static PackedPosition fromBytes(int size, byte[] data) {
+        if (size < 1 || size > SGFPointSet.MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid board size: " + size);
+        }
+        if (data.length != byteCount(size)) {
+            throw new IllegalArgumentException("Expected " + byteCount(size) + " bytes for size " + size
+                    + ", got " + data.length);
+        }
+        return new PackedPosition(size, data.clone());
+    }
+
+    /**
+     * 重放对局到指定手数
+     * @param game 对局
+     * @param moveNumber 手数，0 为第一手之前，负数或超过手数时为终局
+     * @return 局面，棋盘大小无效时为null
+     */
+    public static PackedPosition of(GameSummary game, int moveNumber) {
+        int size = game.getBoardSize();
+        if (size < 1 || size > SGFPointSet.MAX_SIZE) {
+            return null;
+        }
+        BoardReplay board = new BoardReplay(size, null);
+        board.setup(GameSummary.decodeMoves(game.getSetupData()));
+        List<GoBoard.Move> moves = GameSummary.decodeMoves(game.getMoveData());
+        int count = moveNumber < 0 ? moves.size() : Math.min(moveNumber, moves.size());
+        for (int i = 0; i < count; i++) {
+            GoBoard.Move move = moves.get(i);
+            if (board.isOnBoard(move.x, move.y)) {
+                board.play(move.x, move.y, move.color);
+            }
+        }
+        return pack(size, board.stones);
+    }
+
+    /**
+     * 棋盘当前显示的局面，GoBoard 固定为 19 路
+     * @param board 棋盘
+     * @return 局面
+     */
+    public static PackedPosition of(GoBoard board) {
+        int size = 19;
+        int[] stones = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int stone = board.getStone(x, y);
+                stones[y * size + x] = stone == GoBoard.BLACK || stone == GoBoard.WHITE ? stone : 0;
+            }
+        }
+        return pack(size, stones);
+    }
+
+    private static PackedPosition pack(int size, int[] stones) {
+        byte[] data = new byte[byteCount(size)];
+        for (int i = 0; i < stones.length; i++) {
+            data[i >> 2] |= (byte) (stones[i] << ((i & 3) * 2));
+        }
+        return new PackedPosition(size, data);
+    }
+
+    private static int byteCount(int size) {
+        return (size * size + 3) / 4;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return 0 空、GoBoard.BLACK 或 GoBoard.WHITE
+     */
+    public int get(int x, int y) {
+        int i = y * size + x;
+        return (data[i >> 2] >> ((i & 3) * 2)) & 3;
+    }
+
+    /**
+     * @return 编码后的数据，每个点 2 位
+     */
+    public byte[] toByteArray() {
+        return data.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PackedPosition)) {
+            return false;
+        }
+        PackedPosition other = (PackedPosition) o;
+        return size == other.size && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(data);
+    }
+}
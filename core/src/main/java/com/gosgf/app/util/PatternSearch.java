@@ -0,0 +1,403 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 棋形搜索 - 在棋谱库中查找主线上出现过某个局部棋形的对局，8 种旋转和镜像都算
+ * 先用每局的棋子位图（GameSummary.getStoneBitmap）排除不可能出现该棋形的位置，
+ * 再重放主线逐手核对剩下的位置，多局之间在线程池中并行
+ */
+public class PatternSearch {
+
+    // 每个并行任务至少处理的对局数
+    private static final int GAMES_PER_TASK = 16;
+
+    private final Pattern pattern;
+    // 每种棋盘大小的全部摆放位置，首次用到时生成
+    private final Map<Integer, Placement[]> placements = new ConcurrentHashMap<>();
+
+    /**
+     * @param pattern 棋形，之后不应再修改
+     */
+    public PatternSearch(Pattern pattern) {
+        this.pattern = pattern;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * 预筛选：是否存在一个摆放位置，棋形要求的棋子都在对局中出现过
+     * 返回true时对局仍可能不包含棋形，需要 find 核对
+     * @param boardSize 棋盘大小
+     * @param bitmap 棋子位图，见 GameSummary.getStoneBitmap
+     * @return 可能包含棋形
+     */
+    public boolean mayMatch(int boardSize, byte[] bitmap) {
+        if (bitmap == null) {
+            return false;
+        }
+        for (Placement placement : placementsFor(boardSize)) {
+            if (placement.isCoveredBy(bitmap, boardSize)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重放主线，查找棋形第一次出现的手数
+     * @param game 对局
+     * @return 手数，0 为第一手之前（摆子），没有出现返回 -1
+     */
+    public int find(GameSummary game) {
+        int size = game.getBoardSize();
+        byte[] bitmap = game.getStoneBitmap();
+        if (bitmap == null) {
+            return -1;
+        }
+        List<Placement> candidates = new ArrayList<>();
+        for (Placement placement : placementsFor(size)) {
+            if (placement.isCoveredBy(bitmap, size)) {
+                candidates.add(placement);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return -1;
+        }
+
+        BoardReplay board = new BoardReplay(size, null);
+        board.setup(GameSummary.decodeMoves(game.getSetupData()));
+        for (Placement placement : candidates) {
+            if (placement.matches(board.stones)) {
+                return 0;
+            }
+        }
+        List<GoBoard.Move> moves = GameSummary.decodeMoves(game.getMoveData());
+        for (int i = 0; i < moves.size(); i++) {
+            GoBoard.Move move = moves.get(i);
+            if (!board.isOnBoard(move.x, move.y)) {
+                continue;
+            }
+            board.play(move.x, move.y, move.color);
+            // 只有落子或提子改变了摆放范围内的点，棋形才可能新出现
+            for (Placement placement : candidates) {
+                if (placement.touches(board.changed, board.changedCount, size) && placement.matches(board.stones)) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在线程池中并行搜索多局
+     * @param games 对局
+     * @param pool 执行搜索的线程池
+     * @return 与 games 对应的手数，见 find
+     */
+    public int[] findAll(List<GameSummary> games, ForkJoinPool pool) {
+        int[] result = new int[games.size()];
+        pool.invoke(new SearchTask(games, result, 0, games.size()));
+        return result;
+    }
+
+    private Placement[] placementsFor(int size) {
+        if (size < 1 || size > SGFPointSet.MAX_SIZE) {
+            return new Placement[0];
+        }
+        return placements.computeIfAbsent(size, this::createPlacements);
+    }
+
+    /**
+     * 生成棋形在棋盘上的所有摆放位置：固定位置或所有平移，再做 8 种对称变换
+     * 对称的棋形会得到重复的摆放，按点集去重
+     */
+    private Placement[] createPlacements(int size) {
+        int width = pattern.getWidth();
+        int height = pattern.getHeight();
+        int fromX = 0;
+        int fromY = 0;
+        int toX = size - width;
+        int toY = size - height;
+        if (pattern.isAnchored()) {
+            fromX = toX = pattern.getAnchorX();
+            fromY = toY = pattern.getAnchorY();
+            if (toX + width > size || toY + height > size) {
+                return new Placement[0];
+            }
+        }
+
+        List<Placement> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int oy = fromY; oy <= toY; oy++) {
+            for (int ox = fromX; ox <= toX; ox++) {
+                for (int s = 0; s < 8; s++) {
+                    Placement placement = new Placement(pattern, s, size, ox, oy);
+                    if (seen.add(placement.key())) {
+                        result.add(placement);
+                    }
+                }
+            }
+        }
+        return result.toArray(new Placement[0]);
+    }
+
+    /**
+     * 棋形的一个摆放位置：棋盘上的点和要求的颜色，不包括任意点
+     */
+    private static final class Placement {
+        final int[] points;
+        final int[] colors;
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+
+        Placement(Pattern pattern, int symmetry, int size, int ox, int oy) {
+            int count = 0;
+            for (int y = 0; y < pattern.getHeight(); y++) {
+                for (int x = 0; x < pattern.getWidth(); x++) {
+                    if (pattern.getCell(x, y) != Pattern.ANY) {
+                        count++;
+                    }
+                }
+            }
+            points = new int[count];
+            colors = new int[count];
+            int i = 0;
+            for (int y = 0; y < pattern.getHeight(); y++) {
+                for (int x = 0; x < pattern.getWidth(); x++) {
+                    int cell = pattern.getCell(x, y);
+                    if (cell == Pattern.ANY) {
+                        continue;
+                    }
+                    int point = PositionHash.transform(symmetry, size, ox + x, oy + y);
+                    int px = point % SGFPointSet.MAX_SIZE;
+                    int py = point / SGFPointSet.MAX_SIZE;
+                    points[i] = py * size + px;
+                    colors[i] = cell;
+                    minX = Math.min(minX, px);
+                    maxX = Math.max(maxX, px);
+                    minY = Math.min(minY, py);
+                    maxY = Math.max(maxY, py);
+                    i++;
+                }
+            }
+        }
+
+        /**
+         * 要求的棋子都在位图中
+         */
+        boolean isCoveredBy(byte[] bitmap, int size) {
+            int bytes = (size * size + 7) / 8;
+            for (int i = 0; i < points.length; i++) {
+                if (colors[i] == Pattern.EMPTY) {
+                    continue;
+                }
+                int bit = points[i];
+                int offset = colors[i] == GoBoard.WHITE ? bytes : 0;
+                if ((bitmap[offset + bit / 8] & (1 << (bit % 8))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean touches(int[] changed, int count, int size) {
+            for (int i = 0; i < count; i++) {
+                int x = changed[i] % size;
+                int y = changed[i] / size;
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean matches(int[] stones) {
+            for (int i = 0; i < points.length; i++) {
+                if (stones[points[i]] != colors[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 与点的顺序无关的标识，用于去重
+         */
+        String key() {
+            int[] cells = new int[points.length];
+            for (int i = 0; i < points.length; i++) {
+                cells[i] = points[i] * 4 + colors[i];
+            }
+            Arrays.sort(cells);
+            return Arrays.toString(cells);
+        }
+    }
+
+    /**
+     * 把对局区间对半拆分的并行任务
+     */
+    private class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<GameSummary> games;
+        private final int[] result;
+        private final int from;
+        private final int to;
+
+        SearchTask(List<GameSummary> games, int[] result, int from, int to) {
+            this.games = games;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    result[i] = find(games.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SearchTask(games, result, from, middle), new SearchTask(games, result, middle, to));
+        }
+    }
+
+    /**
+     * 局部棋形：矩形区域内每个点为黑、白、空或任意
+     */
+    public static final class Pattern {
+        public static final int ANY = -1;
+        public static final int EMPTY = 0;
+
+        private final int width;
+        private final int height;
+        private final int[] cells;
+        private int anchorX = -1;
+        private int anchorY = -1;
+
+        /**
+         * @param width 宽度
+         * @param height 高度
+         */
+        public Pattern(int width, int height) {
+            if (width < 1 || height < 1 || width > SGFPointSet.MAX_SIZE || height > SGFPointSet.MAX_SIZE) {
+                throw new IllegalArgumentException("Invalid pattern size: " + width + "x" + height);
+            }
+            this.width = width;
+            this.height = height;
+            cells = new int[width * height];
+            Arrays.fill(cells, ANY);
+        }
+
+        /**
+         * 从文本解析棋形，每个字符串为一行：X 黑，O 白，. 空，? 任意
+         * @param rows 各行，长度必须相同
+         * @return 棋形，不固定位置
+         */
+        public static Pattern parse(String... rows) {
+            if (rows.length == 0) {
+                throw new IllegalArgumentException("Empty pattern");
+            }
+            Pattern pattern = new Pattern(rows[0].length(), rows.length);
+            for (int y = 0; y < rows.length; y++) {
+                if (rows[y].length() != pattern.width) {
+                    throw new IllegalArgumentException("Pattern row " + y + " has length " + rows[y].length()
+                            + ", expected " + pattern.width);
+                }
+                for (int x = 0; x < pattern.width; x++) {
+                    char c = rows[y].charAt(x);
+                    switch (c) {
+                        case 'X': pattern.setCell(x, y, GoBoard.BLACK); break;
+                        case 'O': pattern.setCell(x, y, GoBoard.WHITE); break;
+                        case '.': pattern.setCell(x, y, EMPTY); break;
+                        case '?': pattern.setCell(x, y, ANY); break;
+                        default:
+                            throw new IllegalArgumentException("Invalid pattern character '" + c + "' at " + x + "," + y);
+                    }
+                }
+            }
+            return pattern;
+        }
+
+        /**
+         * 用棋盘上选中的区域作为棋形，空点要求为空，可再用 setCell 改为任意
+         * @param board 棋盘
+         * @param x 左上角横坐标
+         * @param y 左上角纵坐标
+         * @param width 宽度
+         * @param height 高度
+         * @return 棋形，不固定位置
+         */
+        public static Pattern of(GoBoard board, int x, int y, int width, int height) {
+            Pattern pattern = new Pattern(width, height);
+            for (int dy = 0; dy < height; dy++) {
+                for (int dx = 0; dx < width; dx++) {
+                    int stone = board.getStoneAt(x + dx, y + dy);
+                    pattern.setCell(dx, dy, stone == GoBoard.BLACK || stone == GoBoard.WHITE ? stone : EMPTY);
+                }
+            }
+            return pattern;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return GoBoard.BLACK、GoBoard.WHITE、EMPTY 或 ANY
+         */
+        public int getCell(int x, int y) {
+            return cells[y * width + x];
+        }
+
+        public void setCell(int x, int y, int value) {
+            if (value != ANY && value != EMPTY && value != GoBoard.BLACK && value != GoBoard.WHITE) {
+                throw new IllegalArgumentException("Invalid pattern cell: " + value);
+            }
+            cells[y * width + x] = value;
+        }
+
+        /**
+         * 固定棋形在棋盘上的位置，例如 (0,0) 表示贴着左上角，对称变换后的其他三个角也算
+         * @param x 左上角横坐标，-1 为不固定
+         * @param y 左上角纵坐标，-1 为不固定
+         */
+        public void setAnchor(int x, int y) {
+            anchorX = x;
+            anchorY = y;
+        }
+
+        public boolean isAnchored() {
+            return anchorX >= 0 && anchorY >= 0;
+        }
+
+        public int getAnchorX() {
+            return anchorX;
+        }
+
+        public int getAnchorY() {
+            return anchorY;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.util.List;
+
+/**
+ * 局面哈希 - 按棋子位置计算 Zobrist 哈希，对 8 种旋转和镜像取最小值，
+ * 同一局面无论出现在棋盘的哪个角都得到相同的值；不区分轮到哪方
+ * 哈希值会保存到棋谱库中，键表由固定种子生成，不能随意修改
+ */
+public final class PositionHash {
+
+    // 虚手和棋盘外的着手
+    public static final int PASS = -1;
+
+    private static final int MAX_SIZE = SGFPointSet.MAX_SIZE;
+    private static final int SYMMETRIES = 8;
+    // 每种对称变换的逆变换，编号见 transform
+    private static final int[] INVERSE = {0, 1, 2, 3, 4, 6, 5, 7};
+
+    // 每个点每种颜色一个键，另有每种棋盘大小一个键
+    private static final long[] STONE_KEYS = new long[MAX_SIZE * MAX_SIZE * 2];
+    private static final long[] SIZE_KEYS = new long[MAX_SIZE + 1];
+    static {
+        // SplitMix64，不依赖 JDK 随机数实现，保证不同版本生成相同的键
+        long state = 0x60D1A5E5B0A2DL;
+        for (int i = 0; i < STONE_KEYS.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            STONE_KEYS[i] = mix(state);
+        }
+        for (int i = 0; i < SIZE_KEYS.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            SIZE_KEYS[i] = mix(state);
+        }
+    }
+
+    private PositionHash() {
+    }
+
+    /**
+     * 计算棋盘当前局面的哈希，GoBoard 固定为 19 路
+     * @param board 棋盘
+     * @return 归一化的局面
+     */
+    public static Position of(GoBoard board) {
+        int size = 19;
+        long[] hashes = initialHashes(size);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int color = board.getStone(x, y);
+                if (color == GoBoard.BLACK || color == GoBoard.WHITE) {
+                    toggle(hashes, size, x, y, color);
+                }
+            }
+        }
+        long min = normalize(hashes);
+        int symmetry = 0;
+        while (hashes[symmetry] != min) {
+            symmetry++;
+        }
+        return new Position(min, size, symmetry);
+    }
+
+    /**
+     * 重放一局棋，计算每个局面的哈希和从该局面走出的着手
+     * 按记录落子并提子，不检查打劫等规则，与棋谱中实际出现的局面一致
+     * @param size 棋盘大小
+     * @param setup 摆子，坐标在棋盘外的忽略
+     * @param moves 主线着手，虚手和棋盘外的点不改变局面
+     * @return 局面序列
+     */
+    public static Line ofGame(int size, List<GoBoard.Move> setup, List<GoBoard.Move> moves) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid board size: " + size);
+        }
+        BoardReplay replay = new BoardReplay(size, initialHashes(size));
+        replay.setup(setup);
+        long[] hashes = new long[moves.size() + 1];
+        int[] nextMoves = new int[moves.size()];
+        hashes[0] = normalize(replay.hashes);
+        for (int i = 0; i < moves.size(); i++) {
+            GoBoard.Move move = moves.get(i);
+            if (replay.isOnBoard(move.x, move.y)) {
+                nextMoves[i] = canonicalMove(replay.hashes, hashes[i], size, move.x, move.y);
+                replay.play(move.x, move.y, move.color);
+            } else {
+                nextMoves[i] = PASS;
+            }
+            hashes[i + 1] = normalize(replay.hashes);
+        }
+        return new Line(hashes, nextMoves);
+    }
+
+    /**
+     * 着手在归一化局面中的坐标
+     * 局面本身对称时有多个变换得到同一哈希，取其中最小的坐标，使对称的着手合并为一个
+     */
+    private static int canonicalMove(long[] hashes, long min, int size, int x, int y) {
+        int result = Integer.MAX_VALUE;
+        for (int s = 0; s < SYMMETRIES; s++) {
+            if (hashes[s] == min) {
+                result = Math.min(result, transform(s, size, x, y));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 对称变换，与 toggle 中的顺序一致
+     * @return 变换后的坐标 y * 52 + x
+     */
+    static int transform(int symmetry, int size, int x, int y) {
+        int last = size - 1;
+        switch (symmetry) {
+            case 0: return y * MAX_SIZE + x;
+            case 1: return y * MAX_SIZE + last - x;
+            case 2: return (last - y) * MAX_SIZE + x;
+            case 3: return (last - y) * MAX_SIZE + last - x;
+            case 4: return x * MAX_SIZE + y;
+            case 5: return x * MAX_SIZE + last - y;
+            case 6: return (last - x) * MAX_SIZE + y;
+            default: return (last - x) * MAX_SIZE + last - y;
+        }
+    }
+
+    private static long[] initialHashes(int size) {
+        long[] hashes = new long[SYMMETRIES];
+        for (int s = 0; s < SYMMETRIES; s++) {
+            hashes[s] = SIZE_KEYS[size];
+        }
+        return hashes;
+    }
+
+    /**
+     * 在 8 个对称局面的哈希中加入或去掉一颗棋子
+     */
+    static void toggle(long[] hashes, int size, int x, int y, int color) {
+        int last = size - 1;
+        int offset = color == GoBoard.WHITE ? MAX_SIZE * MAX_SIZE : 0;
+        hashes[0] ^= STONE_KEYS[offset + y * MAX_SIZE + x];
+        hashes[1] ^= STONE_KEYS[offset + y * MAX_SIZE + last - x];
+        hashes[2] ^= STONE_KEYS[offset + (last - y) * MAX_SIZE + x];
+        hashes[3] ^= STONE_KEYS[offset + (last - y) * MAX_SIZE + last - x];
+        hashes[4] ^= STONE_KEYS[offset + x * MAX_SIZE + y];
+        hashes[5] ^= STONE_KEYS[offset + x * MAX_SIZE + last - y];
+        hashes[6] ^= STONE_KEYS[offset + (last - x) * MAX_SIZE + y];
+        hashes[7] ^= STONE_KEYS[offset + (last - x) * MAX_SIZE + last - y];
+    }
+
+    private static long normalize(long[] hashes) {
+        long min = hashes[0];
+        for (int s = 1; s < SYMMETRIES; s++) {
+            min = Math.min(min, hashes[s]);
+        }
+        return min;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 棋盘上的一个局面：归一化的哈希，以及从棋盘到归一化坐标的变换
+     */
+    public static final class Position {
+        private final long hash;
+        private final int size;
+        private final int symmetry;
+
+        Position(long hash, int size, int symmetry) {
+            this.hash = hash;
+            this.size = size;
+            this.symmetry = symmetry;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * 把 Line.getNextMove 的归一化坐标转换为这个棋盘上的坐标
+         * @param move 归一化坐标，虚手为 PASS
+         * @return 棋盘坐标 y * 52 + x，虚手为 PASS
+         */
+        public int toBoard(int move) {
+            if (move == PASS) {
+                return PASS;
+            }
+            return transform(INVERSE[symmetry], size, move % MAX_SIZE, move / MAX_SIZE);
+        }
+    }
+
+    /**
+     * 一局棋主线上的局面序列
+     */
+    public static final class Line {
+        private final long[] hashes;
+        private final int[] nextMoves;
+
+        Line(long[] hashes, int[] nextMoves) {
+            this.hashes = hashes;
+            this.nextMoves = nextMoves;
+        }
+
+        public int getMoveCount() {
+            return nextMoves.length;
+        }
+
+        /**
+         * @param moveNumber 手数，0 为第一手之前的局面
+         * @return 第 moveNumber 手之后的局面哈希
+         */
+        public long getHash(int moveNumber) {
+            return hashes[moveNumber];
+        }
+
+        /**
+         * @param moveNumber 手数，0 为第一手之前的局面
+         * @return 从该局面走出的下一手，归一化坐标 y * 52 + x，虚手为 PASS
+         */
+        public int getNextMove(int moveNumber) {
+            return nextMoves[moveNumber];
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.gosgf.app.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 棋谱记录分词器 - GIB/NGF/UGF 导入共用的行分词器
+ * 从 Reader 分块读取到可复用的字符缓冲区，逐行前进；
+ * 当前行的字段和整数直接在缓冲区上解析，不为每行创建字符串
+ */
+public final class RecordTokenizer {
+
+    private final Reader in;
+    private char[] buffer = new char[8192];
+    private int limit;      // 缓冲区中有效字符数
+    private int lineStart;  // 当前行起始位置
+    private int lineEnd;    // 当前行结束位置（不含换行符）
+    private int next;       // 下一行起始位置
+    private boolean eof;
+
+    /**
+     * @param in 已解码的字符输入
+     */
+    public RecordTokenizer(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * 前进到下一行，兼容 \n 和 \r\n 换行
+     * @return 没有更多行时返回false
+     * @throws IOException 读取异常
+     */
+    public boolean nextLine() throws IOException {
+        int scan = next;
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(next, i);
+                    next = i + 1;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (next >= limit) {
+                    return false;
+                }
+                // 最后一行没有换行符
+                setLine(next, limit);
+                next = limit;
+                return true;
+            }
+            scan = limit - next;
+            fill();
+        }
+    }
+
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    /**
+     * 把未处理的字符移到缓冲区开头并继续读取，行比缓冲区长时扩容
+     */
+    private void fill() throws IOException {
+        int remaining = limit - next;
+        if (next > 0) {
+            System.arraycopy(buffer, next, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            char[] larger = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, remaining);
+            buffer = larger;
+        }
+        next = 0;
+        limit = remaining;
+        int count = in.read(buffer, limit, buffer.length - limit);
+        if (count < 0) {
+            eof = true;
+        } else {
+            limit += count;
+        }
+    }
+
+    /**
+     * @return 当前行的长度
+     */
+    public int length() {
+        return lineEnd - lineStart;
+    }
+
+    /**
+     * @param index 行内位置
+     * @return 当前行的字符，越界时返回0
+     */
+    public char charAt(int index) {
+        return index >= 0 && index < length() ? buffer[lineStart + index] : 0;
+    }
+
+    /**
+     * @param prefix 前缀
+     * @return 当前行是否以指定前缀开始
+     */
+    public boolean startsWith(String prefix) {
+        if (prefix.length() > length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer[lineStart + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param c 要查找的字符
+     * @param from 行内起始位置
+     * @return 行内位置，不存在返回-1
+     */
+    public int indexOf(char c, int from) {
+        for (int i = lineStart + Math.max(from, 0); i < lineEnd; i++) {
+            if (buffer[i] == c) {
+                return i - lineStart;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param from 行内起始位置
+     * @param to 行内结束位置（不含）
+     * @return 去掉首尾空白的子串
+     */
+    public String substring(int from, int to) {
+        int start = lineStart + Math.max(from, 0);
+        int end = lineStart + Math.min(to, length());
+        while (start < end && Character.isWhitespace(buffer[start])) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+        return new String(buffer, start, end - start);
+    }
+
+    /**
+     * @return 去掉首尾空白的当前行
+     */
+    public String line() {
+        return substring(0, length());
+    }
+
+    /**
+     * 获取按分隔符拆分后的第 index 个字段
+     * 分隔符为空格时连续空格视为一个
+     * @param index 字段序号（从0开始）
+     * @param separator 分隔符
+     * @return 去掉首尾空白的字段，不存在返回null
+     */
+    public String field(int index, char separator) {
+        int start = fieldStart(index, separator);
+        if (start < 0) {
+            return null;
+        }
+        int end = fieldEnd(start, separator);
+        return substring(start, end);
+    }
+
+    /**
+     * 直接在缓冲区上解析第 index 个字段的整数，不创建字符串
+     * @param index 字段序号（从0开始）
+     * @param separator 分隔符
+     * @param defaultValue 字段不存在或不是整数时的返回值
+     * @return 整数值
+     */
+    public int intField(int index, char separator, int defaultValue) {
+        int start = fieldStart(index, separator);
+        if (start < 0) {
+            return defaultValue;
+        }
+        int end = fieldEnd(start, separator);
+        while (start < end && buffer[lineStart + start] == ' ') {
+            start++;
+        }
+        boolean negative = start < end && buffer[lineStart + start] == '-';
+        if (negative) {
+            start++;
+        }
+        if (start >= end) {
+            return defaultValue;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = buffer[lineStart + i];
+            if (c < '0' || c > '9') {
+                if (c == ' ' || c == '\t') {
+                    break;
+                }
+                return defaultValue;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private int fieldStart(int index, char separator) {
+        int length = length();
+        int position = 0;
+        if (separator == ' ') {
+            while (position < length && buffer[lineStart + position] == ' ') {
+                position++;
+            }
+        }
+        for (int field = 0; field < index; field++) {
+            int end = fieldEnd(position, separator);
+            if (end >= length) {
+                return -1;
+            }
+            position = end + 1;
+            if (separator == ' ') {
+                while (position < length && buffer[lineStart + position] == ' ') {
+                    position++;
+                }
+            }
+        }
+        return position <= length ? position : -1;
+    }
+
+    private int fieldEnd(int start, char separator) {
+        int length = length();
+        int position = start;
+        while (position < length && buffer[lineStart + position] != separator) {
+            position++;
+        }
+        return position;
+    }
+}
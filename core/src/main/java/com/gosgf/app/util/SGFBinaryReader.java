@@ -0,0 +1,256 @@
+package com.gosgf.app.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 二进制SGF读取器 - 读取 SGFBinaryWriter 写入的格式（见其说明），还原为 SGFParser 的树结构
+ * 整个文件先读入字节数组，字符串表一次解码，节点直接从数组中解析
+ */
+public class SGFBinaryReader {
+
+    // 坐标字符串只创建一次，读取着手时不再分配
+    private static final String[] COORDS = new String[SGFBinaryWriter.POINT_COUNT];
+    static {
+        for (int i = 0; i < COORDS.length; i++) {
+            COORDS[i] = "" + toChar(i % SGFPointSet.MAX_SIZE) + toChar(i / SGFPointSet.MAX_SIZE);
+        }
+    }
+
+    private final byte[] data;
+    private int position;
+    private String[] strings;
+
+    /**
+     * @param data 二进制SGF数据
+     */
+    public SGFBinaryReader(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * 读取输入流中的全部对局
+     * @param in 输入流，调用方负责关闭
+     * @return SGF树列表
+     * @throws IOException 读取异常
+     * @throws SGFParser.SGFParseException 格式或版本错误
+     */
+    public static List<SGFParser.SGFTree> read(InputStream in) throws IOException, SGFParser.SGFParseException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return new SGFBinaryReader(out.toByteArray()).read();
+    }
+
+    /**
+     * 检查数据是否以二进制SGF的文件头开始
+     * @param data 文件内容
+     * @return 是否为二进制SGF
+     */
+    public static boolean isBinarySGF(byte[] data) {
+        if (data.length < SGFBinaryWriter.MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < SGFBinaryWriter.MAGIC.length; i++) {
+            if (data[i] != SGFBinaryWriter.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取全部对局
+     * @return SGF树列表
+     * @throws SGFParser.SGFParseException 格式或版本错误
+     */
+    public List<SGFParser.SGFTree> read() throws SGFParser.SGFParseException {
+        if (!isBinarySGF(data)) {
+            throw new SGFParser.SGFParseException("Not a binary SGF file", 0);
+        }
+        position = SGFBinaryWriter.MAGIC.length;
+        try {
+            int version = readVarint();
+            if (version != SGFBinaryWriter.VERSION) {
+                throw new SGFParser.SGFParseException("Unsupported binary SGF version " + version, position);
+            }
+
+            strings = new String[readCount()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readCount();
+                if (position + length > data.length) {
+                    throw new SGFParser.SGFParseException("Truncated string table", position);
+                }
+                strings[i] = new String(data, position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+
+            int games = readCount();
+            List<SGFParser.SGFTree> trees = new ArrayList<>(games);
+            for (int i = 0; i < games; i++) {
+                List<SGFParser.Node> root = readSequence();
+                if (root.size() != 1) {
+                    throw new SGFParser.SGFParseException("Game " + (i + 1) + " has no root node", position);
+                }
+                List<SGFParser.Node> mainSequence = readSequence();
+                int variationCount = readCount();
+                List<List<SGFParser.Node>> rootVariations = new ArrayList<>(variationCount);
+                for (int j = 0; j < variationCount; j++) {
+                    rootVariations.add(readSequence());
+                }
+                trees.add(new SGFParser.SGFTree(root.get(0), mainSequence, rootVariations));
+            }
+            return trees;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SGFParser.SGFParseException("Truncated binary SGF", data.length);
+        }
+    }
+
+    /**
+     * 读取节点序列及其所有分支
+     * 使用显式栈代替递归，嵌套很深的分支也不会导致栈溢出
+     */
+    private List<SGFParser.Node> readSequence() throws SGFParser.SGFParseException {
+        List<SGFParser.Node> sequence = new ArrayList<>();
+        Deque<SequenceFrame> stack = new ArrayDeque<>();
+        stack.push(new SequenceFrame(sequence, readCount()));
+
+        while (!stack.isEmpty()) {
+            SequenceFrame frame = stack.peek();
+            if (frame.pendingVariations > 0) {
+                // 先读完上一个节点的分支，再读序列中的下一个节点
+                frame.pendingVariations--;
+                List<SGFParser.Node> variation = new ArrayList<>();
+                frame.lastNode.addVariation(variation);
+                stack.push(new SequenceFrame(variation, readCount()));
+            } else if (frame.remaining > 0) {
+                frame.remaining--;
+                SGFParser.Node node = new SGFParser.Node();
+                frame.pendingVariations = readNode(node);
+                frame.nodes.add(node);
+                frame.lastNode = node;
+            } else {
+                stack.pop();
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * 读取节点的属性
+     * @return 节点的分支数
+     */
+    private int readNode(SGFParser.Node node) throws SGFParser.SGFParseException {
+        int header = readVarint();
+        int type = header & 3;
+        int operand = header >>> 2;
+        if (type == SGFBinaryWriter.NODE_BLACK || type == SGFBinaryWriter.NODE_WHITE) {
+            if (operand > SGFBinaryWriter.POINT_COUNT) {
+                throw new SGFParser.SGFParseException("Invalid point " + operand, position);
+            }
+            String value = operand == SGFBinaryWriter.POINT_COUNT ? "" : toCoord(operand);
+            node.addProperty(type == SGFBinaryWriter.NODE_BLACK ? "B" : "W", value);
+            return 0;
+        }
+        if (type != SGFBinaryWriter.NODE_GENERIC) {
+            throw new SGFParser.SGFParseException("Invalid node type " + type, position);
+        }
+
+        for (int i = 0; i < operand; i++) {
+            String ident = string(readVarint());
+            int count = readCount();
+            for (int j = 0; j < count; j++) {
+                node.addProperty(ident, readValue());
+            }
+        }
+        return readCount();
+    }
+
+    private String readValue() throws SGFParser.SGFParseException {
+        int token = readVarint();
+        if ((token & 1) != 0) {
+            return string(token >>> 1);
+        }
+        int value = token >>> 1;
+        if (value == SGFBinaryWriter.VALUE_EMPTY) {
+            return "";
+        }
+        if (value <= SGFBinaryWriter.POINT_COUNT) {
+            return toCoord(value - 1);
+        }
+        if (value == SGFBinaryWriter.VALUE_RECTANGLE) {
+            return toCoord(readPoint()) + ":" + toCoord(readPoint());
+        }
+        throw new SGFParser.SGFParseException("Invalid value token " + token, position);
+    }
+
+    private int readPoint() throws SGFParser.SGFParseException {
+        int point = readVarint();
+        if (point >= SGFBinaryWriter.POINT_COUNT) {
+            throw new SGFParser.SGFParseException("Invalid point " + point, position);
+        }
+        return point;
+    }
+
+    private String string(int index) throws SGFParser.SGFParseException {
+        if (index >= strings.length) {
+            throw new SGFParser.SGFParseException("Invalid string index " + index, position);
+        }
+        return strings[index];
+    }
+
+    private static String toCoord(int point) {
+        return COORDS[point];
+    }
+
+    private static char toChar(int index) {
+        return (char) (index < 26 ? 'a' + index : 'A' + index - 26);
+    }
+
+    /**
+     * 读取个数，防止损坏的数据导致分配超大数组
+     */
+    private int readCount() throws SGFParser.SGFParseException {
+        int count = readVarint();
+        if (count > data.length - position) {
+            throw new SGFParser.SGFParseException("Invalid count " + count, position);
+        }
+        return count;
+    }
+
+    private int readVarint() throws SGFParser.SGFParseException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = data[position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new SGFParser.SGFParseException("Malformed varint", position);
+    }
+
+    /**
+     * 正在读取的序列
+     */
+    private static class SequenceFrame {
+        final List<SGFParser.Node> nodes;
+        int remaining;
+        int pendingVariations;
+        SGFParser.Node lastNode;
+
+        SequenceFrame(List<SGFParser.Node> nodes, int remaining) {
+            this.nodes = nodes;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.gosgf.app.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二进制SGF写入器 - 归档用的紧凑格式，与 SGFBinaryReader 配对，可与SGF文本无损互转
+ *
+ * 格式（所有整数为无符号 varint）：
+ * <pre>
+ * 文件   = "GSGB" 版本 字符串表 对局数 对局*
+ * 字符串表 = 个数 (字节数 UTF-8字节)*
+ * 对局   = 序列[根节点] 序列[主序列] 分支数 序列*
+ * 序列   = 节点数 节点*
+ * 节点   = 头 ...，头的低2位为类型：
+ *          1/2 = 没有其他属性和分支的黑/白着手，头>>2 为坐标（虚手为 2704）
+ *          0   = 普通节点，头>>2 为属性数，之后是 (属性名 值数 值*)*，最后是分支数和各分支序列
+ * 值     = 最低位为1时 值>>1 为字符串表序号；否则 值>>1：0=空值，1..2704=坐标+1，2705=矩形（后跟两个坐标）
+ * </pre>
+ * 坐标为 x + y*52，与 SGF 的 a-z、A-Z 一致；属性名和非坐标值都放在按首次出现排序的字符串表中
+ */
+public class SGFBinaryWriter {
+
+    static final byte[] MAGIC = {'G', 'S', 'G', 'B'};
+    static final int VERSION = 1;
+
+    static final int NODE_GENERIC = 0;
+    static final int NODE_BLACK = 1;
+    static final int NODE_WHITE = 2;
+
+    static final int POINT_COUNT = SGFPointSet.MAX_SIZE * SGFPointSet.MAX_SIZE;
+    static final int VALUE_EMPTY = 0;
+    static final int VALUE_RECTANGLE = POINT_COUNT + 1;
+
+    private final OutputStream out;
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private byte[] body = new byte[8192];
+    private int length;
+
+    /**
+     * @param out 输出流，调用方负责关闭
+     */
+    public SGFBinaryWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * 写入单局
+     * @param tree SGF树
+     * @throws IOException 写入异常
+     */
+    public void write(SGFParser.SGFTree tree) throws IOException {
+        write(Collections.singletonList(tree));
+    }
+
+    /**
+     * 写入多局，各局共用一个字符串表
+     * 先把对局编码到内存并收集字符串，再依次输出文件头、字符串表和对局
+     * @param trees SGF树列表
+     * @throws IOException 写入异常
+     */
+    public void write(List<SGFParser.SGFTree> trees) throws IOException {
+        stringIndex.clear();
+        strings.clear();
+        length = 0;
+
+        for (SGFParser.SGFTree tree : trees) {
+            writeSequence(Collections.singletonList(tree.getRootNode()));
+            List<SGFParser.Node> mainSequence = tree.getMainSequence();
+            writeSequence(mainSequence != null ? mainSequence : Collections.<SGFParser.Node>emptyList());
+            List<List<SGFParser.Node>> rootVariations = tree.getRootVariations();
+            writeVarint(rootVariations.size());
+            for (List<SGFParser.Node> variation : rootVariations) {
+                writeSequence(variation);
+            }
+        }
+        byte[] games = body;
+        int gamesLength = length;
+
+        // 文件头和字符串表
+        body = new byte[Math.max(64, strings.size() * 16)];
+        length = 0;
+        writeBytes(MAGIC, 0, MAGIC.length);
+        writeVarint(VERSION);
+        writeVarint(strings.size());
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+        writeVarint(trees.size());
+
+        out.write(body, 0, length);
+        out.write(games, 0, gamesLength);
+        out.flush();
+        body = games;
+    }
+
+    /**
+     * 写入节点序列及其所有分支
+     * 使用显式栈代替递归，嵌套很深的分支也不会导致栈溢出
+     */
+    private void writeSequence(List<SGFParser.Node> sequence) {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(sequence);
+
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<SGFParser.Node> nodes = (List<SGFParser.Node>) item;
+                writeVarint(nodes.size());
+                for (int i = nodes.size() - 1; i >= 0; i--) {
+                    pending.push(nodes.get(i));
+                }
+            } else {
+                SGFParser.Node node = (SGFParser.Node) item;
+                if (writeNode(node)) {
+                    // 分支紧跟在节点之后，逆序压栈保证按原顺序输出
+                    List<List<SGFParser.Node>> variations = node.getVariations();
+                    writeVarint(variations.size());
+                    for (int i = variations.size() - 1; i >= 0; i--) {
+                        pending.push(variations.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入节点的属性
+     * @return 是否为普通节点（之后需要写入分支）
+     */
+    private boolean writeNode(SGFParser.Node node) {
+        List<String> identifiers = node.getPropertyIdentifiers();
+
+        // 快速路径：只有一手棋的节点占2字节
+        if (identifiers.size() == 1 && !node.hasVariations()) {
+            String ident = identifiers.get(0);
+            if (ident.equals("B") || ident.equals("W")) {
+                List<String> values = node.getPropertyValues(ident);
+                if (values.size() == 1) {
+                    String value = values.get(0);
+                    int point = value.isEmpty() ? POINT_COUNT : value.length() == 2 ? toPoint(value, 0) : -1;
+                    if (point >= 0) {
+                        writeVarint(point << 2 | (ident.equals("B") ? NODE_BLACK : NODE_WHITE));
+                        return false;
+                    }
+                }
+            }
+        }
+
+        // 跳过没有值的属性（如空的点列表），与 SGFWriter 一致
+        List<List<String>> valueLists = new ArrayList<>(identifiers.size());
+        int count = 0;
+        for (String ident : identifiers) {
+            List<String> values = node.getCompressedPropertyValues(ident);
+            valueLists.add(values);
+            if (!values.isEmpty()) {
+                count++;
+            }
+        }
+        writeVarint(count << 2 | NODE_GENERIC);
+        for (int i = 0; i < identifiers.size(); i++) {
+            List<String> values = valueLists.get(i);
+            if (values.isEmpty()) {
+                continue;
+            }
+            writeVarint(indexOf(identifiers.get(i)));
+            writeVarint(values.size());
+            for (String value : values) {
+                writeValue(value);
+            }
+        }
+        return true;
+    }
+
+    private void writeValue(String value) {
+        if (value.isEmpty()) {
+            writeVarint(VALUE_EMPTY << 1);
+            return;
+        }
+        if (value.length() == 2) {
+            int point = toPoint(value, 0);
+            if (point >= 0) {
+                writeVarint((point + 1) << 1);
+                return;
+            }
+        } else if (value.length() == 5 && value.charAt(2) == ':') {
+            int from = toPoint(value, 0);
+            int to = toPoint(value, 3);
+            if (from >= 0 && to >= 0) {
+                writeVarint(VALUE_RECTANGLE << 1);
+                writeVarint(from);
+                writeVarint(to);
+                return;
+            }
+        }
+        writeVarint(indexOf(value) << 1 | 1);
+    }
+
+    /**
+     * 获取字符串在表中的序号，首次出现时加入
+     */
+    private int indexOf(String s) {
+        Integer index = stringIndex.get(s);
+        if (index == null) {
+            index = strings.size();
+            stringIndex.put(s, index);
+            strings.add(s);
+        }
+        return index;
+    }
+
+    /**
+     * 把两个字符的SGF坐标转为 x + y*52
+     * @return 坐标，不是坐标字符时返回-1
+     */
+    private static int toPoint(String value, int offset) {
+        if (value.length() < offset + 2) {
+            return -1;
+        }
+        int x = toIndex(value.charAt(offset));
+        int y = toIndex(value.charAt(offset + 1));
+        return x < 0 || y < 0 ? -1 : x + y * SGFPointSet.MAX_SIZE;
+    }
+
+    private static int toIndex(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 26;
+        }
+        return -1;
+    }
+
+    private void writeVarint(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            body[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        body[length++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bytes, offset, body, length, count);
+        length += count;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > body.length) {
+            body = Arrays.copyOf(body, Math.max(body.length * 2, length + extra));
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.gosgf.app.util;
 
 import com.gosgf.app.model.GoBoard;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * SGF转换器 - 简化 SGFParser 和 GoBoard 之间的数据转换
@@ -21,6 +24,7 @@ public class SGFConverter {
         if (bMove != null) {
             GoBoard.Move move = createMoveFromCoord(bMove, 1);
             parseNodeProperties(node, move);
+            move.source = node.getSource();
             return move;
         }
         
@@ -29,6 +33,7 @@ public class SGFConverter {
         if (wMove != null) {
             GoBoard.Move move = createMoveFromCoord(wMove, 2);
             parseNodeProperties(node, move);
+            move.source = node.getSource();
             return move;
         }
         
@@ -41,6 +46,26 @@ public class SGFConverter {
      * @return SGF节点
      */
     public static SGFParser.Node moveToNode(GoBoard.Move move) {
+        SGFParser.Node node = createMoveNode(move);
+        
+        // 添加分支
+        for (GoBoard.Variation variation : move.variations) {
+            List<SGFParser.Node> varNodes = new ArrayList<>();
+            for (GoBoard.Move varMove : variation.getMoves()) {
+                varNodes.add(moveToNode(varMove));
+            }
+            node.addVariation(varNodes);
+        }
+        
+        return node;
+    }
+    
+    /**
+     * 将 GoBoard 移动转换为不含分支的 SGF 节点
+     * @param move GoBoard移动
+     * @return SGF节点
+     */
+    public static SGFParser.Node createMoveNode(GoBoard.Move move) {
         SGFParser.Node node = new SGFParser.Node();
         
         // 添加移动坐标
@@ -77,15 +102,6 @@ public class SGFConverter {
                 break;
         }
         
-        // 添加分支
-        for (GoBoard.Variation variation : move.variations) {
-            List<SGFParser.Node> varNodes = new ArrayList<>();
-            for (GoBoard.Move varMove : variation.getMoves()) {
-                varNodes.add(moveToNode(varMove));
-            }
-            node.addVariation(varNodes);
-        }
-        
         return node;
     }
     
@@ -102,39 +118,7 @@ public class SGFConverter {
         
         try {
             // 解析根节点
-            SGFParser.Node rootNode = sgfTree.getRootNode();
-            if (rootNode != null) {
-                // 解析游戏信息
-                String pb = rootNode.getFirstPropertyValue("PB");
-                String pw = rootNode.getFirstPropertyValue("PW");
-                String re = rootNode.getFirstPropertyValue("RE");
-                String dt = rootNode.getFirstPropertyValue("DT");
-                
-                if (pb != null) board.setBlackPlayer(pb);
-                if (pw != null) board.setWhitePlayer(pw);
-                if (re != null) board.setResult(re);
-                if (dt != null) board.setDate(dt);
-                
-                // 解析让子信息
-                String handicap = rootNode.getFirstPropertyValue("HA");
-                List<String> blackStones = rootNode.getPropertyValues("AB");
-                List<String> whiteStones = rootNode.getPropertyValues("AW");
-                
-                boolean hasHandicap = (handicap != null) || !blackStones.isEmpty() || !whiteStones.isEmpty();
-                
-                if (hasHandicap) {
-                    try {
-                        int hc = handicap != null ? Integer.parseInt(handicap) : blackStones.size();
-                        if (hc > 0 && hc <= 9) {
-                            parseHandicapStones(rootNode, board, hc);
-                        } else {
-                            System.err.println("SGF转换错误: 让子数必须在1-9之间");
-                        }
-                    } catch (NumberFormatException e) {
-                        System.err.println("SGF转换错误: 无效的让子数格式");
-                    }
-                }
-            }
+            loadRootNode(sgfTree.getRootNode(), board);
             
             // 解析根节点下的分支（第一手分支）
             List<SGFParser.Node> mainSequence = sgfTree.getMainSequence();
@@ -177,6 +161,85 @@ public class SGFConverter {
         }
     }
     
+    /**
+     * 将根节点的对局信息和让子加载到棋盘
+     * @param rootNode SGF根节点，可以为null
+     * @param board GoBoard对象
+     */
+    static void loadRootNode(SGFParser.Node rootNode, GoBoard board) {
+        // 保留根节点源文本，保存时不丢失未解析的属性
+        board.setRootSource(rootNode != null ? rootNode.getSource() : null);
+        if (rootNode != null) {
+            // 解析游戏信息
+            String pb = rootNode.getFirstPropertyValue("PB");
+            String pw = rootNode.getFirstPropertyValue("PW");
+            String re = rootNode.getFirstPropertyValue("RE");
+            String dt = rootNode.getFirstPropertyValue("DT");
+            
+            if (pb != null) board.setBlackPlayer(pb);
+            if (pw != null) board.setWhitePlayer(pw);
+            if (re != null) board.setResult(re);
+            if (dt != null) board.setDate(dt);
+            
+            // 解析让子信息
+            String handicap = rootNode.getFirstPropertyValue("HA");
+            List<String> blackStones = rootNode.getPropertyValues("AB");
+            List<String> whiteStones = rootNode.getPropertyValues("AW");
+            
+            boolean hasHandicap = (handicap != null) || !blackStones.isEmpty() || !whiteStones.isEmpty();
+            
+            if (hasHandicap) {
+                try {
+                    int hc = handicap != null ? Integer.parseInt(handicap) : blackStones.size();
+                    if (hc > 0 && hc <= 9) {
+                        parseHandicapStones(rootNode, board, hc);
+                    } else {
+                        System.err.println("SGF转换错误: 让子数必须在1-9之间");
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("SGF转换错误: 无效的让子数格式");
+                }
+            }
+        }
+    }
+    
+    /**
+     * 检查两个移动序列是否相同（不比较分支）
+     * 用于跳过与主序列重复的根节点分支
+     * @param moves1 第一个移动序列
+     * @param moves2 第二个移动序列
+     * @return 是否相同
+     */
+    static boolean areMoveSequencesEqual(List<GoBoard.Move> moves1, List<GoBoard.Move> moves2) {
+        if (moves1.size() != moves2.size()) {
+            return false;
+        }
+        for (int i = 0; i < moves1.size(); i++) {
+            GoBoard.Move move1 = moves1.get(i);
+            GoBoard.Move move2 = moves2.get(i);
+            if (move1.x != move2.x || move1.y != move2.y || move1.color != move2.color
+                    || move1.markType != move2.markType
+                    || !Objects.equals(move1.comment, move2.comment)
+                    || !Objects.equals(move1.label, move2.label)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 统计节点序列中的着手数，不包括嵌套的分支
+     */
+    private static int countMoves(List<SGFParser.Node> nodes) {
+        int count = 0;
+        for (SGFParser.Node node : nodes) {
+            if (node.hasProperty("B") || node.hasProperty("W")) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
     /**
      * 检查一个分支是否与主序列相同
      * @param variation 分支
@@ -187,6 +250,14 @@ public class SGFConverter {
         if (variation == null || mainSequence == null) {
             return false;
         }
+        if (variation == mainSequence) {
+            return true;
+        }
+        if (SGFParser.isDeferred(variation)
+                && SGFParser.countSequenceMoves(SGFParser.getDeferredSource(variation)) != countMoves(mainSequence)) {
+            // 着手数不同的延迟分支不为比较而解析，着手数相同时下面访问分支会先解析
+            return false;
+        }
         if (variation.size() != mainSequence.size()) {
             return false;
         }
@@ -235,25 +306,7 @@ public class SGFConverter {
      */
     public static SGFParser.SGFTree boardToSgfTree(GoBoard board) {
         // 创建根节点
-        SGFParser.Node rootNode = new SGFParser.Node();
-        rootNode.addProperty("FF", "4");
-        rootNode.addProperty("GM", "1");
-        rootNode.addProperty("SZ", "19");
-        
-        // 添加游戏信息
-        String blackPlayer = board.getBlackPlayer();
-        String whitePlayer = board.getWhitePlayer();
-        String result = board.getResult();
-        
-        if (!blackPlayer.isEmpty()) {
-            rootNode.addProperty("PB", blackPlayer);
-        }
-        if (!whitePlayer.isEmpty()) {
-            rootNode.addProperty("PW", whitePlayer);
-        }
-        if (!result.isEmpty()) {
-            rootNode.addProperty("RE", result);
-        }
+        SGFParser.Node rootNode = boardToRootNode(board);
         
         // 检查是否有起始分支
         List<List<SGFParser.Node>> rootVariations = null;
@@ -288,6 +341,52 @@ public class SGFConverter {
         return new SGFParser.SGFTree(rootNode, mainSequence, rootVariations);
     }
     
+    /**
+     * 将 GoBoard 的对局信息转换为 SGF 根节点
+     * @param board GoBoard对象
+     * @return SGF根节点
+     */
+    public static SGFParser.Node boardToRootNode(GoBoard board) {
+        SGFParser.Node rootNode = new SGFParser.Node();
+        rootNode.addProperty("FF", "4");
+        rootNode.addProperty("GM", "1");
+        rootNode.addProperty("SZ", "19");
+        rootNode.addProperty("CA", "UTF-8");
+        
+        // 添加游戏信息
+        String blackPlayer = board.getBlackPlayer();
+        String whitePlayer = board.getWhitePlayer();
+        String result = board.getResult();
+        
+        if (!blackPlayer.isEmpty()) {
+            rootNode.addProperty("PB", blackPlayer);
+        }
+        if (!whitePlayer.isEmpty()) {
+            rootNode.addProperty("PW", whitePlayer);
+        }
+        if (!result.isEmpty()) {
+            rootNode.addProperty("RE", result);
+        }
+        String date = board.getDate();
+        if (date != null && !date.isEmpty()) {
+            rootNode.addProperty("DT", date);
+        }
+        
+        // 添加让子和摆子，写入时压缩为矩形
+        for (int y = 0; y < 19; y++) {
+            for (int x = 0; x < 19; x++) {
+                int stone = board.getInitialStone(x, y);
+                if (stone == 1) {
+                    rootNode.addProperty("AB", "" + (char) ('a' + x) + (char) ('a' + y));
+                } else if (stone == 2) {
+                    rootNode.addProperty("AW", "" + (char) ('a' + x) + (char) ('a' + y));
+                }
+            }
+        }
+        
+        return rootNode;
+    }
+    
     /**
      * 从坐标创建移动
      * @param coord SGF坐标
@@ -428,14 +527,14 @@ public class SGFConverter {
      * @param board GoBoard对象
      * @param handicap 让子数
      */
-    private static void placeAutomaticHandicap(GoBoard board, int handicap) {
+    static void placeAutomaticHandicap(GoBoard board, int handicap) {
         if (handicap <= 0 || handicap > 9) {
             return;
         }
         
         int size = 19; // 默认棋盘大小
         int center = (size - 1) / 2;
-        int starPoint = 3; // 19路棋盘的星位点距离
+        int starPoint = 6; // 19路棋盘星位到天元的距离
         
         // 标准星位点
         int[][] starPoints = {
@@ -530,6 +629,14 @@ public class SGFConverter {
         }
         
         for (List<SGFParser.Node> variation : rootVariations) {
+            if (SGFParser.isDeferred(variation)) {
+                // 没有着手的分支与非延迟模式一样跳过
+                if (SGFParser.countSequenceMoves(SGFParser.getDeferredSource(variation)) > 0) {
+                    String branchName = "分支 " + (board.getStartVariationsCount() + 1);
+                    board.addStartVariation(deferVariation(variation, branchName));
+                }
+                continue;
+            }
             List<GoBoard.Move> moves = new ArrayList<>();
             parseVariationToMoves(variation, moves);
             if (!moves.isEmpty()) {
@@ -554,6 +661,11 @@ public class SGFConverter {
                 // 解析分支
                 List<List<SGFParser.Node>> variations = node.getVariations();
                 for (List<SGFParser.Node> variation : variations) {
+                    if (SGFParser.isDeferred(variation)) {
+                        String branchName = "分支 " + (move.variations.size() + 1);
+                        move.variations.add(deferVariation(variation, branchName));
+                        continue;
+                    }
                     List<GoBoard.Move> varMoves = new ArrayList<>();
                     parseVariationToMoves(variation, varMoves);
                     if (!varMoves.isEmpty()) {
@@ -567,26 +679,82 @@ public class SGFConverter {
     
     /**
      * 解析分支到移动列表
+     * 使用显式栈代替递归，嵌套很深的分支也不会导致栈溢出
      * @param nodes 节点列表
      * @param moves 移动列表
      */
     private static void parseVariationToMoves(List<SGFParser.Node> nodes, List<GoBoard.Move> moves) {
-        for (SGFParser.Node node : nodes) {
-            GoBoard.Move move = nodeToMove(node);
-            if (move != null) {
-                moves.add(move);
-                
-                // 解析嵌套分支
-                List<List<SGFParser.Node>> variations = node.getVariations();
-                for (List<SGFParser.Node> variation : variations) {
-                    List<GoBoard.Move> varMoves = new ArrayList<>();
-                    parseVariationToMoves(variation, varMoves);
-                    if (!varMoves.isEmpty()) {
-                        String branchName = "分支 " + (move.variations.size() + 1);
-                        move.addVariation(varMoves, branchName);
-                    }
+        Deque<VariationFrame> stack = new ArrayDeque<>();
+        VariationFrame frame = new VariationFrame(nodes, moves, null);
+        
+        while (frame != null) {
+            // 先处理当前节点的嵌套分支
+            if (frame.move != null && frame.variationIndex < frame.node.getVariations().size()) {
+                List<SGFParser.Node> variation = frame.node.getVariations().get(frame.variationIndex++);
+                if (SGFParser.isDeferred(variation)) {
+                    String branchName = "分支 " + (frame.move.variations.size() + 1);
+                    frame.move.variations.add(deferVariation(variation, branchName));
+                    continue;
                 }
+                stack.push(frame);
+                frame = new VariationFrame(variation, new ArrayList<>(), frame.move);
+                continue;
             }
+            
+            // 再前进到下一个节点
+            frame.move = null;
+            if (frame.nodeIndex < frame.nodes.size()) {
+                SGFParser.Node node = frame.nodes.get(frame.nodeIndex++);
+                GoBoard.Move move = nodeToMove(node);
+                if (move != null) {
+                    frame.moves.add(move);
+                    frame.node = node;
+                    frame.move = move;
+                    frame.variationIndex = 0;
+                }
+                continue;
+            }
+            
+            // 当前分支解析完毕，挂到所属的移动上
+            if (frame.owner != null && !frame.moves.isEmpty()) {
+                String branchName = "分支 " + (frame.owner.variations.size() + 1);
+                frame.owner.addVariation(frame.moves, branchName);
+            }
+            frame = stack.poll();
+        }
+    }
+    
+    /**
+     * 为尚未解析的SGF分支创建延迟加载的棋盘分支
+     * 分支格式错误时异常保留在分支上，见 GoBoard.Variation.getLoadError
+     * @param variation 延迟解析的节点序列
+     * @param branchName 分支名称
+     * @return 首次访问时才解析的分支
+     */
+    static GoBoard.Variation deferVariation(List<SGFParser.Node> variation, String branchName) {
+        return new GoBoard.Variation(() -> {
+            List<GoBoard.Move> varMoves = new ArrayList<>();
+            parseVariationToMoves(variation, varMoves);
+            return varMoves;
+        }, branchName, SGFParser.getDeferredSource(variation));
+    }
+    
+    /**
+     * 分支解析栈帧
+     */
+    private static class VariationFrame {
+        final List<SGFParser.Node> nodes;
+        final List<GoBoard.Move> moves;
+        final GoBoard.Move owner;
+        int nodeIndex;
+        SGFParser.Node node;
+        GoBoard.Move move;
+        int variationIndex;
+        
+        VariationFrame(List<SGFParser.Node> nodes, List<GoBoard.Move> moves, GoBoard.Move owner) {
+            this.nodes = nodes;
+            this.moves = moves;
+            this.owner = owner;
         }
     }
-}
\ No newline at end of file
+}
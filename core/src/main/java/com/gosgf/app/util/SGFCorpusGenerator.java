@@ -0,0 +1,366 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * SGF语料生成器 - 为解析、转换和重放的性能测试生成大量随机但合法的对局
+ * 每一手都用 GoBoard 按规则落子，分支从所在局面继续合法对弈；
+ * 第 i 局只由种子和 i 决定，同样的参数总是生成同样的文件
+ *
+ * 用法：SGFCorpusGenerator [-seed 种子] [-games 局数] [-moves 手数] [-branches 分支数] [-depth 分支深度]
+ *       [-variation 分支手数] [-interval 分支间隔] [-comment 注释长度] [-charset 字符集] [-collection] 输出目录或文件
+ */
+public class SGFCorpusGenerator {
+
+    // 注释词汇，包含需要转义的字符
+    private static final String[] WORDS = {
+            "黑棋", "白棋", "好手", "恶手", "打劫", "死活", "厚味", "实地", "这里", "应该",
+            "attack", "defend", "ko", "sente", "gote", "aji", "[note]", "a\\b", "x:y"};
+    private static final String[] ASCII_WORDS = {
+            "attack", "defend", "ko", "sente", "gote", "aji", "shape", "tenuki", "[note]", "a\\b", "x:y"};
+    // 每个节点带注释的概率
+    private static final int COMMENT_ONE_IN = 8;
+    // 随机找空点的尝试次数，找不到合法点时虚手
+    private static final int MOVE_ATTEMPTS = 40;
+
+    private final long seed;
+    private int moves = 200;
+    private int branchFactor = 0;
+    private int variationDepth = 1;
+    private int variationLength = 10;
+    private int branchInterval = 20;
+    private int commentLength = 0;
+    private Charset charset = StandardCharsets.UTF_8;
+
+    /**
+     * @param seed 随机种子
+     */
+    public SGFCorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = 1;
+        int games = 100;
+        int moves = 200;
+        int branches = 0;
+        int depth = 1;
+        int variation = 10;
+        int interval = 20;
+        int comment = 0;
+        Charset charset = StandardCharsets.UTF_8;
+        boolean collection = false;
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if (arg.equals("-collection")) {
+                collection = true;
+            } else if (arg.equals("-seed") && hasValue) {
+                seed = Long.parseLong(args[++i]);
+            } else if (arg.equals("-games") && hasValue) {
+                games = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-moves") && hasValue) {
+                moves = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-branches") && hasValue) {
+                branches = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-depth") && hasValue) {
+                depth = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-variation") && hasValue) {
+                variation = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-interval") && hasValue) {
+                interval = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-comment") && hasValue) {
+                comment = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-charset") && hasValue) {
+                charset = Charset.forName(args[++i]);
+            } else {
+                output = arg;
+            }
+        }
+        if (output == null) {
+            System.err.println("用法: SGFCorpusGenerator [-seed 种子] [-games 局数] [-moves 手数] [-branches 分支数] [-depth 分支深度]"
+                    + " [-variation 分支手数] [-interval 分支间隔] [-comment 注释长度] [-charset 字符集] [-collection] 输出目录或文件");
+            System.exit(2);
+        }
+
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(seed);
+        generator.setMoves(moves);
+        generator.setBranchFactor(branches);
+        generator.setVariationDepth(depth);
+        generator.setVariationLength(variation);
+        generator.setBranchInterval(interval);
+        generator.setCommentLength(comment);
+        generator.setCharset(charset);
+
+        // 随机落子时的打劫和禁着尝试会产生大量警告日志
+        Logger.getLogger("GoBoard").setLevel(Level.OFF);
+
+        long start = System.nanoTime();
+        Path path = Paths.get(output);
+        if (collection) {
+            try (OutputStream out = Files.newOutputStream(path)) {
+                generator.writeCollection(games, out);
+            }
+        } else {
+            generator.writeFiles(games, path);
+        }
+        System.out.printf(Locale.ROOT, "生成 %d 局，用时 %.2f 秒%n", games, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * @param moves 主线手数
+     */
+    public void setMoves(int moves) {
+        this.moves = moves;
+    }
+
+    /**
+     * @param branchFactor 每个分支点的分支数，0表示不生成分支
+     */
+    public void setBranchFactor(int branchFactor) {
+        this.branchFactor = branchFactor;
+    }
+
+    /**
+     * @param variationDepth 分支最多嵌套的层数
+     */
+    public void setVariationDepth(int variationDepth) {
+        this.variationDepth = variationDepth;
+    }
+
+    /**
+     * @param variationLength 每个分支的手数
+     */
+    public void setVariationLength(int variationLength) {
+        this.variationLength = variationLength;
+    }
+
+    /**
+     * @param branchInterval 主线和分支中每隔多少手设一个分支点
+     */
+    public void setBranchInterval(int branchInterval) {
+        this.branchInterval = Math.max(1, branchInterval);
+    }
+
+    /**
+     * @param commentLength 注释的字符数，0表示不生成注释
+     */
+    public void setCommentLength(int commentLength) {
+        this.commentLength = commentLength;
+    }
+
+    /**
+     * @param charset 写入时使用的字符集，同时写入 CA 属性；字符集不支持中文时注释只用ASCII
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * 生成第 index 局
+     * @param index 对局序号
+     * @return SGF树
+     */
+    public SGFParser.SGFTree generate(int index) {
+        Random random = new Random(seed * 1000003L + index);
+        String[] words = charset.newEncoder().canEncode("黑白") ? WORDS : ASCII_WORDS;
+
+        SGFParser.Node root = new SGFParser.Node();
+        root.addProperty("FF", "4");
+        root.addProperty("GM", "1");
+        root.addProperty("SZ", "19");
+        root.addProperty("CA", charset.name());
+        root.addProperty("GN", "corpus " + seed + "-" + index);
+        root.addProperty("PB", "Black " + random.nextInt(1000));
+        root.addProperty("PW", "White " + random.nextInt(1000));
+        root.addProperty("KM", "7.5");
+        root.addProperty("RE", random.nextBoolean() ? "B+R" : "W+R");
+        root.addProperty("DT", String.format(Locale.ROOT, "%04d-%02d-%02d",
+                2000 + random.nextInt(25), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+
+        // 主线和各分支按生成顺序依次对弈，不使用递归
+        List<SGFParser.Node> mainSequence = new ArrayList<>();
+        Deque<LineTask> pending = new ArrayDeque<>();
+        pending.add(new LineTask(mainSequence, new ArrayList<>(), moves, 0));
+        while (!pending.isEmpty()) {
+            playLine(pending.poll(), pending, random, words);
+        }
+        return new SGFParser.SGFTree(root, mainSequence);
+    }
+
+    /**
+     * 从任务的起始局面对弈一条线，遇到分支点时把分支加入待处理队列
+     */
+    private void playLine(LineTask task, Deque<LineTask> pending, Random random, String[] words) {
+        GoBoard board = new GoBoard();
+        List<int[]> line = new ArrayList<>(task.prefix);
+        for (int[] move : task.prefix) {
+            play(board, move);
+        }
+
+        for (int i = 0; i < task.length; i++) {
+            int[] move = playRandomMove(board, random);
+            line.add(move);
+
+            SGFParser.Node node = new SGFParser.Node();
+            String coord = move[0] < 0 ? "" : "" + (char) ('a' + move[0]) + (char) ('a' + move[1]);
+            node.addProperty(move[2] == GoBoard.BLACK ? "B" : "W", coord);
+            if (commentLength > 0 && random.nextInt(COMMENT_ONE_IN) == 0) {
+                node.addProperty("C", randomText(random, words));
+            }
+            task.nodes.add(node);
+
+            // 分支从这一手之后开始，是下一手的其他选择
+            if (task.depth < variationDepth && branchFactor > 0 && (i + 1) % branchInterval == 0) {
+                for (int b = 0; b < branchFactor; b++) {
+                    List<SGFParser.Node> variation = new ArrayList<>();
+                    node.addVariation(variation);
+                    pending.add(new LineTask(variation, new ArrayList<>(line), variationLength, task.depth + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * 随机选择一个空点落子，违反打劫或禁着时重选，多次找不到合法点时虚手
+     * 四周都是同一颜色的点（自己的眼或对方的虎口）不下，随机对局不会填眼，也很少尝试禁着
+     * @return {x, y, 颜色}，虚手时坐标为-1
+     */
+    private static int[] playRandomMove(GoBoard board, Random random) {
+        int color = board.getCurrentPlayer();
+        for (int attempt = 0; attempt < MOVE_ATTEMPTS; attempt++) {
+            int x = random.nextInt(19);
+            int y = random.nextInt(19);
+            if (board.getStone(x, y) == 0 && !isSurrounded(board, x, y) && board.placeStone(x, y)) {
+                return new int[] {x, y, color};
+            }
+        }
+        board.skipTurn();
+        return new int[] {-1, -1, color};
+    }
+
+    /**
+     * 检查空点的相邻点是否都是同一颜色的棋子
+     */
+    private static boolean isSurrounded(GoBoard board, int x, int y) {
+        int[][] directions = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        int color = 0;
+        for (int[] dir : directions) {
+            int nx = x + dir[0];
+            int ny = y + dir[1];
+            if (!board.isValidCoordinate(nx, ny)) {
+                continue;
+            }
+            int stone = board.getStone(nx, ny);
+            if (stone == 0 || (color != 0 && stone != color)) {
+                return false;
+            }
+            color = stone;
+        }
+        return true;
+    }
+
+    private static void play(GoBoard board, int[] move) {
+        if (move[0] < 0) {
+            board.skipTurn();
+        } else {
+            board.placeStone(move[0], move[1]);
+        }
+    }
+
+    private String randomText(Random random, String[] words) {
+        StringBuilder sb = new StringBuilder(commentLength + 8);
+        while (sb.length() < commentLength) {
+            if (sb.length() > 0) {
+                sb.append(random.nextInt(10) == 0 ? '\n' : ' ');
+            }
+            sb.append(words[random.nextInt(words.length)]);
+        }
+        sb.setLength(commentLength);
+        return sb.toString();
+    }
+
+    /**
+     * 写入第 index 局
+     * @param index 对局序号
+     * @param out 输出流，调用方负责关闭
+     * @throws IOException 写入异常
+     */
+    public void write(int index, OutputStream out) throws IOException {
+        SGFWriter writer = new SGFWriter(new BufferedWriter(new OutputStreamWriter(out, charset)));
+        writer.writeTree(generate(index));
+        writer.flush();
+    }
+
+    /**
+     * 把前 count 局写成一个SGF合集
+     * @param count 局数
+     * @param out 输出流，调用方负责关闭
+     * @throws IOException 写入异常
+     */
+    public void writeCollection(int count, OutputStream out) throws IOException {
+        BufferedWriter buffered = new BufferedWriter(new OutputStreamWriter(out, charset));
+        SGFWriter writer = new SGFWriter(buffered);
+        for (int i = 0; i < count; i++) {
+            writer.writeTree(generate(i));
+            buffered.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * 把前 count 局分别写入目录下的 game-00000.sgf 等文件
+     * @param count 局数
+     * @param directory 输出目录，不存在时创建
+     * @return 写入的文件
+     * @throws IOException 写入异常
+     */
+    public List<Path> writeFiles(int count, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path path = directory.resolve(String.format(Locale.ROOT, "game-%05d.sgf", i));
+            try (OutputStream out = Files.newOutputStream(path)) {
+                write(i, out);
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * 待生成的一条线：起始局面的着手、目标节点列表、手数和分支深度
+     */
+    private static class LineTask {
+        final List<SGFParser.Node> nodes;
+        final List<int[]> prefix;
+        final int length;
+        final int depth;
+
+        LineTask(List<SGFParser.Node> nodes, List<int[]> prefix, int length, int depth) {
+            this.nodes = nodes;
+            this.prefix = prefix;
+            this.length = length;
+            this.depth = depth;
+        }
+    }
+}
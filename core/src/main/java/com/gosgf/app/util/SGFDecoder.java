@@ -0,0 +1,149 @@
+package com.gosgf.app.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * SGF解码器 - 按 CA[] 属性选择字符集，一次性把原始字节解码为字符串
+ * 纯ASCII和UTF-8文件走快速路径，不需要先解码再重新解析
+ */
+public class SGFDecoder {
+
+    // 未声明字符集且不是合法UTF-8时的回退字符集，兼容 GB2312/GBK
+    private static final Charset FALLBACK_CHARSET = Charset.forName("GB18030");
+
+    /**
+     * 读取输入流并解码为SGF字符串
+     * @param in 输入流
+     * @return SGF字符串
+     * @throws IOException 读取异常
+     */
+    public static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return decode(out.toByteArray());
+    }
+
+    /**
+     * 将SGF原始字节解码为字符串
+     * @param data 原始字节
+     * @return SGF字符串
+     */
+    public static String decode(byte[] data) {
+        int offset = hasUtf8Bom(data) ? 3 : 0;
+
+        // 快速路径：纯ASCII，任何常见字符集的解码结果都相同
+        if (isAscii(data, offset)) {
+            return new String(data, offset, data.length - offset, StandardCharsets.US_ASCII);
+        }
+
+        Charset charset = findCharset(data);
+        if (charset != null) {
+            return new String(data, offset, data.length - offset, charset);
+        }
+
+        // 未声明字符集：合法UTF-8直接使用，否则按中文编码解码
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(data, offset, data.length - offset))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return new String(data, offset, data.length - offset, FALLBACK_CHARSET);
+        }
+    }
+
+    /**
+     * 根据根节点的 CA[] 属性获取字符集
+     * @param data 原始字节
+     * @return 字符集，未声明或不支持时返回null
+     */
+    public static Charset findCharset(byte[] data) {
+        String name = findCharsetName(data);
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+
+        String normalized = name.toUpperCase(Locale.ROOT);
+        if (normalized.equals("GB2312") || normalized.equals("GBK") || normalized.equals("CP936")) {
+            // 很多标为 GB2312 的文件实际包含 GBK 字符，统一按超集解码
+            return FALLBACK_CHARSET;
+        }
+        try {
+            return Charset.isSupported(name) ? Charset.forName(name) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 直接从原始字节中读取根节点的 CA[] 属性值
+     * 只扫描根节点，识别属性值中的方括号和转义
+     * @param data 原始字节
+     * @return CA属性值，不存在返回null
+     */
+    public static String findCharsetName(byte[] data) {
+        boolean inValue = false;
+        boolean inRoot = false;
+
+        for (int i = 0; i < data.length; i++) {
+            byte current = data[i];
+            if (inValue) {
+                if (current == '\\') {
+                    i++;
+                } else if (current == ']') {
+                    inValue = false;
+                }
+            } else if (current == '[') {
+                inValue = true;
+                if (inRoot && i >= 2 && data[i - 2] == 'C' && data[i - 1] == 'A'
+                        && (i < 3 || data[i - 3] < 'A' || data[i - 3] > 'Z')) {
+                    int end = i + 1;
+                    while (end < data.length && data[end] != ']') {
+                        end++;
+                    }
+                    return new String(data, i + 1, end - i - 1, StandardCharsets.US_ASCII).trim();
+                }
+            } else if (current == ';') {
+                if (inRoot) {
+                    break; // 根节点结束
+                }
+                inRoot = true;
+            } else if (inRoot && (current == '(' || current == ')')) {
+                break; // 根节点结束
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 检查是否全部为ASCII字节
+     */
+    private static boolean isAscii(byte[] data, int offset) {
+        for (int i = offset; i < data.length; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 检查是否以UTF-8 BOM开头
+     */
+    private static boolean hasUtf8Bom(byte[] data) {
+        return data.length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF;
+    }
+}
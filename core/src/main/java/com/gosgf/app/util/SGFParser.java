@@ -0,0 +1,1431 @@
+package com.gosgf.app.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * SGF解析器 - 基于SGF标准（FF[4]）实现
+ * 支持BNF语法解析、树状结构、分支处理、多值属性等
+ */
+public class SGFParser {
+    
+    /**
+     * SGF节点类
+     * 对应BNF中的<node>
+     */
+    public static class Node {
+        private final Map<String, List<String>> properties = new HashMap<>();
+        private final Map<String, SGFPointSet> pointSets = new HashMap<>(); // 点列表属性，压缩矩形已展开
+        private final List<List<Node>> variations = new ArrayList<>();
+        private SourceRange source; // 解析时节点在源文本中的位置，修改后清空
+        
+        /**
+         * 添加属性
+         * 点列表属性的值（包括 "aa:cc" 压缩矩形）存入点集，无法识别的值按原文保留
+         * @param ident 属性标识符
+         * @param value 属性值
+         */
+        public void addProperty(String ident, String value) {
+            source = null;
+            if (SGFPointSet.isPointListProperty(ident)) {
+                SGFPointSet points = pointSets.computeIfAbsent(ident, k -> new SGFPointSet());
+                if (value.isEmpty() || points.add(value)) {
+                    return; // 空值表示空列表
+                }
+            }
+            properties.computeIfAbsent(ident, k -> new ArrayList<>()).add(value);
+        }
+        
+        /**
+         * 获取点列表属性的点集
+         * @param ident 属性标识符
+         * @return 点集，不存在返回null
+         */
+        public SGFPointSet getPointSet(String ident) {
+            return pointSets.get(ident);
+        }
+        
+        /**
+         * 获取写入用的属性值列表，点列表属性压缩为矩形
+         * @param ident 属性标识符
+         * @return 属性值列表
+         */
+        public List<String> getCompressedPropertyValues(String ident) {
+            SGFPointSet points = pointSets.get(ident);
+            if (points == null) {
+                return getPropertyValues(ident);
+            }
+            List<String> values = points.toCompressedValues();
+            values.addAll(properties.getOrDefault(ident, new ArrayList<>()));
+            return values;
+        }
+        
+        /**
+         * 获取节点在源文本中的位置
+         * @return 源文本位置，新建或修改过的节点返回null
+         */
+        public SourceRange getSource() {
+            return source;
+        }
+        
+        /**
+         * 获取属性值列表
+         * @param ident 属性标识符
+         * @return 属性值列表
+         */
+        public List<String> getPropertyValues(String ident) {
+            SGFPointSet points = pointSets.get(ident);
+            if (points == null) {
+                return properties.getOrDefault(ident, new ArrayList<>());
+            }
+            List<String> values = points.toPointValues();
+            values.addAll(properties.getOrDefault(ident, new ArrayList<>()));
+            return values;
+        }
+        
+        /**
+         * 获取第一个属性值
+         * @param ident 属性标识符
+         * @return 第一个属性值，不存在返回null
+         */
+        public String getFirstPropertyValue(String ident) {
+            if (pointSets.containsKey(ident)) {
+                List<String> values = getPropertyValues(ident);
+                return values.isEmpty() ? null : values.get(0);
+            }
+            List<String> values = properties.get(ident);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+        
+        /**
+         * 添加分支
+         * @param variation 分支节点序列
+         */
+        public void addVariation(List<Node> variation) {
+            variations.add(variation);
+        }
+        
+        /**
+         * 获取分支列表
+         * @return 分支列表
+         */
+        public List<List<Node>> getVariations() {
+            return variations;
+        }
+        
+        /**
+         * 检查是否有分支
+         * @return 是否有分支
+         */
+        public boolean hasVariations() {
+            return !variations.isEmpty();
+        }
+        
+        /**
+         * 检查是否有属性
+         * @param ident 属性标识符
+         * @return 是否有属性
+         */
+        public boolean hasProperty(String ident) {
+            return properties.containsKey(ident) || pointSets.containsKey(ident);
+        }
+        
+        /**
+         * 获取所有属性标识符
+         * @return 属性标识符列表
+         */
+        public List<String> getPropertyIdentifiers() {
+            List<String> identifiers = new ArrayList<>(properties.keySet());
+            for (String ident : pointSets.keySet()) {
+                if (!properties.containsKey(ident)) {
+                    identifiers.add(ident);
+                }
+            }
+            return identifiers;
+        }
+    }
+    
+    /**
+     * 源文本片段
+     * 记录节点或分支在加载时的原始文本位置，保存时未修改的部分可原样复制
+     */
+    public static final class SourceRange {
+        private final String text;
+        private final int start;
+        private final int end;
+        
+        SourceRange(String text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+        
+        public String getText() {
+            return text;
+        }
+        
+        public int getStart() {
+            return start;
+        }
+        
+        public int getEnd() {
+            return end;
+        }
+        
+        /**
+         * 重新解析该片段中的节点
+         * @return SGF节点
+         * @throws SGFParseException 解析异常
+         */
+        public Node parseNode() throws SGFParseException {
+            return new Parser(text, start, false).parseNode();
+        }
+        
+        @Override
+        public String toString() {
+            return text.substring(start, end);
+        }
+    }
+    
+    /**
+     * SGF树类
+     * 对应BNF中的<sgf-tree>
+     */
+    public static class SGFTree {
+        private final Node rootNode;
+        private final List<Node> mainSequence;
+        private final List<List<Node>> rootVariations;
+        
+        public SGFTree(Node rootNode, List<Node> mainSequence) {
+            this.rootNode = rootNode;
+            this.mainSequence = mainSequence;
+            this.rootVariations = new ArrayList<>();
+        }
+        
+        public SGFTree(Node rootNode, List<Node> mainSequence, List<List<Node>> rootVariations) {
+            this.rootNode = rootNode;
+            this.mainSequence = mainSequence;
+            this.rootVariations = rootVariations != null ? rootVariations : new ArrayList<>();
+        }
+        
+        /**
+         * 获取根节点
+         * @return 根节点
+         */
+        public Node getRootNode() {
+            return rootNode;
+        }
+        
+        /**
+         * 获取主序列
+         * @return 主序列节点列表
+         */
+        public List<Node> getMainSequence() {
+            return mainSequence;
+        }
+        
+        /**
+         * 获取根节点下的分支列表
+         * @return 根节点下的分支列表
+         */
+        public List<List<Node>> getRootVariations() {
+            return rootVariations;
+        }
+        
+        /**
+         * 检查是否有根节点分支
+         * @return 是否有根节点分支
+         */
+        public boolean hasRootVariations() {
+            return !rootVariations.isEmpty();
+        }
+        
+        /**
+         * 检查是否有效
+         * @return 是否有效
+         */
+        public boolean isValid() {
+            return rootNode != null && rootNode.hasProperty("FF") && 
+                   rootNode.hasProperty("GM") && rootNode.hasProperty("SZ");
+        }
+    }
+    
+    /**
+     * 解析SGF字符串
+     * @param sgf SGF字符串
+     * @return SGF树
+     * @throws SGFParseException 解析异常
+     */
+    public static SGFTree parse(String sgf) throws SGFParseException {
+        return parse(sgf, false);
+    }
+    
+    /**
+     * 解析SGF字符串
+     * 延迟模式下只完整解析主序列，分支只记录在源文本中的位置，首次访问时才解析
+     * @param sgf SGF字符串
+     * @param lazyVariations 是否延迟解析分支
+     * @return SGF树
+     * @throws SGFParseException 解析异常
+     */
+    public static SGFTree parse(String sgf, boolean lazyVariations) throws SGFParseException {
+        if (sgf == null || sgf.trim().isEmpty()) {
+            throw new SGFParseException("Empty SGF string");
+        }
+        
+        Parser parser = new Parser(sgf.trim(), 0, lazyVariations);
+        return parser.parseSGF();
+    }
+    
+    /**
+     * 以恢复模式解析SGF字符串
+     * 跳过格式错误的属性和节点继续解析，遇到的问题按位置记录到 diagnostics；
+     * 只有找不到任何游戏树时才抛出异常。恢复模式下分支总是完整解析
+     * @param sgf SGF字符串
+     * @param diagnostics 接收诊断信息的列表
+     * @return SGF树
+     * @throws SGFParseException 输入中没有游戏树
+     */
+    public static SGFTree parse(String sgf, List<Diagnostic> diagnostics) throws SGFParseException {
+        if (sgf == null || sgf.trim().isEmpty()) {
+            throw new SGFParseException("Empty SGF string");
+        }
+        
+        // 不裁剪输入，诊断位置与调用方的字符串一致
+        return new Parser(sgf, 0, false, diagnostics).parseSGF();
+    }
+    
+    /**
+     * 解析SGF合集（多个顶层游戏树）
+     * 先快速切分出每个游戏树，再在公共 ForkJoinPool 上并行解析
+     * @param sgf SGF字符串
+     * @return SGF合集
+     * @throws SGFParseException 解析异常
+     */
+    public static SGFCollection parseCollection(String sgf) throws SGFParseException {
+        return parseCollection(sgf, false, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * 解析SGF合集（多个顶层游戏树）
+     * 每局棋作为一个任务提交到线程池，迭代时按原顺序等待各局解析完成
+     * @param sgf SGF字符串
+     * @param lazyVariations 是否延迟解析分支
+     * @param pool 执行解析的线程池
+     * @return SGF合集
+     * @throws SGFParseException 解析异常
+     */
+    public static SGFCollection parseCollection(String sgf, boolean lazyVariations, ForkJoinPool pool) throws SGFParseException {
+        return parseCollection(sgf, lazyVariations, false, pool);
+    }
+    
+    /**
+     * 解析SGF合集（多个顶层游戏树）
+     * 恢复模式下各局跳过格式错误的部分继续解析，诊断信息通过 SGFCollection.getDiagnostics() 获取
+     * @param sgf SGF字符串
+     * @param lazyVariations 是否延迟解析分支，恢复模式下忽略
+     * @param recover 是否使用恢复模式
+     * @param pool 执行解析的线程池，为null时各局在首次获取时才在调用线程中解析
+     * @return SGF合集
+     * @throws SGFParseException 解析异常
+     */
+    public static SGFCollection parseCollection(String sgf, boolean lazyVariations, boolean recover, ForkJoinPool pool) throws SGFParseException {
+        if (sgf == null || sgf.trim().isEmpty()) {
+            throw new SGFParseException("Empty SGF string");
+        }
+        
+        // 切分顶层游戏树，游戏树之间的其他字符忽略
+        List<GameParseTask> games = new ArrayList<>();
+        int position = 0;
+        while (position < sgf.length()) {
+            if (sgf.charAt(position) != '(') {
+                position++;
+                continue;
+            }
+            games.add(new GameParseTask(sgf, position, lazyVariations && !recover, recover));
+            position = findGameTreeEnd(sgf, position);
+        }
+        
+        if (games.isEmpty()) {
+            throw new SGFParseException("Expected '(' at start of SGF tree");
+        }
+        
+        if (pool != null) {
+            for (GameParseTask game : games) {
+                game.submit(pool);
+            }
+        }
+        return new SGFCollection(games);
+    }
+    
+    /**
+     * 统计顶层游戏树的个数，只扫描括号，不解析节点
+     * @param sgf SGF字符串
+     * @return 游戏树个数
+     */
+    public static int countGameTrees(String sgf) {
+        int count = 0;
+        int position = 0;
+        while (position < sgf.length()) {
+            if (sgf.charAt(position) != '(') {
+                position++;
+                continue;
+            }
+            count++;
+            position = findGameTreeEnd(sgf, position);
+        }
+        return count;
+    }
+    
+    /**
+     * 查找游戏树的结束位置
+     * 识别属性值中的方括号和转义，不会被值里的括号干扰
+     * @param input SGF字符串
+     * @param start 游戏树开始的'('位置
+     * @return 匹配的')'之后的位置，未闭合时返回输入长度
+     */
+    private static int findGameTreeEnd(String input, int start) {
+        int length = input.length();
+        int position = start;
+        int depth = 0;
+        boolean inValue = false;
+        
+        while (position < length) {
+            char current = input.charAt(position++);
+            if (inValue) {
+                if (current == '\\') {
+                    position++;
+                } else if (current == ']') {
+                    inValue = false;
+                }
+            } else if (current == '[') {
+                inValue = true;
+            } else if (current == '(') {
+                depth++;
+            } else if (current == ')' && --depth == 0) {
+                break;
+            }
+        }
+        
+        return Math.min(position, length);
+    }
+    
+    /**
+     * 检查分支是否尚未解析
+     * @param variation 分支节点序列
+     * @return 是否是尚未解析的延迟分支
+     */
+    public static boolean isDeferred(List<Node> variation) {
+        return variation instanceof LazyVariation && !((LazyVariation) variation).isParsed();
+    }
+    
+    /**
+     * 获取尚未解析的分支的源文本位置（包括两端括号）
+     * @param variation 分支节点序列
+     * @return 源文本位置，已解析的分支返回null
+     */
+    public static SourceRange getDeferredSource(List<Node> variation) {
+        if (!isDeferred(variation)) {
+            return null;
+        }
+        LazyVariation lazy = (LazyVariation) variation;
+        return new SourceRange(lazy.input, lazy.start, lazy.end);
+    }
+    
+    /**
+     * 不构建节点，统计未解析分支第一层序列中的着手数，嵌套的分支不计
+     * 用于判断延迟分支是否可能与主序列相同，只有着手数相同时才需要解析后比较
+     * @param source 分支的源文本位置（包括两端括号）
+     * @return 有 B 或 W 属性的节点数，与 SGFConverter.nodeToMove 一致
+     */
+    static int countSequenceMoves(SourceRange source) {
+        String input = source.getText();
+        int end = source.getEnd();
+        int position = source.getStart();
+        int depth = 0;
+        int count = 0;
+        boolean inValue = false;
+        boolean counted = true; // 当前节点已经计入
+        int upperCase = 0; // 当前属性名中的大写字母数，小写字母是 FF[3] 长属性名的一部分
+        char identifier = 0;
+        
+        while (position < end) {
+            char current = input.charAt(position++);
+            if (inValue) {
+                if (current == '\\') {
+                    position++;
+                } else if (current == ']') {
+                    inValue = false;
+                }
+            } else if (current == '[') {
+                inValue = true;
+                if (!counted && upperCase == 1 && (identifier == 'B' || identifier == 'W')) {
+                    count++;
+                    counted = true;
+                }
+                upperCase = 0;
+            } else if (current == '(') {
+                depth++;
+            } else if (current == ')') {
+                depth--;
+            } else if (depth == 1) {
+                if (current == ';') {
+                    counted = false;
+                    upperCase = 0;
+                } else if (current >= 'A' && current <= 'Z') {
+                    upperCase++;
+                    identifier = current;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * 保存SGF树为字符串
+     * @param tree SGF树
+     * @return SGF字符串
+     * @throws SGFParseException 保存异常
+     */
+    public static String save(SGFTree tree) throws SGFParseException {
+        if (tree == null) {
+            throw new SGFParseException("Null SGF tree");
+        }
+        
+        StringWriter out = new StringWriter();
+        try {
+            new SGFWriter(out).writeTree(tree);
+        } catch (IOException e) {
+            throw new SGFParseException("Failed to save SGF: " + e.getMessage());
+        }
+        return out.toString();
+    }
+    
+    /**
+     * 内部解析器类
+     */
+    private static class Parser {
+        private final String input;
+        private int position;
+        private final boolean lazyVariations;
+        private final List<List<Node>> rootVariations;
+        private final List<Diagnostic> diagnostics; // 恢复模式下收集诊断信息，为null表示遇错即抛出
+        private com.gosgf.app.model.GoBoard board; // 直接加载时的目标棋盘
+        private int lineNumber = 1; // 以下用于增量计算诊断的行列号
+        private int lineStart = 0;
+        private int scanned = 0;
+        
+        public Parser(String input) {
+            this(input, 0, false);
+        }
+        
+        public Parser(String input, int position, boolean lazyVariations) {
+            this(input, position, lazyVariations, null);
+        }
+        
+        public Parser(String input, int position, boolean lazyVariations, List<Diagnostic> diagnostics) {
+            this.input = input;
+            this.position = position;
+            this.lazyVariations = lazyVariations;
+            this.rootVariations = new ArrayList<>();
+            this.diagnostics = diagnostics;
+        }
+        
+        /**
+         * 只解析游戏树的根节点
+         */
+        Node parseRootNode() throws SGFParseException {
+            skipToGameTree();
+            position++; // 跳过开始的'('
+            return parseNode();
+        }
+        
+        /**
+         * 解析整个SGF
+         * 对应BNF中的<sgf-tree>
+         */
+        public SGFTree parseSGF() throws SGFParseException {
+            skipToGameTree();
+            position++; // 跳过开始的'('
+            
+            // 解析根节点
+            Node rootNode = parseNode();
+            
+            // 解析主序列
+            List<Node> mainSequence = new ArrayList<>();
+            
+            // 继续解析，可能还有主序列节点或根节点分支
+            while (position < input.length()) {
+                char current = input.charAt(position);
+                
+                if (current == ';') {
+                    // 解析主序列节点
+                    Node node = parseNode();
+                    mainSequence.add(node);
+                } else if (current == '(') {
+                    // 解析分支
+                    List<Node> variation = lazyVariations ? skipGameTree() : parseGameTree(false);
+                    if (!mainSequence.isEmpty()) {
+                        // 如果主序列不为空，将分支添加到主序列的最后一个节点
+                        Node lastNode = mainSequence.get(mainSequence.size() - 1);
+                        lastNode.addVariation(variation);
+                    } else {
+                        // 如果主序列为空，说明这是根节点下的分支
+                        rootVariations.add(variation);
+                    }
+                } else if (current == ')') {
+                    // SGF结束
+                    position++;
+                    return new SGFTree(rootNode, mainSequence, rootVariations);
+                } else if (Character.isWhitespace(current)) {
+                    // 跳过空白字符
+                    skipWhitespace();
+                } else {
+                    // 其他字符，跳过
+                    skipUnexpected();
+                }
+            }
+            
+            warn(position, "Unclosed game tree");
+            return new SGFTree(rootNode, mainSequence, rootVariations);
+        }
+        
+        /**
+         * 解析整个SGF并直接加载到棋盘
+         * 每个节点解析后立即转换为移动，节点对象随即丢弃，
+         * 结果与 parseSGF() 后再调用 SGFConverter.sgfTreeToBoard() 相同
+         * @param board GoBoard对象
+         */
+        public void parseToBoard(com.gosgf.app.model.GoBoard board) throws SGFParseException {
+            this.board = board;
+            skipToGameTree();
+            position++; // 跳过开始的'('
+            
+            SGFConverter.loadRootNode(parseNode(), board);
+            
+            boolean hasMainSequence = false;
+            com.gosgf.app.model.GoBoard.Move lastMove = null;
+            List<com.gosgf.app.model.GoBoard.Move> mainMoves = null;
+            int rootVariationCount = 0;
+            
+            while (position < input.length()) {
+                char current = input.charAt(position);
+                
+                if (current == ';') {
+                    // 主序列节点
+                    hasMainSequence = true;
+                    lastMove = parseMove();
+                    if (lastMove != null) {
+                        board.addMoveToHistory(lastMove);
+                    }
+                } else if (current == '(' && hasMainSequence) {
+                    // 主序列最后一手的分支
+                    addVariation(lastMove);
+                } else if (current == '(') {
+                    // 根节点下的分支：第一个作为主序列，其余作为第一手分支
+                    if (rootVariationCount++ == 0) {
+                        mainMoves = parseVariationMoves();
+                        for (com.gosgf.app.model.GoBoard.Move move : mainMoves) {
+                            board.addMoveToHistory(move);
+                        }
+                    } else if (lazyVariations) {
+                        int start = position;
+                        List<Node> variation = skipGameTree();
+                        int moveCount = countSequenceMoves(getDeferredSource(variation));
+                        if (moveCount == mainMoves.size()) {
+                            // 可能与主序列相同，和非延迟模式一样解析后比较，相同的跳过
+                            position = start;
+                            addStartVariation(parseVariationMoves(), mainMoves);
+                        } else if (moveCount > 0) {
+                            String branchName = "分支 " + (board.getStartVariationsCount() + 1);
+                            board.addStartVariation(SGFConverter.deferVariation(variation, branchName));
+                        }
+                    } else {
+                        addStartVariation(parseVariationMoves(), mainMoves);
+                    }
+                } else if (current == ')') {
+                    // SGF结束
+                    position++;
+                    return;
+                } else if (Character.isWhitespace(current)) {
+                    skipWhitespace();
+                } else {
+                    skipUnexpected();
+                }
+            }
+            
+            warn(position, "Unclosed game tree");
+        }
+        
+        /**
+         * 添加第一手分支，跳过空分支和与主序列相同的分支
+         */
+        private void addStartVariation(List<com.gosgf.app.model.GoBoard.Move> moves,
+                                       List<com.gosgf.app.model.GoBoard.Move> mainMoves) {
+            if (!moves.isEmpty() && !SGFConverter.areMoveSequencesEqual(moves, mainMoves)) {
+                String branchName = "分支 " + (board.getStartVariationsCount() + 1);
+                board.addStartVariation(moves, branchName);
+            }
+        }
+        
+        /**
+         * 解析节点并转换为移动
+         * 恢复模式下跳过坐标超出棋盘的着手
+         * @return 移动，不是着手节点或被跳过时返回null
+         */
+        private com.gosgf.app.model.GoBoard.Move parseMove() throws SGFParseException {
+            int start = position;
+            com.gosgf.app.model.GoBoard.Move move = SGFConverter.nodeToMove(parseNode());
+            if (move != null && diagnostics != null && !(move.x == -1 && move.y == -1)
+                    && !board.isValidCoordinate(move.x, move.y)) {
+                warn(start, "Move outside the board");
+                return null;
+            }
+            return move;
+        }
+        
+        /**
+         * 解析一个分支并挂到指定的移动上
+         * @param owner 分支所属的移动，为null时分支无处可挂，直接跳过
+         */
+        private void addVariation(com.gosgf.app.model.GoBoard.Move owner) throws SGFParseException {
+            if (owner == null) {
+                position = findGameTreeEnd(input, position);
+            } else if (lazyVariations) {
+                String branchName = "分支 " + (owner.variations.size() + 1);
+                owner.variations.add(SGFConverter.deferVariation(skipGameTree(), branchName));
+            } else {
+                List<com.gosgf.app.model.GoBoard.Move> moves = parseVariationMoves();
+                if (!moves.isEmpty()) {
+                    owner.addVariation(moves, "分支 " + (owner.variations.size() + 1));
+                }
+            }
+        }
+        
+        /**
+         * 解析游戏树为移动序列，嵌套分支挂到各自所属的移动上
+         * 使用显式栈代替递归，嵌套很深的分支也不会导致栈溢出
+         * @return 最外层的移动序列
+         */
+        private List<com.gosgf.app.model.GoBoard.Move> parseVariationMoves() throws SGFParseException {
+            position++;
+            Deque<MoveFrame> stack = new ArrayDeque<>();
+            MoveFrame frame = new MoveFrame(null);
+            
+            while (position < input.length()) {
+                char current = input.charAt(position);
+                
+                if (current == ';') {
+                    frame.lastMove = parseMove();
+                    if (frame.lastMove != null) {
+                        frame.moves.add(frame.lastMove);
+                    }
+                } else if (current == '(' && (frame.lastMove == null || lazyVariations)) {
+                    // 无处可挂的分支直接跳过，延迟模式下记录位置
+                    addVariation(frame.lastMove);
+                } else if (current == '(') {
+                    // 进入分支，当前层压栈
+                    position++;
+                    stack.push(frame);
+                    frame = new MoveFrame(frame.lastMove);
+                } else if (current == ')') {
+                    position++;
+                    if (stack.isEmpty()) {
+                        return frame.moves;
+                    }
+                    frame.attach();
+                    frame = stack.pop();
+                } else if (Character.isWhitespace(current)) {
+                    skipWhitespace();
+                } else {
+                    skipUnexpected();
+                }
+            }
+            
+            // 输入提前结束，把未闭合的分支逐层挂回上一层
+            warn(position, "Unclosed game tree");
+            while (!stack.isEmpty()) {
+                frame.attach();
+                frame = stack.pop();
+            }
+            return frame.moves;
+        }
+        
+        /**
+         * 解析游戏树
+         * 对应BNF中的<sequence>
+         * 使用显式栈代替递归，嵌套很深的分支也不会导致栈溢出
+         * @param isRootLevel 是否是根级别解析（用于处理根节点下的多个分支）
+         */
+        private List<Node> parseGameTree(boolean isRootLevel) throws SGFParseException {
+            position++;
+            Deque<GameTreeFrame> stack = new ArrayDeque<>();
+            GameTreeFrame frame = new GameTreeFrame(isRootLevel);
+            
+            while (position < input.length()) {
+                char current = input.charAt(position);
+                
+                if (current == ';') {
+                    // 解析节点
+                    Node node = parseNode();
+                    frame.sequence.add(node);
+                } else if (current == '(' && lazyVariations) {
+                    // 延迟模式：只记录分支位置
+                    attachVariation(frame, skipGameTree());
+                } else if (current == '(') {
+                    // 进入分支，当前层压栈
+                    position++;
+                    stack.push(frame);
+                    frame = new GameTreeFrame(false);
+                } else if (current == ')') {
+                    // 分支结束
+                    position++;
+                    if (stack.isEmpty()) {
+                        return frame.sequence;
+                    }
+                    GameTreeFrame parent = stack.pop();
+                    attachVariation(parent, frame.sequence);
+                    frame = parent;
+                } else if (Character.isWhitespace(current)) {
+                    // 跳过空白字符
+                    skipWhitespace();
+                } else {
+                    // 其他字符，跳过
+                    skipUnexpected();
+                }
+            }
+            
+            // 输入提前结束，把未闭合的分支逐层挂回上一层
+            warn(position, "Unclosed game tree");
+            while (!stack.isEmpty()) {
+                GameTreeFrame parent = stack.pop();
+                attachVariation(parent, frame.sequence);
+                frame = parent;
+            }
+            return frame.sequence;
+        }
+        
+        /**
+         * 跳过整个游戏树，只记录其在源文本中的起始位置
+         * 识别属性值中的方括号和转义，不会被值里的括号干扰
+         * @return 延迟解析的分支
+         */
+        private List<Node> skipGameTree() {
+            int start = position;
+            position = findGameTreeEnd(input, start);
+            return new LazyVariation(input, start, position);
+        }
+        
+        /**
+         * 将解析完的分支挂到上一层
+         * @param parent 上一层游戏树
+         * @param variation 分支节点序列
+         */
+        private void attachVariation(GameTreeFrame parent, List<Node> variation) {
+            if (!parent.sequence.isEmpty()) {
+                // 如果有节点，将分支添加到最后一个节点
+                Node lastNode = parent.sequence.get(parent.sequence.size() - 1);
+                lastNode.addVariation(variation);
+            } else if (parent.isRootLevel) {
+                // 如果是根级别且没有节点，说明这是根节点下的分支
+                rootVariations.add(variation);
+            }
+        }
+        
+        /**
+         * 解析节点
+         * 对应BNF中的<node>
+         */
+        private Node parseNode() throws SGFParseException {
+            int start = position;
+            int reported = diagnostics != null ? diagnostics.size() : 0;
+            position++;
+            Node node = new Node();
+            int end = position;
+            
+            skipWhitespace();
+            
+            while (position < input.length()) {
+                char current = input.charAt(position);
+                
+                if (current == ';' || current == '(' || current == ')') {
+                    // 节点结束
+                    break;
+                }
+                
+                // 解析属性，标识符无效时连同属性值一起跳过
+                int propertyStart = position;
+                String ident = parsePropertyIdent();
+                List<String> values = parsePropertyValues();
+                
+                if (ident != null && values.isEmpty()) {
+                    warn(propertyStart, "Property " + ident + " has no value");
+                } else if (ident != null) {
+                    for (String value : values) {
+                        node.addProperty(ident, value);
+                    }
+                }
+                
+                end = position;
+                skipWhitespace();
+            }
+            
+            // 有问题的节点不保留源文本，保存时重新编码
+            if (diagnostics == null || diagnostics.size() == reported) {
+                node.source = new SourceRange(input, start, end);
+            }
+            return node;
+        }
+        
+        /**
+         * 解析属性标识符
+         * 对应BNF中的<prop-ident>
+         */
+        private String parsePropertyIdent() throws SGFParseException {
+            int start = position;
+            StringBuilder sb = new StringBuilder();
+            boolean lowercase = false;
+            
+            while (position < input.length()) {
+                char current = input.charAt(position);
+                if (current >= 'A' && current <= 'Z') {
+                    sb.append(current);
+                    position++;
+                } else if (diagnostics != null && current >= 'a' && current <= 'z') {
+                    // 恢复模式：按 FF[3] 的写法忽略小写字母，如 AddBlack 即 AB
+                    lowercase = true;
+                    position++;
+                } else {
+                    break;
+                }
+            }
+            
+            if (sb.length() == 0) {
+                error(start, "Empty property identifier");
+                // 恢复模式：跳过无法识别的字符，属性值由调用方一并跳过
+                while (position < input.length() && !isPropertyBoundary(input.charAt(position))) {
+                    position++;
+                }
+                return null;
+            }
+            if (lowercase) {
+                warn(start, "Lowercase letters ignored in property identifier " + sb);
+            }
+            
+            return sb.toString();
+        }
+        
+        private boolean isPropertyBoundary(char c) {
+            return (c >= 'A' && c <= 'Z') || c == '[' || c == ';' || c == '(' || c == ')' || Character.isWhitespace(c);
+        }
+        
+        /**
+         * 解析属性值列表
+         * 对应BNF中的<property-list>
+         */
+        private List<String> parsePropertyValues() throws SGFParseException {
+            List<String> values = new ArrayList<>();
+            
+            while (true) {
+                // FF[4] 允许标识符和属性值之间有空白
+                int next = position;
+                while (next < input.length() && Character.isWhitespace(input.charAt(next))) {
+                    next++;
+                }
+                if (next >= input.length() || input.charAt(next) != '[') {
+                    break;
+                }
+                position = next;
+                values.add(parsePropertyValue());
+            }
+            
+            return values;
+        }
+        
+        /**
+         * 解析单个属性值
+         * 对应BNF中的<prop-value>
+         */
+        private String parsePropertyValue() throws SGFParseException {
+            int start = position;
+            position++;
+            StringBuilder sb = new StringBuilder();
+            
+            while (position < input.length()) {
+                char current = input.charAt(position);
+                
+                if (current == '\\') {
+                    // 处理转义字符
+                    if (position + 1 < input.length()) {
+                        char next = input.charAt(position + 1);
+                        if (next == '[' || next == ']' || next == '\\' || next == ':' || next == '|') {
+                            sb.append(next);
+                            position += 2;
+                        } else {
+                            // 无效转义，当作普通字符
+                            sb.append(current);
+                            position++;
+                        }
+                    } else {
+                        // 结尾的反斜杠
+                        sb.append(current);
+                        position++;
+                    }
+                } else if (current == ']') {
+                    // 属性值结束
+                    position++;
+                    return sb.toString();
+                } else {
+                    // 普通字符
+                    sb.append(current);
+                    position++;
+                }
+            }
+            
+            warn(start, "Unterminated property value");
+            return sb.toString();
+        }
+        
+        /**
+         * 跳到游戏树开始的'('
+         * 严格模式下要求首个非空白字符就是'('，恢复模式下跳过前面的其他文本
+         */
+        private void skipToGameTree() throws SGFParseException {
+            skipWhitespace();
+            int start = position;
+            if (position < input.length() && input.charAt(position) == '(') {
+                return;
+            }
+            if (diagnostics != null) {
+                while (position < input.length() && input.charAt(position) != '(') {
+                    position++;
+                }
+            }
+            if (position >= input.length() || input.charAt(position) != '(') {
+                throw new SGFParseException("Expected '(' at start of SGF tree", start);
+            }
+            warn(start, "Unexpected text before game tree");
+        }
+        
+        /**
+         * 跳过节点之间无法识别的一段字符
+         */
+        private void skipUnexpected() {
+            int start = position;
+            while (position < input.length()) {
+                char current = input.charAt(position);
+                if (current == ';' || current == '(' || current == ')' || Character.isWhitespace(current)) {
+                    break;
+                }
+                position++;
+            }
+            warn(start, "Unexpected character '" + input.charAt(start) + "'");
+        }
+        
+        /**
+         * 报告错误：严格模式下抛出异常，恢复模式下记录后继续
+         */
+        private void error(int offset, String message) throws SGFParseException {
+            if (diagnostics == null) {
+                throw new SGFParseException(message, offset);
+            }
+            diagnostics.add(diagnostic(offset, message));
+        }
+        
+        /**
+         * 报告可以忽略的问题：只在恢复模式下记录
+         */
+        private void warn(int offset, String message) {
+            if (diagnostics != null) {
+                diagnostics.add(diagnostic(offset, message));
+            }
+        }
+        
+        /**
+         * 创建诊断信息，行列号从上次计算的位置增量扫描
+         */
+        private Diagnostic diagnostic(int offset, String message) {
+            if (offset < scanned) {
+                lineNumber = 1;
+                lineStart = 0;
+                scanned = 0;
+            }
+            for (; scanned < offset && scanned < input.length(); scanned++) {
+                if (input.charAt(scanned) == '\n') {
+                    lineNumber++;
+                    lineStart = scanned + 1;
+                }
+            }
+            return new Diagnostic(offset, lineNumber, offset - lineStart + 1, message);
+        }
+        
+        /**
+         * 跳过空白字符
+         */
+        private void skipWhitespace() {
+            while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+                position++;
+            }
+        }
+        
+        /**
+         * 直接加载到棋盘时的分支栈帧
+         */
+        private static class MoveFrame {
+            final List<com.gosgf.app.model.GoBoard.Move> moves = new ArrayList<>();
+            final com.gosgf.app.model.GoBoard.Move owner;
+            com.gosgf.app.model.GoBoard.Move lastMove;
+            
+            MoveFrame(com.gosgf.app.model.GoBoard.Move owner) {
+                this.owner = owner;
+            }
+            
+            /**
+             * 分支解析完毕，挂到所属的移动上
+             */
+            void attach() {
+                if (!moves.isEmpty()) {
+                    owner.addVariation(moves, "分支 " + (owner.variations.size() + 1));
+                }
+            }
+        }
+        
+        /**
+         * 游戏树解析栈帧
+         */
+        private static class GameTreeFrame {
+            final List<Node> sequence = new ArrayList<>();
+            final boolean isRootLevel;
+            
+            GameTreeFrame(boolean isRootLevel) {
+                this.isRootLevel = isRootLevel;
+            }
+        }
+    }
+    
+    /**
+     * SGF合集
+     * 各局在后台并行解析，按文件中的顺序惰性获取
+     */
+    public static class SGFCollection implements Iterable<SGFTree> {
+        private final List<GameParseTask> games;
+        
+        SGFCollection(List<GameParseTask> games) {
+            this.games = games;
+        }
+        
+        /**
+         * 获取合集中的对局数
+         * @return 对局数
+         */
+        public int size() {
+            return games.size();
+        }
+        
+        /**
+         * 获取指定对局，必要时等待其解析完成
+         * @param index 对局序号
+         * @return SGF树
+         * @throws SGFParseException 该局的解析异常
+         */
+        public SGFTree get(int index) throws SGFParseException {
+            return games.get(index).getTree();
+        }
+        
+        /**
+         * 只解析指定对局的根节点，不等待整局解析，用于列出对局信息
+         * @param index 对局序号
+         * @return 根节点
+         * @throws SGFParseException 根节点的解析异常
+         */
+        public Node getRootNode(int index) throws SGFParseException {
+            return games.get(index).parseRootNode();
+        }
+        
+        /**
+         * 获取指定对局的诊断信息，必要时等待其解析完成
+         * @param index 对局序号
+         * @return 诊断信息，非恢复模式下为空列表
+         */
+        public List<Diagnostic> getDiagnostics(int index) {
+            return games.get(index).getDiagnostics();
+        }
+        
+        /**
+         * 按顺序迭代各局，某局解析失败时抛出 IllegalStateException
+         */
+        @Override
+        public Iterator<SGFTree> iterator() {
+            return new Iterator<SGFTree>() {
+                private int index = 0;
+                
+                @Override
+                public boolean hasNext() {
+                    return index < games.size();
+                }
+                
+                @Override
+                public SGFTree next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        return get(index++);
+                    } catch (SGFParseException e) {
+                        throw new IllegalStateException("Invalid SGF game " + index + ": " + e.getMessage(), e);
+                    }
+                }
+            };
+        }
+    }
+    
+    /**
+     * 单局解析任务
+     * 未提交到线程池时，首次获取结果时在调用线程中执行
+     */
+    private static class GameParseTask extends RecursiveTask<SGFTree> {
+        private static final long serialVersionUID = 1L;
+        
+        private final String input;
+        private final int start;
+        private final boolean lazyVariations;
+        private final List<Diagnostic> diagnostics; // 恢复模式下的诊断信息，严格模式为null
+        private SGFParseException error;
+        private boolean submitted;
+        
+        GameParseTask(String input, int start, boolean lazyVariations, boolean recover) {
+            this.input = input;
+            this.start = start;
+            this.lazyVariations = lazyVariations;
+            this.diagnostics = recover ? new ArrayList<>() : null;
+        }
+        
+        @Override
+        protected SGFTree compute() {
+            try {
+                return new Parser(input, start, lazyVariations, diagnostics).parseSGF();
+            } catch (SGFParseException e) {
+                error = e;
+                return null;
+            }
+        }
+        
+        void submit(ForkJoinPool pool) {
+            submitted = true;
+            pool.execute(this);
+        }
+        
+        SGFTree getTree() throws SGFParseException {
+            SGFTree tree = submitted ? join() : invoke();
+            if (error != null) {
+                throw error;
+            }
+            return tree;
+        }
+        
+        List<Diagnostic> getDiagnostics() {
+            if (submitted) {
+                join();
+            } else {
+                invoke();
+            }
+            return diagnostics != null ? diagnostics : Collections.<Diagnostic>emptyList();
+        }
+        
+        Node parseRootNode() throws SGFParseException {
+            return new Parser(input, start, false).parseRootNode();
+        }
+    }
+    
+    /**
+     * 延迟解析的分支
+     * 只保存分支在源文本中的起始位置，首次访问时才解析其节点序列；
+     * 其中嵌套的分支同样延迟解析
+     */
+    private static class LazyVariation extends AbstractList<Node> {
+        private final String input;
+        private final int start;
+        private final int end;
+        private List<Node> nodes;
+        
+        LazyVariation(String input, int start, int end) {
+            this.input = input;
+            this.start = start;
+            this.end = end;
+        }
+        
+        boolean isParsed() {
+            return nodes != null;
+        }
+        
+        private List<Node> nodes() {
+            if (nodes == null) {
+                try {
+                    nodes = new Parser(input, start, true).parseGameTree(false);
+                } catch (SGFParseException e) {
+                    throw new IllegalStateException("Invalid SGF variation at " + start + ": " + e.getMessage(), e);
+                }
+            }
+            return nodes;
+        }
+        
+        @Override
+        public Node get(int index) {
+            return nodes().get(index);
+        }
+        
+        @Override
+        public int size() {
+            return nodes().size();
+        }
+    }
+    
+    /**
+     * 诊断信息
+     * 恢复模式下记录的解析问题及其在源文本中的位置
+     */
+    public static final class Diagnostic {
+        private final int offset;
+        private final int line;
+        private final int column;
+        private final String message;
+        
+        Diagnostic(int offset, int line, int column, String message) {
+            this.offset = offset;
+            this.line = line;
+            this.column = column;
+            this.message = message;
+        }
+        
+        /**
+         * @return 字符偏移量（从0开始）
+         */
+        public int getOffset() {
+            return offset;
+        }
+        
+        /**
+         * @return 行号（从1开始）
+         */
+        public int getLine() {
+            return line;
+        }
+        
+        /**
+         * @return 列号（从1开始）
+         */
+        public int getColumn() {
+            return column;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+        
+        @Override
+        public String toString() {
+            return line + ":" + column + ": " + message;
+        }
+    }
+    
+    /**
+     * SGF解析异常
+     */
+    public static class SGFParseException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final int position;
+        
+        public SGFParseException(String message) {
+            this(message, -1);
+        }
+        
+        /**
+         * @param message 错误信息
+         * @param position 出错的字符偏移量
+         */
+        public SGFParseException(String message, int position) {
+            super(message);
+            this.position = position;
+        }
+        
+        /**
+         * @return 出错的字符偏移量，未知时返回-1
+         */
+        public int getPosition() {
+            return position;
+        }
+    }
+    
+    /**
+     * 向后兼容方法：解析SGF字符串并加载到棋盘
+     * @param sgf SGF字符串
+     * @param board GoBoard对象
+     * @throws SGFParseException 解析异常
+     */
+    public static void parseSGF(String sgf, com.gosgf.app.model.GoBoard board) throws SGFParseException {
+        parseSGF(sgf, board, false);
+    }
+    
+    /**
+     * 解析SGF字符串并加载到棋盘
+     * @param sgf SGF字符串
+     * @param board GoBoard对象
+     * @param lazyVariations 是否延迟解析分支，首次进入分支时才解析
+     * @throws SGFParseException 解析异常
+     */
+    public static void parseSGF(String sgf, com.gosgf.app.model.GoBoard board, boolean lazyVariations) throws SGFParseException {
+        if (sgf == null || sgf.trim().isEmpty()) {
+            throw new SGFParseException("Empty SGF string");
+        }
+        
+        // 边解析边转换为移动，不构建中间的SGF树
+        new Parser(sgf.trim(), 0, lazyVariations).parseToBoard(board);
+    }
+    
+    /**
+     * 以恢复模式解析SGF字符串并加载到棋盘
+     * 除跳过格式错误的属性和节点外，坐标超出棋盘的着手也会被跳过并记录
+     * @param sgf SGF字符串
+     * @param board GoBoard对象
+     * @param diagnostics 接收诊断信息的列表
+     * @throws SGFParseException 输入中没有游戏树
+     */
+    public static void parseSGF(String sgf, com.gosgf.app.model.GoBoard board, List<Diagnostic> diagnostics) throws SGFParseException {
+        if (sgf == null || sgf.trim().isEmpty()) {
+            throw new SGFParseException("Empty SGF string");
+        }
+        
+        new Parser(sgf, 0, false, diagnostics).parseToBoard(board);
+    }
+    
+    /**
+     * 向后兼容方法：将棋盘状态保存为SGF字符串
+     * @param board GoBoard对象
+     * @param blackPlayer 黑方玩家
+     * @param whitePlayer 白方玩家
+     * @param result 结果
+     * @return SGF字符串
+     */
+    public static String saveToString(com.gosgf.app.model.GoBoard board, String blackPlayer, String whitePlayer, String result) {
+        StringWriter out = new StringWriter();
+        try {
+            new SGFWriter(out).writeBoard(board);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "";
+        }
+        return out.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.gosgf.app.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SGF点集 - 点列表属性（AB/AW/AE/TR/SQ/CR/MA）的位图表示
+ * 解析时把 FF[4] 的压缩矩形（如 AB[aa:cc]）展开为位图，
+ * 写入时重新压缩为尽量少的矩形
+ */
+public class SGFPointSet {
+
+    // SGF坐标用 a-z、A-Z 表示，最大支持52路
+    public static final int MAX_SIZE = 52;
+
+    private static final Set<String> POINT_LIST_PROPERTIES = new HashSet<>(Arrays.asList(
+            "AB", "AW", "AE", "TR", "SQ", "CR", "MA"));
+
+    private final BitSet points = new BitSet();
+
+    /**
+     * 检查属性是否为点列表属性
+     * @param ident 属性标识符
+     * @return 是否为点列表属性
+     */
+    public static boolean isPointListProperty(String ident) {
+        return POINT_LIST_PROPERTIES.contains(ident);
+    }
+
+    /**
+     * 添加单点或压缩矩形
+     * @param value 属性值，如 "aa" 或 "aa:cc"
+     * @return 值格式有效返回true
+     */
+    public boolean add(String value) {
+        if (value.length() == 2) {
+            int x = toIndex(value.charAt(0));
+            int y = toIndex(value.charAt(1));
+            if (x < 0 || y < 0) {
+                return false;
+            }
+            add(x, y);
+            return true;
+        }
+        if (value.length() == 5 && value.charAt(2) == ':') {
+            int x1 = toIndex(value.charAt(0));
+            int y1 = toIndex(value.charAt(1));
+            int x2 = toIndex(value.charAt(3));
+            int y2 = toIndex(value.charAt(4));
+            if (x1 < 0 || y1 < 0 || x2 < 0 || y2 < 0) {
+                return false;
+            }
+            // 规范要求左上:右下，这里兼容两角顺序颠倒的文件
+            for (int y = Math.min(y1, y2); y <= Math.max(y1, y2); y++) {
+                int from = y * MAX_SIZE + Math.min(x1, x2);
+                points.set(from, from + Math.abs(x2 - x1) + 1);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 添加单点
+     * @param x 列
+     * @param y 行
+     */
+    public void add(int x, int y) {
+        points.set(y * MAX_SIZE + x);
+    }
+
+    /**
+     * 检查是否包含某点
+     * @param x 列
+     * @param y 行
+     * @return 是否包含
+     */
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < MAX_SIZE && y < MAX_SIZE && points.get(y * MAX_SIZE + x);
+    }
+
+    public int size() {
+        return points.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    /**
+     * 展开为单点坐标列表，按行优先排序
+     * @return 坐标列表
+     */
+    public List<String> toPointValues() {
+        List<String> values = new ArrayList<>(points.cardinality());
+        for (int i = points.nextSetBit(0); i >= 0; i = points.nextSetBit(i + 1)) {
+            values.add(toCoord(i % MAX_SIZE, i / MAX_SIZE));
+        }
+        return values;
+    }
+
+    /**
+     * 压缩为矩形列表
+     * 按行优先取每个未覆盖的点，分别尝试先横向和先纵向扩展出最大矩形，取面积较大者；
+     * 矩形互不重叠，单点仍写为 "aa"
+     * @return 压缩后的属性值列表
+     */
+    public List<String> toCompressedValues() {
+        BitSet remaining = (BitSet) points.clone();
+        List<String> values = new ArrayList<>();
+
+        for (int i = remaining.nextSetBit(0); i >= 0; i = remaining.nextSetBit(i + 1)) {
+            int x = i % MAX_SIZE;
+            int y = i / MAX_SIZE;
+
+            // 先横向：取最长的行，再向下扩展
+            int rowWidth = runLength(remaining, x, y);
+            int rowHeight = 1;
+            while (y + rowHeight < MAX_SIZE && runLength(remaining, x, y + rowHeight) >= rowWidth) {
+                rowHeight++;
+            }
+
+            // 先纵向：取最长的列，再向右扩展
+            int columnHeight = 1;
+            while (y + columnHeight < MAX_SIZE && remaining.get(i + columnHeight * MAX_SIZE)) {
+                columnHeight++;
+            }
+            int columnWidth = 1;
+            while (x + columnWidth < MAX_SIZE && columnFilled(remaining, x + columnWidth, y, columnHeight)) {
+                columnWidth++;
+            }
+
+            int width = rowWidth;
+            int height = rowHeight;
+            if (columnWidth * columnHeight > rowWidth * rowHeight) {
+                width = columnWidth;
+                height = columnHeight;
+            }
+
+            for (int row = y; row < y + height; row++) {
+                remaining.clear(row * MAX_SIZE + x, row * MAX_SIZE + x + width);
+            }
+            if (width == 1 && height == 1) {
+                values.add(toCoord(x, y));
+            } else {
+                values.add(toCoord(x, y) + ":" + toCoord(x + width - 1, y + height - 1));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 从 (x, y) 开始向右连续的点数
+     */
+    private static int runLength(BitSet set, int x, int y) {
+        int start = y * MAX_SIZE + x;
+        int end = set.nextClearBit(start);
+        return Math.min(end, (y + 1) * MAX_SIZE) - start;
+    }
+
+    /**
+     * 检查第 x 列从 y 开始的 height 个点是否都存在
+     */
+    private static boolean columnFilled(BitSet set, int x, int y, int height) {
+        for (int row = y; row < y + height; row++) {
+            if (!set.get(row * MAX_SIZE + x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toIndex(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 26;
+        }
+        return -1;
+    }
+
+    private static String toCoord(int x, int y) {
+        return "" + toChar(x) + toChar(y);
+    }
+
+    private static char toChar(int index) {
+        return (char) (index < 26 ? 'a' + index : 'A' + index - 26);
+    }
+}
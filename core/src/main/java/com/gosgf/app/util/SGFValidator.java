@@ -0,0 +1,262 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * SGF批量校验工具 - 命令行入口，不依赖 Android，可在普通JVM上运行
+ * 遍历目录中的SGF文件，并行解析并用 GoBoard 重放主线，
+ * 报告语法错误、非法着手、无效坐标和重复对局，并统计吞吐量
+ *
+ * 用法：SGFValidator [-j 线程数] [-q] 目录或文件...
+ */
+public class SGFValidator {
+
+    private final ForkJoinPool pool;
+    private final PrintStream out;
+    private final boolean quiet;
+
+    private int files;
+    private int games;
+    private long bytes;
+    private int unreadable;
+    private int syntaxErrors;
+    private int illegalMoves;
+    private int badCoordinates;
+    private final Map<Long, List<String>> fingerprints = new LinkedHashMap<>(); // 按文件顺序保存，输出稳定
+
+    /**
+     * @param pool 执行校验的线程池
+     * @param out 报告输出
+     * @param quiet 是否只输出汇总
+     */
+    public SGFValidator(ForkJoinPool pool, PrintStream out, boolean quiet) {
+        this.pool = pool;
+        this.out = out;
+        this.quiet = quiet;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean quiet = false;
+        List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-q")) {
+                quiet = true;
+            } else {
+                roots.add(Paths.get(args[i]));
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println("用法: SGFValidator [-j 线程数] [-q] 目录或文件...");
+            System.exit(2);
+        }
+
+        // 逐手的调试和错误日志在批量校验时只会刷屏，问题由报告给出
+        Logger.getLogger("GoBoard").setLevel(Level.OFF);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        SGFValidator validator = new SGFValidator(pool, System.out, quiet);
+        boolean ok = validator.validate(roots);
+        pool.shutdown();
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * 校验目录或文件并输出报告
+     * @param roots 目录或文件
+     * @return 没有发现任何问题时返回true
+     * @throws IOException 遍历目录失败
+     */
+    public boolean validate(List<Path> roots) throws IOException {
+        long start = System.nanoTime();
+
+        List<Path> paths = new ArrayList<>();
+        for (Path root : roots) {
+            try (Stream<Path> walk = Files.walk(root)) {
+                paths.addAll(walk.filter(path -> Files.isRegularFile(path)
+                        && path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".sgf"))
+                        .sorted()
+                        .collect(Collectors.toList()));
+            }
+        }
+
+        // 每个文件一个任务，按文件顺序汇总，报告内容与线程数无关
+        List<ForkJoinTask<FileReport>> tasks = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            tasks.add(pool.submit(() -> validateFile(path)));
+        }
+        for (ForkJoinTask<FileReport> task : tasks) {
+            collect(task.join());
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int duplicates = printDuplicates();
+        out.printf(Locale.ROOT, "%d 个文件，%d 局，%.1f MB，用时 %.2f 秒（%.0f 文件/秒，%.1f MB/秒）%n",
+                files, games, bytes / 1e6, seconds, files / seconds, bytes / 1e6 / seconds);
+        out.printf(Locale.ROOT, "无法读取 %d，语法错误 %d，非法着手 %d，无效坐标 %d，重复对局 %d%n",
+                unreadable, syntaxErrors, illegalMoves, badCoordinates, duplicates);
+        return unreadable + syntaxErrors + illegalMoves + badCoordinates + duplicates == 0;
+    }
+
+    /**
+     * 校验单个文件，在线程池中执行
+     */
+    private FileReport validateFile(Path path) {
+        FileReport report = new FileReport(path.toString());
+        try {
+            byte[] data = Files.readAllBytes(path);
+            report.bytes = data.length;
+            String sgf = SGFDecoder.decode(data);
+
+            SGFParser.SGFCollection collection = SGFParser.parseCollection(sgf, false, true, pool);
+            report.games = collection.size();
+            for (int i = 0; i < collection.size(); i++) {
+                String name = collection.size() > 1 ? report.path + "#" + (i + 1) : report.path;
+                for (SGFParser.Diagnostic diagnostic : collection.getDiagnostics(i)) {
+                    report.problem(name + ":" + diagnostic);
+                    report.syntaxErrors++;
+                }
+                replay(collection.get(i), name, report);
+            }
+        } catch (IOException | SGFParser.SGFParseException | RuntimeException e) {
+            report.problem(report.path + ": 无法读取: " + e.getMessage());
+            report.unreadable++;
+        }
+        return report;
+    }
+
+    /**
+     * 用 GoBoard 按规则重放主线，检查每一手是否合法
+     */
+    private static void replay(SGFParser.SGFTree tree, String name, FileReport report) {
+        GoBoard game = new GoBoard();
+        SGFConverter.sgfTreeToBoard(tree, game);
+
+        // 从让子和摆子后的局面开始
+        GoBoard board = new GoBoard();
+        for (int x = 0; x < 19; x++) {
+            for (int y = 0; y < 19; y++) {
+                if (game.getStone(x, y) != 0) {
+                    board.setupStone(x, y, game.getStone(x, y));
+                }
+            }
+        }
+
+        // FNV-1a 指纹：让子局面和主线完全相同的对局视为重复
+        long fingerprint = 0xcbf29ce484222325L;
+        for (int x = 0; x < 19; x++) {
+            for (int y = 0; y < 19; y++) {
+                fingerprint = (fingerprint ^ game.getStone(x, y)) * 0x100000001b3L;
+            }
+        }
+
+        List<GoBoard.Move> moves = game.getMoveHistory();
+        for (int i = 0; i < moves.size(); i++) {
+            GoBoard.Move move = moves.get(i);
+            fingerprint = (fingerprint ^ ((move.color << 16) | ((move.x & 0xFF) << 8) | (move.y & 0xFF))) * 0x100000001b3L;
+
+            if (move.x == -1 && move.y == -1) {
+                board.setCurrentPlayer(move.color);
+                board.skipTurn();
+            } else if (!board.isValidCoordinate(move.x, move.y)) {
+                report.problem(name + ": 第" + (i + 1) + "手坐标无效 (" + move.x + "," + move.y + ")");
+                report.badCoordinates++;
+                return;
+            } else if (board.getStone(move.x, move.y) != 0) {
+                report.problem(name + ": 第" + (i + 1) + "手落在已有棋子的位置 " + SGFConverter.moveToCoord(move));
+                report.illegalMoves++;
+                return;
+            } else if (!board.placeStone(move.x, move.y, move.color)) {
+                report.problem(name + ": 第" + (i + 1) + "手违反打劫或禁着规则 " + SGFConverter.moveToCoord(move));
+                report.illegalMoves++;
+                return;
+            }
+        }
+
+        if (!moves.isEmpty()) {
+            report.fingerprints.add(fingerprint);
+            report.names.add(name);
+        }
+    }
+
+    /**
+     * 汇总单个文件的结果，在调用线程中按文件顺序执行
+     */
+    private void collect(FileReport report) {
+        files++;
+        games += report.games;
+        bytes += report.bytes;
+        unreadable += report.unreadable;
+        syntaxErrors += report.syntaxErrors;
+        illegalMoves += report.illegalMoves;
+        badCoordinates += report.badCoordinates;
+        for (int i = 0; i < report.fingerprints.size(); i++) {
+            fingerprints.computeIfAbsent(report.fingerprints.get(i), k -> new ArrayList<>(1)).add(report.names.get(i));
+        }
+        if (!quiet) {
+            for (String problem : report.problems) {
+                out.println(problem);
+            }
+        }
+    }
+
+    /**
+     * 输出重复对局
+     * @return 重复的对局数（每组中除第一局外的局数）
+     */
+    private int printDuplicates() {
+        int duplicates = 0;
+        for (List<String> names : fingerprints.values()) {
+            if (names.size() > 1) {
+                duplicates += names.size() - 1;
+                if (!quiet) {
+                    out.println("重复对局: " + String.join(", ", names));
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * 单个文件的校验结果
+     */
+    private static class FileReport {
+        final String path;
+        final List<String> problems = new ArrayList<>();
+        final List<Long> fingerprints = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        long bytes;
+        int games;
+        int unreadable;
+        int syntaxErrors;
+        int illegalMoves;
+        int badCoordinates;
+
+        FileReport(String path) {
+            this.path = path;
+        }
+
+        void problem(String message) {
+            problems.add(message);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SGF写入器 - 所有保存路径共用的流式输出
+ * 边遍历边写入 Writer/OutputStream，不在内存中拼接完整文本；
+ * 属性值一次遍历完成转义，可选按行宽换行；
+ * 加载后未修改的节点和未展开的分支直接复制源文本，不再重新编码
+ */
+public class SGFWriter implements Closeable, Flushable {
+
+    // GoBoard 会重新生成的根节点属性，其余属性从源文本中保留
+    private static final Set<String> ROOT_PROPERTIES = new HashSet<>(Arrays.asList(
+            "FF", "GM", "SZ", "CA", "PB", "PW", "RE", "DT", "AB", "AW"));
+    // GoBoard.Move 会重新生成的节点属性
+    private static final Set<String> MOVE_PROPERTIES = new HashSet<>(Arrays.asList(
+            "B", "W", "C", "LB", "TR", "SQ", "CR", "MA", "BM"));
+    // 组合类型的属性，第一个冒号是分隔符，如 LB[pd:A]、AR[aa:cc]
+    private static final Set<String> COMPOSE_PROPERTIES = new HashSet<>(Arrays.asList(
+            "LB", "AR", "LN"));
+
+    private final Writer out;
+    private final int lineWidth;
+    private int column = 0;
+
+    /**
+     * @param out 输出目标
+     */
+    public SGFWriter(Writer out) {
+        this(out, 0);
+    }
+
+    /**
+     * @param out 输出目标
+     * @param lineWidth 行宽，超过后在下一个节点或属性前换行；0表示不换行
+     */
+    public SGFWriter(Writer out, int lineWidth) {
+        this.out = out;
+        this.lineWidth = lineWidth;
+    }
+
+    /**
+     * 以UTF-8写入输出流
+     * @param out 输出流
+     */
+    public SGFWriter(OutputStream out) {
+        this(out, 0);
+    }
+
+    /**
+     * 以UTF-8写入输出流
+     * @param out 输出流
+     * @param lineWidth 行宽，0表示不换行
+     */
+    public SGFWriter(OutputStream out, int lineWidth) {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), lineWidth);
+    }
+
+    /**
+     * 写入SGF树
+     * 主序列作为根节点后的第一个分支，其后是根节点分支
+     * @param tree SGF树
+     * @throws IOException 写入异常
+     */
+    public void writeTree(SGFParser.SGFTree tree) throws IOException {
+        write('(');
+        writeNodeOrSource(tree.getRootNode());
+
+        List<SGFParser.Node> mainSequence = tree.getMainSequence();
+        if (mainSequence != null && !mainSequence.isEmpty()) {
+            writeSequence(mainSequence);
+        }
+
+        List<List<SGFParser.Node>> rootVariations = tree.getRootVariations();
+        if (rootVariations != null) {
+            for (List<SGFParser.Node> variation : rootVariations) {
+                writeSequence(variation);
+            }
+        }
+
+        write(')');
+    }
+
+    /**
+     * 直接从 GoBoard 写入SGF，不构建中间的SGF树
+     * 格式与 SGFConverter.boardToSgfTree() 后保存的结果一致；
+     * 从文件加载的棋局会保留根节点中 GoBoard 不处理的属性
+     * @param board GoBoard对象
+     * @throws IOException 写入异常
+     */
+    public void writeBoard(GoBoard board) throws IOException {
+        write('(');
+        SGFParser.Node root = SGFConverter.boardToRootNode(board);
+        SGFParser.SourceRange rootSource = board.getRootSource();
+        if (rootSource != null) {
+            mergeSourceProperties(root, rootSource, ROOT_PROPERTIES);
+        }
+        writeNode(root);
+
+        List<GoBoard.Move> moveHistory = board.getMoveHistory();
+        if (!moveHistory.isEmpty()) {
+            writeMoves(moveHistory);
+        }
+
+        for (int i = 0; i < board.getStartVariationsCount(); i++) {
+            GoBoard.Variation variation = board.getStartVariation(i);
+            if (variation.getSource() != null) {
+                writeSource(variation.getSource());
+            } else {
+                writeMoves(variation.getMoves());
+            }
+        }
+
+        write(')');
+    }
+
+    /**
+     * 写入带括号的节点序列及其所有分支
+     * 使用显式栈代替递归，嵌套很深的分支也不会导致栈溢出
+     */
+    private void writeSequence(List<SGFParser.Node> sequence) throws IOException {
+        Deque<Object> pending = new ArrayDeque<>();
+        pushSequence(pending, sequence);
+
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof SGFParser.Node) {
+                SGFParser.Node node = (SGFParser.Node) item;
+                writeNodeOrSource(node);
+                // 逆序压栈，保证分支按原顺序输出
+                List<List<SGFParser.Node>> variations = node.getVariations();
+                for (int i = variations.size() - 1; i >= 0; i--) {
+                    pushSequence(pending, variations.get(i));
+                }
+            } else if (item instanceof SGFParser.SourceRange) {
+                writeSource((SGFParser.SourceRange) item);
+            } else {
+                write((Character) item);
+            }
+        }
+    }
+
+    private static void pushSequence(Deque<Object> pending, List<SGFParser.Node> sequence) {
+        // 未解析的分支整段复制，避免为保存而展开
+        SGFParser.SourceRange source = SGFParser.getDeferredSource(sequence);
+        if (source != null) {
+            pending.push(source);
+            return;
+        }
+        pending.push(')');
+        for (int i = sequence.size() - 1; i >= 0; i--) {
+            pending.push(sequence.get(i));
+        }
+        pending.push('(');
+    }
+
+    /**
+     * 写入带括号的移动序列及其所有分支
+     * 使用显式栈代替递归，嵌套很深的分支也不会导致栈溢出
+     */
+    private void writeMoves(List<GoBoard.Move> moves) throws IOException {
+        Deque<Object> pending = new ArrayDeque<>();
+        pushMoves(pending, moves);
+
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof GoBoard.Move) {
+                GoBoard.Move move = (GoBoard.Move) item;
+                writeMove(move);
+                for (int i = move.variations.size() - 1; i >= 0; i--) {
+                    GoBoard.Variation variation = move.variations.get(i);
+                    if (variation.getSource() != null) {
+                        pending.push(variation.getSource());
+                    } else {
+                        pushMoves(pending, variation.getMoves());
+                    }
+                }
+            } else if (item instanceof SGFParser.SourceRange) {
+                writeSource((SGFParser.SourceRange) item);
+            } else {
+                write((Character) item);
+            }
+        }
+    }
+
+    private static void pushMoves(Deque<Object> pending, List<GoBoard.Move> moves) {
+        pending.push(')');
+        for (int i = moves.size() - 1; i >= 0; i--) {
+            pending.push(moves.get(i));
+        }
+        pending.push('(');
+    }
+
+    /**
+     * 写入一手棋的节点
+     * 未修改过的移动直接复制源文本，修改过的移动重新编码并保留其他属性
+     */
+    private void writeMove(GoBoard.Move move) throws IOException {
+        if (move.source != null && !move.modified) {
+            writeSource(move.source);
+            return;
+        }
+        SGFParser.Node node = SGFConverter.createMoveNode(move);
+        if (move.source != null) {
+            mergeSourceProperties(node, move.source, MOVE_PROPERTIES);
+        }
+        writeNode(node);
+    }
+
+    /**
+     * 写入SGF树节点，未修改的节点直接复制源文本
+     */
+    private void writeNodeOrSource(SGFParser.Node node) throws IOException {
+        if (node.getSource() != null) {
+            writeSource(node.getSource());
+        } else {
+            writeNode(node);
+        }
+    }
+
+    /**
+     * 把源文本节点中未被重新生成的属性合并到节点中
+     * @param node 重新生成的节点
+     * @param source 节点的源文本
+     * @param generated 已重新生成的属性名
+     */
+    private static void mergeSourceProperties(SGFParser.Node node, SGFParser.SourceRange source,
+                                              Set<String> generated) throws IOException {
+        SGFParser.Node original;
+        try {
+            original = source.parseNode();
+        } catch (SGFParser.SGFParseException e) {
+            // 源文本在加载时已解析成功，这里不会发生
+            throw new IOException(e);
+        }
+        for (String ident : original.getPropertyIdentifiers()) {
+            if (generated.contains(ident)) {
+                continue;
+            }
+            for (String value : original.getPropertyValues(ident)) {
+                node.addProperty(ident, value);
+            }
+        }
+    }
+
+    /**
+     * 原样复制源文本片段
+     */
+    private void writeSource(SGFParser.SourceRange source) throws IOException {
+        wrapIfNeeded();
+        String text = source.getText();
+        int start = source.getStart();
+        int end = source.getEnd();
+        out.write(text, start, end - start);
+        int lastLine = text.lastIndexOf('\n', end - 1);
+        column = lastLine >= start ? end - lastLine - 1 : column + end - start;
+    }
+
+    /**
+     * 写入单个节点的属性（不含分支）
+     */
+    private void writeNode(SGFParser.Node node) throws IOException {
+        wrapIfNeeded();
+        write(';');
+        for (String ident : node.getPropertyIdentifiers()) {
+            List<String> values = node.getCompressedPropertyValues(ident);
+            if (values.isEmpty()) {
+                continue;
+            }
+            wrapIfNeeded();
+            out.write(ident);
+            column += ident.length();
+            // 压缩矩形 "aa:cc" 和组合值中的冒号是分隔符，不能转义
+            int literalColons = SGFPointSet.isPointListProperty(ident) ? Integer.MAX_VALUE
+                    : COMPOSE_PROPERTIES.contains(ident) ? 1 : 0;
+            for (String value : values) {
+                write('[');
+                writeEscaped(value, literalColons);
+                write(']');
+            }
+        }
+    }
+
+    /**
+     * 一次遍历转义属性值，未转义的片段整段写出
+     * @param value 属性值
+     * @param literalColons 前几个冒号是分隔符，原样写出，之后的冒号转义
+     */
+    private void writeEscaped(String value, int literalColons) throws IOException {
+        if (value == null) {
+            return;
+        }
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == ':' && literalColons > 0) {
+                literalColons--;
+            } else if (c == '\\' || c == '[' || c == ']' || c == ':') {
+                out.write(value, start, i - start);
+                out.write('\\');
+                start = i;
+                column++;
+            } else if (c == '\n') {
+                column = -1;
+            }
+            column++;
+        }
+        out.write(value, start, length - start);
+    }
+
+    private void wrapIfNeeded() throws IOException {
+        if (lineWidth > 0 && column >= lineWidth) {
+            out.write('\n');
+            column = 0;
+        }
+    }
+
+    private void write(char c) throws IOException {
+        out.write(c);
+        column++;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,88 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.IOException;
+
+/**
+ * UGF棋谱导入器 - 日本平台（Panda 等）导出的格式
+ * 分为 [Header] 和 [Data] 等段，着手为 "PD,B1,1,0"：
+ * 列从左边 'A' 开始，行从下边 'A' 开始，与 SGF 的行方向相反
+ */
+public class UGFImporter extends GameRecordImporter {
+
+    private static final int SECTION_OTHER = 0;
+    private static final int SECTION_HEADER = 1;
+    private static final int SECTION_DATA = 2;
+
+    @Override
+    protected void read(RecordTokenizer tokens, GoBoard board) throws IOException {
+        int section = SECTION_OTHER;
+        int size = 19;
+        while (tokens.nextLine()) {
+            if (tokens.charAt(0) == '[') {
+                section = tokens.startsWith("[Header]") ? SECTION_HEADER
+                        : tokens.startsWith("[Data]") ? SECTION_DATA : SECTION_OTHER;
+            } else if (section == SECTION_DATA) {
+                if (tokens.length() < 4) {
+                    continue;
+                }
+                int color = tokens.charAt(3) == 'W' ? 2 : 1;
+                int x = tokens.charAt(0) - 'A';
+                int y = size - 1 - (tokens.charAt(1) - 'A');
+                addMove(board, x, y, color);
+            } else if (section == SECTION_HEADER) {
+                size = readHeader(tokens, board, size);
+            }
+        }
+    }
+
+    /**
+     * 读取文件头的一行
+     * @return 棋盘大小
+     */
+    private static int readHeader(RecordTokenizer tokens, GoBoard board, int size) {
+        if (tokens.startsWith("PlayerB=")) {
+            board.setBlackPlayer(tokens.field(0, ',').substring(8).trim());
+        } else if (tokens.startsWith("PlayerW=")) {
+            board.setWhitePlayer(tokens.field(0, ',').substring(8).trim());
+        } else if (tokens.startsWith("Size=")) {
+            return parseAfterKey(tokens, 5, size);
+        } else if (tokens.startsWith("Hdcp=")) {
+            placeHandicap(board, parseAfterKey(tokens, 5, 0));
+        } else if (tokens.startsWith("Date=")) {
+            board.setDate(normalizeDate(tokens.field(0, ',').substring(5)));
+        } else if (tokens.startsWith("Winner=")) {
+            // Winner=B,3.5 或 Winner=W,C（中盘胜）
+            String winner = tokens.field(0, ',').substring(7).trim();
+            String detail = tokens.field(1, ',');
+            if (winner.equals("B") || winner.equals("W")) {
+                if (detail == null || detail.isEmpty()) {
+                    board.setResult(winner + "+");
+                } else if (Character.isDigit(detail.charAt(0))) {
+                    board.setResult(winner + "+" + detail);
+                } else {
+                    board.setResult(winner + "+R");
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 解析 "Key=数字,..." 中等号后的整数
+     */
+    private static int parseAfterKey(RecordTokenizer tokens, int start, int defaultValue) {
+        int value = 0;
+        boolean found = false;
+        for (int i = start; i < tokens.length(); i++) {
+            char c = tokens.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            found = true;
+        }
+        return found ? value : defaultValue;
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class GoBoardTest {
@@ -48,4 +49,32 @@ public class GoBoardTest {
         result = board.selectVariation(0);
         assertTrue(result);
     }
+
+    @Test
+    public void testToSGFStringDeepVariations() {
+        // 测试十万层嵌套分支导出 SGF，不应栈溢出
+        int levels = 100000;
+        GoBoard.Move first = new GoBoard.Move(0, 0, GoBoard.BLACK);
+        GoBoard.Move move = first;
+        for (int i = 0; i < levels; i++) {
+            GoBoard.Move next = new GoBoard.Move(1, 1, i % 2 == 0 ? GoBoard.WHITE : GoBoard.BLACK);
+            List<GoBoard.Move> branch = new ArrayList<>();
+            branch.add(next);
+            move.addVariation(branch, "分支 1");
+            move = next;
+        }
+        board.addMoveToHistory(first);
+        board.setCurrentMoveNumber(0);
+
+        String sgf = board.toSGFString();
+        int open = 0;
+        for (int i = 0; i < sgf.length(); i++) {
+            if (sgf.charAt(i) == '(') {
+                open++;
+            }
+        }
+        // 根、主序列和每一层分支各一个括号
+        assertEquals(levels + 2, open);
+        assertTrue(sgf.endsWith(")"));
+    }
 }
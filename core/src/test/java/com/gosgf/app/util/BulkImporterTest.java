@@ -0,0 +1,132 @@
+package com.gosgf.app.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class BulkImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testImportInBatches() throws Exception {
+        // 测试按文件顺序分批写入，合集中的每局都导入，坏文件跳过并报告
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(11);
+        generator.setMoves(30);
+        List<File> files = new ArrayList<>();
+        for (Path path : generator.writeFiles(20, folder.getRoot().toPath().resolve("games"))) {
+            files.add(path.toFile());
+        }
+        File collection = folder.newFile("collection.sgf");
+        try (OutputStream out = new FileOutputStream(collection)) {
+            generator.writeCollection(3, out);
+        }
+        files.add(10, collection);
+        File broken = folder.newFile("broken.sgf");
+        Files.write(broken.toPath(), "not an sgf".getBytes(StandardCharsets.UTF_8));
+        files.add(broken);
+
+        List<Integer> batchSizes = new ArrayList<>();
+        List<GameSummary> imported = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        BulkImporter importer = new BulkImporter(new ForkJoinPool(4), games -> {
+            batchSizes.add(games.size());
+            imported.addAll(games);
+        });
+        importer.setBatchSize(8);
+        importer.setProgressListener(new BulkImporter.ProgressListener() {
+            @Override
+            public void onProgress(BulkImporter.Progress progress) {
+            }
+
+            @Override
+            public void onFailure(String name, Exception e) {
+                failures.add(name);
+            }
+        });
+        BulkImporter.Progress progress = importer.run(BulkImporter.fileSources(files));
+
+        assertEquals(22, progress.getFiles());
+        assertEquals(1, progress.getFailedFiles());
+        assertEquals(23, progress.getGames());
+        assertEquals(23, imported.size());
+        assertEquals(Arrays.asList(8, 8, 7), batchSizes);
+        assertEquals(Collections.singletonList(broken.getPath()), failures);
+
+        // 第11个文件是合集，合集之后接着第11个单局文件
+        assertArrayEquals(GameSummary.of(generator.generate(0)).getMoveData(), imported.get(0).getMoveData());
+        assertArrayEquals(GameSummary.of(generator.generate(1)).getMoveData(), imported.get(11).getMoveData());
+        assertArrayEquals(GameSummary.of(generator.generate(10)).getMoveData(), imported.get(13).getMoveData());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        // 测试取消后不再写入新的批次，已写入的保留
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(12);
+        generator.setMoves(10);
+        List<File> files = new ArrayList<>();
+        for (Path path : generator.writeFiles(200, folder.getRoot().toPath())) {
+            files.add(path.toFile());
+        }
+
+        List<Integer> batchSizes = new ArrayList<>();
+        BulkImporter[] importer = new BulkImporter[1];
+        importer[0] = new BulkImporter(new ForkJoinPool(2), games -> {
+            batchSizes.add(games.size());
+            importer[0].cancel();
+        });
+        importer[0].setBatchSize(10);
+        BulkImporter.Progress progress = importer[0].run(BulkImporter.fileSources(files));
+
+        assertTrue(importer[0].isCancelled());
+        assertEquals(10, progress.getGames());
+        assertEquals(10, progress.getFiles());
+        assertEquals(1, batchSizes.size());
+    }
+
+    @Test
+    public void testClosesSinkOnFailure() throws Exception {
+        // 测试写入失败时导入中止，Sink 仍被关闭一次
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(13);
+        generator.setMoves(10);
+        List<File> files = new ArrayList<>();
+        for (Path path : generator.writeFiles(5, folder.getRoot().toPath())) {
+            files.add(path.toFile());
+        }
+
+        int[] closed = new int[1];
+        BulkImporter importer = new BulkImporter(new ForkJoinPool(2), new BulkImporter.Sink() {
+            @Override
+            public void write(List<GameSummary> games) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+                closed[0]++;
+            }
+        });
+        try {
+            importer.run(BulkImporter.fileSources(files));
+            fail("应抛出写入异常");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        assertEquals(1, closed[0]);
+    }
+}
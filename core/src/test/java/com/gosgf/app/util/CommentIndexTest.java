@@ -0,0 +1,124 @@
+package com.gosgf.app.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CommentIndexTest {
+
+    @Test
+    public void testExtractPaths() throws Exception {
+        // 测试主线和嵌套分支中注释的路径和手数
+        SGFParser.SGFTree tree = SGFParser.parse("(;FF[4]C[开局前];B[pd]C[ladder here];W[dd]"
+                + "(;B[qp]C[征子不利])(;B[dp];W[]C[Ko fight](;B[cc])(;B[dc]C[]))(;B[pp]C[  ]))");
+        List<CommentIndex.Entry> entries = CommentIndex.extract(tree);
+        assertEquals(4, entries.size());
+        assertEntry(entries.get(0), "0", 0, "开局前");
+        assertEntry(entries.get(1), "1", 1, "ladder here");
+        assertEntry(entries.get(2), "2.0.0", 3, "征子不利");
+        assertEntry(entries.get(3), "2.1.1", 4, "Ko fight");
+
+        GameSummary summary = GameSummary.of(tree);
+        assertEquals(4, summary.getComments().size());
+    }
+
+    @Test
+    public void testDeeplyNestedComments() throws Exception {
+        // 测试每一手都嵌套在上一手分支里时不会栈溢出，延迟解析时分支逐层解析
+        List<CommentIndex.Entry> entries = CommentIndex.extract(
+                SGFParser.parse(SGFParserTest.buildDeepSgf(100000).replace("))", "C[leaf]))")));
+        assertEquals(1, entries.size());
+        assertEquals(100001, entries.get(0).getMoveNumber());
+        assertEquals("leaf", entries.get(0).getText());
+        assertTrue(entries.get(0).getPath().startsWith("1.0.0.0.0"));
+
+        GameSummary summary = GameSummary.of(SGFParser.parse(buildDeepCommentedSgf(5000), true));
+        assertEquals(5000, summary.getComments().size());
+    }
+
+    @Test
+    public void testSkipsDeferredVariationsWithoutComments() throws Exception {
+        // 测试没有注释的延迟分支不会为了提取注释而解析
+        SGFParser.SGFTree tree = SGFParser.parse("(;FF[4]PC[Tokyo];B[pd](;W[dd]CR[dd];B[pp])(;W[dp]C[点三三]))", true);
+        List<List<SGFParser.Node>> variations = tree.getMainSequence().get(0).getVariations();
+        List<CommentIndex.Entry> entries = CommentIndex.extract(tree);
+        assertTrue(SGFParser.isDeferred(variations.get(0)));
+        assertFalse(SGFParser.isDeferred(variations.get(1)));
+        assertEquals(1, entries.size());
+        assertEntry(entries.get(0), "1.1.0", 2, "点三三");
+    }
+
+    @Test
+    public void testTokenize() {
+        // 测试中文按相邻两字切分，段末单字单独成词，外文转小写
+        assertEquals("征子 子不 不利 利 ladder 3 劫", CommentIndex.tokenize("征子不利，Ladder! 3 劫"));
+        assertEquals("", CommentIndex.tokenize("  ?! "));
+    }
+
+    @Test
+    public void testMatchQuery() {
+        assertEquals("ladder*", CommentIndex.toMatchQuery("Ladder"));
+        assertEquals("征子", CommentIndex.toMatchQuery("征子"));
+        assertEquals("\"征子 子不 不利\"", CommentIndex.toMatchQuery("征子不利"));
+        assertEquals("劫*", CommentIndex.toMatchQuery("劫"));
+        assertEquals("打劫 ko*", CommentIndex.toMatchQuery("打劫 ko"));
+        assertNull(CommentIndex.toMatchQuery(" !? "));
+    }
+
+    @Test
+    public void testQueriesMatchIndexedText() {
+        // 按 FTS 的规则核对查询能命中索引的词：单字在段首、段中、段末都能找到
+        String indexed = CommentIndex.tokenize("这里引征失败，黑棋只能打劫。Ladders work");
+        for (String query : Arrays.asList("征", "败", "引征", "引征失败", "打劫", "劫", "ladder", "征失 work")) {
+            assertTrue(query, matches(indexed, CommentIndex.toMatchQuery(query)));
+        }
+        for (String query : Arrays.asList("征败", "白棋", "ko", "失败 ko")) {
+            assertFalse(query, matches(indexed, CommentIndex.toMatchQuery(query)));
+        }
+    }
+
+    /**
+     * 构造每一手都嵌套在上一手分支里、每一手都有注释的SGF
+     */
+    private static String buildDeepCommentedSgf(int levels) {
+        StringBuilder sb = new StringBuilder("(;FF[4]GM[1]SZ[19];B[aa]");
+        for (int i = 0; i < levels; i++) {
+            sb.append(i % 2 == 0 ? "(;W[bb]C[c" : "(;B[cc]C[c").append(i).append(']');
+        }
+        for (int i = 0; i < levels; i++) {
+            sb.append(')');
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    private static void assertEntry(CommentIndex.Entry entry, String path, int moveNumber, String text) {
+        assertEquals(path, entry.getPath());
+        assertEquals(moveNumber, entry.getMoveNumber());
+        assertEquals(text, entry.getText());
+    }
+
+    /**
+     * 简化的 FTS 匹配：子句之间为与，带引号为连续短语，带 * 为前缀
+     */
+    private static boolean matches(String indexed, String query) {
+        List<String> tokens = Arrays.asList(indexed.split(" "));
+        for (String clause : query.split(" (?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)")) {
+            boolean found;
+            if (clause.startsWith("\"")) {
+                found = (" " + indexed + " ").contains(" " + clause.substring(1, clause.length() - 1) + " ");
+            } else if (clause.endsWith("*")) {
+                String prefix = clause.substring(0, clause.length() - 1);
+                found = tokens.stream().anyMatch(token -> token.startsWith(prefix));
+            } else {
+                found = tokens.contains(clause);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,279 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class EditJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRestoreEdits() throws Exception {
+        // 测试落子、注释、标记和分支操作都能从日志恢复，包括当前所在的分支和手数
+        File directory = new File(folder.getRoot(), "autosave");
+        GoBoard board = new GoBoard();
+        EditJournal journal = new EditJournal(directory);
+        assertFalse(journal.open(board));
+
+        play(journal, board, 3, 3);
+        play(journal, board, 15, 15);
+        comment(journal, board, "小目 [定式]\n下一手");
+        play(journal, board, 15, 3);
+        board.setMark(2);
+        journal.logMark(2);
+        board.setCurrentMoveNumber(1);
+        journal.logGoTo(1);
+        // 在中间落子，原来的后续成为分支
+        play(journal, board, 2, 15);
+        board.setMark(1);
+        journal.logMark(1);
+        board.previousMove();
+        journal.logGoTo(board.getCurrentMoveNumber());
+        assertTrue(board.selectVariation(0));
+        journal.logSelectVariation(0);
+        board.nextMove();
+        journal.logNextMove();
+        play(journal, board, -1, -1);
+        journal.close();
+
+        GoBoard restored = new GoBoard();
+        EditJournal reopened = new EditJournal(directory);
+        assertTrue(reopened.open(restored));
+        assertState(board, restored);
+        restored.setCurrentMoveNumber(1);
+        assertEquals("小目 [定式]\n下一手", restored.getComment());
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        // 测试写了一半的记录被忽略并截掉，之后可以继续追加
+        File directory = new File(folder.getRoot(), "autosave");
+        GoBoard board = new GoBoard();
+        EditJournal journal = new EditJournal(directory);
+        journal.open(board);
+        play(journal, board, 3, 3);
+        play(journal, board, 16, 16);
+        journal.close();
+
+        File log = journal.journalFile(journal.getGeneration());
+        long validLength = log.length();
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write(new byte[] {0, 0, 0, 4, 1, 9});
+        }
+
+        GoBoard restored = new GoBoard();
+        journal = new EditJournal(directory);
+        assertTrue(journal.open(restored));
+        assertState(board, restored);
+        assertEquals(validLength, log.length());
+
+        play(journal, restored, 9, 9);
+        journal.close();
+        GoBoard again = new GoBoard();
+        journal = new EditJournal(directory);
+        assertTrue(journal.open(again));
+        assertState(restored, again);
+        journal.close();
+    }
+
+    @Test
+    public void testCorruptRecord() throws Exception {
+        // 测试校验失败的记录及其之后的记录都不重放
+        File directory = new File(folder.getRoot(), "autosave");
+        GoBoard board = new GoBoard();
+        EditJournal journal = new EditJournal(directory);
+        journal.open(board);
+        play(journal, board, 3, 3);
+        journal.close();
+        File log = journal.journalFile(journal.getGeneration());
+        long validLength = log.length();
+
+        journal = new EditJournal(directory);
+        journal.open(new GoBoard());
+        journal.logMove(16, 16, GoBoard.WHITE);
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            // 改动最后一条记录的坐标
+            file.seek(validLength + 5);
+            file.write(17);
+        }
+
+        GoBoard restored = new GoBoard();
+        journal = new EditJournal(directory);
+        assertTrue(journal.open(restored));
+        assertState(board, restored);
+        assertEquals(validLength, log.length());
+        journal.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        // 测试压缩后只保留新一代的快照和日志，恢复结果不变
+        File directory = new File(folder.getRoot(), "autosave");
+        GoBoard board = new GoBoard();
+        EditJournal journal = new EditJournal(directory);
+        journal.setCompactThreshold(200);
+        journal.open(board);
+        long first = journal.getGeneration();
+
+        int[][] moves = {{3, 3}, {15, 15}, {15, 3}, {3, 15}, {9, 9}, {2, 5}, {16, 13}, {13, 16}};
+        for (int[] move : moves) {
+            play(journal, board, move[0], move[1]);
+            comment(journal, board, "第" + board.getMoveHistory().size() + "手");
+        }
+        assertTrue(journal.needsCompaction());
+        board.setCurrentMoveNumber(3);
+        journal.logGoTo(3);
+        journal.compact(board);
+        assertFalse(journal.needsCompaction());
+        assertEquals(first + 1, journal.getGeneration());
+        assertFalse(journal.snapshotFile(first).exists());
+        assertFalse(journal.journalFile(first).exists());
+
+        // 压缩后在中间落子，产生分支
+        play(journal, board, 10, 10);
+        journal.close();
+        assertEquals(2, directory.list().length);
+
+        GoBoard restored = new GoBoard();
+        journal = new EditJournal(directory);
+        assertTrue(journal.open(restored));
+        assertState(board, restored);
+        journal.close();
+    }
+
+    @Test
+    public void testAsyncCompaction() throws Exception {
+        // 测试后台写快照期间追加的记录复制到新一代的日志
+        File directory = new File(folder.getRoot(), "autosave");
+        GoBoard board = new GoBoard();
+        EditJournal journal = new EditJournal(directory);
+        journal.open(board);
+        long first = journal.getGeneration();
+        play(journal, board, 3, 3);
+        play(journal, board, 15, 15);
+
+        List<Runnable> tasks = new ArrayList<>();
+        CompletableFuture<Void> done = journal.compactAsync(board, tasks::add);
+        assertFalse(journal.needsCompaction());
+        play(journal, board, 15, 3);
+        comment(journal, board, "快照之后");
+        board.setCurrentMoveNumber(1);
+        journal.logGoTo(1);
+
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        done.get();
+        assertEquals(first + 1, journal.getGeneration());
+        assertFalse(journal.journalFile(first).exists());
+
+        play(journal, board, 2, 15);
+        journal.close();
+        assertEquals(2, directory.list().length);
+
+        GoBoard restored = new GoBoard();
+        journal = new EditJournal(directory);
+        assertTrue(journal.open(restored));
+        assertState(board, restored);
+        journal.close();
+    }
+
+    @Test
+    public void testSupersededAsyncCompaction() throws Exception {
+        // 测试被后来的压缩或 close() 取代的压缩不生效，也不留下临时文件
+        File directory = new File(folder.getRoot(), "autosave");
+        GoBoard board = new GoBoard();
+        EditJournal journal = new EditJournal(directory);
+        journal.open(board);
+        long first = journal.getGeneration();
+        play(journal, board, 3, 3);
+
+        List<Runnable> tasks = new ArrayList<>();
+        journal.compactAsync(board, tasks::add);
+        play(journal, board, 15, 15);
+        journal.compactAsync(board, tasks::add);
+        play(journal, board, 15, 3);
+        tasks.get(1).run();
+        tasks.get(0).run();
+        assertEquals(first + 2, journal.getGeneration());
+
+        journal.compactAsync(board, tasks::add);
+        play(journal, board, 3, 15);
+        journal.close();
+        tasks.get(2).run();
+        assertEquals(first + 2, journal.getGeneration());
+        assertEquals(2, directory.list().length);
+
+        GoBoard restored = new GoBoard();
+        journal = new EditJournal(directory);
+        assertTrue(journal.open(restored));
+        assertState(board, restored);
+        journal.close();
+    }
+
+    @Test
+    public void testUnfinishedCompaction() throws Exception {
+        // 测试快照没有改名完成时仍使用上一代
+        File directory = new File(folder.getRoot(), "autosave");
+        GoBoard board = new GoBoard();
+        EditJournal journal = new EditJournal(directory);
+        journal.open(board);
+        play(journal, board, 3, 3);
+        journal.close();
+        long generation = journal.getGeneration();
+        assertTrue(new File(directory, "snapshot-" + (generation + 1) + ".sgf.tmp").createNewFile());
+        assertTrue(journal.journalFile(generation + 1).createNewFile());
+
+        GoBoard restored = new GoBoard();
+        journal = new EditJournal(directory);
+        assertTrue(journal.open(restored));
+        assertEquals(generation, journal.getGeneration());
+        assertState(board, restored);
+        assertEquals(2, directory.list().length);
+        journal.close();
+    }
+
+    private static void play(EditJournal journal, GoBoard board, int x, int y) throws IOException {
+        int color = board.getCurrentPlayer();
+        assertTrue(board.placeStone(x, y));
+        journal.logMove(x, y, color);
+    }
+
+    private static void comment(EditJournal journal, GoBoard board, String text) throws IOException {
+        board.setComment(text);
+        journal.logComment(text);
+    }
+
+    private static void assertState(GoBoard expected, GoBoard actual) throws IOException {
+        assertEquals(sgf(expected), sgf(actual));
+        assertEquals(expected.getCurrentMoveNumber(), actual.getCurrentMoveNumber());
+        assertEquals(expected.getCurrentPlayer(), actual.getCurrentPlayer());
+        for (int x = 0; x < 19; x++) {
+            for (int y = 0; y < 19; y++) {
+                assertEquals(expected.getStone(x, y), actual.getStone(x, y));
+            }
+        }
+    }
+
+    private static String sgf(GoBoard board) throws IOException {
+        StringWriter out = new StringWriter();
+        SGFWriter writer = new SGFWriter(out);
+        writer.writeBoard(board);
+        writer.flush();
+        return out.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GameFingerprintTest {
+
+    @Test
+    public void testIgnoresHeadersAndOrientation() throws Exception {
+        // 测试对局信息、注释不同或整盘旋转后指纹相同
+        GameSummary game = GameSummary.of(SGFParser.parse(
+                "(;SZ[19]PB[甲]PW[乙]RE[B+R];B[pd]C[好棋];W[dp];B[qq];W[])"));
+        GameSummary renamed = GameSummary.of(SGFParser.parse(
+                "(;SZ[19]PB[Jia]PW[Yi]DT[2001-01-01];B[pd];W[dp];B[qq];W[])"));
+        // 左右镜像
+        GameSummary mirrored = GameSummary.of(SGFParser.parse("(;SZ[19];B[dd];W[pp];B[cq];W[])"));
+        assertEquals(game.getFingerprint(), renamed.getFingerprint());
+        assertEquals(game.getFingerprint(), mirrored.getFingerprint());
+
+        // 着手顺序、颜色、棋盘大小和摆子都会改变指纹
+        assertNotEquals(game.getFingerprint(), GameSummary.of(SGFParser.parse(
+                "(;SZ[19];B[qq];W[dp];B[pd];W[])")).getFingerprint());
+        assertNotEquals(game.getFingerprint(), GameSummary.of(SGFParser.parse(
+                "(;SZ[19];W[pd];B[dp];W[qq];B[])")).getFingerprint());
+        assertNotEquals(game.getFingerprint(), GameSummary.of(SGFParser.parse(
+                "(;SZ[13];B[pd];W[dp];B[qq];W[])")).getFingerprint());
+        assertNotEquals(game.getFingerprint(), GameSummary.of(SGFParser.parse(
+                "(;SZ[19]AB[jj];B[pd];W[dp];B[qq];W[])")).getFingerprint());
+    }
+
+    @Test
+    public void testPrefixNearDuplicate() throws Exception {
+        // 测试截断的棋谱与完整棋谱共享前缀指纹，并能确认前缀关系
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(11);
+        generator.setMoves(200);
+        GameSummary full = GameSummary.of(generator.generate(0));
+        GameSummary truncated = truncate(full, 150);
+        GameSummary other = GameSummary.of(generator.generate(1));
+
+        assertEquals(full.getPrefixFingerprint(), truncated.getPrefixFingerprint());
+        assertNotEquals(full.getFingerprint(), truncated.getFingerprint());
+        assertNotEquals(full.getPrefixFingerprint(), other.getPrefixFingerprint());
+        assertTrue(truncated.isPrefixOf(full));
+        assertTrue(full.isPrefixOf(full));
+        assertFalse(full.isPrefixOf(truncated));
+        assertFalse(truncated.isPrefixOf(other));
+
+        // 手数不足前缀长度时前缀指纹就是完整指纹
+        GameSummary opening = truncate(full, 20);
+        assertEquals(opening.getFingerprint(), opening.getPrefixFingerprint());
+        assertTrue(opening.isPrefixOf(full));
+
+        GameSummary invalid = new GameSummary();
+        invalid.setBoardSize(60);
+        assertNull(invalid.getFingerprint());
+        assertNull(invalid.getPrefixKeys());
+        assertFalse(invalid.isPrefixOf(full));
+    }
+
+    @Test
+    public void testPrefixKeyLookup() throws Exception {
+        // 测试按检查点查找：不足 PREFIX_LENGTH 手的截断棋谱先导入或后导入都能找到完整的棋谱
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(11);
+        generator.setMoves(200);
+        GameSummary full = GameSummary.of(generator.generate(0));
+        GameSummary other = GameSummary.of(generator.generate(1));
+        assertEquals(GameFingerprint.CHECKPOINTS.size(), full.getPrefixKeys().length);
+
+        for (int length : new int[] {150, 60, 45, 20}) {
+            GameSummary truncated = truncate(full, length);
+            assertSame("length " + length, full, findNearDuplicate(Arrays.asList(other, full), truncated));
+            assertSame("length " + length, truncated, findNearDuplicate(Arrays.asList(other, truncated), full));
+        }
+        // 短于第一个检查点的棋谱没有前缀指纹，只能找到完全相同的对局
+        GameSummary opening = truncate(full, GameFingerprint.CHECKPOINTS.get(0) - 1);
+        assertEquals(0, opening.getPrefixKeys().length);
+        assertNull(findNearDuplicate(Arrays.asList(other, opening), full));
+        assertNull(findNearDuplicate(Collections.singletonList(other), full));
+    }
+
+    @Test
+    public void testPrefixLengthsInOnePass() throws Exception {
+        // 测试一次计算多个长度与逐个计算的结果相同，超过手数的长度取全部着手
+        GameSummary game = GameSummary.of(SGFParser.parse("(;SZ[19]AB[jj];B[pd];W[dp];B[qq];W[])"));
+        List<GoBoard.Move> setup = GameSummary.decodeMoves(game.getSetupData());
+        List<GoBoard.Move> moves = GameSummary.decodeMoves(game.getMoveData());
+        int[] lengths = {0, 2, 2, 4, 9};
+        long[] values = GameFingerprint.of(19, setup, moves, lengths);
+        for (int i = 0; i < lengths.length; i++) {
+            assertEquals(GameFingerprint.of(19, setup, moves, lengths[i]), values[i]);
+        }
+        assertEquals(game.getFingerprint().longValue(), values[4]);
+    }
+
+    private static GameSummary truncate(GameSummary game, int length) {
+        GameSummary truncated = new GameSummary();
+        truncated.setMoves(GameSummary.decodeMoves(game.getMoveData()).subList(0, length));
+        return truncated;
+    }
+
+    /**
+     * 与 DatabaseHelper 中的查找相同：已有对局按 (检查点, 指纹) 建索引，
+     * 新对局从最长的检查点开始逐个查找，再确认一局是另一局的开头部分
+     */
+    private static GameSummary findNearDuplicate(List<GameSummary> stored, GameSummary game) {
+        Map<String, List<GameSummary>> index = new HashMap<>();
+        for (GameSummary candidate : stored) {
+            long[] keys = candidate.getPrefixKeys();
+            for (int i = 0; i < keys.length; i++) {
+                index.computeIfAbsent(i + ":" + keys[i], k -> new ArrayList<>()).add(candidate);
+            }
+        }
+        long[] keys = game.getPrefixKeys();
+        for (int i = keys.length - 1; i >= 0; i--) {
+            for (GameSummary candidate : index.getOrDefault(i + ":" + keys[i], Collections.emptyList())) {
+                if (game.isPrefixOf(candidate) || candidate.isPrefixOf(game)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,117 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 棋谱导入吞吐量基准 - 生成同样着手的 SGF/GIB/NGF/UGF 棋谱，比较各格式的导入速度
+ * 不是单元测试，直接运行 main：GameRecordBenchmark [局数] [每局手数]
+ */
+public class GameRecordBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int movesPerGame = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+
+        Random random = new Random(36);
+        String[] sgf = new String[games];
+        String[] gib = new String[games];
+        String[] ngf = new String[games];
+        String[] ugf = new String[games];
+        for (int i = 0; i < games; i++) {
+            int[][] moves = randomMoves(random, movesPerGame);
+            sgf[i] = toSGF(moves);
+            gib[i] = toGIB(moves);
+            ngf[i] = toNGF(moves);
+            ugf[i] = toUGF(moves);
+        }
+
+        run("SGF", sgf, null);
+        run("GIB", gib, new GIBImporter());
+        run("NGF", ngf, new NGFImporter());
+        run("UGF", ugf, new UGFImporter());
+    }
+
+    /**
+     * 预热一轮后计时，输出最好一轮的吞吐量
+     */
+    private static void run(String name, String[] records, GameRecordImporter importer) throws Exception {
+        long chars = 0;
+        for (String record : records) {
+            chars += record.length();
+        }
+        double best = Double.MAX_VALUE;
+        int moves = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            moves = 0;
+            long start = System.nanoTime();
+            for (String record : records) {
+                GoBoard board = new GoBoard();
+                if (importer == null) {
+                    SGFParser.parseSGF(record, board);
+                } else {
+                    importer.read(record, board);
+                }
+                moves += board.getMoveHistory().size();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (round > 0) {
+                best = Math.min(best, seconds);
+            }
+        }
+        System.out.printf(Locale.ROOT, "%s: %d 局，%d 手，%.1f MB，%.0f 局/秒，%.1f MB/秒%n",
+                name, records.length, moves, chars / 1e6, records.length / best, chars / 1e6 / best);
+    }
+
+    private static int[][] randomMoves(Random random, int count) {
+        int[][] moves = new int[count][];
+        for (int i = 0; i < count; i++) {
+            moves[i] = new int[] {random.nextInt(19), random.nextInt(19), i % 2 == 0 ? 1 : 2};
+        }
+        return moves;
+    }
+
+    private static String toSGF(int[][] moves) {
+        StringBuilder sb = new StringBuilder("(;FF[4]GM[1]SZ[19]PB[Black]PW[White]RE[B+R]");
+        for (int[] move : moves) {
+            sb.append(';').append(move[2] == 1 ? 'B' : 'W').append('[')
+                    .append((char) ('a' + move[0])).append((char) ('a' + move[1])).append(']');
+        }
+        return sb.append(')').toString();
+    }
+
+    private static String toGIB(int[][] moves) {
+        StringBuilder sb = new StringBuilder("\\HS\r\n\\[GAMEBLACKNAME=Black (5D)\\]\r\n\\[GAMEWHITENAME=White (5D)\\]\r\n")
+                .append("\\[GAMEINFOMAIN=GBKIND:3,GRLT:3,ZIPSU:0\\]\r\n\\HE\r\n\\GS\r\n2 1 0\r\nINI 0 1 0 &4\r\n");
+        for (int i = 0; i < moves.length; i++) {
+            sb.append("STO 0 ").append(i + 2).append(' ').append(moves[i][2]).append(' ')
+                    .append(moves[i][0]).append(' ').append(moves[i][1]).append("\r\n");
+        }
+        return sb.append("\\GE\r\n").toString();
+    }
+
+    private static String toNGF(int[][] moves) {
+        StringBuilder sb = new StringBuilder("Game\n19\nWhite 5D\nBlack 5D\nwww.example.com\n0\n0\n7\n20240101\n5\nBlack wins by resignation\n")
+                .append(moves.length).append('\n');
+        for (int i = 0; i < moves.length; i++) {
+            char x = (char) ('B' + moves[i][0]);
+            char y = (char) ('B' + moves[i][1]);
+            sb.append("PM").append((char) ('A' + i / 26 % 26)).append((char) ('A' + i % 26))
+                    .append(moves[i][2] == 1 ? 'B' : 'W').append(x).append(y).append(x).append(y).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String toUGF(int[][] moves) {
+        StringBuilder sb = new StringBuilder("[Header]\nPlayerB=Black,5d,,\nPlayerW=White,5d,,\nSize=19\nHdcp=0,6.5\nWinner=B,C\n[Data]\n");
+        for (int i = 0; i < moves.length; i++) {
+            sb.append((char) ('A' + moves[i][0])).append((char) ('A' + 18 - moves[i][1])).append(',')
+                    .append(moves[i][2] == 1 ? 'B' : 'W').append(i + 1).append(',').append(i + 1).append(",0\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+
+public class GameRecordImporterTest {
+
+    private static final String GIB = "\\HS\r\n"
+            + "\\[GAMEBLACKNAME=黑棋手 (5D)\\]\r\n"
+            + "\\[GAMEWHITENAME=white (7D)\\]\r\n"
+            + "\\[GAMEINFOMAIN=GBKIND:3,GTIME:1200-30-3,GRLT:0,ZIPSU:35,GTYPE:0\\]\r\n"
+            + "\\[GAMEDATE=2008- 9-15-午後 9:53:08\\]\r\n"
+            + "\\HE\r\n"
+            + "\\GS\r\n"
+            + "2 1 0\r\n"
+            + "INI 0 1 2 &4\r\n"
+            + "STO 0 2 2 15 3\r\n"
+            + "STO 0 3 1 3 15\r\n"
+            + "SKI 0 4\r\n"
+            + "\\GE\r\n";
+
+    private static final String NGF = "对局\n"
+            + "19\n"
+            + "白棋手    9D\n"
+            + "黑棋手    8D\n"
+            + "www.eweiqi.com\n"
+            + "0\n"
+            + "0\n"
+            + "7\n"
+            + "20040101 [10:00]\n"
+            + "5\n"
+            + "White wins by resignation\n"
+            + "3\n"
+            + "PMABBQEQE\n"
+            + "PMACWEEEE\n"
+            + "PMADBAAAA\n";
+
+    private static final String UGF = "[Header]\n"
+            + "Lang=JP\n"
+            + "PlayerB=Black,2d,,\n"
+            + "PlayerW=White,3d,,\n"
+            + "Size=19\n"
+            + "Hdcp=0,6.5\n"
+            + "Winner=W,C\n"
+            + "Date=2003/08/26,,\n"
+            + "[Data]\n"
+            + "QD,B1,1,0\n"
+            + "DC,W2,2,0\n"
+            + "YA,B3,3,0\n";
+
+    @Test
+    public void testTokenizerFields() throws Exception {
+        // 测试行分词：\r\n 换行、连续空格、整数字段和超长行
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            longLine.append('x');
+        }
+        RecordTokenizer tokens = new RecordTokenizer(new StringReader("STO 0  12 1 15 3\r\n" + longLine + "\nlast"));
+        assertTrue(tokens.nextLine());
+        assertEquals("STO", tokens.field(0, ' '));
+        assertEquals(12, tokens.intField(2, ' ', -1));
+        assertEquals(3, tokens.intField(5, ' ', -1));
+        assertEquals(-1, tokens.intField(6, ' ', -1));
+        assertNull(tokens.field(6, ' '));
+        assertTrue(tokens.nextLine());
+        assertEquals(20000, tokens.length());
+        assertTrue(tokens.nextLine());
+        assertEquals("last", tokens.line());
+        assertFalse(tokens.nextLine());
+    }
+
+    @Test
+    public void testGIB() throws Exception {
+        // 测试GIB：对局信息、让子和虚手
+        GoBoard board = new GoBoard();
+        new GIBImporter().read(GIB, board);
+        assertEquals("黑棋手", board.getBlackPlayer());
+        assertEquals("white", board.getWhitePlayer());
+        assertEquals("B+3.5", board.getResult());
+        assertEquals("2008-09-15", board.getDate());
+        assertEquals(GoBoard.BLACK, board.getInitialStone(3, 3));
+        assertEquals(GoBoard.BLACK, board.getInitialStone(15, 15));
+
+        List<GoBoard.Move> moves = board.getMoveHistory();
+        assertEquals(3, moves.size());
+        assertTrue(new GoBoard.Move(15, 3, GoBoard.WHITE).isSameAs(moves.get(0)));
+        assertTrue(new GoBoard.Move(3, 15, GoBoard.BLACK).isSameAs(moves.get(1)));
+        assertEquals(-1, moves.get(2).x);
+        assertEquals(GoBoard.WHITE, moves.get(2).color);
+    }
+
+    @Test
+    public void testNGF() throws Exception {
+        // 测试NGF：固定行序的文件头，'B' 为第一路，超出棋盘记为虚手
+        GoBoard board = new GoBoard();
+        new NGFImporter().read(NGF, board);
+        assertEquals("白棋手", board.getWhitePlayer());
+        assertEquals("黑棋手", board.getBlackPlayer());
+        assertEquals("W+R", board.getResult());
+        assertEquals("2004-01-01", board.getDate());
+
+        List<GoBoard.Move> moves = board.getMoveHistory();
+        assertEquals(3, moves.size());
+        assertTrue(new GoBoard.Move(15, 3, GoBoard.BLACK).isSameAs(moves.get(0)));
+        assertTrue(new GoBoard.Move(3, 3, GoBoard.WHITE).isSameAs(moves.get(1)));
+        assertEquals(-1, moves.get(2).x);
+    }
+
+    @Test
+    public void testUGF() throws Exception {
+        // 测试UGF：行从下边开始计数
+        GoBoard board = new GoBoard();
+        new UGFImporter().read(UGF, board);
+        assertEquals("Black", board.getBlackPlayer());
+        assertEquals("White", board.getWhitePlayer());
+        assertEquals("W+R", board.getResult());
+        assertEquals("2003-08-26", board.getDate());
+
+        List<GoBoard.Move> moves = board.getMoveHistory();
+        assertEquals(3, moves.size());
+        assertTrue(new GoBoard.Move(16, 15, GoBoard.BLACK).isSameAs(moves.get(0)));
+        assertTrue(new GoBoard.Move(3, 16, GoBoard.WHITE).isSameAs(moves.get(1)));
+        assertEquals(-1, moves.get(2).x);
+    }
+
+    @Test
+    public void testSameStructureAsSGF() throws Exception {
+        // 测试导入结果与解析等价SGF的结果相同，保存后让子和日期不丢失
+        GoBoard imported = new GoBoard();
+        new GIBImporter().read(GIB, imported);
+
+        String sgf = imported.toSGFString();
+        assertTrue(sgf, sgf.contains("AB[dd][pp]"));
+        assertTrue(sgf, sgf.contains("DT[2008-09-15]"));
+
+        GoBoard parsed = new GoBoard();
+        SGFParser.parseSGF(sgf, parsed);
+        assertEquals(imported.getBlackPlayer(), parsed.getBlackPlayer());
+        assertEquals(imported.getResult(), parsed.getResult());
+        assertEquals(GoBoard.BLACK, parsed.getInitialStone(3, 3));
+        assertTrue(SGFConverter.areMoveSequencesEqual(imported.getMoveHistory(), parsed.getMoveHistory()));
+    }
+
+    @Test
+    public void testForFileName() {
+        // 测试按扩展名选择导入器
+        assertTrue(GameRecordImporter.forFileName("game.GIB") instanceof GIBImporter);
+        assertTrue(GameRecordImporter.forFileName("game.ngf") instanceof NGFImporter);
+        assertTrue(GameRecordImporter.forFileName("game.ugf") instanceof UGFImporter);
+        assertNull(GameRecordImporter.forFileName("game.sgf"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class GameSummaryTest {
+
+    @Test
+    public void testFromTree() throws Exception {
+        // 测试从根节点提取对局信息，从主线提取着手，分支不计入手数
+        GameSummary summary = GameSummary.of(SGFParser.parse(
+                "(;FF[4]GM[1]SZ[19]PB[柯洁]PW[AlphaGo]KM[7.5]HA[0]RE[W+0.5]DT[2017-05-23,25]"
+                        + ";B[pd];W[];B[qp](;W[cc];B[dd])(;W[dd]))"));
+        assertEquals("柯洁", summary.getBlackPlayer());
+        assertEquals("AlphaGo", summary.getWhitePlayer());
+        assertEquals(19, summary.getBoardSize());
+        assertEquals(7.5, summary.getKomi(), 0);
+        assertEquals(GameSummary.WINNER_WHITE, summary.getWinner());
+        assertEquals(0.5, summary.getMargin(), 0);
+        assertEquals(20170523, summary.getDate());
+        assertEquals(3, summary.getMoveCount());
+
+        List<GoBoard.Move> moves = GameSummary.decodeMoves(summary.getMoveData());
+        assertEquals(3, moves.size());
+        assertTrue(moves.get(0).isSameAs(new GoBoard.Move(15, 3, GoBoard.BLACK)));
+        assertTrue(moves.get(1).isSameAs(new GoBoard.Move(-1, -1, GoBoard.WHITE)));
+    }
+
+    @Test
+    public void testMainLineInRootVariation() throws Exception {
+        // 测试保存后重新解析的棋谱，主线在第一个根分支中
+        GameSummary summary = GameSummary.of(SGFParser.parse("(;FF[4]SZ[9](;B[ee];W[cc])(;B[cc]))"));
+        assertEquals(9, summary.getBoardSize());
+        assertEquals(2, summary.getMoveCount());
+    }
+
+    @Test
+    public void testResult() {
+        // 测试胜方和目差的解析
+        GameSummary summary = new GameSummary();
+        summary.setResult("B+R");
+        assertEquals(GameSummary.WINNER_BLACK, summary.getWinner());
+        assertTrue(Double.isNaN(summary.getMargin()));
+        summary.setResult("w+12");
+        assertEquals(GameSummary.WINNER_WHITE, summary.getWinner());
+        assertEquals(12, summary.getMargin(), 0);
+        summary.setResult("0");
+        assertEquals(GameSummary.WINNER_DRAW, summary.getWinner());
+        summary.setResult("Void");
+        assertEquals(GameSummary.WINNER_UNKNOWN, summary.getWinner());
+        summary.setResult(null);
+        assertEquals(GameSummary.WINNER_UNKNOWN, summary.getWinner());
+    }
+
+    @Test
+    public void testParseDate() {
+        // 测试日期转换为可排序的整数
+        assertEquals(20240115, GameSummary.parseDate("2024-01-15"));
+        assertEquals(20240115, GameSummary.parseDate("20240115"));
+        assertEquals(20240100, GameSummary.parseDate("2024-01"));
+        assertEquals(20240000, GameSummary.parseDate("2024"));
+        assertEquals(19960301, GameSummary.parseDate("1996-03-01,02"));
+        assertEquals(0, GameSummary.parseDate("unknown"));
+        assertEquals(0, GameSummary.parseDate("2024-13-01"));
+        assertEquals(0, GameSummary.parseDate(null));
+        assertTrue(GameSummary.parseDate("2023-12-31") < GameSummary.parseDate("2024-01"));
+    }
+
+    @Test
+    public void testMoveEncoding() {
+        // 测试每手2字节，大棋盘坐标和虚手都能还原
+        List<GoBoard.Move> moves = Arrays.asList(
+                new GoBoard.Move(0, 0, GoBoard.BLACK),
+                new GoBoard.Move(51, 51, GoBoard.WHITE),
+                new GoBoard.Move(-1, -1, GoBoard.BLACK),
+                new GoBoard.Move(18, 3, GoBoard.WHITE));
+        byte[] data = GameSummary.encodeMoves(moves);
+        assertEquals(8, data.length);
+        List<GoBoard.Move> decoded = GameSummary.decodeMoves(data);
+        for (int i = 0; i < moves.size(); i++) {
+            assertTrue("move " + i, moves.get(i).isSameAs(decoded.get(i)));
+        }
+    }
+}
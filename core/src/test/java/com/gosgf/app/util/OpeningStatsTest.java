@@ -0,0 +1,61 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+public class OpeningStatsTest {
+
+    @Test
+    public void testSymmetricMovesMerged() throws Exception {
+        // 测试不同角的同一手合并统计，胜局按胜方分别计数
+        OpeningStats stats = new OpeningStats();
+        stats.add(GameSummary.of(SGFParser.parse("(;SZ[19]RE[B+R];B[dd];W[pp])")));
+        stats.add(GameSummary.of(SGFParser.parse("(;SZ[19]RE[W+2.5];B[pp];W[dd])")));
+        stats.add(GameSummary.of(SGFParser.parse("(;SZ[19]RE[0];B[jj];W[dd])")));
+
+        GoBoard board = new GoBoard();
+        PositionHash.Position empty = PositionHash.of(board);
+        List<OpeningStats.Continuation> moves = stats.get(empty.getHash());
+        assertEquals(2, moves.size());
+        assertEquals(2, moves.get(0).getGames());
+        assertEquals(1, moves.get(0).getBlackWins());
+        assertEquals(1, moves.get(0).getWhiteWins());
+        assertEquals(1, moves.get(1).getGames());
+        assertEquals(0, moves.get(1).getBlackWins() + moves.get(1).getWhiteWins());
+        assertEquals(9 * SGFPointSet.MAX_SIZE + 9, empty.toBoard(moves.get(1).getMove()));
+
+        // 第一手之后两局的局面相同，第二手也是同一手
+        board.placeStone(15, 15, GoBoard.BLACK);
+        PositionHash.Position position = PositionHash.of(board);
+        moves = stats.get(position.getHash());
+        assertEquals(1, moves.size());
+        assertEquals(2, moves.get(0).getGames());
+        int move = position.toBoard(moves.get(0).getMove());
+        assertEquals(3, move % SGFPointSet.MAX_SIZE);
+        assertEquals(3, move / SGFPointSet.MAX_SIZE);
+    }
+
+    @Test
+    public void testDepthLimit() throws Exception {
+        // 测试只统计前 depth 手，未知棋盘大小的对局忽略
+        SGFParser.SGFTree tree = new SGFCorpusGenerator(7).generate(0);
+        GameSummary game = GameSummary.of(tree);
+        assertTrue(game.getMoveCount() > 10);
+
+        OpeningStats stats = new OpeningStats(10);
+        stats.add(game);
+        assertEquals(10, stats.size());
+        assertTrue(stats.get(game.getPositions().getHash(10)).isEmpty());
+        assertEquals(1, stats.get(game.getPositions().getHash(9)).size());
+
+        GameSummary invalid = new GameSummary();
+        invalid.setBoardSize(0);
+        stats.add(invalid);
+        assertEquals(10, stats.size());
+        stats.clear();
+        assertEquals(0, stats.size());
+    }
+}
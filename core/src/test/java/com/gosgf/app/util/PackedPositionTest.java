@@ -0,0 +1,43 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PackedPositionTest {
+
+    @Test
+    public void testMatchesBoard() throws Exception {
+        // 测试重放到任意手数的局面与 GoBoard 一致，包括提子
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(3);
+        generator.setMoves(150);
+        SGFParser.SGFTree tree = generator.generate(0);
+        GameSummary game = GameSummary.of(tree);
+        GoBoard board = new GoBoard();
+        SGFConverter.sgfTreeToBoard(tree, board);
+
+        for (int move : new int[] {0, 1, 75, 150}) {
+            board.setCurrentMoveNumber(move - 1);
+            assertEquals("move " + move, PackedPosition.of(board), PackedPosition.of(game, move));
+        }
+        // 负数为终局
+        assertEquals(PackedPosition.of(game, 150), PackedPosition.of(game, -1));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        GameSummary game = GameSummary.of(SGFParser.parse("(;SZ[9]AB[aa];W[ii];B[ei])"));
+        PackedPosition position = PackedPosition.of(game, -1);
+        assertEquals(GoBoard.BLACK, position.get(0, 0));
+        assertEquals(GoBoard.WHITE, position.get(8, 8));
+        assertEquals(GoBoard.BLACK, position.get(4, 8));
+        assertEquals(0, position.get(4, 4));
+        assertEquals(21, position.toByteArray().length);
+        assertEquals(position, PackedPosition.fromBytes(9, position.toByteArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongLength() {
+        PackedPosition.fromBytes(19, new byte[10]);
+    }
+}
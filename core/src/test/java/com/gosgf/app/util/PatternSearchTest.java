@@ -0,0 +1,128 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class PatternSearchTest {
+
+    @Test
+    public void testAnchoredCornerUnderSymmetry() throws Exception {
+        // 测试固定在左上角的点三三棋形，在右下角出现时也能找到
+        PatternSearch.Pattern pattern = PatternSearch.Pattern.parse(
+                ".....",
+                ".....",
+                "..O..",
+                "...X.",
+                ".....");
+        pattern.setAnchor(0, 0);
+        PatternSearch search = new PatternSearch(pattern);
+
+        GameSummary corner = GameSummary.of(SGFParser.parse("(;SZ[19];B[pp];W[dd];B[dp];W[qq])"));
+        assertTrue(search.mayMatch(19, corner.getStoneBitmap()));
+        assertEquals(4, search.find(corner));
+
+        // 白棋从未下在三三的对局被位图直接排除
+        GameSummary other = GameSummary.of(SGFParser.parse("(;SZ[19];B[pp];W[dd];B[dp];W[pd])"));
+        assertFalse(search.mayMatch(19, other.getStoneBitmap()));
+        assertEquals(-1, search.find(other));
+
+        // 棋子都出现过，但角上多了一颗白棋，空点要求不满足
+        GameSummary blocked = GameSummary.of(SGFParser.parse("(;SZ[19];B[pp];W[qp];B[dd];W[qq])"));
+        assertTrue(search.mayMatch(19, blocked.getStoneBitmap()));
+        assertEquals(-1, search.find(blocked));
+
+        // 摆子中已有棋形
+        GameSummary setup = GameSummary.of(SGFParser.parse("(;SZ[19]AB[dd]AW[cc];W[pp])"));
+        assertEquals(0, search.find(setup));
+    }
+
+    @Test
+    public void testPatternAfterCapture() throws Exception {
+        // 测试提子后才出现的棋形：空点在提子前被白棋占据
+        PatternSearch search = new PatternSearch(PatternSearch.Pattern.parse(
+                ".X.",
+                "X.X",
+                ".X."));
+        GameSummary game = GameSummary.of(SGFParser.parse(
+                "(;SZ[19];B[dd];W[de];B[ce];W[pp];B[ee];W[pq];B[df])"));
+        assertEquals(7, search.find(game));
+    }
+
+    @Test
+    public void testParallelMatchesGoBoard() throws Exception {
+        // 测试并行搜索与逐局搜索结果一致，并用 GoBoard 重放核对找到的手数
+        String[] rows = {"XO", "OX"};
+        PatternSearch search = new PatternSearch(PatternSearch.Pattern.parse(rows));
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(5);
+        generator.setMoves(60);
+        List<SGFParser.SGFTree> trees = new ArrayList<>();
+        List<GameSummary> games = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            trees.add(generator.generate(i));
+            games.add(GameSummary.of(trees.get(i)));
+        }
+
+        int[] found = search.findAll(games, new ForkJoinPool(4));
+        int matched = 0;
+        for (int i = 0; i < games.size(); i++) {
+            assertEquals(search.find(games.get(i)), found[i]);
+            GoBoard board = new GoBoard();
+            SGFConverter.sgfTreeToBoard(trees.get(i), board);
+            int first = -1;
+            for (int move = 0; move <= games.get(i).getMoveCount() && first < 0; move++) {
+                board.setCurrentMoveNumber(move - 1);
+                if (containsPattern(board, rows)) {
+                    first = move;
+                }
+            }
+            assertEquals("game " + i, first, found[i]);
+            if (first >= 0) {
+                matched++;
+            }
+        }
+        assertTrue(matched > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPattern() {
+        PatternSearch.Pattern.parse("X.", "X");
+    }
+
+    /**
+     * 逐点检查棋盘上是否有棋形的任一旋转或镜像
+     */
+    private static boolean containsPattern(GoBoard board, String[] rows) {
+        int height = rows.length;
+        int width = rows[0].length();
+        for (int s = 0; s < 8; s++) {
+            boolean swap = s >= 4;
+            int h = swap ? width : height;
+            int w = swap ? height : width;
+            for (int oy = 0; oy + h <= 19; oy++) {
+                for (int ox = 0; ox + w <= 19; ox++) {
+                    boolean all = true;
+                    for (int y = 0; y < height && all; y++) {
+                        for (int x = 0; x < width && all; x++) {
+                            int px = swap ? y : x;
+                            int py = swap ? x : y;
+                            if ((s & 1) != 0) px = w - 1 - px;
+                            if ((s & 2) != 0) py = h - 1 - py;
+                            char c = rows[y].charAt(x);
+                            int expected = c == 'X' ? GoBoard.BLACK : c == 'O' ? GoBoard.WHITE : 0;
+                            all = c == '?' || board.getStone(ox + px, oy + py) == expected;
+                        }
+                    }
+                    if (all) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,106 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PositionHashTest {
+
+    @Test
+    public void testMatchesBoardAfterEveryMove() throws Exception {
+        // 测试重放的哈希与 GoBoard 跳到每一手时的局面哈希一致，包括提子
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(21);
+        generator.setMoves(300);
+        SGFParser.SGFTree tree = generator.generate(0);
+        GameSummary summary = GameSummary.of(tree);
+        PositionHash.Line line = summary.getPositions();
+        assertEquals(300, line.getMoveCount());
+
+        GoBoard board = new GoBoard();
+        SGFConverter.sgfTreeToBoard(tree, board);
+        for (int i = 0; i <= line.getMoveCount(); i++) {
+            board.setCurrentMoveNumber(i - 1);
+            assertEquals("move " + i, line.getHash(i), PositionHash.of(board).getHash());
+        }
+    }
+
+    @Test
+    public void testSymmetry() {
+        // 测试旋转、镜像后的局面哈希相同，不同局面和不同颜色哈希不同
+        List<GoBoard.Move> corner = Arrays.asList(
+                new GoBoard.Move(3, 3, GoBoard.BLACK), new GoBoard.Move(2, 5, GoBoard.WHITE));
+        List<GoBoard.Move> rotated = Arrays.asList(
+                new GoBoard.Move(15, 3, GoBoard.BLACK), new GoBoard.Move(13, 2, GoBoard.WHITE));
+        List<GoBoard.Move> mirrored = Arrays.asList(
+                new GoBoard.Move(3, 15, GoBoard.BLACK), new GoBoard.Move(2, 13, GoBoard.WHITE));
+        List<GoBoard.Move> swapped = Arrays.asList(
+                new GoBoard.Move(3, 3, GoBoard.WHITE), new GoBoard.Move(2, 5, GoBoard.BLACK));
+
+        long expected = hashAfter(corner);
+        assertEquals(expected, hashAfter(rotated));
+        assertEquals(expected, hashAfter(mirrored));
+        assertNotEquals(expected, hashAfter(swapped));
+        assertNotEquals(expected, hashAfter(corner.subList(0, 1)));
+        assertNotEquals(expected, PositionHash.ofGame(13, Collections.emptyList(), corner).getHash(2));
+    }
+
+    @Test
+    public void testNextMoveInBoardOrientation() {
+        // 测试下一手按归一化坐标保存，再转换回另一个朝向的棋盘上
+        List<GoBoard.Move> game = Arrays.asList(
+                new GoBoard.Move(3, 3, GoBoard.BLACK), new GoBoard.Move(2, 5, GoBoard.WHITE),
+                new GoBoard.Move(16, 15, GoBoard.BLACK));
+        PositionHash.Line line = PositionHash.ofGame(19, Collections.emptyList(), game);
+
+        // 空棋盘完全对称，四个角的星位是同一手
+        List<GoBoard.Move> otherCorner = Collections.singletonList(new GoBoard.Move(15, 15, GoBoard.BLACK));
+        assertEquals(line.getNextMove(0), PositionHash.ofGame(19, Collections.emptyList(), otherCorner).getNextMove(0));
+
+        // 旋转后的棋盘：黑棋在 (15,3)
+        GoBoard board = new GoBoard();
+        board.placeStone(15, 3, GoBoard.BLACK);
+        PositionHash.Position position = PositionHash.of(board);
+        assertEquals(line.getHash(1), position.getHash());
+        int move = position.toBoard(line.getNextMove(1));
+        int x = move % SGFPointSet.MAX_SIZE;
+        int y = move / SGFPointSet.MAX_SIZE;
+        // 局面对 (15,3) 所在的对角线对称，两个点等价
+        assertTrue(x + "," + y, (x == 13 && y == 2) || (x == 16 && y == 5));
+
+        // 不对称的局面只有唯一的对应点
+        board.placeStone(x, y, GoBoard.WHITE);
+        position = PositionHash.of(board);
+        assertEquals(line.getHash(2), position.getHash());
+        int third = position.toBoard(line.getNextMove(2));
+        GoBoard check = new GoBoard();
+        check.placeStone(15, 3, GoBoard.BLACK);
+        check.placeStone(x, y, GoBoard.WHITE);
+        check.placeStone(third % SGFPointSet.MAX_SIZE, third / SGFPointSet.MAX_SIZE, GoBoard.BLACK);
+        assertEquals(line.getHash(3), PositionHash.of(check).getHash());
+        assertEquals(PositionHash.PASS, position.toBoard(PositionHash.PASS));
+    }
+
+    @Test
+    public void testSetupStonesAndCapture() throws Exception {
+        // 测试让子计入局面，提子后与从未落子的局面相同
+        GameSummary summary = GameSummary.of(SGFParser.parse(
+                "(;FF[4]SZ[19]HA[2]AB[dp][pd];W[aa];B[ba];W[qq];B[ab])"));
+        PositionHash.Line line = summary.getPositions();
+        GameSummary withoutCapture = GameSummary.of(SGFParser.parse(
+                "(;FF[4]SZ[19]AB[dp][pd][ba][ab];W[qq])"));
+        assertEquals(withoutCapture.getPositions().getHash(1), line.getHash(4));
+
+        GoBoard board = new GoBoard();
+        SGFParser.parseSGF("(;FF[4]SZ[19]HA[2]AB[dp][pd];W[aa];B[ba];W[qq];B[ab])", board);
+        board.setCurrentMoveNumber(3);
+        assertEquals(line.getHash(4), PositionHash.of(board).getHash());
+    }
+
+    private static long hashAfter(List<GoBoard.Move> moves) {
+        return PositionHash.ofGame(19, Collections.emptyList(), moves).getHash(moves.size());
+    }
+}
@@ -0,0 +1,107 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 二进制SGF基准 - 比较同一批对局的SGF文本和二进制格式的大小与加载速度
+ * 不是单元测试，直接运行 main：SGFBinaryBenchmark [局数] [每局手数]
+ */
+public class SGFBinaryBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int movesPerGame = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+
+        Random random = new Random(37);
+        StringBuilder collection = new StringBuilder();
+        for (int i = 0; i < games; i++) {
+            collection.append(randomGame(random, movesPerGame)).append('\n');
+        }
+        String sgf = collection.toString();
+        byte[] text = sgf.getBytes(StandardCharsets.UTF_8);
+
+        List<SGFParser.SGFTree> trees = new ArrayList<>();
+        for (SGFParser.SGFTree tree : SGFParser.parseCollection(sgf)) {
+            trees.add(tree);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SGFBinaryWriter(out).write(trees);
+        byte[] binary = out.toByteArray();
+        System.out.printf(Locale.ROOT, "%d 局：SGF %.1f MB，二进制 %.1f MB（%.1f 倍）%n",
+                games, text.length / 1e6, binary.length / 1e6, (double) text.length / binary.length);
+
+        // 单线程解析文本，与二进制读取公平比较
+        ForkJoinPool pool = new ForkJoinPool(1);
+        double sgfSeconds = Double.MAX_VALUE;
+        double binarySeconds = Double.MAX_VALUE;
+        double convertSeconds = Double.MAX_VALUE;
+        for (int round = 0; round <= ROUNDS; round++) {
+            // 文本：解码并解析为树
+            long start = System.nanoTime();
+            List<SGFParser.SGFTree> parsed = new ArrayList<>(games);
+            for (SGFParser.SGFTree tree : SGFParser.parseCollection(SGFDecoder.decode(text), false, pool)) {
+                parsed.add(tree);
+            }
+            double textTime = (System.nanoTime() - start) / 1e9;
+
+            // 二进制：读取为树
+            start = System.nanoTime();
+            List<SGFParser.SGFTree> loaded = new SGFBinaryReader(binary).read();
+            double binaryTime = (System.nanoTime() - start) / 1e9;
+
+            // 两种格式得到相同的树，转换为 GoBoard 的开销相同
+            start = System.nanoTime();
+            for (SGFParser.SGFTree tree : loaded) {
+                SGFConverter.sgfTreeToBoard(tree, new GoBoard());
+            }
+            double convertTime = (System.nanoTime() - start) / 1e9;
+
+            if (round > 0) {
+                sgfSeconds = Math.min(sgfSeconds, textTime);
+                binarySeconds = Math.min(binarySeconds, binaryTime);
+                convertSeconds = Math.min(convertSeconds, convertTime);
+            }
+        }
+        pool.shutdown();
+        System.out.printf(Locale.ROOT, "解析为树：SGF %.0f 局/秒（%.1f MB/秒），二进制 %.0f 局/秒（%.1f 倍）%n",
+                games / sgfSeconds, text.length / 1e6 / sgfSeconds, games / binarySeconds, sgfSeconds / binarySeconds);
+        System.out.printf(Locale.ROOT, "加载到 GoBoard：SGF %.0f 局/秒，二进制 %.0f 局/秒%n",
+                games / (sgfSeconds + convertSeconds), games / (binarySeconds + convertSeconds));
+    }
+
+    /**
+     * 生成带对局信息、注释和少量分支的随机对局，着手不检查合法性
+     */
+    private static String randomGame(Random random, int moves) {
+        StringBuilder sb = new StringBuilder("(;FF[4]GM[1]SZ[19]CA[UTF-8]KM[6.5]")
+                .append("PB[Player ").append(random.nextInt(100)).append("]PW[Player ").append(random.nextInt(100))
+                .append("]RE[B+R]DT[2024-01-").append(10 + random.nextInt(20)).append(']');
+        int branches = 0;
+        for (int i = 0; i < moves; i++) {
+            sb.append("\n;").append(i % 2 == 0 ? 'B' : 'W').append('[')
+                    .append((char) ('a' + random.nextInt(19))).append((char) ('a' + random.nextInt(19))).append(']');
+            if (random.nextInt(20) == 0) {
+                sb.append("C[第").append(i + 1).append("手 注释]");
+            }
+            if (i > 0 && i < moves - 1 && random.nextInt(50) == 0) {
+                // 分支：一段变化之后回到主线
+                sb.append("(;").append(i % 2 == 0 ? 'W' : 'B').append("[jj];").append(i % 2 == 0 ? 'B' : 'W').append("[kk])(");
+                branches++;
+            }
+        }
+        for (int i = 0; i < branches; i++) {
+            sb.append(')');
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,143 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SGFBinaryTest {
+
+    private static final String SGF = "(;FF[4]GM[1]SZ[19]CA[UTF-8]PB[柯洁]PW[AlphaGo]KM[7.5]AB[dd:ee][pp]\n"
+            + ";B[pd]C[开局 \\] (注释) \\\\];W[dp]LB[dd:A][pp:B]TR[aa][ab]"
+            + "(;B[qc];W[]BL[30.5](;B[tt])(;B[cc]C[aa]))"
+            + "(;B[qq]XX[custom:value][]))";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        // 测试与SGF互转无损：属性、转义、点列表、虚手、自定义属性和分支结构
+        SGFParser.SGFTree tree = SGFParser.parse(SGF);
+        byte[] data = toBinary(tree);
+        SGFParser.SGFTree restored = new SGFBinaryReader(data).read().get(0);
+
+        assertEquals("柯洁", restored.getRootNode().getFirstPropertyValue("PB"));
+        assertEquals(5, restored.getRootNode().getPointSet("AB").size());
+        assertEquals(Arrays.asList("dd:A", "pp:B"), restored.getMainSequence().get(1).getPropertyValues("LB"));
+        assertEquals("开局 ] (注释) \\", restored.getMainSequence().get(0).getFirstPropertyValue("C"));
+        assertEquals(Arrays.asList("custom:value", ""), restored.getMainSequence().get(1).getVariations().get(1).get(0).getPropertyValues("XX"));
+
+        // 还原的树与原树保存的SGF相同，再经过一次二进制往返保持不变
+        String sgf = SGFParser.save(restored);
+        assertEquals(SGFParser.save(copy(tree)), sgf);
+        assertEquals(sgf, SGFParser.save(new SGFBinaryReader(toBinary(SGFParser.parse(sgf))).read().get(0)));
+    }
+
+    @Test
+    public void testMovesAreCompact() throws Exception {
+        // 测试只有一手棋的节点占2字节
+        StringBuilder sgf = new StringBuilder("(;FF[4]GM[1]SZ[19]");
+        for (int i = 0; i < 1000; i++) {
+            sgf.append(i % 2 == 0 ? ";B[" : ";W[").append((char) ('a' + i % 19)).append((char) ('a' + i / 19 % 19)).append(']');
+        }
+        sgf.append(')');
+        byte[] data = toBinary(SGFParser.parse(sgf.toString()));
+        assertTrue("size " + data.length, data.length < 2100);
+
+        GoBoard board = new GoBoard();
+        SGFConverter.sgfTreeToBoard(new SGFBinaryReader(data).read().get(0), board);
+        assertEquals(1000, board.getMoveHistory().size());
+    }
+
+    @Test
+    public void testCollection() throws Exception {
+        // 测试多局共用字符串表，按顺序还原
+        List<SGFParser.SGFTree> trees = Arrays.asList(
+                SGFParser.parse("(;FF[4]GM[1]SZ[19]PB[A];B[pd])"),
+                SGFParser.parse("(;FF[4]GM[1]SZ[19]PB[B];B[dd])"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SGFBinaryWriter(out).write(trees);
+        assertTrue(SGFBinaryReader.isBinarySGF(out.toByteArray()));
+
+        List<SGFParser.SGFTree> restored = SGFBinaryReader.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, restored.size());
+        assertEquals("B", restored.get(1).getRootNode().getFirstPropertyValue("PB"));
+        assertEquals("dd", restored.get(1).getMainSequence().get(0).getFirstPropertyValue("B"));
+    }
+
+    @Test
+    public void testDeepVariationChain() throws Exception {
+        // 测试十万层嵌套分支读写，不应栈溢出
+        SGFParser.SGFTree tree = SGFParser.parse(SGFParserTest.buildDeepSgf(100000));
+        SGFParser.SGFTree restored = new SGFBinaryReader(toBinary(tree)).read().get(0);
+
+        SGFParser.Node node = restored.getMainSequence().get(0);
+        int depth = 0;
+        while (node.hasVariations()) {
+            node = node.getVariations().get(0).get(0);
+            depth++;
+        }
+        assertEquals(100000, depth);
+    }
+
+    @Test
+    public void testRejectsUnknownVersionAndTruncatedData() throws Exception {
+        // 测试未知版本和截断的数据报错，而不是返回不完整的树
+        byte[] data = toBinary(SGFParser.parse(SGF));
+        byte[] future = data.clone();
+        future[4] = 99;
+        try {
+            new SGFBinaryReader(future).read();
+            fail("未知版本应当报错");
+        } catch (SGFParser.SGFParseException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+        try {
+            new SGFBinaryReader(Arrays.copyOf(data, data.length - 3)).read();
+            fail("截断的数据应当报错");
+        } catch (SGFParser.SGFParseException e) {
+            // 预期
+        }
+    }
+
+    private static byte[] toBinary(SGFParser.SGFTree tree) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SGFBinaryWriter(out).write(tree);
+        return out.toByteArray();
+    }
+
+    /**
+     * 逐个属性复制树，去掉源文本位置，使保存结果按属性重新编码
+     */
+    private static SGFParser.SGFTree copy(SGFParser.SGFTree tree) {
+        List<List<SGFParser.Node>> rootVariations = new ArrayList<>();
+        for (List<SGFParser.Node> variation : tree.getRootVariations()) {
+            rootVariations.add(copy(variation));
+        }
+        return new SGFParser.SGFTree(copy(tree.getRootNode()), copy(tree.getMainSequence()), rootVariations);
+    }
+
+    private static List<SGFParser.Node> copy(List<SGFParser.Node> sequence) {
+        List<SGFParser.Node> nodes = new ArrayList<>();
+        for (SGFParser.Node node : sequence) {
+            nodes.add(copy(node));
+        }
+        return nodes;
+    }
+
+    private static SGFParser.Node copy(SGFParser.Node node) {
+        SGFParser.Node copy = new SGFParser.Node();
+        for (String ident : node.getPropertyIdentifiers()) {
+            for (String value : node.getPropertyValues(ident)) {
+                copy.addProperty(ident, value);
+            }
+        }
+        for (List<SGFParser.Node> variation : node.getVariations()) {
+            copy.addVariation(copy(variation));
+        }
+        return copy;
+    }
+}
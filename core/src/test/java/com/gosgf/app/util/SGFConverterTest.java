@@ -65,7 +65,7 @@ public class SGFConverterTest {
             assertEquals("Black", board.getBlackPlayer());
             assertEquals("White", board.getWhitePlayer());
             assertEquals("B+R", board.getResult());
-            assertEquals(3, board.moveHistory.size());
+            assertEquals(3, board.getMoveHistory().size());
         } catch (Exception e) {
             e.printStackTrace();
             fail("测试失败: " + e.getMessage());
@@ -120,11 +120,49 @@ public class SGFConverterTest {
             
             // 验证让子是否正确放置
             // 检查星位点是否有黑棋
-            assertTrue(board.board[3][3] == 1 || board.board[3][15] == 1 || 
-                       board.board[15][3] == 1 || board.board[15][15] == 1);
+            assertTrue(board.getStone(3, 3) == 1 || board.getStone(3, 15) == 1 || 
+                       board.getStone(15, 3) == 1 || board.getStone(15, 15) == 1);
         } catch (Exception e) {
             e.printStackTrace();
             fail("测试失败: " + e.getMessage());
         }
     }
+
+    @Test
+    public void testDeepVariationChainToBoard() throws Exception {
+        // 测试十万层嵌套分支转换为 GoBoard，不应栈溢出
+        SGFParser.SGFTree sgfTree = SGFParser.parse(SGFParserTest.buildDeepSgf(100000));
+        SGFConverter.sgfTreeToBoard(sgfTree, board);
+
+        assertEquals(1, board.getMoveHistory().size());
+        GoBoard.Move move = board.getMoveHistory().get(0);
+        int depth = 0;
+        while (!move.variations.isEmpty()) {
+            move = move.variations.get(0).getMoves().get(0);
+            depth++;
+        }
+        assertEquals(100000, depth);
+    }
+
+    @Test
+    public void testLazyVariationsLoadOnAccess() throws Exception {
+        // 测试延迟解析的分支在首次访问时才转换
+        String sgfContent = "(;FF[4]GM[1]SZ[19];B[pd];W[dd](;B[qe];W[qf](;B[rf]))(;B[dc]))";
+        SGFParser.SGFTree sgfTree = SGFParser.parse(sgfContent, true);
+        SGFConverter.sgfTreeToBoard(sgfTree, board);
+
+        assertEquals(2, board.getMoveHistory().size());
+        GoBoard.Move move = board.getMoveHistory().get(1);
+        assertEquals(2, move.variations.size());
+        assertFalse(move.variations.get(0).isLoaded());
+        assertFalse(move.variations.get(1).isLoaded());
+
+        GoBoard.Variation first = move.variations.get(0);
+        assertEquals(2, first.getMoves().size());
+        assertTrue(first.isLoaded());
+        assertFalse(move.variations.get(1).isLoaded());
+        GoBoard.Variation nested = first.getMoves().get(1).variations.get(0);
+        assertFalse(nested.isLoaded());
+        assertEquals(17, nested.getMoves().get(0).x);
+    }
 }
@@ -0,0 +1,126 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class SGFCorpusGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReproducibleFromSeed() throws Exception {
+        // 测试同样的种子生成同样的字节，不同的种子生成不同的对局
+        assertArrayEquals(collection(7, 3), collection(7, 3));
+        assertFalse(Arrays.equals(collection(7, 3), collection(8, 3)));
+
+        // 第 i 局与生成的局数无关
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        generator(7).write(2, single);
+        assertTrue(new String(collection(7, 3), "UTF-8").contains(single.toString("UTF-8")));
+    }
+
+    @Test
+    public void testBranchesAndComments() throws Exception {
+        // 测试分支数、分支深度和注释长度
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(1);
+        generator.setMoves(60);
+        generator.setBranchFactor(2);
+        generator.setVariationDepth(2);
+        generator.setVariationLength(12);
+        generator.setBranchInterval(6);
+        generator.setCommentLength(40);
+        SGFParser.SGFTree tree = generator.generate(0);
+
+        List<SGFParser.Node> mainSequence = tree.getMainSequence();
+        assertEquals(60, mainSequence.size());
+        SGFParser.Node branchPoint = mainSequence.get(5);
+        assertEquals(2, branchPoint.getVariations().size());
+        List<SGFParser.Node> variation = branchPoint.getVariations().get(0);
+        assertEquals(12, variation.size());
+        // 第二层分支不再继续分叉
+        List<SGFParser.Node> nested = variation.get(5).getVariations().get(0);
+        for (SGFParser.Node node : nested) {
+            assertFalse(node.hasVariations());
+        }
+
+        boolean hasComment = false;
+        for (SGFParser.Node node : mainSequence) {
+            String comment = node.getFirstPropertyValue("C");
+            if (comment != null) {
+                assertEquals(40, comment.length());
+                hasComment = true;
+            }
+        }
+        assertTrue(hasComment);
+
+        // 写出后再解析，主线手数不变
+        GoBoard board = new GoBoard();
+        SGFParser.parseSGF(SGFParser.save(tree), board);
+        assertEquals(60, board.getMoveHistory().size());
+        assertEquals(2, board.getMoveHistory().get(5).variations.size());
+    }
+
+    @Test
+    public void testGamesAreLegal() throws Exception {
+        // 测试生成的文件都能通过校验：没有非法着手，也没有重复对局
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(3);
+        generator.setMoves(300);
+        generator.setCommentLength(20);
+        Path directory = folder.getRoot().toPath().resolve("corpus");
+        assertEquals(5, generator.writeFiles(5, directory).size());
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        SGFValidator validator = new SGFValidator(ForkJoinPool.commonPool(), new PrintStream(report, true, "UTF-8"), false);
+        assertTrue(report.toString("UTF-8"), validator.validate(Collections.singletonList(directory)));
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        // 测试按指定字符集写入并声明 CA，解码后注释一致
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(5);
+        generator.setMoves(40);
+        generator.setCommentLength(30);
+        generator.setCharset(Charset.forName("GB18030"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.write(0, out);
+
+        SGFParser.SGFTree tree = SGFParser.parse(SGFDecoder.decode(out.toByteArray()));
+        assertEquals("GB18030", tree.getRootNode().getFirstPropertyValue("CA"));
+        assertEquals(SGFParser.save(generator.generate(0)), SGFParser.save(copyOf(tree)));
+    }
+
+    private static SGFCorpusGenerator generator(long seed) {
+        SGFCorpusGenerator generator = new SGFCorpusGenerator(seed);
+        generator.setBranchFactor(1);
+        generator.setCommentLength(16);
+        return generator;
+    }
+
+    private static byte[] collection(long seed, int games) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator(seed).writeCollection(games, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 经过二进制格式复制，去掉源文本位置，使保存结果按属性重新编码
+     */
+    private static SGFParser.SGFTree copyOf(SGFParser.SGFTree tree) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SGFBinaryWriter(out).write(tree);
+        return new SGFBinaryReader(out.toByteArray()).read().get(0);
+    }
+}
@@ -0,0 +1,55 @@
+package com.gosgf.app.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+public class SGFDecoderTest {
+
+    @Test
+    public void testDecodeAscii() {
+        // 测试纯ASCII文件
+        String sgf = "(;FF[4]GM[1]SZ[19]PB[Black];B[pd])";
+        assertEquals(sgf, SGFDecoder.decode(sgf.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testDecodeDeclaredCharset() {
+        // 测试按 CA[] 声明的字符集解码
+        String sgf = "(;FF[4]CA[GB2312]GM[1]SZ[19]PB[柯洁]PW[李世石];B[pd]C[妙手])";
+        byte[] data = sgf.getBytes(Charset.forName("GBK"));
+        assertEquals("GB2312", SGFDecoder.findCharsetName(data));
+        assertEquals(sgf, SGFDecoder.decode(data));
+    }
+
+    @Test
+    public void testDecodeUndeclaredCharset() {
+        // 测试未声明字符集的UTF-8和GBK文件
+        String sgf = "(;FF[4]GM[1]SZ[19]PB[柯洁]PW[李世石];B[pd])";
+        assertEquals(sgf, SGFDecoder.decode(sgf.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(sgf, SGFDecoder.decode(sgf.getBytes(Charset.forName("GBK"))));
+    }
+
+    @Test
+    public void testCharsetOnlyReadFromRootNode() {
+        // 测试注释和后续节点中的 CA[] 不被当作字符集
+        byte[] data = "(;FF[4]C[CA[Big5\\]]GM[1];B[pd]CA[Big5])".getBytes(StandardCharsets.US_ASCII);
+        assertNull(SGFDecoder.findCharsetName(data));
+    }
+
+    @Test
+    public void testReadStreamWithBom() throws Exception {
+        // 测试读取带BOM的UTF-8输入流，保留注释中的换行
+        String sgf = "(;FF[4]CA[UTF-8]GM[1]SZ[19];B[pd]C[第一行\n第二行])";
+        byte[] body = sgf.getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[body.length + 3];
+        data[0] = (byte) 0xEF;
+        data[1] = (byte) 0xBB;
+        data[2] = (byte) 0xBF;
+        System.arraycopy(body, 0, data, 3, body.length);
+        assertEquals(sgf, SGFDecoder.read(new ByteArrayInputStream(data)));
+    }
+}
@@ -0,0 +1,276 @@
+package com.gosgf.app.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+public class SGFParserTest {
+    private static final int DEEP_LEVELS = 100000;
+
+    @Test
+    public void testParseNestedVariations() throws Exception {
+        // 测试解析嵌套分支
+        String sgfContent = "(;FF[4]GM[1]SZ[19];B[pd](;W[qe];B[rf])(;W[dd](;B[dp])))";
+        SGFParser.SGFTree sgfTree = SGFParser.parse(sgfContent);
+
+        List<SGFParser.Node> mainSequence = sgfTree.getMainSequence();
+        assertEquals(1, mainSequence.size());
+        List<List<SGFParser.Node>> variations = mainSequence.get(0).getVariations();
+        assertEquals(2, variations.size());
+        assertEquals(2, variations.get(0).size());
+        assertEquals("dd", variations.get(1).get(0).getFirstPropertyValue("W"));
+        assertEquals("dp", variations.get(1).get(0).getVariations().get(0).get(0).getFirstPropertyValue("B"));
+    }
+
+    @Test
+    public void testParseDeeplyNestedVariations() throws Exception {
+        // 测试解析十万层嵌套分支，不应栈溢出
+        SGFParser.SGFTree sgfTree = SGFParser.parse(buildDeepSgf(DEEP_LEVELS));
+
+        SGFParser.Node node = sgfTree.getMainSequence().get(0);
+        int depth = 0;
+        while (node.hasVariations()) {
+            node = node.getVariations().get(0).get(0);
+            depth++;
+        }
+        assertEquals(DEEP_LEVELS, depth);
+    }
+
+    @Test
+    public void testLazyParseDefersVariations() throws Exception {
+        // 测试延迟模式：主序列完整解析，分支首次访问时才解析
+        String sgfContent = "(;FF[4]GM[1]SZ[19];B[pd];W[dd](;B[qe]C[a \\] (b)];W[dp](;B[pp]))(;B[dc]))";
+        SGFParser.SGFTree sgfTree = SGFParser.parse(sgfContent, true);
+
+        List<SGFParser.Node> mainSequence = sgfTree.getMainSequence();
+        assertEquals(2, mainSequence.size());
+        List<List<SGFParser.Node>> variations = mainSequence.get(1).getVariations();
+        assertEquals(2, variations.size());
+        assertTrue(SGFParser.isDeferred(variations.get(0)));
+        assertTrue(SGFParser.isDeferred(variations.get(1)));
+
+        // 首次访问时解析，注释中的转义括号不影响分支边界
+        List<SGFParser.Node> first = variations.get(0);
+        assertEquals(2, first.size());
+        assertFalse(SGFParser.isDeferred(first));
+        assertEquals("a ] (b)", first.get(0).getFirstPropertyValue("C"));
+        assertTrue(SGFParser.isDeferred(first.get(1).getVariations().get(0)));
+        assertEquals("pp", first.get(1).getVariations().get(0).get(0).getFirstPropertyValue("B"));
+        assertEquals("dc", variations.get(1).get(0).getFirstPropertyValue("B"));
+    }
+
+    @Test
+    public void testParseCollection() throws Exception {
+        // 测试解析多局合集，属性值中的括号不影响切分
+        String sgfContent = "(;FF[4]GM[1]SZ[19]PB[A (1)];B[pd])\n"
+                + "(;FF[4]GM[1]SZ[19]PB[B\\]];B[dd](;W[pp])(;W[dp]))\n"
+                + "(;FF[4]GM[1]SZ[19]PB[C];B[qq];W[cc])";
+        SGFParser.SGFCollection collection = SGFParser.parseCollection(sgfContent);
+        assertEquals(3, collection.size());
+
+        StringBuilder players = new StringBuilder();
+        for (SGFParser.SGFTree tree : collection) {
+            players.append(tree.getRootNode().getFirstPropertyValue("PB")).append('|');
+        }
+        assertEquals("A (1)|B]|C|", players.toString());
+        assertEquals(2, collection.get(1).getMainSequence().get(0).getVariations().size());
+        assertEquals(2, collection.get(2).getMainSequence().size());
+    }
+
+    @Test
+    public void testParseLargeCollection() throws Exception {
+        // 测试并行解析上千局的合集，结果保持文件顺序
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("(;FF[4]GM[1]SZ[19]GN[").append(i).append("];B[pd];W[dd];B[pp])");
+        }
+        SGFParser.SGFCollection collection = SGFParser.parseCollection(sb.toString());
+        assertEquals(2000, collection.size());
+        int index = 0;
+        for (SGFParser.SGFTree tree : collection) {
+            assertEquals(String.valueOf(index++), tree.getRootNode().getFirstPropertyValue("GN"));
+            assertEquals(3, tree.getMainSequence().size());
+        }
+    }
+
+    @Test
+    public void testParseCollectionOnDemand() throws Exception {
+        // 测试不提交线程池时只读根节点，选中的对局首次获取时才解析，棋谱中的错误不影响根节点
+        SGFParser.SGFCollection collection = SGFParser.parseCollection(
+                "(;FF[4]PB[A]PW[B];B[pd])\n(;FF[4]PB[C];b[pd])", true, null);
+        assertEquals(2, collection.size());
+        assertEquals("B", collection.getRootNode(0).getFirstPropertyValue("PW"));
+        assertEquals("C", collection.getRootNode(1).getFirstPropertyValue("PB"));
+        assertEquals(1, collection.get(0).getMainSequence().size());
+        assertSame(collection.get(0), collection.get(0));
+        try {
+            collection.get(1);
+            fail("应抛出解析异常");
+        } catch (SGFParser.SGFParseException e) {
+            // 预期异常
+        }
+    }
+
+    @Test
+    public void testParseCollectionInvalidGame() throws Exception {
+        // 测试合集中的无效对局只影响该局
+        SGFParser.SGFCollection collection = SGFParser.parseCollection("(;FF[4];B[pd])(;FF[4];b[pd])");
+        assertEquals(2, collection.size());
+        assertNotNull(collection.get(0));
+        try {
+            collection.get(1);
+            fail("应抛出解析异常");
+        } catch (SGFParser.SGFParseException e) {
+            // 预期异常
+        }
+    }
+
+    @Test
+    public void testParseToBoardMatchesTreeConversion() throws Exception {
+        // 测试直接加载到棋盘与先建树再转换的结果一致
+        String[] samples = {
+            "(;FF[4]GM[1]SZ[19]PB[黑]HA[2]AB[dd][pp];W[pd]C[注释](;B[qe]TR[qe];W[qf](;B[rf]))(;B[dc]);W[cc])",
+            "(;FF[4]SZ[19](;B[pd];W[dd](;B[pp])(;B[dp]))(;B[pd];W[dd])(;B[qd];GN[x](;W[dd])))",
+            "(;FF[4]SZ[19];C[只有注释](;B[aa]);B[bb](;C[无着手](;W[cc]))(;W[dd]))"
+        };
+        for (String sgf : samples) {
+            for (boolean lazy : new boolean[] {false, true}) {
+                com.gosgf.app.model.GoBoard expected = new com.gosgf.app.model.GoBoard();
+                SGFConverter.sgfTreeToBoard(SGFParser.parse(sgf, lazy), expected);
+                com.gosgf.app.model.GoBoard actual = new com.gosgf.app.model.GoBoard();
+                SGFParser.parseSGF(sgf, actual, lazy);
+
+                assertEquals(sgf, expected.getMoveHistory().size(), actual.getMoveHistory().size());
+                assertEquals(sgf, expected.getStartVariationsCount(), actual.getStartVariationsCount());
+                assertEquals(sgf, expected.getBlackPlayer(), actual.getBlackPlayer());
+                assertEquals(sgf, expected.toSGFString(), actual.toSGFString());
+            }
+        }
+    }
+
+    @Test
+    public void testLazyRootVariationsMatchEager() throws Exception {
+        // 测试延迟模式与非延迟模式得到相同的第一手分支：跳过与主序列相同的分支和没有着手的分支
+        String[] samples = {
+            "(;FF[4]SZ[19](;B[pd];W[dd];B[pp])(;B[pd];W[dd];B[pp])(;B[pd] ;W[dd]\n;B[pp])"
+                    + "(;B[qd];W[dd];B[pp])(;C[空分支])(;B[dp]))",
+            "(;FF[4]SZ[19](;B[pd]C[主线];W[dd])(;B[pd]C[主线];W[dd](;B[aa]))(;B[pd]C[不同];W[dd])"
+                    + "(;GN[x];B[pd]C[主线];W[dd])(;B[qq];W[cc](;B[dd])))"
+        };
+        for (String sgf : samples) {
+            for (boolean direct : new boolean[] {false, true}) {
+                com.gosgf.app.model.GoBoard eager = new com.gosgf.app.model.GoBoard();
+                com.gosgf.app.model.GoBoard lazy = new com.gosgf.app.model.GoBoard();
+                if (direct) {
+                    SGFParser.parseSGF(sgf, eager, false);
+                    SGFParser.parseSGF(sgf, lazy, true);
+                } else {
+                    SGFConverter.sgfTreeToBoard(SGFParser.parse(sgf, false), eager);
+                    SGFConverter.sgfTreeToBoard(SGFParser.parse(sgf, true), lazy);
+                }
+
+                String message = sgf + (direct ? " direct" : " tree");
+                assertEquals(message, eager.getStartVariationsCount(), lazy.getStartVariationsCount());
+                for (int i = 0; i < eager.getStartVariationsCount(); i++) {
+                    com.gosgf.app.model.GoBoard.Variation expected = eager.getStartVariation(i);
+                    com.gosgf.app.model.GoBoard.Variation actual = lazy.getStartVariation(i);
+                    assertEquals(message, expected.getName(), actual.getName());
+                    assertTrue(message, expected.isSameAs(actual));
+                }
+                assertEquals(message, eager.toSGFString(), lazy.toSGFString());
+            }
+        }
+    }
+
+    @Test
+    public void testParseToBoardDeeplyNested() throws Exception {
+        // 测试直接加载深度嵌套的分支不会栈溢出
+        com.gosgf.app.model.GoBoard board = new com.gosgf.app.model.GoBoard();
+        SGFParser.parseSGF(buildDeepSgf(DEEP_LEVELS), board);
+        assertEquals(1, board.getMoveHistory().size());
+        assertEquals(1, board.getMoveHistory().get(0).variations.size());
+    }
+
+    @Test
+    public void testRecoveringParse() throws Exception {
+        // 测试恢复模式跳过格式错误的属性和节点，并记录位置
+        String sgfContent = "junk(;FF[4]SZ[19]\n;B[pd]!!;W[dd]BL\n;AddBlack[aa]W[cc];[qq]B[qq]C[未闭合";
+        List<SGFParser.Diagnostic> diagnostics = new java.util.ArrayList<>();
+        SGFParser.SGFTree tree = SGFParser.parse(sgfContent, diagnostics);
+
+        List<SGFParser.Node> sequence = tree.getMainSequence();
+        assertEquals(4, sequence.size());
+        assertEquals("pd", sequence.get(0).getFirstPropertyValue("B"));
+        assertEquals("dd", sequence.get(1).getFirstPropertyValue("W"));
+        assertFalse(sequence.get(1).hasProperty("BL"));
+        assertEquals("aa", sequence.get(2).getFirstPropertyValue("AB"));
+        assertEquals("cc", sequence.get(2).getFirstPropertyValue("W"));
+        assertEquals("qq", sequence.get(3).getFirstPropertyValue("B"));
+        assertEquals("未闭合", sequence.get(3).getFirstPropertyValue("C"));
+
+        // 前置文本、!!、BL无值、小写字母、无标识符的值、未闭合的值、未闭合的游戏树
+        assertEquals(diagnostics.toString(), 7, diagnostics.size());
+        SGFParser.Diagnostic first = diagnostics.get(0);
+        assertEquals(0, first.getOffset());
+        assertEquals(1, first.getLine());
+        SGFParser.Diagnostic stray = diagnostics.get(1);
+        assertEquals(sgfContent.indexOf("!!"), stray.getOffset());
+        assertEquals(2, stray.getLine());
+        assertEquals(7, stray.getColumn());
+        assertEquals(3, diagnostics.get(3).getLine());
+
+        // 有问题的节点不保留源文本，其余节点保留
+        assertNull(sequence.get(2).getSource());
+        assertNotNull(tree.getRootNode().getSource());
+    }
+
+    @Test
+    public void testStrictParseReportsPosition() {
+        // 测试严格模式仍在第一个错误处抛出，并带有位置
+        String sgfContent = "(;FF[4];B[pd];b[dd])";
+        try {
+            SGFParser.parse(sgfContent);
+            fail("应抛出解析异常");
+        } catch (SGFParser.SGFParseException e) {
+            assertEquals(sgfContent.indexOf("b[dd]"), e.getPosition());
+        }
+    }
+
+    @Test
+    public void testRecoveringParseToBoard() throws Exception {
+        // 测试恢复模式加载到棋盘时跳过超出棋盘的着手
+        List<SGFParser.Diagnostic> diagnostics = new java.util.ArrayList<>();
+        com.gosgf.app.model.GoBoard board = new com.gosgf.app.model.GoBoard();
+        SGFParser.parseSGF("(;FF[4]SZ[19];B[pd];W[zz];B[tt];W[dd])", board, diagnostics);
+
+        assertEquals(3, board.getMoveHistory().size());
+        assertEquals(1, diagnostics.size());
+        assertEquals("Move outside the board", diagnostics.get(0).getMessage());
+    }
+
+    @Test
+    public void testRecoveringCollection() throws Exception {
+        // 测试合集的恢复模式，各局分别记录诊断信息
+        SGFParser.SGFCollection collection = SGFParser.parseCollection(
+                "(;FF[4];B[pd])(;FF[4];b[pd];W[dd])", true, true, java.util.concurrent.ForkJoinPool.commonPool());
+        assertTrue(collection.getDiagnostics(0).isEmpty());
+        assertEquals(1, collection.getDiagnostics(1).size());
+        assertEquals("dd", collection.get(1).getMainSequence().get(1).getFirstPropertyValue("W"));
+    }
+
+    /**
+     * 构造每一手都嵌套在上一手分支里的SGF
+     */
+    static String buildDeepSgf(int levels) {
+        StringBuilder sb = new StringBuilder("(;FF[4]GM[1]SZ[19];B[aa]");
+        for (int i = 0; i < levels; i++) {
+            sb.append(i % 2 == 0 ? "(;W[bb]" : "(;B[cc]");
+        }
+        for (int i = 0; i < levels; i++) {
+            sb.append(')');
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SGFPointSetTest {
+
+    @Test
+    public void testAddRectangle() {
+        // 测试压缩矩形展开
+        SGFPointSet points = new SGFPointSet();
+        assertTrue(points.add("aa:cb"));
+        assertEquals(6, points.size());
+        assertTrue(points.contains(2, 1));
+        assertFalse(points.contains(0, 2));
+
+        // 两角顺序颠倒也能识别
+        SGFPointSet reversed = new SGFPointSet();
+        assertTrue(reversed.add("cb:aa"));
+        assertEquals(points.toPointValues(), reversed.toPointValues());
+
+        assertFalse(points.add("tt:"));
+        assertFalse(points.add("a1"));
+    }
+
+    @Test
+    public void testCompressedValues() {
+        // 测试压缩为互不重叠的矩形
+        SGFPointSet points = new SGFPointSet();
+        points.add("aa:ss");
+        assertEquals(Arrays.asList("aa:ss"), points.toCompressedValues());
+
+        SGFPointSet column = new SGFPointSet();
+        column.add("ca:cs");
+        column.add("ea");
+        assertEquals(Arrays.asList("ca:cs", "ea"), column.toCompressedValues());
+
+        // L形：先纵向扩展得到更大的矩形
+        SGFPointSet shape = new SGFPointSet();
+        shape.add("aa:ad");
+        shape.add("ba");
+        List<String> values = shape.toCompressedValues();
+        assertEquals(Arrays.asList("aa:ad", "ba"), values);
+
+        SGFPointSet expanded = new SGFPointSet();
+        for (String value : values) {
+            expanded.add(value);
+        }
+        assertEquals(shape.toPointValues(), expanded.toPointValues());
+    }
+
+    @Test
+    public void testParserExpandsPointLists() throws Exception {
+        // 测试解析时展开压缩点列表，非点列表属性保持原样
+        SGFParser.SGFTree tree = SGFParser.parse("(;FF[4]SZ[19]AB[dd:ee][pp]LB[aa:A])");
+        SGFParser.Node root = tree.getRootNode();
+        assertEquals(Arrays.asList("dd", "ed", "de", "ee", "pp"), root.getPropertyValues("AB"));
+        assertEquals(5, root.getPointSet("AB").size());
+        assertEquals("aa:A", root.getFirstPropertyValue("LB"));
+    }
+
+    @Test
+    public void testSetupStonesLoadFromRectangle() throws Exception {
+        // 测试压缩矩形的让子不再被当作虚手
+        GoBoard board = new GoBoard();
+        SGFParser.parseSGF("(;FF[4]SZ[19]HA[4]AB[dd:ee];W[pp])", board);
+        assertEquals(GoBoard.BLACK, board.getStone(3, 3));
+        assertEquals(GoBoard.BLACK, board.getStone(4, 4));
+    }
+
+    @Test
+    public void testWriterCompressesPointLists() throws Exception {
+        // 测试写入时输出压缩矩形，冒号不转义
+        SGFParser.Node root = new SGFParser.Node();
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 3; y++) {
+                root.addProperty("AW", "" + (char) ('a' + x) + (char) ('a' + y));
+            }
+        }
+        root.addProperty("C", "a:b");
+        String sgf = SGFParser.save(new SGFParser.SGFTree(root, null));
+        assertTrue(sgf, sgf.contains("AW[aa:cc]"));
+        assertTrue(sgf, sgf.contains("C[a\\:b]"));
+
+        SGFParser.Node reparsed = SGFParser.parse(sgf).getRootNode();
+        assertEquals(9, reparsed.getPointSet("AW").size());
+    }
+}
@@ -0,0 +1,67 @@
+package com.gosgf.app.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+public class SGFValidatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testValidFiles() throws Exception {
+        // 测试没有问题的目录
+        write("a.sgf", "(;FF[4]SZ[19];B[pd];W[dd];B[pp])");
+        write("sub/b.SGF", "(;FF[4]SZ[19];B[dp];W[pd])");
+        write("notes.txt", "不是SGF");
+
+        String report = run(true);
+        assertTrue(report, report.contains("2 个文件，2 局"));
+        assertTrue(report, report.contains("语法错误 0，非法着手 0，无效坐标 0，重复对局 0"));
+    }
+
+    @Test
+    public void testReportsProblems() throws Exception {
+        // 测试报告语法错误、非法着手、无效坐标和重复对局
+        write("syntax.sgf", "(;FF[4]SZ[19];B[pd]!!;W[dd])");
+        write("occupied.sgf", "(;FF[4]SZ[19];B[pd];W[pd])");
+        write("coord.sgf", "(;FF[4]SZ[19];B[pd];W[zz])");
+        write("dup1.sgf", "(;FF[4]SZ[19];B[qd];W[dc])");
+        write("dup2.sgf", "(;FF[4]SZ[19]PB[另一份];B[qd];W[dc])");
+        write("collection.sgf", "(;FF[4];B[aa])(;FF[4];B[bb];W[bb])");
+
+        String report = run(false);
+        assertTrue(report, report.contains("语法错误 1，非法着手 2，无效坐标 1，重复对局 1"));
+        assertTrue(report, report.contains("syntax.sgf:1:20: "));
+        assertTrue(report, report.contains("collection.sgf#2: 第2手落在已有棋子的位置 bb"));
+        assertTrue(report, report.contains("coord.sgf: 第2手坐标无效"));
+        assertTrue(report, report.contains("重复对局: "));
+    }
+
+    private void write(String name, String content) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String run(boolean expectedOk) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        boolean ok = new SGFValidator(pool, out, false).validate(Collections.singletonList(folder.getRoot().toPath()));
+        pool.shutdown();
+        String report = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(report, expectedOk, ok);
+        return report;
+    }
+}
@@ -0,0 +1,176 @@
+package com.gosgf.app.util;
+
+import com.gosgf.app.model.GoBoard;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class SGFWriterTest {
+
+    @Test
+    public void testEscapeValue() throws Exception {
+        // 测试属性值转义
+        SGFParser.Node root = new SGFParser.Node();
+        root.addProperty("C", "a]b\\c[d:e|f");
+        StringWriter out = new StringWriter();
+        new SGFWriter(out).writeTree(new SGFParser.SGFTree(root, null));
+        assertEquals("(;C[a\\]b\\\\c\\[d\\:e|f])", out.toString());
+
+        SGFParser.SGFTree parsed = SGFParser.parse(out.toString());
+        assertEquals("a]b\\c[d:e|f", parsed.getRootNode().getFirstPropertyValue("C"));
+    }
+
+    @Test
+    public void testComposeSeparator() throws Exception {
+        // 测试组合值的分隔符原样写出，标签文字中的冒号仍然转义
+        SGFParser.Node root = new SGFParser.Node();
+        root.addProperty("LB", "pd:A");
+        root.addProperty("LB", "dd:1:2");
+        root.addProperty("AR", "aa:cc");
+        root.addProperty("LN", "dp:pp");
+        StringWriter out = new StringWriter();
+        new SGFWriter(out).writeTree(new SGFParser.SGFTree(root, null));
+        assertEquals("(;AR[aa:cc]LN[dp:pp]LB[pd:A][dd:1\\:2])", out.toString());
+
+        SGFParser.SGFTree parsed = SGFParser.parse(out.toString());
+        assertEquals("dd:1:2", parsed.getRootNode().getPropertyValues("LB").get(1));
+    }
+
+    @Test
+    public void testWriteTreeRoundTrip() throws Exception {
+        // 测试SGF树写出后重新解析结构不变
+        String sgfContent = "(;FF[4]GM[1]SZ[19];B[pd];W[dd](;B[qe]C[变化图];W[qf](;B[rf]))(;B[dc]))";
+        SGFParser.SGFTree tree = SGFParser.parse(sgfContent);
+        SGFParser.SGFTree reparsed = SGFParser.parse(SGFParser.save(tree));
+
+        List<SGFParser.Node> sequence = reparsed.getRootVariations().get(0);
+        assertEquals(2, sequence.size());
+        List<List<SGFParser.Node>> variations = sequence.get(1).getVariations();
+        assertEquals(2, variations.size());
+        assertEquals("变化图", variations.get(0).get(0).getFirstPropertyValue("C"));
+        assertEquals("rf", variations.get(0).get(1).getVariations().get(0).get(0).getFirstPropertyValue("B"));
+        assertEquals("dc", variations.get(1).get(0).getFirstPropertyValue("B"));
+    }
+
+    @Test
+    public void testLineWrap() throws Exception {
+        // 测试按行宽换行，换行后仍可解析
+        GoBoard board = new GoBoard();
+        for (int i = 0; i < 200; i++) {
+            board.addMoveToHistory(new GoBoard.Move(i % 19, (i / 19) % 19, i % 2 == 0 ? GoBoard.BLACK : GoBoard.WHITE));
+        }
+        StringWriter out = new StringWriter();
+        new SGFWriter(out, 40).writeBoard(board);
+
+        String[] lines = out.toString().split("\n");
+        assertTrue(lines.length > 1);
+        for (String line : lines) {
+            assertTrue(line, line.length() <= 48);
+        }
+
+        GoBoard loaded = new GoBoard();
+        SGFParser.parseSGF(out.toString(), loaded);
+        assertEquals(200, loaded.getMoveHistory().size());
+    }
+
+    @Test
+    public void testWriteBoardToOutputStream() throws Exception {
+        // 测试以UTF-8流式写入，与 saveToString 结果一致
+        GoBoard board = new GoBoard();
+        board.setBlackPlayer("柯洁");
+        board.setWhitePlayer("AlphaGo");
+        board.addMoveToHistory(new GoBoard.Move(15, 3, GoBoard.BLACK));
+        board.addMoveToHistory(new GoBoard.Move(3, 3, GoBoard.WHITE));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SGFWriter writer = new SGFWriter(bytes);
+        writer.writeBoard(board);
+        writer.flush();
+
+        String sgf = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(SGFParser.saveToString(board, "", "", ""), sgf);
+        assertEquals(sgf, board.toSGFString());
+
+        GoBoard loaded = new GoBoard();
+        SGFParser.parseSGF(sgf, loaded);
+        assertEquals("柯洁", loaded.getBlackPlayer());
+        assertEquals(2, loaded.getMoveHistory().size());
+    }
+
+    @Test
+    public void testUnchangedNodesCopiedVerbatim() throws Exception {
+        // 测试未修改的节点原样复制，保留未解析的属性和原始格式
+        String sgfContent = "(;FF[4]GM[1]SZ[19]KM[6.5]AB[dd][pp];B[pd]BL[30.5] ;W[dp]\nWL[25])";
+        GoBoard board = new GoBoard();
+        SGFParser.parseSGF(sgfContent, board);
+
+        String sgf = board.toSGFString();
+        assertTrue(sgf, sgf.contains(";B[pd]BL[30.5]"));
+        assertTrue(sgf, sgf.contains(";W[dp]\nWL[25]"));
+        assertEquals("6.5", SGFParser.parse(sgf).getRootNode().getFirstPropertyValue("KM"));
+        assertEquals(2, SGFParser.parse(sgf).getRootNode().getPropertyValues("AB").size());
+    }
+
+    @Test
+    public void testModifiedNodeKeepsUnknownProperties() throws Exception {
+        // 测试修改过的节点重新编码，仍保留未解析的属性
+        GoBoard board = new GoBoard();
+        SGFParser.parseSGF("(;FF[4]SZ[19];B[pd]BL[30.5];W[dp])", board);
+        board.setCurrentMoveNumber(0);
+        board.setComment("好棋");
+
+        SGFParser.SGFTree tree = SGFParser.parse(board.toSGFString());
+        SGFParser.Node first = tree.getMainSequence().isEmpty()
+                ? tree.getRootVariations().get(0).get(0) : tree.getMainSequence().get(0);
+        assertEquals("pd", first.getFirstPropertyValue("B"));
+        assertEquals("好棋", first.getFirstPropertyValue("C"));
+        assertEquals("30.5", first.getFirstPropertyValue("BL"));
+    }
+
+    @Test
+    public void testDeferredVariationCopiedVerbatim() throws Exception {
+        // 测试未展开的分支整段复制，保存后仍未加载
+        String branch = "(;B[qe] C[变化图];W[qf](;B[rf]))";
+        String sgfContent = "(;FF[4]GM[1]SZ[19];B[pd];W[dd]" + branch + "(;B[dc]))";
+        GoBoard board = new GoBoard();
+        SGFParser.parseSGF(sgfContent, board, true);
+
+        GoBoard.Variation variation = board.getMoveHistory().get(1).variations.get(0);
+        assertFalse(variation.isLoaded());
+        assertNotNull(variation.getSource());
+
+        String sgf = board.toSGFString();
+        assertTrue(sgf, sgf.contains(branch));
+        assertFalse(variation.isLoaded());
+
+        // 展开后不再按源文本复制
+        assertEquals(2, variation.getMoves().size());
+        assertNull(variation.getSource());
+    }
+
+    @Test
+    public void testInvalidDeferredVariationKeepsError() throws Exception {
+        // 测试格式错误的分支展开时保留错误，按空分支处理，保存时原样写回
+        String branch = "(;B[qe];w[qf])";
+        String sgfContent = "(;FF[4]GM[1]SZ[19];B[pd];W[dd]" + branch + "(;B[dc]))";
+        GoBoard board = new GoBoard();
+        SGFParser.parseSGF(sgfContent, board, true);
+
+        GoBoard.Variation variation = board.getMoveHistory().get(1).variations.get(0);
+        assertNull(variation.getLoadError());
+        board.setCurrentMoveNumber(1);
+        List<String> errors = board.getVariationErrors();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).startsWith(variation.getName() + ": "));
+        assertNotNull(variation.getLoadError());
+        assertTrue(variation.getMoves().isEmpty());
+        assertFalse(board.selectVariation(0));
+
+        String sgf = board.toSGFString();
+        assertTrue(sgf, sgf.contains(branch));
+    }
+}